@@ -116,4 +116,16 @@ public interface IConverter {
     default String getNativeCommand() {
         return null;
     }
+
+    /**
+     * Describes the current configuration of the converter (e.g., arguments of a native
+     * program). Two converters of the same class with the same key produce the same output
+     * for the same input. It is used to cache conversions, see
+     * {@link com.formulasearchengine.mathmltools.converters.cache.CachingConverter}.
+     *
+     * @return the configuration key, empty if the converter has no configuration
+     */
+    default String getConfigurationKey() {
+        return "";
+    }
 }
@@ -4,29 +4,32 @@ import com.formulasearchengine.mathmltools.converters.canonicalize.Canonicalizab
 import com.formulasearchengine.mathmltools.converters.config.LaTeXMLConfig;
 import com.formulasearchengine.mathmltools.converters.exceptions.MathConverterException;
 import com.formulasearchengine.mathmltools.converters.services.LaTeXMLServiceResponse;
+import com.formulasearchengine.mathmltools.converters.services.ServiceClient;
 import com.formulasearchengine.mathmltools.io.XmlDocumentReader;
 import com.formulasearchengine.mathmltools.nativetools.CommandExecutor;
 import com.formulasearchengine.mathmltools.nativetools.NativeResponse;
+import com.formulasearchengine.mathmltools.nativetools.ProcessPool;
 import org.apache.logging.log4j.Level;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
-import org.springframework.http.HttpEntity;
-import org.springframework.http.HttpHeaders;
-import org.springframework.http.MediaType;
 import org.springframework.util.MultiValueMap;
 import org.springframework.web.client.HttpClientErrorException;
-import org.springframework.web.client.RestTemplate;
 import org.w3c.dom.Document;
 import org.xml.sax.SAXException;
 
 import java.io.BufferedWriter;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.stream.Stream;
@@ -43,12 +46,29 @@ public class LaTeXMLConverter implements IConverter, Canonicalizable {
     private static final String ARG_PREFIX = "literal:";
     private static final String OUT_PREFIX = "--dest=";
 
+    private static final String WORKER_SCRIPT = "latexml/latexml-worker.pl";
+
+    private static Path workerScript;
+
     private Path redirect;
 
     private LaTeXMLConfig config;
 
     private boolean semanticMode = false;
 
+    /**
+     * command to start a worker (without LaTeXML arguments), null if no pool is used
+     */
+    private List<String> workerCommand;
+
+    private int poolSize;
+
+    private ProcessPool defaultPool;
+
+    private ProcessPool contentPool;
+
+    private ServiceClient serviceClient = ServiceClient.getDefault();
+
     public LaTeXMLConverter() {
     }
 
@@ -117,6 +137,109 @@ public class LaTeXMLConverter implements IConverter, Canonicalizable {
      */
     public void redirectLatex(Path path) {
         redirect = path;
+        // running workers still use the old directory
+        closePool();
+    }
+
+    /**
+     * Converts the expressions with persistent LaTeXML workers instead of starting latexmlc
+     * for every single expression. A worker loads LaTeXML and the preloads of the config only
+     * once, hence the startup costs of latexmlc are paid once per worker. The workers are
+     * started on demand, one pool for each mode (see {@link #semanticMode()}).
+     * <p>
+     * The workers are Perl processes using the LaTeXML bindings (same as latexmlc). Don't
+     * forget to call {@link #closePool()} at the end.
+     *
+     * @param workers maximum number of parallel workers
+     */
+    public void usePool(int workers) {
+        usePool(workers, Arrays.asList("perl", getWorkerScript().toString()));
+    }
+
+    /**
+     * Same as {@link #usePool(int)} with another worker. The LaTeXML arguments of the current mode
+     * are appended to the given command. The worker must speak the protocol of the {@link ProcessPool}.
+     *
+     * @param workers       maximum number of parallel workers
+     * @param workerCommand command to start a worker
+     */
+    public synchronized void usePool(int workers, List<String> workerCommand) {
+        if (workers < 1) {
+            throw new IllegalArgumentException("The pool needs at least one worker: " + workers);
+        }
+        closePool();
+        this.poolSize = workers;
+        this.workerCommand = new LinkedList<>(workerCommand);
+    }
+
+    /**
+     * @return true if the expressions are converted by persistent workers
+     */
+    public boolean isPooled() {
+        return workerCommand != null;
+    }
+
+    /**
+     * Stops all running workers. The next conversion starts new workers if the pool is still in use.
+     */
+    public synchronized void closePool() {
+        if (defaultPool != null) {
+            defaultPool.close();
+            defaultPool = null;
+        }
+        if (contentPool != null) {
+            contentPool.close();
+            contentPool = null;
+        }
+    }
+
+    /**
+     * Stops the workers and switches back to a new latexmlc process per expression.
+     */
+    public synchronized void disablePool() {
+        closePool();
+        workerCommand = null;
+    }
+
+    private synchronized ProcessPool getPool() {
+        if (semanticMode) {
+            if (contentPool == null) {
+                contentPool = createPool(config.getContentArguments());
+            }
+            return contentPool;
+        }
+        if (defaultPool == null) {
+            defaultPool = createPool(config.getDefaultArguments());
+        }
+        return defaultPool;
+    }
+
+    private ProcessPool createPool(LinkedList<String> latexmlArguments) {
+        // the first argument is the latexmlc command itself
+        latexmlArguments.removeFirst();
+        List<String> command = new LinkedList<>(workerCommand);
+        command.addAll(latexmlArguments);
+        ProcessPool pool = new ProcessPool(NAME, command, poolSize)
+                .setTimeout(CommandExecutor.DEFAULT_TIMEOUT)
+                .setLogLevel(Level.TRACE);
+        if (redirect != null) {
+            pool.setWorkingDirectory(redirect);
+        }
+        return pool;
+    }
+
+    private static synchronized Path getWorkerScript() {
+        if (workerScript == null) {
+            try (InputStream in = LaTeXMLConverter.class.getResourceAsStream(WORKER_SCRIPT)) {
+                Path script = Files.createTempFile("latexml-worker", ".pl");
+                Files.copy(in, script, StandardCopyOption.REPLACE_EXISTING);
+                script.toFile().deleteOnExit();
+                workerScript = script;
+            } catch (IOException e) {
+                throw new MathConverterException("Cannot extract the LaTeXML worker script.", e);
+            }
+        }
+        return workerScript;
     }
 
     public LinkedList<String> buildArguments(String latex) {
@@ -163,6 +286,11 @@ public class LaTeXMLConverter implements IConverter, Canonicalizable {
      * @return MathML output in the result of LaTeXMLServiceResponse
      */
     public NativeResponse parseToNativeResponse(String latex) {
+        if (isPooled()) {
+            latex = preLatexmlFixes(latex);
+            LOG.info("Send expression to LaTeXML worker. " + latex);
+            return getPool().exec(latex);
+        }
         return parseToNativeResponse(buildArguments(latex), latex);
     }
 
@@ -184,7 +312,15 @@ public class LaTeXMLConverter implements IConverter, Canonicalizable {
 
     @Override
     public String convertToString(String latex) {
-        return convertToString(buildArguments(latex), latex);
+        if (!isPooled()) {
+            return convertToString(buildArguments(latex), latex);
+        }
+        NativeResponse response = parseToNativeResponse(latex);
+        if (handleResponseCode(response, NAME, LOG) != 0) {
+            return null;
+        }
+        LOG.info(NAME + " conversion successful.");
+        return response.getResult();
     }
 
     @Override
@@ -205,6 +341,18 @@ public class LaTeXMLConverter implements IConverter, Canonicalizable {
     @Override
     public void convertToFile(String latex, Path outputFile) {
         latex = preLatexmlFixes(latex);
+        if (isPooled()) {
+            NativeResponse response = parseToNativeResponse(latex);
+            if (handleResponseCode(response, NAME, LOG) == 0) {
+                try {
+                    Files.write(outputFile, response.getResult().getBytes(StandardCharsets.UTF_8));
+                    LOG.info("Successfully write parsed expression to " + outputFile);
+                } catch (IOException e) {
+                    throw new MathConverterException("Cannot write LaTeXML output to " + outputFile, e);
+                }
+            }
+            return;
+        }
         LOG.info("Call native latexmlc for " + latex);
         CommandExecutor executor = new CommandExecutor(NAME, buildArguments(latex, outputFile));
         if (redirect != null) {
@@ -221,6 +369,18 @@ public class LaTeXMLConverter implements IConverter, Canonicalizable {
         return LaTeXMLConfig.NATIVE_CMD;
     }
 
+    /**
+     * The arguments of the current mode (semantic or not) and the working directory
+     * (with the semantic macros).
+     *
+     * @return the configuration key
+     */
+    @Override
+    public String getConfigurationKey() {
+        List<String> args = semanticMode ? config.getContentArguments() : config.getDefaultArguments();
+        return args + " " + redirect;
+    }
+
     /**
      * Call a LaTeXML service.
      *
@@ -228,40 +388,44 @@ public class LaTeXMLConverter implements IConverter, Canonicalizable {
      * @return MathML String
      */
     public LaTeXMLServiceResponse parseAsService(String latex) {
-        HttpHeaders header = new HttpHeaders();
-        header.setContentType(MediaType.APPLICATION_FORM_URLENCODED);
-
-        MultiValueMap<String, String> parameters = config.buildServiceRequestParameters(true);
-        parameters.add("tex", latex);
-//        System.out.println(parameters);
-
-        HttpEntity<MultiValueMap<String, String>> request = new HttpEntity<>(parameters, header);
-        RestTemplate restTemplate = new RestTemplate();
-
-//
-//        try {
-//            latex = UriComponentsBuilder.newInstance().queryParam("tex", latex).build().encode(StandardCharsets.UTF_8.toString()).getQuery();
-//        } catch (UnsupportedEncodingException ignore) {
-//            LOG.warn("encoding not supported", ignore);
-//        }
-//
-//        String serviceArguments = config.buildServiceRequest();
-//        String payload = serviceArguments + "&" + latex;
-//        RestTemplate restTemplate = new RestTemplate();
-
         try {
-//            LaTeXMLServiceResponse rep = restTemplate.getForObject(config.getUrl(), LaTeXMLServiceResponse.class, config.getDefaultParams());
-            LaTeXMLServiceResponse rep = restTemplate.postForObject(config.getUrl(), request, LaTeXMLServiceResponse.class);
-            LOG.debug(String.format("LaTeXMLServiceResponse:\n"
-                            + "statusCode: %s\nstatus: %s\nlog: %s\nresult: %s",
-                    rep.getStatusCode(), rep.getStatus(), rep.getLog(), rep.getResult()));
-            return rep;
+            return ServiceClient.await(parseAsServiceAsync(latex));
         } catch (HttpClientErrorException e) {
             LOG.error(e.getResponseBodyAsString());
             throw e;
         }
     }
 
+    /**
+     * Non-blocking call of a LaTeXML service, see {@link #parseAsService(String)}.
+     *
+     * @param latex LaTeX formula
+     * @return the future response of the service
+     */
+    public CompletableFuture<LaTeXMLServiceResponse> parseAsServiceAsync(String latex) {
+        MultiValueMap<String, String> parameters = config.buildServiceRequestParameters(true);
+        parameters.add("tex", latex);
+
+        return serviceClient.postForm(config.getUrl(), parameters, LaTeXMLServiceResponse.class)
+                .whenComplete((rep, e) -> {
+                    if (rep != null) {
+                        LOG.debug(String.format("LaTeXMLServiceResponse:\n"
+                                        + "statusCode: %s\nstatus: %s\nlog: %s\nresult: %s",
+                                rep.getStatusCode(), rep.getStatus(), rep.getLog(), rep.getResult()));
+                    }
+                });
+    }
+
+    /**
+     * Sets the HTTP client for {@link #parseAsService(String)}. By default, the shared
+     * {@link ServiceClient#getDefault()} is used.
+     *
+     * @param serviceClient the HTTP client
+     */
+    public void setServiceClient(ServiceClient serviceClient) {
+        this.serviceClient = serviceClient;
+    }
+
     public static void main(String[] args) {
         LaTeXMLConfig lateXMLConfig = LaTeXMLConfig.getDefaultConfiguration().setUrl("https://drmf-latexml.wmflabs.org/convert");
         lateXMLConfig.getDefaultParams().remove("pmml");
@@ -5,9 +5,9 @@ import com.formulasearchengine.mathmltools.converters.config.MathMLConverterConf
 import com.formulasearchengine.mathmltools.converters.mathoid.EnrichedMathMLTransformer;
 import com.formulasearchengine.mathmltools.converters.exceptions.MathConverterException;
 import com.formulasearchengine.mathmltools.io.XmlDocumentWriter;
-import com.formulasearchengine.mathmltools.mml.CMMLInfo;
 import com.formulasearchengine.mathmltools.nativetools.NativeResponse;
 import com.formulasearchengine.mathmltools.xml.NonWhitespaceNodeList;
+import com.formulasearchengine.mathmltools.xml.XPathRegistry;
 import com.formulasearchengine.mathmltools.helper.XMLHelper;
 import com.formulasearchengine.mathmltools.xml.XmlNamespaceTranslator;
 import org.apache.commons.lang3.StringUtils;
@@ -21,7 +21,6 @@ import org.w3c.dom.Node;
 
 import javax.xml.parsers.ParserConfigurationException;
 import javax.xml.transform.TransformerException;
-import javax.xml.xpath.XPath;
 import javax.xml.xpath.XPathExpressionException;
 import java.io.IOException;
 import java.lang.reflect.Field;
@@ -44,8 +43,6 @@ public class MathMLConverter {
 
     private static Logger logger = LogManager.getLogger(MathMLConverter.class);
 
-    private XPath xPath = XMLHelper.namespaceAwareXpath("m", CMMLInfo.NS_MATHML);
-
     private MathMLConverterConfig config;
 
     enum Content {
@@ -94,7 +91,7 @@ public class MathMLConverter {
             formulaId = mathEle.getAttribute("id");
             if (formulaId.equals("")) {
                 try {
-                    Element applyNode = (Element) XMLHelper.getElementB(formulaNode, xPath.compile("//m:apply"));
+                    Element applyNode = (Element) XMLHelper.getElementB(formulaNode, XPathRegistry.mathml("//m:apply"));
                     formulaId = applyNode.getAttribute("id");
                 } catch (Exception e) {
                     logger.trace("can not find apply node ", e);
@@ -148,7 +145,7 @@ public class MathMLConverter {
      * @throws MathConverterException   math element not found
      */
     private Element grabMathElement(Element formulaNode) throws XPathExpressionException, MathConverterException {
-        Element mathEle = Optional.ofNullable((Element) XMLHelper.getElementB(formulaNode, xPath.compile("./*[1]")))
+        Element mathEle = Optional.ofNullable((Element) XMLHelper.getElementB(formulaNode, XPathRegistry.mathml("./*[1]")))
                 .orElseThrow(() -> new MathConverterException("no math element found"));
         // check for the "math" root element
         if (mathEle.getNodeName().toLowerCase().contains("math")) {
@@ -229,19 +226,19 @@ public class MathMLConverter {
      */
     Content scanFormulaNode(Element formulaNode) throws Exception {
         // first off, try scanning for a semantic split, this indicates multiple semantics
-        Boolean containsSemantic = XMLHelper.getElementB(formulaNode, xPath.compile("//m:semantics")) != null;
+        Boolean containsSemantic = XMLHelper.getElementB(formulaNode, XPathRegistry.mathml("//m:semantics")) != null;
 
         // check if there is an annotationNode and if so check which semantics are present
-        Element annotationNode = (Element) XMLHelper.getElementB(formulaNode, xPath.compile("//m:annotation-xml"));
+        Element annotationNode = (Element) XMLHelper.getElementB(formulaNode, XPathRegistry.mathml("//m:annotation-xml"));
         Boolean containsCMML = annotationNode != null && annotationNode.getAttribute("encoding").equals("MathML-Content");
         Boolean containsPMML = annotationNode != null && annotationNode.getAttribute("encoding").equals("MathML-Presentation");
 
         // if apply are present, the content semantics is used somewhere
-        NonWhitespaceNodeList applyNodes = new NonWhitespaceNodeList(XMLHelper.getElementsB(formulaNode, xPath.compile("//m:apply")));
+        NonWhitespaceNodeList applyNodes = new NonWhitespaceNodeList(XMLHelper.getElementsB(formulaNode, XPathRegistry.mathml("//m:apply")));
         containsCMML |= applyNodes.getLength() > 0;
 
         // if mrow nodes are present, the presentation semantic is used somewhere
-        NonWhitespaceNodeList mrowNodes = new NonWhitespaceNodeList(XMLHelper.getElementsB(formulaNode, xPath.compile("//m:mrow")));
+        NonWhitespaceNodeList mrowNodes = new NonWhitespaceNodeList(XMLHelper.getElementsB(formulaNode, XPathRegistry.mathml("//m:mrow")));
         containsPMML |= mrowNodes.getLength() > 0;
 
         // TODO the containCMML and -PMML can be more specific, e.g. check if identifiers of each semantics is present
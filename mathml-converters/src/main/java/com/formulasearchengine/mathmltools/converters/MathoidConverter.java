@@ -2,10 +2,11 @@ package com.formulasearchengine.mathmltools.converters;
 
 import com.formulasearchengine.mathmltools.converters.canonicalize.Canonicalizable;
 import com.formulasearchengine.mathmltools.converters.config.MathoidConfig;
+import com.formulasearchengine.mathmltools.converters.mathoid.MathoidConversionResult;
 import com.formulasearchengine.mathmltools.converters.mathoid.MathoidEndpoints;
 import com.formulasearchengine.mathmltools.converters.mathoid.MathoidInfoResponse;
 import com.formulasearchengine.mathmltools.converters.mathoid.MathoidTypes;
-import org.apache.commons.io.Charsets;
+import com.formulasearchengine.mathmltools.converters.services.ServiceClient;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.springframework.http.HttpEntity;
@@ -14,13 +15,18 @@ import org.springframework.http.HttpMethod;
 import org.springframework.http.MediaType;
 import org.springframework.http.client.ClientHttpRequest;
 import org.springframework.http.client.SimpleClientHttpRequestFactory;
-import org.springframework.http.converter.StringHttpMessageConverter;
 import org.springframework.util.LinkedMultiValueMap;
 import org.springframework.util.MultiValueMap;
 import org.springframework.web.client.HttpClientErrorException;
-import org.springframework.web.client.RestTemplate;
 
 import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Alternative approach for conversion from a latex formula to
@@ -35,9 +41,19 @@ public class MathoidConverter implements IConverter, Canonicalizable {
     private static final String INFO_ENDPOINT = "texvcinfo";
     private static Logger logger = LogManager.getLogger(MathoidConverter.class);
     private final MathoidConfig mathoidConfig;
+    private final ServiceClient client;
 
     public MathoidConverter(MathoidConfig mathoidConfig) {
+        this(mathoidConfig, ServiceClient.getDefault());
+    }
+
+    /**
+     * @param mathoidConfig the config of the Mathoid service
+     * @param client        the (shared) HTTP client for all requests against Mathoid
+     */
+    public MathoidConverter(MathoidConfig mathoidConfig, ServiceClient client) {
         this.mathoidConfig = mathoidConfig;
+        this.client = client;
     }
 
     /**
@@ -78,36 +94,145 @@ public class MathoidConverter implements IConverter, Canonicalizable {
     }
 
     public MathoidInfoResponse check(String in, MathoidTypes type) throws HttpClientErrorException {
+        return ServiceClient.await(checkAsync(in, type));
+    }
+
+    /**
+     * Non-blocking version of {@link #check(String, MathoidTypes)}.
+     *
+     * @param in   expression to be checked
+     * @param type input format
+     * @return the future info response of mathoid
+     */
+    public CompletableFuture<MathoidInfoResponse> checkAsync(String in, MathoidTypes type) {
         HttpEntity<MultiValueMap<String, String>> request = buildRequest(in, type);
         String url = MathoidEndpoints.INFO_ENDPOINT.getEndpoint(mathoidConfig.getUrl());
-        try {
-            MathoidInfoResponse response =
-                    new RestTemplate().postForObject(url, request, MathoidInfoResponse.class);
-            logger.info("Successfully checked expression via Mathoid.");
-            return response;
-        } catch (HttpClientErrorException e) {
-            logger.error(e.getResponseBodyAsString());
-            throw e;
-        }
+        return client.postForm(url, request.getBody(), MathoidInfoResponse.class)
+                .whenComplete((response, e) -> {
+                    if (e == null) {
+                        logger.info("Successfully checked expression via Mathoid.");
+                    } else {
+                        logError(e);
+                    }
+                });
     }
 
     public String conversion(MathoidEndpoints endpoint, String input) throws HttpClientErrorException {
-        return conversion(endpoint, input);
+        return conversion(endpoint, input, null);
     }
 
     public String conversion(MathoidEndpoints endpoint, String input, MathoidTypes type) throws HttpClientErrorException {
+        return ServiceClient.await(conversionAsync(endpoint, input, type));
+    }
+
+    /**
+     * Non-blocking version of {@link #conversion(MathoidEndpoints, String, MathoidTypes)}.
+     *
+     * @param endpoint the endpoint of mathoid
+     * @param input    expression to be converted
+     * @param type     input format, can be null
+     * @return the future response of mathoid
+     */
+    public CompletableFuture<String> conversionAsync(MathoidEndpoints endpoint, String input, MathoidTypes type) {
         HttpEntity<MultiValueMap<String, String>> request = buildRequest(input, type);
         String url = endpoint.getEndpoint(mathoidConfig.getUrl());
-        try {
-            RestTemplate template = new RestTemplate();
-            StringHttpMessageConverter converter = new StringHttpMessageConverter(Charsets.UTF_8);
-            template.getMessageConverters().add(0, converter);
-            String response = template.postForObject(url, request, String.class);
-            logger.info("Successfully converted expression via Mathoid.");
-            return response;
-        } catch (HttpClientErrorException e) {
-            logger.error(e.getResponseBodyAsString());
-            throw e;
+        return client.postForm(url, request.getBody())
+                .whenComplete((response, e) -> {
+                    if (e == null) {
+                        logger.info("Successfully converted expression via Mathoid.");
+                    } else {
+                        logError(e);
+                    }
+                });
+    }
+
+    /**
+     * Converts all LaTeX expressions with the given endpoint. Only a limited number of requests
+     * is in flight at the same time (the maximum connections of the HTTP client). The next
+     * expression is sent when a previous one is finished, so the requests never pile up.
+     * <p>
+     * A failure of a single expression does not affect the other expressions.
+     *
+     * @param latex    the LaTeX expressions
+     * @param endpoint the endpoint of mathoid
+     * @return the results in the same order as the given expressions
+     */
+    public List<MathoidConversionResult> convertAll(List<String> latex, MathoidEndpoints endpoint) {
+        return convertAllAsync(latex, endpoint, MathoidTypes.TEX, client.getMaxConnections()).join();
+    }
+
+    /**
+     * Non-blocking version of {@link #convertAll(List, MathoidEndpoints)}.
+     *
+     * @param inputs         the expressions
+     * @param endpoint       the endpoint of mathoid
+     * @param type           input format, can be null
+     * @param maxConcurrency maximum number of requests in flight
+     * @return the future results in the same order as the given expressions, never completes exceptionally
+     */
+    public CompletableFuture<List<MathoidConversionResult>> convertAllAsync(
+            List<String> inputs, MathoidEndpoints endpoint, MathoidTypes type, int maxConcurrency) {
+        if (maxConcurrency < 1) {
+            throw new IllegalArgumentException("At least one request must be in flight: " + maxConcurrency);
+        }
+        BatchConversion batch = new BatchConversion(new ArrayList<>(inputs), endpoint, type);
+        for (int i = 0; i < maxConcurrency && i < inputs.size(); i++) {
+            batch.submitNext();
+        }
+        return batch.done;
+    }
+
+    /**
+     * A running batch conversion. Every finished request submits the next expression, requests
+     * that finish right away are followed up by the submitting loop.
+     */
+    private final class BatchConversion {
+        private final List<String> inputs;
+        private final MathoidEndpoints endpoint;
+        private final MathoidTypes type;
+
+        private final MathoidConversionResult[] results;
+        private final AtomicInteger next = new AtomicInteger();
+        private final AtomicInteger finished = new AtomicInteger();
+        private final CompletableFuture<List<MathoidConversionResult>> done = new CompletableFuture<>();
+
+        BatchConversion(List<String> inputs, MathoidEndpoints endpoint, MathoidTypes type) {
+            this.inputs = inputs;
+            this.endpoint = endpoint;
+            this.type = type;
+            this.results = new MathoidConversionResult[inputs.size()];
+            if (inputs.isEmpty()) {
+                done.complete(Collections.emptyList());
+            }
+        }
+
+        void submitNext() {
+            int i;
+            while ((i = next.getAndIncrement()) < inputs.size()) {
+                int idx = i;
+                CompletableFuture<String> request = conversionAsync(endpoint, inputs.get(idx), type);
+                if (request.isDone()) {
+                    // e.g. an invalid url, the request was not sent at all. Go on with the loop,
+                    // submitting the next one from the callback would recurse for every input.
+                    request.whenComplete((response, e) -> finish(idx, response, e));
+                    continue;
+                }
+                request.whenComplete((response, e) -> {
+                    finish(idx, response, e);
+                    submitNext();
+                });
+                return;
+            }
+        }
+
+        private void finish(int idx, String response, Throwable e) {
+            if (e instanceof CompletionException && e.getCause() != null) {
+                e = e.getCause();
+            }
+            results[idx] = new MathoidConversionResult(inputs.get(idx), response, e);
+            if (finished.incrementAndGet() == results.length) {
+                done.complete(Arrays.asList(results));
+            }
         }
     }
 
@@ -120,10 +245,17 @@ public class MathoidConverter implements IConverter, Canonicalizable {
      * @return Enrichted MathML String from mathoid
      */
     public String convert(String input, String type) {
-        // set necessary header: request per form
-        HttpHeaders headers = new HttpHeaders();
-        headers.setContentType(MediaType.APPLICATION_FORM_URLENCODED);
+        return ServiceClient.await(convertAsync(input, type));
+    }
 
+    /**
+     * Non-blocking version of {@link #convert(String, String)}.
+     *
+     * @param input LaTeX formula to be converted
+     * @param type  input format
+     * @return the future enriched MathML String from mathoid
+     */
+    public CompletableFuture<String> convertAsync(String input, String type) {
         // pack the latex string as the parameter q (q for query ;) )
         MultiValueMap<String, String> map = new LinkedMultiValueMap<>();
         map.add("q", input);
@@ -131,14 +263,25 @@ public class MathoidConverter implements IConverter, Canonicalizable {
             map.add("type", type);
         }
 
-        HttpEntity<MultiValueMap<String, String>> request = new HttpEntity<>(map, headers);
-        try {
-            String rep = new RestTemplate().postForObject(mathoidConfig.getUrl(), request, String.class);
-            logger.info(rep);
-            return rep;
-        } catch (HttpClientErrorException e) {
-            logger.error(e.getResponseBodyAsString());
-            throw e;
+        return client.postForm(mathoidConfig.getUrl(), map)
+                .whenComplete((rep, e) -> {
+                    if (e == null) {
+                        logger.info(rep);
+                    } else {
+                        logError(e);
+                    }
+                });
+    }
+
+    private static void logError(Throwable e) {
+        // dependent stages see the failure of the request wrapped
+        if (e instanceof CompletionException && e.getCause() != null) {
+            e = e.getCause();
+        }
+        if (e instanceof HttpClientErrorException) {
+            logger.error(((HttpClientErrorException) e).getResponseBodyAsString());
+        } else {
+            logger.error("Mathoid request failed: " + e.getMessage());
         }
     }
 
@@ -164,6 +307,11 @@ public class MathoidConverter implements IConverter, Canonicalizable {
         // load default config?
     }
 
+    @Override
+    public String getConfigurationKey() {
+        return mathoidConfig.getUrl();
+    }
+
     @Override
     public String convertToString(String latex) {
         // TODO
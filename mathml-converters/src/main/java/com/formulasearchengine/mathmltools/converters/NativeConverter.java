@@ -13,10 +13,14 @@ import org.xml.sax.SAXException;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.LinkedList;
+import java.util.List;
 
 /**
  * An abstract class for converters that call native programs, such as LaTeXML.
+ * Conversions do not change the arguments, hence a converter can be used by multiple
+ * threads once it is initiated.
  *
  * @author Andre Greiner-Petter
  */
@@ -26,10 +30,13 @@ public abstract class NativeConverter implements IConverter {
 
     private String name;
     private LinkedList<String> arguments;
+    private String configurationKey;
 
     protected void internalInit(LinkedList<String> arguments, String name) {
         this.name = name;
         this.arguments = arguments;
+        // a snapshot, the subclasses clear and refill their list in init()
+        this.configurationKey = name + " " + List.copyOf(arguments);
     }
 
     @Override
@@ -53,18 +60,23 @@ public abstract class NativeConverter implements IConverter {
         return parseInternalToString(arguments, latex, name);
     }
 
+    @Override
+    public String getConfigurationKey() {
+        return configurationKey;
+    }
+
     protected String parseInternalToString(LinkedList<String> args, String latex, String name) {
-        args.addLast(latex);
+        // a copy per call, the arguments are shared by all threads
+        List<String> command = new ArrayList<>(args.size() + 1);
+        command.addAll(args);
+        command.add(latex);
         LOG.debug("Create command executor for " + name + ".");
-        CommandExecutor executor = new CommandExecutor(name, args);
+        CommandExecutor executor = new CommandExecutor(name, command);
         NativeResponse response = executor.exec(CommandExecutor.DEFAULT_TIMEOUT);
         if (handleResponseCode(response, name, LOG) != 0) {
-            args.removeLast();
             return null;
         }
 
-        args.removeLast();
-
         // post-processing &alpha; HTML unescape
         String res = response.getResult();
         return Utility.safeUnescape(res);
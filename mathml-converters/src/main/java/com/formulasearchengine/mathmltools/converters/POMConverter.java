@@ -43,7 +43,7 @@ public class POMConverter implements IConverter {
         }
     }
 
-    private String parseLatexMathToStringXML(String latex) throws InvocationTargetException, IllegalAccessException, XMLStreamException, IOException {
+    private synchronized String parseLatexMathToStringXML(String latex) throws InvocationTargetException, IllegalAccessException, XMLStreamException, IOException {
         ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
 
         LOG.debug("Parse latex expression by POM-Tagger.");
@@ -136,18 +136,22 @@ public class POMConverter implements IConverter {
         }
     }
 
+    /**
+     * The parsed tree is kept by the shared POM tagger until it is written, hence conversions
+     * run one at a time.
+     */
     @Override
-    public void convertToFile(String latex, Path outputFile) throws IOException {
+    public synchronized void convertToFile(String latex, Path outputFile) throws IOException {
         if (!Files.exists(outputFile)) {
             LOG.info("Create output file: " + outputFile.toString());
             Files.createFile(outputFile);
         }
         LOG.info("Parse LaTeX via POM.");
 
-        try {
+        try (OutputStream out = new FileOutputStream(outputFile.toFile())) {
             pom.parse(latex);
             LOG.info("Write parsed POM tree to file.");
-            PomXmlWriter.writeStraightXML(pom, new FileOutputStream(outputFile.toFile()));
+            PomXmlWriter.writeStraightXML(pom, out);
         } catch (InvocationTargetException | IllegalAccessException | XMLStreamException e) {
             throw new MathConverterException("Cannot convert " + latex, e);
         }
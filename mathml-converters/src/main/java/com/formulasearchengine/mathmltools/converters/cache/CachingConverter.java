@@ -0,0 +1,94 @@
+package com.formulasearchengine.mathmltools.converters.cache;
+
+import com.formulasearchengine.mathmltools.converters.IConverter;
+import com.formulasearchengine.mathmltools.converters.exceptions.MathConverterException;
+import com.formulasearchengine.mathmltools.converters.exceptions.UnavailableConverterException;
+import org.w3c.dom.Document;
+
+import javax.xml.transform.TransformerException;
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * Decorator of a converter that caches the results of {@link #convertToString(String)}.
+ * Many expressions (e.g., {@code x^2}) appear over and over again in a corpus, but a native
+ * conversion costs milliseconds to seconds.
+ * <p>
+ * The key of a result is a hash of the converter class, its configuration (see
+ * {@link IConverter#getConfigurationKey()}) and the normalized input. Hence, results of
+ * different configurations (e.g., the semantic mode of LaTeXML) never mix up, even if the
+ * configuration changes between two calls. Failed conversions (null) are not cached.
+ * <p>
+ * The other methods are passed through to the converter, since documents and files are
+ * post-processed differently by each converter.
+ */
+public class CachingConverter implements IConverter {
+
+    private final IConverter converter;
+
+    private final ConversionCache cache;
+
+    /**
+     * @param converter the converter
+     * @param cache     the cache, can be shared by multiple converters
+     */
+    public CachingConverter(IConverter converter, ConversionCache cache) {
+        this.converter = converter;
+        this.cache = cache;
+    }
+
+    @Override
+    public void init() throws Exception {
+        converter.init();
+    }
+
+    @Override
+    public String convertToString(String latex) throws MathConverterException, UnavailableConverterException {
+        String key = ConversionCache.key(
+                converter.getClass().getName(),
+                converter.getConfigurationKey(),
+                ConversionCache.normalize(latex)
+        );
+        String result = cache.get(key);
+        if (result != null) {
+            return result;
+        }
+        result = converter.convertToString(latex);
+        if (result != null) {
+            cache.put(key, result);
+        }
+        return result;
+    }
+
+    @Override
+    public Document convertToDoc(String latex) throws MathConverterException, UnavailableConverterException {
+        return converter.convertToDoc(latex);
+    }
+
+    @Override
+    public void convertToFile(String latex, Path outputFile)
+            throws IOException, TransformerException, MathConverterException, UnavailableConverterException {
+        converter.convertToFile(latex, outputFile);
+    }
+
+    @Override
+    public String getNativeCommand() {
+        return converter.getNativeCommand();
+    }
+
+    @Override
+    public String getConfigurationKey() {
+        return converter.getConfigurationKey();
+    }
+
+    /**
+     * @return the decorated converter
+     */
+    public IConverter getConverter() {
+        return converter;
+    }
+
+    public ConversionCache getCache() {
+        return cache;
+    }
+}
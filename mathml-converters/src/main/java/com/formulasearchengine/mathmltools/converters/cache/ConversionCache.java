@@ -0,0 +1,261 @@
+package com.formulasearchengine.mathmltools.converters.cache;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Pattern;
+
+/**
+ * Cache of conversion results, see {@link CachingConverter}. The keys are content addresses,
+ * i.e., a hash of the converter, its configuration and the normalized input
+ * (see {@link #key(String, String, String)}).
+ * <p>
+ * The results are kept in a size-bounded memory tier (least recently used results are
+ * evicted first, the size bound is split between the concurrent segments of the cache).
+ * Optionally, all results are also written to a log file on disk, which survives restarts.
+ * Results found on disk are moved back to the memory tier.
+ * <p>
+ * A cache is thread-safe and can be shared by multiple converters.
+ */
+public class ConversionCache implements Closeable {
+    private static final Logger LOG = LogManager.getLogger(ConversionCache.class.getName());
+
+    /**
+     * Default size of the memory tier in characters (results and keys), 32MB to 64MB
+     * depending on the characters (Latin-1 strings need one byte per character)
+     */
+    public static final long DEFAULT_MEMORY_SIZE = 32L * 1024 * 1024;
+
+    private static final Pattern WHITESPACES = Pattern.compile("\\s+");
+
+    private static final Pattern HORIZONTAL_WHITESPACES = Pattern.compile("[ \\t\\x0B\\f]+");
+
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private final Cache<String, String> memory;
+
+    private final ConversionLog disk;
+
+    private final LongAdder memoryHits = new LongAdder();
+
+    private final LongAdder diskHits = new LongAdder();
+
+    private final LongAdder misses = new LongAdder();
+
+    /**
+     * A cache in memory only with the default size.
+     */
+    public ConversionCache() {
+        this(DEFAULT_MEMORY_SIZE);
+    }
+
+    /**
+     * A cache in memory only.
+     *
+     * @param maxMemorySize maximum number of characters (results and keys) in memory
+     */
+    public ConversionCache(long maxMemorySize) {
+        this.memory = buildMemoryTier(maxMemorySize);
+        this.disk = null;
+    }
+
+    /**
+     * A cache in memory and on disk. An existing cache file is loaded.
+     *
+     * @param maxMemorySize maximum number of characters (results and keys) in memory
+     * @param file          the cache file on disk
+     * @throws IOException if the file cannot be opened
+     */
+    public ConversionCache(long maxMemorySize, Path file) throws IOException {
+        this.memory = buildMemoryTier(maxMemorySize);
+        this.disk = new ConversionLog(file);
+    }
+
+    private static Cache<String, String> buildMemoryTier(long maxMemorySize) {
+        return CacheBuilder.newBuilder()
+                .maximumWeight(maxMemorySize)
+                .weigher((String key, String value) -> key.length() + value.length())
+                .recordStats()
+                .build();
+    }
+
+    /**
+     * @param key the key of the conversion
+     * @return the cached result or null
+     */
+    public String get(String key) {
+        String result = memory.getIfPresent(key);
+        if (result != null) {
+            memoryHits.increment();
+            return result;
+        }
+        if (disk != null) {
+            try {
+                result = disk.get(key);
+            } catch (IOException e) {
+                LOG.warn("Cannot read cached conversion from disk.", e);
+            }
+            if (result != null) {
+                diskHits.increment();
+                memory.put(key, result);
+                return result;
+            }
+        }
+        misses.increment();
+        return null;
+    }
+
+    /**
+     * @param key    the key of the conversion
+     * @param result the result of the conversion, must not be null
+     */
+    public void put(String key, String result) {
+        memory.put(key, result);
+        if (disk != null) {
+            try {
+                disk.put(key, result);
+            } catch (IOException e) {
+                LOG.warn("Cannot write conversion to the disk cache.", e);
+            }
+        }
+    }
+
+    /**
+     * Removes all results from memory. The results on disk are kept.
+     */
+    public void invalidateMemory() {
+        memory.invalidateAll();
+    }
+
+    /**
+     * The content address of a conversion.
+     *
+     * @param converter     name of the converter
+     * @param configuration configuration of the converter (e.g., arguments), see
+     *                      {@link com.formulasearchengine.mathmltools.converters.IConverter#getConfigurationKey()}
+     * @param input         the input, should be normalized by {@link #normalize(String)}
+     * @return SHA-256 of all three in hex
+     */
+    public static String key(String converter, String configuration, String input) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(converter.getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+            digest.update(configuration.getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+            digest.update(input.getBytes(StandardCharsets.UTF_8));
+            byte[] hash = digest.digest();
+            char[] hex = new char[2 * hash.length];
+            for (int i = 0; i < hash.length; i++) {
+                hex[2 * i] = HEX[(hash[i] >> 4) & 0xF];
+                hex[2 * i + 1] = HEX[hash[i] & 0xF];
+            }
+            return new String(hex);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available.", e);
+        }
+    }
+
+    /**
+     * Normalizes LaTeX input for the cache. Sequences of whitespaces are reduced to a single
+     * space and leading and trailing whitespaces are removed (except an escaped space
+     * {@code \ } at the end). A comment ({@code %}) ends at the next line break, hence line
+     * breaks are kept if the input contains a comment.
+     *
+     * @param latex LaTeX input
+     * @return the normalized input
+     */
+    public static String normalize(String latex) {
+        Pattern whitespaces = hasComment(latex) ? HORIZONTAL_WHITESPACES : WHITESPACES;
+        String normalized = whitespaces.matcher(latex).replaceAll(" ").trim();
+        if (normalized.endsWith("\\") && !latex.endsWith("\\")) {
+            normalized += " ";
+        }
+        return normalized;
+    }
+
+    /**
+     * @return true if the input contains a {@code %} which is not escaped by a backslash
+     */
+    private static boolean hasComment(String latex) {
+        boolean escaped = false;
+        for (int i = 0; i < latex.length(); i++) {
+            char c = latex.charAt(i);
+            if (c == '%' && !escaped) {
+                return true;
+            }
+            escaped = c == '\\' && !escaped;
+        }
+        return false;
+    }
+
+    public long getMemoryHits() {
+        return memoryHits.sum();
+    }
+
+    public long getDiskHits() {
+        return diskHits.sum();
+    }
+
+    public long getHits() {
+        return getMemoryHits() + getDiskHits();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    /**
+     * @return hits / requests, 0 if nothing was requested yet
+     */
+    public double getHitRate() {
+        long hits = getHits();
+        long requests = hits + getMisses();
+        return requests == 0 ? 0 : (double) hits / requests;
+    }
+
+    /**
+     * @return number of results that were evicted from the memory tier
+     */
+    public long getEvictions() {
+        return memory.stats().evictionCount();
+    }
+
+    /**
+     * @return number of results in memory
+     */
+    public long getMemoryEntries() {
+        return memory.size();
+    }
+
+    /**
+     * @return number of results on disk, 0 if there is no disk tier
+     */
+    public long getDiskEntries() {
+        return disk == null ? 0 : disk.size();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("ConversionCache[hits: %d (memory: %d, disk: %d), misses: %d, hit rate: %.2f, "
+                        + "evictions: %d, entries: %d (memory), %d (disk)]",
+                getHits(), getMemoryHits(), getDiskHits(), getMisses(), getHitRate(),
+                getEvictions(), getMemoryEntries(), getDiskEntries());
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (disk != null) {
+            disk.close();
+        }
+    }
+}
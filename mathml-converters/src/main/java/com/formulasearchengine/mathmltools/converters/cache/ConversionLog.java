@@ -0,0 +1,180 @@
+package com.formulasearchengine.mathmltools.converters.cache;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only log of key-value pairs on disk, the persistent tier of the {@link ConversionCache}.
+ * Every record is
+ * <pre>
+ * [key length (int)][value length (int)][crc32 of key and value (int)][key (UTF-8)][value (UTF-8)]
+ * </pre>
+ * The positions of all records are indexed in memory when the log is opened. A value is read
+ * from disk on demand. A later record of the same key replaces the previous one. An incomplete
+ * or corrupt last record (e.g., after a crash) is cut off on opening. A corrupt record in the
+ * middle is skipped by its length fields. If even those are invalid, the remaining records
+ * are ignored but kept on disk.
+ */
+final class ConversionLog implements Closeable {
+    private static final Logger LOG = LogManager.getLogger(ConversionLog.class.getName());
+
+    private static final int HEADER = 3 * Integer.BYTES;
+
+    private final Path file;
+
+    private final FileChannel channel;
+
+    /**
+     * position of the record of each key
+     */
+    private final Map<String, Long> index = new HashMap<>();
+
+    private long end;
+
+    ConversionLog(Path file) throws IOException {
+        this.file = file;
+        if (file.getParent() != null) {
+            Files.createDirectories(file.getParent());
+        }
+        this.channel = FileChannel.open(file,
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        load();
+    }
+
+    private void load() throws IOException {
+        long size = channel.size();
+        long pos = 0;
+        while (pos < size) {
+            long length = size - pos < HEADER ? Long.MAX_VALUE : recordLength(pos);
+            if (length < 0) {
+                // the next record cannot be found, keep the rest of the file untouched
+                LOG.warn("Corrupt record in conversion cache " + file + " at " + pos + ", ignore the remaining "
+                        + (size - pos) + " bytes.");
+                pos = size;
+                break;
+            }
+            boolean last = length >= size - pos;
+            try {
+                if (length > size - pos) {
+                    throw new EOFException("Incomplete record");
+                }
+                index.put(read(pos).key, pos);
+            } catch (IOException | IllegalStateException e) {
+                if (last) {
+                    LOG.warn("Corrupt record in conversion cache " + file + " at " + pos + ", cut off the remaining "
+                            + (size - pos) + " bytes.");
+                    channel.truncate(pos);
+                    break;
+                }
+                LOG.warn("Corrupt record in conversion cache " + file + " at " + pos + ", skip its "
+                        + length + " bytes.");
+            }
+            pos += length;
+        }
+        end = pos;
+        LOG.debug("Loaded " + index.size() + " cached conversions from " + file);
+    }
+
+    synchronized String get(String key) throws IOException {
+        Long pos = index.get(key);
+        if (pos == null) {
+            return null;
+        }
+        return read(pos).value;
+    }
+
+    synchronized void put(String key, String value) throws IOException {
+        byte[] k = key.getBytes(StandardCharsets.UTF_8);
+        byte[] v = value.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER + k.length + v.length);
+        buffer.putInt(k.length).putInt(v.length).putInt(crc(k, v)).put(k).put(v).flip();
+        long pos = end;
+        while (buffer.hasRemaining()) {
+            end += channel.write(buffer, end);
+        }
+        index.put(key, pos);
+    }
+
+    synchronized int size() {
+        return index.size();
+    }
+
+    /**
+     * @return the length of the record at the given position according to its header, -1 if the
+     * header is invalid
+     */
+    private long recordLength(long pos) throws IOException {
+        ByteBuffer header = readFully(pos, HEADER);
+        int keyLength = header.getInt();
+        int valueLength = header.getInt();
+        if (keyLength < 0 || valueLength < 0) {
+            return -1;
+        }
+        return (long) HEADER + keyLength + valueLength;
+    }
+
+    private Record read(long pos) throws IOException {
+        ByteBuffer header = readFully(pos, HEADER);
+        int keyLength = header.getInt();
+        int valueLength = header.getInt();
+        int crc = header.getInt();
+        if (keyLength < 0 || valueLength < 0 || pos + HEADER + keyLength + valueLength > channel.size()) {
+            throw new IllegalStateException("Invalid record length");
+        }
+        ByteBuffer data = readFully(pos + HEADER, keyLength + valueLength);
+        byte[] k = new byte[keyLength];
+        byte[] v = new byte[valueLength];
+        data.get(k).get(v);
+        if (crc(k, v) != crc) {
+            throw new IllegalStateException("Invalid checksum");
+        }
+        return new Record(new String(k, StandardCharsets.UTF_8), new String(v, StandardCharsets.UTF_8));
+    }
+
+    private ByteBuffer readFully(long pos, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, pos + buffer.position()) < 0) {
+                throw new EOFException();
+            }
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    private static int crc(byte[] key, byte[] value) {
+        CRC32 crc = new CRC32();
+        crc.update(key);
+        crc.update(value);
+        return (int) crc.getValue();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        channel.force(false);
+        channel.close();
+    }
+
+    private static final class Record {
+        private final String key;
+        private final String value;
+
+        Record(String key, String value) {
+            this.key = key;
+            this.value = value;
+        }
+    }
+}
@@ -0,0 +1,118 @@
+package com.formulasearchengine.mathmltools.converters.corpus;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Live statistics of a single converter in a {@link CorpusRunner}.
+ */
+public class ConverterStats {
+    private final String name;
+
+    private final LongAdder converted = new LongAdder();
+
+    private final LongAdder failed = new LongAdder();
+
+    private final LongAdder skipped = new LongAdder();
+
+    /**
+     * sum of the conversion times of all workers
+     */
+    private final LongAdder busyNanos = new LongAdder();
+
+    private volatile long startNanos;
+
+    private volatile long endNanos;
+
+    ConverterStats(String name) {
+        this.name = name;
+    }
+
+    void start() {
+        startNanos = System.nanoTime();
+        endNanos = 0;
+    }
+
+    void stop() {
+        endNanos = System.nanoTime();
+    }
+
+    void converted(long nanos) {
+        converted.increment();
+        busyNanos.add(nanos);
+    }
+
+    void failed(long nanos) {
+        failed.increment();
+        busyNanos.add(nanos);
+    }
+
+    void skipped() {
+        skipped.increment();
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return number of successfully converted expressions
+     */
+    public long getConverted() {
+        return converted.sum();
+    }
+
+    /**
+     * @return number of expressions that failed (no result was written)
+     */
+    public long getFailed() {
+        return failed.sum();
+    }
+
+    /**
+     * @return number of expressions that were skipped, because the result already existed
+     */
+    public long getSkipped() {
+        return skipped.sum();
+    }
+
+    /**
+     * @return number of processed expressions (converted, failed or skipped)
+     */
+    public long getProcessed() {
+        return getConverted() + getFailed() + getSkipped();
+    }
+
+    /**
+     * @return elapsed time since the start in milliseconds (until the end if the run is finished)
+     */
+    public long getElapsedMillis() {
+        if (startNanos == 0) {
+            return 0;
+        }
+        long end = endNanos == 0 ? System.nanoTime() : endNanos;
+        return TimeUnit.NANOSECONDS.toMillis(end - startNanos);
+    }
+
+    /**
+     * @return converted and failed expressions per second (wall time)
+     */
+    public double getThroughput() {
+        long elapsed = getElapsedMillis();
+        return elapsed == 0 ? 0 : (getConverted() + getFailed()) * 1000.0 / elapsed;
+    }
+
+    /**
+     * @return average time of a single conversion in milliseconds
+     */
+    public double getAverageMillis() {
+        long count = getConverted() + getFailed();
+        return count == 0 ? 0 : busyNanos.sum() / 1_000_000.0 / count;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s: %d converted, %d failed, %d skipped, %.1f expr/s, %.1fms avg",
+                name, getConverted(), getFailed(), getSkipped(), getThroughput(), getAverageMillis());
+    }
+}
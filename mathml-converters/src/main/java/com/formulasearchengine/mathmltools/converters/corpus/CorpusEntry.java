@@ -0,0 +1,70 @@
+package com.formulasearchengine.mathmltools.converters.corpus;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+/**
+ * A single expression of a corpus. The id is used for the file names of the results, see
+ * {@link com.formulasearchengine.mathmltools.converters.Converters#getFile(int)}.
+ */
+public class CorpusEntry {
+    private final int id;
+
+    private final String latex;
+
+    public CorpusEntry(int id, String latex) {
+        this.id = id;
+        this.latex = latex;
+    }
+
+    /**
+     * Reads a corpus from a file with one expression per line. A line is either
+     * {@code <id>\t<latex>} or only the expression. In the latter case, the line
+     * number (starting at 1) is the id. Empty lines are skipped.
+     * <p>
+     * The stream must be closed.
+     *
+     * @param file the corpus file
+     * @return stream of entries
+     * @throws IOException if the file cannot be read
+     */
+    public static Stream<CorpusEntry> fromFile(Path file) throws IOException {
+        AtomicInteger lineNumber = new AtomicInteger();
+        return Files.lines(file)
+                .map(line -> parseLine(lineNumber.incrementAndGet(), line))
+                .filter(Objects::nonNull);
+    }
+
+    private static CorpusEntry parseLine(int lineNumber, String line) {
+        if (line.trim().isEmpty()) {
+            return null;
+        }
+        int tab = line.indexOf('\t');
+        if (tab > 0) {
+            try {
+                return new CorpusEntry(Integer.parseInt(line.substring(0, tab).trim()), line.substring(tab + 1));
+            } catch (NumberFormatException e) {
+                // no id, the tab belongs to the expression
+                return new CorpusEntry(lineNumber, line);
+            }
+        }
+        return new CorpusEntry(lineNumber, line);
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    public String getLatex() {
+        return latex;
+    }
+
+    @Override
+    public String toString() {
+        return id + ": " + latex;
+    }
+}
@@ -0,0 +1,442 @@
+package com.formulasearchengine.mathmltools.converters.corpus;
+
+import com.formulasearchengine.mathmltools.converters.Converters;
+import com.formulasearchengine.mathmltools.converters.IConverter;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntFunction;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+/**
+ * Converts a corpus with multiple converters in parallel, e.g., to generate the comparison
+ * corpora of the {@link Converters}. Every expression of the corpus is passed to all
+ * converters, each converter writes its result to its own file (see {@link Converters#getFile(int)}).
+ * <p>
+ * Every converter has its own worker threads and its own concurrency limit, since some
+ * converters are synchronized (SnuggleTeX) and others start native processes. The corpus is
+ * read only as fast as the converters can follow (the queue of each converter is bounded),
+ * hence the corpus can be an arbitrarily large stream. If the corpus can be read multiple
+ * times (e.g., a file, see {@link #run(Path)}), every converter reads it on its own and fast
+ * converters are not held back by slow ones. A single pass corpus (see {@link #run(Iterator)})
+ * is read as fast as the slowest converter can follow.
+ * <p>
+ * Results are first written to a temporary file and moved to the final path afterwards. Hence,
+ * a run can be interrupted at any time and resumed later: existing results are skipped (see
+ * {@link #setResume(boolean)}). Failed conversions do not produce a file and are tried again
+ * in the next run.
+ */
+public class CorpusRunner {
+    private static final Logger LOG = LogManager.getLogger(CorpusRunner.class.getName());
+
+    /**
+     * Default interval (number of expressions) of the progress messages
+     */
+    public static final int DEFAULT_PROGRESS_INTERVAL = 1000;
+
+    private static final String TMP_PREFIX = ".part-";
+
+    private final Path baseDir;
+
+    private final List<Target> targets = new ArrayList<>();
+
+    private boolean resume = true;
+
+    private int progressInterval = DEFAULT_PROGRESS_INTERVAL;
+
+    /**
+     * @param baseDir the base directory of the results, every converter gets its own sub directory
+     */
+    public CorpusRunner(Path baseDir) {
+        this.baseDir = baseDir;
+    }
+
+    /**
+     * Adds all converters that are not skipped (see {@link Converters#skip()}) with their
+     * default concurrency.
+     *
+     * @return this runner
+     */
+    public CorpusRunner addAllConverters() {
+        for (Converters converter : Converters.values()) {
+            if (!converter.skip()) {
+                addConverter(converter);
+            }
+        }
+        return this;
+    }
+
+    /**
+     * Adds the converter with its default concurrency, see {@link #defaultConcurrency(Converters)}.
+     *
+     * @param converter the converter
+     * @return this runner
+     */
+    public CorpusRunner addConverter(Converters converter) {
+        return addConverter(converter, defaultConcurrency(converter));
+    }
+
+    /**
+     * Adds the converter. The results are written to {@link Converters#getFile(int)} in the
+     * sub directory of the converter.
+     *
+     * @param converter   the converter
+     * @param concurrency maximum number of parallel conversions of this converter
+     * @return this runner
+     */
+    public CorpusRunner addConverter(Converters converter, int concurrency) {
+        converter.initSubPath(baseDir);
+        return addConverter(converter.name(), converter.getConverter(), converter::getFile, concurrency);
+    }
+
+    /**
+     * Adds any converter.
+     *
+     * @param name        name of the converter (for logs and statistics)
+     * @param converter   the converter
+     * @param files       the result file of each id
+     * @param concurrency maximum number of parallel conversions of this converter
+     * @return this runner
+     */
+    public CorpusRunner addConverter(String name, IConverter converter, IntFunction<Path> files, int concurrency) {
+        if (concurrency < 1) {
+            throw new IllegalArgumentException("The concurrency of " + name + " must be at least 1: " + concurrency);
+        }
+        targets.add(new Target(name, converter, files, concurrency));
+        return this;
+    }
+
+    /**
+     * SnuggleTeX and POM are synchronized (POM keeps the parsed tree in its shared tagger),
+     * so they run in a single thread. All other converters run with one thread per processor.
+     *
+     * @param converter the converter
+     * @return the default concurrency of the converter
+     */
+    public static int defaultConcurrency(Converters converter) {
+        if (converter == Converters.SnuggleTeX || converter == Converters.POM) {
+            return 1;
+        }
+        return Runtime.getRuntime().availableProcessors();
+    }
+
+    /**
+     * @param resume true to skip expressions with existing results (default), false to overwrite them
+     * @return this runner
+     */
+    public CorpusRunner setResume(boolean resume) {
+        this.resume = resume;
+        return this;
+    }
+
+    /**
+     * @param progressInterval number of expressions between two progress messages
+     * @return this runner
+     */
+    public CorpusRunner setProgressInterval(int progressInterval) {
+        this.progressInterval = progressInterval;
+        return this;
+    }
+
+    /**
+     * @return live statistics of all converters by their names
+     */
+    public Map<String, ConverterStats> getStats() {
+        Map<String, ConverterStats> stats = new LinkedHashMap<>();
+        for (Target target : targets) {
+            stats.put(target.name, target.stats);
+        }
+        return Collections.unmodifiableMap(stats);
+    }
+
+    /**
+     * Converts the corpus file, every converter reads the file on its own.
+     *
+     * @param corpusFile the corpus, see {@link CorpusEntry#fromFile(Path)}
+     * @return the statistics of all converters
+     * @throws IOException          if the corpus cannot be read or the output directories cannot be created
+     * @throws InterruptedException if the run was interrupted
+     * @see #run(Supplier)
+     */
+    public Map<String, ConverterStats> run(Path corpusFile) throws IOException, InterruptedException {
+        return run(() -> {
+            try {
+                return CorpusEntry.fromFile(corpusFile);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+    }
+
+    /**
+     * Converts the corpus with all converters and waits until all conversions are finished.
+     * Every converter gets its own stream of the corpus and reads it in its own thread,
+     * hence every converter works at its own pace. A converter that cannot be initiated is skipped.
+     *
+     * @param corpus opens a new stream of the corpus, the streams are closed after the run
+     * @return the statistics of all converters
+     * @throws IOException          if the corpus cannot be read or the output directories cannot be created
+     * @throws InterruptedException if the run was interrupted
+     */
+    public Map<String, ConverterStats> run(Supplier<Stream<CorpusEntry>> corpus)
+            throws IOException, InterruptedException {
+        List<Target> active = initTargets();
+        AtomicInteger counter = new AtomicInteger();
+        ExecutorService readers = Executors.newCachedThreadPool(r -> {
+            Thread t = new Thread(r, "corpus-reader-" + counter.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        try {
+            List<Future<?>> reads = new ArrayList<>();
+            for (Target target : active) {
+                target.start();
+                reads.add(readers.submit(() -> {
+                    try (Stream<CorpusEntry> entries = corpus.get()) {
+                        int read = target.read(entries.iterator());
+                        target.finish();
+                        LOG.info("Finished corpus of " + read + " expressions. " + target.stats);
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> read : reads) {
+                await(read);
+            }
+        } finally {
+            readers.shutdownNow();
+            shutdown(active);
+        }
+        return getStats();
+    }
+
+    /**
+     * @param corpus the corpus, it is read only once
+     * @return the statistics of all converters
+     * @throws IOException          if the output directories cannot be created
+     * @throws InterruptedException if the run was interrupted
+     * @see #run(Iterator)
+     */
+    public Map<String, ConverterStats> run(Stream<CorpusEntry> corpus) throws IOException, InterruptedException {
+        return run(corpus.iterator());
+    }
+
+    /**
+     * Converts the corpus with all converters and waits until all conversions are finished.
+     * The corpus is read only once, every expression is passed to all converters. Hence, the
+     * corpus is read as fast as the slowest converter can follow, see {@link #run(Supplier)}
+     * for a corpus that can be read multiple times. A converter that cannot be initiated is skipped.
+     *
+     * @param corpus the corpus
+     * @return the statistics of all converters
+     * @throws IOException          if the output directories cannot be created
+     * @throws InterruptedException if the run was interrupted
+     */
+    public Map<String, ConverterStats> run(Iterator<CorpusEntry> corpus) throws IOException, InterruptedException {
+        List<Target> active = initTargets();
+        try {
+            for (Target target : active) {
+                target.start();
+            }
+
+            int read = 0;
+            while (corpus.hasNext()) {
+                CorpusEntry entry = corpus.next();
+                for (Target target : active) {
+                    target.submit(entry);
+                }
+                read++;
+                if (progressInterval > 0 && read % progressInterval == 0) {
+                    logProgress(read, active);
+                }
+            }
+
+            for (Target target : active) {
+                target.finish();
+            }
+            LOG.info("Finished corpus of " + read + " expressions.");
+            logProgress(read, active);
+        } finally {
+            shutdown(active);
+        }
+        return getStats();
+    }
+
+    private List<Target> initTargets() {
+        List<Target> active = new ArrayList<>();
+        for (Target target : targets) {
+            try {
+                target.converter.init();
+                active.add(target);
+            } catch (Exception e) {
+                LOG.error("Cannot initiate " + target.name + ", skip it.", e);
+            }
+        }
+        return active;
+    }
+
+    private static void shutdown(List<Target> targets) {
+        for (Target target : targets) {
+            target.workers.shutdownNow();
+        }
+    }
+
+    /**
+     * Waits for the reader of a converter and throws its exception.
+     */
+    private static void await(Future<?> read) throws IOException, InterruptedException {
+        try {
+            read.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof UncheckedIOException) {
+                throw ((UncheckedIOException) cause).getCause();
+            } else if (cause instanceof IOException) {
+                throw (IOException) cause;
+            } else if (cause instanceof InterruptedException) {
+                throw (InterruptedException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IOException("Cannot read the corpus.", cause);
+        }
+    }
+
+    private static void logProgress(int read, List<Target> targets) {
+        StringBuilder sb = new StringBuilder("Read ").append(read).append(" expressions.");
+        for (Target target : targets) {
+            sb.append(System.lineSeparator()).append("  ").append(target.stats);
+        }
+        LOG.info(sb.toString());
+    }
+
+    /**
+     * A converter with its own workers.
+     */
+    private final class Target {
+        private final String name;
+        private final IConverter converter;
+        private final IntFunction<Path> files;
+        private final int concurrency;
+        private final ConverterStats stats;
+
+        /**
+         * limits the running and waiting conversions
+         */
+        private final Semaphore slots;
+
+        private ExecutorService workers;
+
+        Target(String name, IConverter converter, IntFunction<Path> files, int concurrency) {
+            this.name = name;
+            this.converter = converter;
+            this.files = files;
+            this.concurrency = concurrency;
+            this.stats = new ConverterStats(name);
+            this.slots = new Semaphore(2 * concurrency);
+        }
+
+        void start() {
+            AtomicInteger counter = new AtomicInteger();
+            workers = Executors.newFixedThreadPool(concurrency, r -> {
+                Thread t = new Thread(r, name + "-" + counter.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            });
+            stats.start();
+        }
+
+        /**
+         * Submits all expressions of the corpus to this converter.
+         *
+         * @return number of read expressions
+         */
+        int read(Iterator<CorpusEntry> corpus) throws IOException, InterruptedException {
+            int read = 0;
+            while (corpus.hasNext()) {
+                submit(corpus.next());
+                read++;
+                if (progressInterval > 0 && read % progressInterval == 0) {
+                    LOG.info("Read " + read + " expressions. " + stats);
+                }
+            }
+            return read;
+        }
+
+        void submit(CorpusEntry entry) throws IOException, InterruptedException {
+            Path file = files.apply(entry.getId());
+            if (resume && Files.exists(file) && Files.size(file) > 0) {
+                stats.skipped();
+                return;
+            }
+            if (file.getParent() != null) {
+                Files.createDirectories(file.getParent());
+            }
+            slots.acquire();
+            try {
+                workers.execute(() -> {
+                    try {
+                        convert(entry, file);
+                    } finally {
+                        slots.release();
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                slots.release();
+                throw e;
+            }
+        }
+
+        private void convert(CorpusEntry entry, Path file) {
+            // keep the file ending, some converters choose the format by it
+            Path tmp = file.resolveSibling(TMP_PREFIX + file.getFileName());
+            long start = System.nanoTime();
+            try {
+                Files.deleteIfExists(tmp);
+                converter.convertToFile(entry.getLatex(), tmp);
+                if (Files.exists(tmp) && Files.size(tmp) > 0) {
+                    Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                    stats.converted(System.nanoTime() - start);
+                    return;
+                }
+                LOG.debug(name + " - No result for " + entry);
+            } catch (Exception e) {
+                LOG.warn(name + " - Cannot convert " + entry + ": " + e.getMessage());
+            }
+            stats.failed(System.nanoTime() - start);
+            try {
+                Files.deleteIfExists(tmp);
+            } catch (IOException e) {
+                LOG.debug("Cannot delete temporary file " + tmp, e);
+            }
+        }
+
+        void finish() throws InterruptedException {
+            workers.shutdown();
+            while (!workers.awaitTermination(1, TimeUnit.MINUTES)) {
+                LOG.info("Waiting for " + name + ": " + stats);
+            }
+            stats.stop();
+        }
+    }
+}
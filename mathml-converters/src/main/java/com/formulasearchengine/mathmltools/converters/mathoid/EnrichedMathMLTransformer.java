@@ -4,6 +4,7 @@ import com.formulasearchengine.mathmltools.helper.XMLHelper;
 import com.formulasearchengine.mathmltools.io.XmlDocumentReader;
 import com.formulasearchengine.mathmltools.mml.CMMLInfo;
 import com.formulasearchengine.mathmltools.xml.NonWhitespaceNodeList;
+import com.formulasearchengine.mathmltools.xml.XPathRegistry;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
@@ -12,7 +13,6 @@ import org.w3c.dom.Element;
 import org.w3c.dom.Node;
 import org.xml.sax.SAXException;
 
-import javax.xml.xpath.XPath;
 import java.io.IOException;
 
 /**
@@ -53,12 +53,11 @@ public class EnrichedMathMLTransformer {
      * @throws Exception a lot could go wrong here: parser or transformer error
      */
     public String getFullMathML() throws Exception {
-        XPath xPath = XMLHelper.namespaceAwareXpath("m", CMMLInfo.NS_MATHML);
-        Element semanticRoot = (Element) XMLHelper.getElementB(readDocument, xPath.compile("*//m:semantics"));
+        Element semanticRoot = (Element) XMLHelper.getElementB(readDocument, XPathRegistry.mathml("*//m:semantics"));
         boolean hasSemanticEle = semanticRoot != null;
 
         // get the first mrow element
-        NonWhitespaceNodeList mrowNodes = new NonWhitespaceNodeList(XMLHelper.getElementsB(readDocument, xPath.compile("*//m:mrow")));
+        NonWhitespaceNodeList mrowNodes = new NonWhitespaceNodeList(XMLHelper.getElementsB(readDocument, XPathRegistry.mathml("*//m:mrow")));
         Element mrowNode = (Element) mrowNodes.getFirstElement();
 
         // secure the id field
@@ -0,0 +1,50 @@
+package com.formulasearchengine.mathmltools.converters.mathoid;
+
+/**
+ * Result of a single expression of a batch conversion, see
+ * {@link com.formulasearchengine.mathmltools.converters.MathoidConverter#convertAll}.
+ * Either the result or the error is set.
+ */
+public class MathoidConversionResult {
+    private final String input;
+
+    private final String result;
+
+    private final Throwable error;
+
+    public MathoidConversionResult(String input, String result, Throwable error) {
+        this.input = input;
+        this.result = result;
+        this.error = error;
+    }
+
+    /**
+     * @return true if the expression was converted successfully
+     */
+    public boolean isSuccess() {
+        return error == null;
+    }
+
+    public String getInput() {
+        return input;
+    }
+
+    /**
+     * @return the response of mathoid or null if the conversion failed
+     */
+    public String getResult() {
+        return result;
+    }
+
+    /**
+     * @return the reason of the failure (e.g., a HttpClientErrorException) or null
+     */
+    public Throwable getError() {
+        return error;
+    }
+
+    @Override
+    public String toString() {
+        return isSuccess() ? input + " -> " + result : input + " -> ERROR: " + error.getMessage();
+    }
+}
@@ -0,0 +1,316 @@
+package com.formulasearchengine.mathmltools.converters.services;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.util.MultiValueMap;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.HttpServerErrorException;
+import org.springframework.web.client.ResourceAccessException;
+import org.springframework.web.client.RestClientException;
+import org.springframework.web.client.UnknownHttpStatusCodeException;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.StringJoiner;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Shared HTTP transport for the conversion services (Mathoid, LaTeXML). In contrast to a
+ * new RestTemplate per request, a client keeps its connections alive and reuses them
+ * (HTTP/1.1 keep-alive or a multiplexed HTTP/2 connection). All requests are non-blocking.
+ * <p>
+ * The number of requests in flight, and hence the number of open connections, is limited
+ * by {@code maxConnections}. Further requests are queued without blocking the caller and
+ * sent as soon as a running request finishes.
+ * <p>
+ * Errors are reported with the same exceptions as a RestTemplate: a
+ * {@link HttpClientErrorException} for 4xx, a {@link HttpServerErrorException} for 5xx and a
+ * {@link ResourceAccessException} for I/O errors. The futures complete exceptionally with
+ * those exceptions, {@link #await(CompletableFuture)} throws them directly.
+ * <p>
+ * A client is thread-safe and should be shared, see {@link #getDefault()}.
+ */
+public class ServiceClient {
+    private static final Logger LOG = LogManager.getLogger(ServiceClient.class.getName());
+
+    /**
+     * Default limit of requests in flight
+     */
+    public static final int DEFAULT_MAX_CONNECTIONS = 16;
+
+    /**
+     * Default timeout to establish a connection
+     */
+    public static final Duration DEFAULT_CONNECT_TIMEOUT = Duration.ofSeconds(10);
+
+    /**
+     * Default timeout of a single request
+     */
+    public static final Duration DEFAULT_REQUEST_TIMEOUT = Duration.ofSeconds(30);
+
+    private static final ObjectMapper MAPPER = new ObjectMapper()
+            .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+
+    private static ServiceClient defaultClient;
+
+    private final HttpClient client;
+
+    private final int maxConnections;
+
+    private final Duration requestTimeout;
+
+    private final Semaphore permits;
+
+    private final Queue<PendingRequest> pending = new ConcurrentLinkedQueue<>();
+
+    /**
+     * Client with the default limits and HTTP/2 (falls back to HTTP/1.1 if the server does not support it).
+     */
+    public ServiceClient() {
+        this(DEFAULT_MAX_CONNECTIONS, DEFAULT_CONNECT_TIMEOUT, DEFAULT_REQUEST_TIMEOUT, true);
+    }
+
+    /**
+     * @param maxConnections maximum number of requests in flight
+     * @param connectTimeout timeout to establish a connection
+     * @param requestTimeout timeout of a single request (until the response headers are received)
+     * @param http2          true to prefer HTTP/2, otherwise HTTP/1.1 is used
+     */
+    public ServiceClient(int maxConnections, Duration connectTimeout, Duration requestTimeout, boolean http2) {
+        if (maxConnections < 1) {
+            throw new IllegalArgumentException("At least one connection is required: " + maxConnections);
+        }
+        this.maxConnections = maxConnections;
+        this.requestTimeout = requestTimeout;
+        this.permits = new Semaphore(maxConnections);
+        this.client = HttpClient.newBuilder()
+                .version(http2 ? HttpClient.Version.HTTP_2 : HttpClient.Version.HTTP_1_1)
+                .connectTimeout(connectTimeout)
+                .followRedirects(HttpClient.Redirect.NORMAL)
+                .build();
+    }
+
+    /**
+     * @return the shared client with the default settings
+     */
+    public static synchronized ServiceClient getDefault() {
+        if (defaultClient == null) {
+            defaultClient = new ServiceClient();
+        }
+        return defaultClient;
+    }
+
+    public int getMaxConnections() {
+        return maxConnections;
+    }
+
+    /**
+     * @return number of requests waiting for a free connection
+     */
+    public int getPendingRequests() {
+        return pending.size();
+    }
+
+    /**
+     * Posts the form (url encoded) and returns the body of the response.
+     *
+     * @param url  the url of the service
+     * @param form the form parameters
+     * @return the body of the response
+     */
+    public CompletableFuture<String> postForm(String url, MultiValueMap<String, String> form) {
+        return sendForm(url, form, null);
+    }
+
+    /**
+     * Posts the form (url encoded) and maps the JSON response to the given type.
+     *
+     * @param url          the url of the service
+     * @param form         the form parameters
+     * @param responseType type of the JSON response
+     * @param <T>          type of the JSON response
+     * @return the response object
+     */
+    public <T> CompletableFuture<T> postForm(String url, MultiValueMap<String, String> form, Class<T> responseType) {
+        return sendForm(url, form, MediaType.APPLICATION_JSON_VALUE)
+                .thenApply(body -> {
+                    try {
+                        return MAPPER.readValue(body, responseType);
+                    } catch (IOException e) {
+                        throw new RestClientException("Cannot read the response of " + url, e);
+                    }
+                });
+    }
+
+    /**
+     * Waits for the response and throws the exception of a failed request directly (instead of a
+     * {@link CompletionException}), the same as a blocking RestTemplate call.
+     *
+     * @param future the future response
+     * @param <T>    type of the response
+     * @return the response
+     */
+    public static <T> T await(CompletableFuture<T> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    private CompletableFuture<String> sendForm(String url, MultiValueMap<String, String> form, String accept) {
+        HttpRequest request;
+        try {
+            request = buildFormRequest(url, form, accept);
+        } catch (IllegalArgumentException e) {
+            // e.g., an invalid url, reported by the future like all other errors
+            return CompletableFuture.failedFuture(e);
+        }
+        return send(request);
+    }
+
+    private HttpRequest buildFormRequest(String url, MultiValueMap<String, String> form, String accept) {
+        HttpRequest.Builder builder = HttpRequest.newBuilder(URI.create(url))
+                .timeout(requestTimeout)
+                .header(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_FORM_URLENCODED_VALUE + ";charset=UTF-8")
+                .POST(HttpRequest.BodyPublishers.ofString(encodeForm(form), StandardCharsets.UTF_8));
+        if (accept != null) {
+            builder.header(HttpHeaders.ACCEPT, accept);
+        }
+        return builder.build();
+    }
+
+    /**
+     * Encodes the form the same way as the form converter of a RestTemplate.
+     */
+    static String encodeForm(MultiValueMap<String, String> form) {
+        StringJoiner joiner = new StringJoiner("&");
+        for (Map.Entry<String, List<String>> entry : form.entrySet()) {
+            String key = URLEncoder.encode(entry.getKey(), StandardCharsets.UTF_8);
+            for (String value : entry.getValue()) {
+                joiner.add(value == null ? key : key + "=" + URLEncoder.encode(value, StandardCharsets.UTF_8));
+            }
+        }
+        return joiner.toString();
+    }
+
+    private CompletableFuture<String> send(HttpRequest request) {
+        PendingRequest next = new PendingRequest(request);
+        pending.add(next);
+        dispatch();
+        return next.result;
+    }
+
+    /**
+     * Sends queued requests as long as there are free connections.
+     */
+    private void dispatch() {
+        while (!pending.isEmpty() && permits.tryAcquire()) {
+            PendingRequest next = pending.poll();
+            if (next == null) {
+                permits.release();
+                continue;
+            }
+            try {
+                next.send();
+            } catch (RuntimeException e) {
+                // the request was rejected before it was sent
+                permits.release();
+                next.result.completeExceptionally(e);
+            }
+        }
+    }
+
+    private static String readBody(HttpResponse<byte[]> response) {
+        HttpHeaders headers = new HttpHeaders();
+        response.headers().map().forEach(headers::addAll);
+        Charset charset = StandardCharsets.UTF_8;
+        MediaType contentType = null;
+        try {
+            contentType = headers.getContentType();
+        } catch (RuntimeException e) {
+            LOG.debug("Invalid content type of response, use UTF-8.", e);
+        }
+        if (contentType != null && contentType.getCharset() != null) {
+            charset = contentType.getCharset();
+        }
+
+        int code = response.statusCode();
+        if (code >= 200 && code < 300) {
+            return new String(response.body(), charset);
+        }
+
+        HttpStatus status = HttpStatus.resolve(code);
+        String text = status == null ? String.valueOf(code) : status.getReasonPhrase();
+        if (status == null) {
+            throw new UnknownHttpStatusCodeException(code, text, headers, response.body(), charset);
+        } else if (status.is4xxClientError()) {
+            throw HttpClientErrorException.create(status, text, headers, response.body(), charset);
+        } else if (status.is5xxServerError()) {
+            throw HttpServerErrorException.create(status, text, headers, response.body(), charset);
+        }
+        throw new UnknownHttpStatusCodeException(code, text, headers, response.body(), charset);
+    }
+
+    /**
+     * A request waiting for a free connection.
+     */
+    private final class PendingRequest {
+        private final HttpRequest request;
+
+        private final CompletableFuture<String> result = new CompletableFuture<>();
+
+        PendingRequest(HttpRequest request) {
+            this.request = request;
+        }
+
+        void send() {
+            client.sendAsync(request, HttpResponse.BodyHandlers.ofByteArray())
+                    .whenComplete((response, throwable) -> {
+                        permits.release();
+                        dispatch();
+                        if (throwable != null) {
+                            result.completeExceptionally(toRestException(request, throwable));
+                        } else {
+                            try {
+                                result.complete(readBody(response));
+                            } catch (RuntimeException e) {
+                                result.completeExceptionally(e);
+                            }
+                        }
+                    });
+        }
+    }
+
+    private static RuntimeException toRestException(HttpRequest request, Throwable throwable) {
+        Throwable cause = throwable instanceof CompletionException && throwable.getCause() != null
+                ? throwable.getCause()
+                : throwable;
+        String msg = "I/O error on POST request for \"" + request.uri() + "\": " + cause.getMessage();
+        if (cause instanceof IOException) {
+            return new ResourceAccessException(msg, (IOException) cause);
+        }
+        return new ResourceAccessException(msg, new IOException(cause));
+    }
+}
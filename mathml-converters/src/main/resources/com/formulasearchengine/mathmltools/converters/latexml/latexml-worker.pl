@@ -0,0 +1,50 @@
+#!/usr/bin/env perl
+# Persistent LaTeXML worker for the ProcessPool of the LaTeXMLConverter.
+# The arguments are the same as for latexmlc (without the input). The bindings
+# and preloads are loaded once, afterwards every request is converted in the
+# same session. Messages are framed by their length in bytes:
+#   request:  <length>\n<tex>
+#   response: <exit code> <length>\n<result or log>
+use strict;
+use warnings;
+use Encode qw(decode encode);
+use LaTeXML;
+use LaTeXML::Common::Config;
+
+binmode(STDIN);
+binmode(STDOUT);
+$| = 1;
+
+my $config = LaTeXML::Common::Config->new();
+$config->read(\@ARGV);
+my $converter = LaTeXML->get_converter($config);
+$converter->prepare_session($config);
+
+sub respond {
+    my ($code, $payload) = @_;
+    my $bytes = encode('UTF-8', defined $payload ? $payload : '');
+    print STDOUT $code . ' ' . length($bytes) . "\n" . $bytes;
+}
+
+while (defined(my $header = <STDIN>)) {
+    chomp($header);
+    my $tex = '';
+    if ($header > 0) {
+        my $read = read(STDIN, $tex, $header);
+        last unless defined $read && $read == $header;
+    }
+    $tex = decode('UTF-8', $tex);
+    my $response = eval { $converter->convert("literal:$tex") };
+    if (!$response) {
+        respond(3, $@ || 'conversion failed');
+        next;
+    }
+    # same as latexmlc, only fatal errors are failures
+    my $status = $response->{status_code} || 0;
+    if ($status >= 3 || !defined $response->{result}) {
+        print STDERR $response->{log} if defined $response->{log};
+        respond(3, $response->{status});
+    } else {
+        respond(0, $response->{result});
+    }
+}
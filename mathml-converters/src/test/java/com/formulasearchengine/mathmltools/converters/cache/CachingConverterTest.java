@@ -0,0 +1,244 @@
+package com.formulasearchengine.mathmltools.converters.cache;
+
+import com.formulasearchengine.mathmltools.converters.IConverter;
+import com.formulasearchengine.mathmltools.converters.LaTeXMLConverter;
+import com.formulasearchengine.mathmltools.converters.NativeConverter;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.LinkedList;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class CachingConverterTest {
+
+    @Test
+    public void memoryHitTest() throws Exception {
+        CountingConverter counter = new CountingConverter();
+        ConversionCache cache = new ConversionCache();
+        CachingConverter converter = new CachingConverter(counter, cache);
+
+        assertThat(converter.convertToString("x^2"), equalTo("<math>x^2</math>"));
+        assertThat(converter.convertToString("x^2"), equalTo("<math>x^2</math>"));
+        // the same expression with other whitespaces
+        assertThat(converter.convertToString("  x^2 "), equalTo("<math>x^2</math>"));
+        assertThat(counter.calls.get(), equalTo(1));
+
+        assertThat(cache.getMisses(), equalTo(1L));
+        assertThat(cache.getMemoryHits(), equalTo(2L));
+        assertThat(cache.getHitRate(), equalTo(2.0 / 3));
+    }
+
+    @Test
+    public void failuresAreNotCachedTest() throws Exception {
+        CountingConverter counter = new CountingConverter();
+        CachingConverter converter = new CachingConverter(counter, new ConversionCache());
+        assertNull(converter.convertToString("fail"));
+        assertNull(converter.convertToString("fail"));
+        assertThat(counter.calls.get(), equalTo(2));
+    }
+
+    @Test
+    public void configurationTest() throws Exception {
+        CountingConverter counter = new CountingConverter();
+        CachingConverter converter = new CachingConverter(counter, new ConversionCache());
+        converter.convertToString("a");
+        counter.configuration = "other";
+        assertThat(converter.convertToString("a"), equalTo("<math other>a</math>"));
+        assertThat(counter.calls.get(), equalTo(2));
+    }
+
+    @Test
+    public void latexmlModeTest() {
+        LaTeXMLConverter latexml = new LaTeXMLConverter();
+        latexml.init();
+        String normal = latexml.getConfigurationKey();
+        latexml.semanticMode();
+        assertThat(latexml.getConfigurationKey(), not(equalTo(normal)));
+        latexml.nonSemanticMode();
+        assertThat(latexml.getConfigurationKey(), equalTo(normal));
+    }
+
+    @Test
+    public void nativeConfigurationKeyTest() throws Exception {
+        NativeConverter sleep = new NativeConverter() {
+            @Override
+            public void init() {
+                LinkedList<String> arguments = new LinkedList<>();
+                arguments.add("sleep");
+                internalInit(arguments, "sleep");
+            }
+        };
+        sleep.init();
+        String key = sleep.getConfigurationKey();
+        // the input is appended to the arguments during the conversion
+        CompletableFuture<String> conversion = CompletableFuture.supplyAsync(() -> sleep.convertToString("0.5"));
+        Thread.sleep(200);
+        assertThat(sleep.getConfigurationKey(), equalTo(key));
+        conversion.join();
+        assertThat(sleep.getConfigurationKey(), equalTo(key));
+    }
+
+    @Test
+    public void evictionTest() throws Exception {
+        CountingConverter counter = new CountingConverter();
+        // space for about 12 results (64 characters key + result)
+        ConversionCache cache = new ConversionCache(1000);
+        CachingConverter converter = new CachingConverter(counter, cache);
+        for (int i = 0; i < 50; i++) {
+            converter.convertToString("x_" + i);
+        }
+        assertTrue(cache.getMemoryEntries() <= 12, "Too many entries: " + cache.getMemoryEntries());
+        assertThat(cache.getEvictions(), equalTo(50 - cache.getMemoryEntries()));
+
+        // the latest one is still cached
+        converter.convertToString("x_49");
+        assertThat(counter.calls.get(), equalTo(50));
+    }
+
+    @Test
+    public void diskTierTest(@TempDir Path dir) throws Exception {
+        Path file = dir.resolve("cache").resolve("conversions.log");
+        CountingConverter counter = new CountingConverter();
+        try (ConversionCache cache = new ConversionCache(ConversionCache.DEFAULT_MEMORY_SIZE, file)) {
+            CachingConverter converter = new CachingConverter(counter, cache);
+            converter.convertToString("\\alpha");
+            converter.convertToString("\\sum_{i=1}^n i");
+            assertThat(cache.getDiskEntries(), equalTo(2L));
+        }
+
+        // after a restart
+        try (ConversionCache cache = new ConversionCache(ConversionCache.DEFAULT_MEMORY_SIZE, file)) {
+            CachingConverter converter = new CachingConverter(counter, cache);
+            assertThat(converter.convertToString("\\alpha"), equalTo("<math>\\alpha</math>"));
+            assertThat(converter.convertToString("\\alpha"), equalTo("<math>\\alpha</math>"));
+            assertThat(counter.calls.get(), equalTo(2));
+            assertThat(cache.getDiskHits(), equalTo(1L));
+            assertThat(cache.getMemoryHits(), equalTo(1L));
+        }
+    }
+
+    @Test
+    public void corruptDiskTierTest(@TempDir Path dir) throws Exception {
+        Path file = dir.resolve("conversions.log");
+        CountingConverter counter = new CountingConverter();
+        try (ConversionCache cache = new ConversionCache(ConversionCache.DEFAULT_MEMORY_SIZE, file)) {
+            CachingConverter converter = new CachingConverter(counter, cache);
+            converter.convertToString("a");
+            converter.convertToString("b");
+        }
+
+        // a crash in the middle of the last record
+        cutOff(file, 5);
+
+        try (ConversionCache cache = new ConversionCache(ConversionCache.DEFAULT_MEMORY_SIZE, file)) {
+            assertThat(cache.getDiskEntries(), equalTo(1L));
+            CachingConverter converter = new CachingConverter(counter, cache);
+            assertThat(converter.convertToString("a"), equalTo("<math>a</math>"));
+            assertThat(converter.convertToString("b"), equalTo("<math>b</math>"));
+            assertThat(counter.calls.get(), equalTo(3));
+        }
+
+        // the repaired log can be extended
+        try (ConversionCache cache = new ConversionCache(ConversionCache.DEFAULT_MEMORY_SIZE, file)) {
+            assertThat(cache.getDiskEntries(), equalTo(2L));
+        }
+    }
+
+    @Test
+    public void corruptRecordInTheMiddleTest(@TempDir Path dir) throws Exception {
+        Path file = dir.resolve("conversions.log");
+        CountingConverter counter = new CountingConverter();
+        try (ConversionCache cache = new ConversionCache(ConversionCache.DEFAULT_MEMORY_SIZE, file)) {
+            CachingConverter converter = new CachingConverter(counter, cache);
+            converter.convertToString("a");
+            converter.convertToString("b");
+            converter.convertToString("c");
+        }
+        long size = Files.size(file);
+
+        // a broken key of the first record, its length fields are intact
+        overwrite(file, 3 * Integer.BYTES, (byte) 0xFF);
+
+        try (ConversionCache cache = new ConversionCache(ConversionCache.DEFAULT_MEMORY_SIZE, file)) {
+            assertThat(cache.getDiskEntries(), equalTo(2L));
+            assertThat(Files.size(file), equalTo(size));
+            CachingConverter converter = new CachingConverter(counter, cache);
+            assertThat(converter.convertToString("b"), equalTo("<math>b</math>"));
+            assertThat(converter.convertToString("c"), equalTo("<math>c</math>"));
+            assertThat(counter.calls.get(), equalTo(3));
+        }
+
+        // broken length fields of the first record, nothing can be read but nothing is lost
+        overwrite(file, 0, (byte) 0xFF);
+        try (ConversionCache cache = new ConversionCache(ConversionCache.DEFAULT_MEMORY_SIZE, file)) {
+            assertThat(cache.getDiskEntries(), equalTo(0L));
+            assertThat(Files.size(file), equalTo(size));
+        }
+    }
+
+    @Test
+    public void normalizeTest() {
+        assertThat(ConversionCache.normalize(" a  +\n b\t"), equalTo("a + b"));
+        assertThat(ConversionCache.normalize("a\\ "), equalTo("a\\ "));
+        assertThat(ConversionCache.normalize("a\\"), equalTo("a\\"));
+        // the line break ends the comment
+        assertThat(ConversionCache.normalize("a  %c\n  +b\n"), equalTo("a %c\n +b"));
+        assertThat(ConversionCache.normalize("a %c +b"), not(equalTo(ConversionCache.normalize("a %c\n+b"))));
+        assertThat(ConversionCache.normalize("50\\%  +\n b"), equalTo("50\\% + b"));
+        assertThat(ConversionCache.normalize("\\\\%c\n b"), equalTo("\\\\%c\n b"));
+    }
+
+    private static void overwrite(Path file, long pos, byte value) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.wrap(new byte[]{value}), pos);
+        }
+    }
+
+    private static void cutOff(Path file, int bytes) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.truncate(channel.size() - bytes);
+        }
+    }
+
+    /**
+     * Wraps the input in math tags and counts the calls.
+     */
+    private static class CountingConverter implements IConverter {
+        private final AtomicInteger calls = new AtomicInteger();
+
+        private String configuration = "";
+
+        @Override
+        public void init() {
+            // nothing to do
+        }
+
+        @Override
+        public String convertToString(String latex) {
+            calls.incrementAndGet();
+            if (latex.equals("fail")) {
+                return null;
+            }
+            String attributes = configuration.isEmpty() ? "" : " " + configuration;
+            return "<math" + attributes + ">" + latex.trim() + "</math>";
+        }
+
+        @Override
+        public String getConfigurationKey() {
+            return configuration;
+        }
+    }
+}
@@ -0,0 +1,239 @@
+package com.formulasearchengine.mathmltools.converters.corpus;
+
+import com.formulasearchengine.mathmltools.converters.IConverter;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class CorpusRunnerTest {
+
+    @Test
+    public void convertCorpusTest(@TempDir Path dir) throws Exception {
+        FakeConverter fast = new FakeConverter("fast", 0);
+        FakeConverter slow = new FakeConverter("slow", 2);
+        CorpusRunner runner = new CorpusRunner(dir)
+                .addConverter("fast", fast, id -> dir.resolve("fast").resolve(id + ".mml"), 4)
+                .addConverter("slow", slow, id -> dir.resolve("slow").resolve(id + ".mml"), 2)
+                .setProgressInterval(10);
+
+        Map<String, ConverterStats> stats = runner.run(corpus(40));
+
+        assertThat(stats.get("fast").getConverted(), equalTo(40L));
+        assertThat(stats.get("slow").getConverted(), equalTo(40L));
+        assertTrue(fast.maxRunning.get() <= 4, "fast exceeded its limit: " + fast.maxRunning.get());
+        assertTrue(slow.maxRunning.get() <= 2, "slow exceeded its limit: " + slow.maxRunning.get());
+        assertThat(read(dir.resolve("slow").resolve("7.mml")), equalTo("slow:x_{7}"));
+        assertTrue(stats.get("slow").getThroughput() > 0);
+        assertNoTemporaryFiles(dir);
+    }
+
+    @Test
+    public void independentReadersTest(@TempDir Path dir) throws Exception {
+        Path file = dir.resolve("corpus.txt");
+        Files.write(file, IntStream.range(0, 50).mapToObj(i -> i + "\tx_{" + i + "}").collect(Collectors.toList()),
+                StandardCharsets.UTF_8);
+        FakeConverter fast = new FakeConverter("fast", 0);
+        FakeConverter slow = new FakeConverter("slow", 20);
+        fast.watched = slow;
+        Map<String, ConverterStats> stats = new CorpusRunner(dir)
+                .addConverter("fast", fast, id -> dir.resolve("fast").resolve(id + ".mml"), 1)
+                .addConverter("slow", slow, id -> dir.resolve("slow").resolve(id + ".mml"), 1)
+                .run(file);
+
+        assertThat(stats.get("fast").getConverted(), equalTo(50L));
+        assertThat(stats.get("slow").getConverted(), equalTo(50L));
+        assertThat(read(dir.resolve("slow").resolve("49.mml")), equalTo("slow:x_{49}"));
+        // the fast converter did not wait for the slow one
+        assertTrue(fast.watchedCalls.get() < 25, "slow converted " + fast.watchedCalls.get() + " before fast finished");
+    }
+
+    @Test
+    public void missingCorpusTest(@TempDir Path dir) {
+        CorpusRunner runner = new CorpusRunner(dir)
+                .addConverter("a", new FakeConverter("a", 0), id -> dir.resolve(id + ".mml"), 1);
+        assertThrows(IOException.class, () -> runner.run(dir.resolve("missing.txt")));
+    }
+
+    @Test
+    public void resumeTest(@TempDir Path dir) throws Exception {
+        FakeConverter converter = new FakeConverter("a", 0);
+        converter.failing = true;
+        Map<String, ConverterStats> stats = new CorpusRunner(dir)
+                .addConverter("a", converter, id -> dir.resolve(id + ".mml"), 2)
+                .run(corpus(10));
+        // x_{3}, x_{6} and x_{9} fail
+        assertThat(stats.get("a").getConverted(), equalTo(7L));
+        assertThat(stats.get("a").getFailed(), equalTo(3L));
+        assertFalse(Files.exists(dir.resolve("3.mml")));
+        assertNoTemporaryFiles(dir);
+
+        // the next run only converts the missing results
+        converter.failing = false;
+        converter.calls.set(0);
+        stats = new CorpusRunner(dir)
+                .addConverter("a", converter, id -> dir.resolve(id + ".mml"), 2)
+                .run(corpus(10));
+        assertThat(stats.get("a").getSkipped(), equalTo(7L));
+        assertThat(stats.get("a").getConverted(), equalTo(3L));
+        assertThat(converter.calls.get(), equalTo(3));
+        assertThat(read(dir.resolve("3.mml")), equalTo("a:x_{3}"));
+
+        // without resume, everything is converted again
+        converter.calls.set(0);
+        new CorpusRunner(dir)
+                .addConverter("a", converter, id -> dir.resolve(id + ".mml"), 2)
+                .setResume(false)
+                .run(corpus(10));
+        assertThat(converter.calls.get(), equalTo(10));
+    }
+
+    @Test
+    public void brokenConverterTest(@TempDir Path dir) throws Exception {
+        FakeConverter converter = new FakeConverter("a", 0);
+        IConverter broken = new IConverter() {
+            @Override
+            public void init() throws Exception {
+                throw new IOException("not installed");
+            }
+
+            @Override
+            public String convertToString(String latex) {
+                return null;
+            }
+        };
+        Map<String, ConverterStats> stats = new CorpusRunner(dir)
+                .addConverter("broken", broken, id -> dir.resolve("broken").resolve(id + ".mml"), 1)
+                .addConverter("a", converter, id -> dir.resolve("a").resolve(id + ".mml"), 1)
+                .run(corpus(5));
+        assertThat(stats.get("a").getConverted(), equalTo(5L));
+        assertThat(stats.get("broken").getProcessed(), equalTo(0L));
+    }
+
+    @Test
+    public void fromFileTest(@TempDir Path dir) throws Exception {
+        Path file = dir.resolve("corpus.txt");
+        Files.write(file, Arrays.asList("a+b", "", "42\t\\frac{1}{2}", "x\ty"), StandardCharsets.UTF_8);
+        try (Stream<CorpusEntry> entries = CorpusEntry.fromFile(file)) {
+            List<String> parsed = entries.map(CorpusEntry::toString).collect(Collectors.toList());
+            assertThat(parsed, equalTo(Arrays.asList("1: a+b", "42: \\frac{1}{2}", "4: x\ty")));
+        }
+    }
+
+    @Test
+    public void statefulConverterTest(@TempDir Path dir) throws Exception {
+        // like POM, the parsed expression is kept by the converter until it is written
+        IConverter stateful = new IConverter() {
+            private String parsed;
+
+            @Override
+            public void init() {
+                // nothing to do
+            }
+
+            @Override
+            public String convertToString(String latex) {
+                return latex;
+            }
+
+            @Override
+            public void convertToFile(String latex, Path outputFile) throws IOException {
+                parsed = latex;
+                Thread.yield();
+                Files.write(outputFile, parsed.getBytes(StandardCharsets.UTF_8));
+            }
+        };
+        // the default concurrency of POM
+        CorpusRunner runner = new CorpusRunner(dir).addConverter("stateful", stateful, id -> dir.resolve(id + ".xml"), 1);
+
+        assertThat(runner.run(corpus(200)).get("stateful").getConverted(), equalTo(200L));
+        for (int i = 0; i < 200; i++) {
+            assertThat(read(dir.resolve(i + ".xml")), equalTo("x_{" + i + "}"));
+        }
+    }
+
+    @Test
+    public void invalidConcurrencyTest(@TempDir Path dir) {
+        assertThrows(IllegalArgumentException.class,
+                () -> new CorpusRunner(dir).addConverter("a", new FakeConverter("a", 0), id -> dir, 0));
+    }
+
+    private static Stream<CorpusEntry> corpus(int size) {
+        return IntStream.range(0, size).mapToObj(i -> new CorpusEntry(i, "x_{" + i + "}"));
+    }
+
+    private static String read(Path file) throws IOException {
+        return new String(Files.readAllBytes(file), StandardCharsets.UTF_8);
+    }
+
+    private static void assertNoTemporaryFiles(Path dir) throws IOException {
+        try (Stream<Path> files = Files.walk(dir)) {
+            assertTrue(files.noneMatch(f -> f.getFileName().toString().startsWith(".part-")));
+        }
+    }
+
+    /**
+     * Writes name:latex to the file and tracks the parallel calls.
+     */
+    private static class FakeConverter implements IConverter {
+        private final String name;
+        private final long sleep;
+        private final AtomicInteger running = new AtomicInteger();
+        private final AtomicInteger maxRunning = new AtomicInteger();
+        private final AtomicInteger calls = new AtomicInteger();
+        private volatile boolean failing = false;
+        private volatile FakeConverter watched;
+        private final AtomicInteger watchedCalls = new AtomicInteger();
+
+        FakeConverter(String name, long sleep) {
+            this.name = name;
+            this.sleep = sleep;
+        }
+
+        @Override
+        public void init() {
+            // nothing to do
+        }
+
+        @Override
+        public String convertToString(String latex) {
+            return name + ":" + latex;
+        }
+
+        @Override
+        public void convertToFile(String latex, Path outputFile) throws IOException {
+            calls.incrementAndGet();
+            if (watched != null) {
+                watchedCalls.set(watched.calls.get());
+            }
+            maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+            try {
+                Thread.sleep(sleep);
+                if (failing && latex.matches("x_\\{[369]}")) {
+                    throw new IOException("cannot convert " + latex);
+                }
+                Files.write(outputFile, convertToString(latex).getBytes(StandardCharsets.UTF_8));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                running.decrementAndGet();
+            }
+        }
+    }
+}
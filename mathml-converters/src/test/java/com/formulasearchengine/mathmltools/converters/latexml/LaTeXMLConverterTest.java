@@ -49,6 +49,26 @@ public class LaTeXMLConverterTest {
         assertThat(serviceResponse.getResult(), equalTo(expected));
     }
 
+    @Test
+    public void runLatexmlWorkers() throws Exception {
+        assumeTrue(LaTeXMLConverter.isLaTeXMLPresent(), "latexmlc not present. skipping");
+        LaTeXMLConverter converter = new LaTeXMLConverter();
+        converter.init();
+        converter.usePool(2);
+
+        try {
+            // the same results as latexmlc, also for a reused worker
+            String expected = getResourceContent("latexmlc_result1_expected.txt");
+            for (int i = 0; i < 3; i++) {
+                NativeResponse response = converter.parseToNativeResponse("\\sqrt{3}+\\frac{a+1}{b-2}");
+                assertThat(response.getStatusCode(), equalTo(0));
+                assertThat(response.getResult(), equalTo(expected));
+            }
+        } finally {
+            converter.closePool();
+        }
+    }
+
     @Test
     public void convertLatexmlService() throws Exception {
         // default configuration for the test in json (with DRMF stylesheet)
@@ -0,0 +1,155 @@
+package com.formulasearchengine.mathmltools.converters.mathoid;
+
+import com.formulasearchengine.mathmltools.converters.MathoidConverter;
+import com.formulasearchengine.mathmltools.converters.config.MathoidConfig;
+import com.formulasearchengine.mathmltools.converters.services.ServiceClient;
+import com.formulasearchengine.mathmltools.converters.services.StubServer;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.ResourceAccessException;
+
+import java.net.ServerSocket;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.instanceOf;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Batch conversion against a local stand-in for Mathoid.
+ */
+public class MathoidBatchConversionTest {
+
+    @Test
+    public void preserveOrderTest() throws Exception {
+        Random random = new Random(1);
+        try (StubServer server = new StubServer(exchange -> {
+            String q = StubServer.readForm(exchange).get("q");
+            try {
+                // answers arrive in a different order than the requests
+                Thread.sleep(random.nextInt(10));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            StubServer.respond(exchange, 200, "application/mathml+xml", "<math>" + q + "</math>");
+        })) {
+            MathoidConverter converter = createConverter(server, 4);
+            List<String> latex = IntStream.range(0, 100).mapToObj(i -> "x_{" + i + "}").collect(Collectors.toList());
+            List<MathoidConversionResult> results = converter.convertAll(latex, MathoidEndpoints.MML_ENDPOINT);
+
+            assertThat(results.size(), equalTo(latex.size()));
+            for (int i = 0; i < latex.size(); i++) {
+                assertTrue(results.get(i).isSuccess());
+                assertThat(results.get(i).getInput(), equalTo(latex.get(i)));
+                assertThat(results.get(i).getResult(), equalTo("<math>x_{" + i + "}</math>"));
+            }
+        }
+    }
+
+    @Test
+    public void isolateFailuresTest() throws Exception {
+        try (StubServer server = new StubServer(exchange -> {
+            String q = StubServer.readForm(exchange).get("q");
+            if (q.contains("{")) {
+                StubServer.respond(exchange, 400, "text/plain", "invalid tex");
+            } else {
+                StubServer.respond(exchange, 200, "application/mathml+xml", q);
+            }
+        })) {
+            MathoidConverter converter = createConverter(server, 2);
+            List<MathoidConversionResult> results =
+                    converter.convertAll(Arrays.asList("a", "\\frac{", "b", "\\sqrt{", "c"), MathoidEndpoints.MML_ENDPOINT);
+
+            assertThat(results.stream().map(MathoidConversionResult::getResult).collect(Collectors.toList()),
+                    equalTo(Arrays.asList("a", null, "b", null, "c")));
+            assertFalse(results.get(1).isSuccess());
+            assertThat(results.get(1).getError(), instanceOf(HttpClientErrorException.class));
+            assertThat(((HttpClientErrorException) results.get(3).getError()).getResponseBodyAsString(),
+                    equalTo("invalid tex"));
+        }
+    }
+
+    @Test
+    public void boundedConcurrencyTest() throws Exception {
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+        try (StubServer server = new StubServer(exchange -> {
+            maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+            try {
+                Thread.sleep(5);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            running.decrementAndGet();
+            StubServer.respond(exchange, 200, "text/plain", StubServer.readForm(exchange).get("q"));
+        })) {
+            ServiceClient client = new ServiceClient(16, Duration.ofSeconds(5), Duration.ofSeconds(5), false);
+            MathoidConverter converter = new MathoidConverter(new MathoidConfig().setUrl(server.getUrl()), client);
+            List<String> latex = IntStream.range(0, 60).mapToObj(String::valueOf).collect(Collectors.toList());
+            List<MathoidConversionResult> results =
+                    converter.convertAllAsync(latex, MathoidEndpoints.MML_ENDPOINT, MathoidTypes.TEX, 3).get();
+
+            assertTrue(results.stream().allMatch(MathoidConversionResult::isSuccess));
+            assertTrue(maxRunning.get() <= 3, "More than 3 requests in flight: " + maxRunning.get());
+            // the batch never queued more requests than allowed
+            assertThat(client.getPendingRequests(), equalTo(0));
+        }
+    }
+
+    @Test
+    public void unreachableServiceTest() throws Exception {
+        int port;
+        try (ServerSocket socket = new ServerSocket(0)) {
+            port = socket.getLocalPort();
+        }
+        MathoidConverter converter = new MathoidConverter(new MathoidConfig().setUrl("http://127.0.0.1:" + port));
+        List<MathoidConversionResult> results = converter.convertAll(Arrays.asList("a", "b"), MathoidEndpoints.MML_ENDPOINT);
+        assertThat(results.size(), equalTo(2));
+        for (MathoidConversionResult result : results) {
+            assertNull(result.getResult());
+            assertThat(result.getError(), instanceOf(ResourceAccessException.class));
+        }
+    }
+
+    @Test
+    public void invalidUrlTest() {
+        MathoidConverter converter = new MathoidConverter(new MathoidConfig().setUrl("no url"));
+        List<MathoidConversionResult> results = converter.convertAll(Arrays.asList("a", "b", "c"), MathoidEndpoints.MML_ENDPOINT);
+        assertTrue(results.stream().noneMatch(MathoidConversionResult::isSuccess));
+    }
+
+    @Test
+    public void largeBatchOfFailedRequestsTest() {
+        MathoidConverter converter = new MathoidConverter(new MathoidConfig().setUrl("no url"));
+        List<String> latex = Collections.nCopies(100_000, "a");
+        List<MathoidConversionResult> results = assertTimeoutPreemptively(Duration.ofSeconds(60),
+                () -> converter.convertAll(latex, MathoidEndpoints.MML_ENDPOINT));
+        assertThat(results.size(), equalTo(latex.size()));
+        assertTrue(results.stream().noneMatch(MathoidConversionResult::isSuccess));
+    }
+
+    @Test
+    public void emptyBatchTest() {
+        MathoidConverter converter = new MathoidConverter(new MathoidConfig().setUrl("http://127.0.0.1:1"));
+        assertTrue(converter.convertAll(Collections.emptyList(), MathoidEndpoints.MML_ENDPOINT).isEmpty());
+        assertThrows(IllegalArgumentException.class,
+                () -> converter.convertAllAsync(Collections.singletonList("a"), MathoidEndpoints.MML_ENDPOINT, null, 0));
+    }
+
+    private static MathoidConverter createConverter(StubServer server, int connections) {
+        ServiceClient client = new ServiceClient(connections, Duration.ofSeconds(5), Duration.ofSeconds(5), false);
+        return new MathoidConverter(new MathoidConfig().setUrl(server.getUrl()), client);
+    }
+}
@@ -0,0 +1,180 @@
+package com.formulasearchengine.mathmltools.converters.services;
+
+import com.formulasearchengine.mathmltools.converters.LaTeXMLConverter;
+import com.formulasearchengine.mathmltools.converters.MathoidConverter;
+import com.formulasearchengine.mathmltools.converters.config.LaTeXMLConfig;
+import com.formulasearchengine.mathmltools.converters.config.MathoidConfig;
+import com.formulasearchengine.mathmltools.converters.mathoid.MathoidEndpoints;
+import com.formulasearchengine.mathmltools.converters.mathoid.MathoidInfoResponse;
+import com.formulasearchengine.mathmltools.converters.mathoid.MathoidTypes;
+import org.junit.jupiter.api.Test;
+import org.springframework.util.LinkedMultiValueMap;
+import org.springframework.util.MultiValueMap;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.HttpServerErrorException;
+import org.springframework.web.client.ResourceAccessException;
+
+import java.net.ServerSocket;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.instanceOf;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests the HTTP transport against a local stand-in server.
+ */
+public class ServiceClientTest {
+
+    @Test
+    public void encodeFormTest() {
+        MultiValueMap<String, String> form = new LinkedMultiValueMap<>();
+        form.add("q", "a+b & c = α");
+        form.add("pmml", "");
+        form.add("preload", "a.sty");
+        form.add("preload", "b.sty");
+        assertThat(ServiceClient.encodeForm(form), equalTo("q=a%2Bb+%26+c+%3D+%CE%B1&pmml=&preload=a.sty&preload=b.sty"));
+    }
+
+    @Test
+    public void mathoidConversionTest() throws Exception {
+        try (StubServer server = new StubServer(exchange -> {
+            Map<String, String> form = StubServer.readForm(exchange);
+            String body = exchange.getRequestURI().getPath() + ":" + form.get("type") + ":" + form.get("q");
+            StubServer.respond(exchange, 200, "application/mathml+xml; charset=utf-8", body);
+        })) {
+            MathoidConverter converter = new MathoidConverter(new MathoidConfig().setUrl(server.getUrl()), new ServiceClient());
+            assertThat(converter.conversion(MathoidEndpoints.MML_ENDPOINT, "\\alpha+β", MathoidTypes.TEX),
+                    equalTo("/mml:tex:\\alpha+β"));
+            assertThat(converter.conversionAsync(MathoidEndpoints.SVG_ENDPOINT, "x", MathoidTypes.INLINE_TEX).get(),
+                    equalTo("/svg:inline-tex:x"));
+            assertThat(converter.conversion(MathoidEndpoints.MML_ENDPOINT, "x"), equalTo("/mml:null:x"));
+            assertThat(converter.convertAsync("y", "mml").get(), equalTo("/:mml:y"));
+        }
+    }
+
+    @Test
+    public void mathoidCheckTest() throws Exception {
+        try (StubServer server = new StubServer(exchange -> {
+            Map<String, String> form = StubServer.readForm(exchange);
+            String json = "{\"success\":true,\"checked\":\"" + form.get("q") + "\",\"unknown\":1}";
+            StubServer.respond(exchange, 200, "application/json", json);
+        })) {
+            MathoidConverter converter = new MathoidConverter(new MathoidConfig().setUrl(server.getUrl()));
+            MathoidInfoResponse response = converter.check("a", MathoidTypes.TEX);
+            assertTrue(response.isSuccess());
+            assertThat(response.getChecked(), equalTo("a"));
+        }
+    }
+
+    @Test
+    public void latexmlServiceTest() throws Exception {
+        try (StubServer server = new StubServer(exchange -> {
+            Map<String, String> form = StubServer.readForm(exchange);
+            String json = "{\"status_code\":0,\"status\":\"No obvious problems\",\"log\":\"\",\"result\":\""
+                    + form.get("tex") + "\"}";
+            StubServer.respond(exchange, 200, "application/json", json);
+        })) {
+            LaTeXMLConverter converter = new LaTeXMLConverter(LaTeXMLConfig.getDefaultConfiguration().setUrl(server.getUrl()));
+            converter.setServiceClient(new ServiceClient());
+            LaTeXMLServiceResponse response = converter.parseAsServiceAsync("a+b").get();
+            assertThat(response.getStatusCode(), equalTo(0));
+            assertThat(response.getResult(), equalTo("a+b"));
+            assertThat(converter.parseAsService("c").getResult(), equalTo("c"));
+        }
+    }
+
+    @Test
+    public void clientErrorTest() throws Exception {
+        try (StubServer server = new StubServer(exchange -> StubServer.respond(exchange, 400, "text/plain", "bad tex"))) {
+            MathoidConverter converter = new MathoidConverter(new MathoidConfig().setUrl(server.getUrl()), new ServiceClient());
+            HttpClientErrorException e = assertThrows(HttpClientErrorException.class,
+                    () -> converter.conversion(MathoidEndpoints.MML_ENDPOINT, "\\frac{", MathoidTypes.TEX));
+            assertThat(e.getRawStatusCode(), equalTo(400));
+            assertThat(e.getResponseBodyAsString(), equalTo("bad tex"));
+
+            CompletionException ce = assertThrows(CompletionException.class,
+                    () -> converter.conversionAsync(MathoidEndpoints.MML_ENDPOINT, "\\frac{", MathoidTypes.TEX).join());
+            assertThat(ce.getCause(), instanceOf(HttpClientErrorException.class));
+        }
+    }
+
+    @Test
+    public void serverErrorTest() throws Exception {
+        try (StubServer server = new StubServer(exchange -> StubServer.respond(exchange, 503, "text/plain", "down"))) {
+            ServiceClient client = new ServiceClient();
+            assertThrows(HttpServerErrorException.class,
+                    () -> ServiceClient.await(client.postForm(server.getUrl(), new LinkedMultiValueMap<>())));
+        }
+    }
+
+    @Test
+    public void connectionRefusedTest() throws Exception {
+        int port;
+        try (ServerSocket socket = new ServerSocket(0)) {
+            port = socket.getLocalPort();
+        }
+        ServiceClient client = new ServiceClient();
+        assertThrows(ResourceAccessException.class,
+                () -> ServiceClient.await(client.postForm("http://127.0.0.1:" + port, new LinkedMultiValueMap<>())));
+    }
+
+    @Test
+    public void limitConnectionsTest() throws Exception {
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+        try (StubServer server = new StubServer(exchange -> {
+            int current = running.incrementAndGet();
+            maxRunning.accumulateAndGet(current, Math::max);
+            try {
+                Thread.sleep(20);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            running.decrementAndGet();
+            StubServer.respond(exchange, 200, "text/plain", StubServer.readForm(exchange).get("q"));
+        })) {
+            ServiceClient client = new ServiceClient(2, Duration.ofSeconds(5), Duration.ofSeconds(5), false);
+            List<CompletableFuture<String>> futures = IntStream.range(0, 20)
+                    .mapToObj(i -> {
+                        MultiValueMap<String, String> form = new LinkedMultiValueMap<>();
+                        form.add("q", "f" + i);
+                        return client.postForm(server.getUrl(), form);
+                    })
+                    .collect(Collectors.toList());
+            for (int i = 0; i < futures.size(); i++) {
+                assertThat(futures.get(i).get(), equalTo("f" + i));
+            }
+            assertTrue(maxRunning.get() <= 2, "More than 2 requests in flight: " + maxRunning.get());
+            assertThat(client.getPendingRequests(), equalTo(0));
+        }
+    }
+
+    @Test
+    public void invalidUrlTest() throws Exception {
+        try (StubServer server = new StubServer(exchange -> StubServer.respond(exchange, 200, "text/plain", "ok"))) {
+            ServiceClient client = new ServiceClient(1, Duration.ofSeconds(5), Duration.ofSeconds(5), false);
+            CompletableFuture<String> future = client.postForm("ftp://x", new LinkedMultiValueMap<>());
+            assertTrue(future.isCompletedExceptionally());
+            assertThrows(IllegalArgumentException.class, () -> ServiceClient.await(future));
+            // the only connection is still free
+            assertThat(client.postForm(server.getUrl(), new LinkedMultiValueMap<>()).get(), equalTo("ok"));
+            assertThat(client.getPendingRequests(), equalTo(0));
+        }
+    }
+
+    @Test
+    public void invalidLimitTest() {
+        assertThrows(IllegalArgumentException.class,
+                () -> new ServiceClient(0, Duration.ofSeconds(1), Duration.ofSeconds(1), true));
+    }
+}
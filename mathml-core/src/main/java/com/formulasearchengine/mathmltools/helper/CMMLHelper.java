@@ -1,6 +1,7 @@
 package com.formulasearchengine.mathmltools.helper;
 
 import com.formulasearchengine.mathmltools.mml.CMMLInfo;
+import com.formulasearchengine.mathmltools.xml.XPathRegistry;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.w3c.dom.Node;
@@ -94,14 +95,13 @@ public class CMMLHelper {
      */
     public static Node getFirstApplyNode(CMMLInfo cmmlInfo) throws XPathExpressionException {
         // 1. search for a separate cmml semantic
-        XPath xpath = XMLHelper.namespaceAwareXpath("m", CMMLInfo.NS_MATHML);
-        Node applyRoot = getElement(cmmlInfo, "m:math/m:semantics/m:annotation-xml[@encoding='MathML-Content']/m:apply", xpath);
+        Node applyRoot = getElement(cmmlInfo, "m:math/m:semantics/m:annotation-xml[@encoding='MathML-Content']/m:apply");
         if (applyRoot == null) {
             // 2. search for a main cmml semantic
-            applyRoot = getElement(cmmlInfo, "*//m:semantics/m:apply", xpath);
+            applyRoot = getElement(cmmlInfo, "*//m:semantics/m:apply");
             if (applyRoot == null) {
                 // 3. try to take the apply right beneath the math elements
-                applyRoot = getElement(cmmlInfo, "m:math/m:apply", xpath);
+                applyRoot = getElement(cmmlInfo, "m:math/m:apply");
             }
         }
         return applyRoot;
@@ -120,14 +120,13 @@ public class CMMLHelper {
      */
     public static Node getFirstNode(CMMLInfo cmmlInfo) throws XPathExpressionException {
         // 1. search for a separate cmml semantic
-        XPath xpath = XMLHelper.namespaceAwareXpath("m", CMMLInfo.NS_MATHML);
-        Node applyRoot = getElement(cmmlInfo, "m:math/m:semantics/m:annotation-xml[@encoding='MathML-Content']/*[1]", xpath);
+        Node applyRoot = getElement(cmmlInfo, "m:math/m:semantics/m:annotation-xml[@encoding='MathML-Content']/*[1]");
         if (applyRoot == null) {
             // 2. search for a main cmml semantic
-            applyRoot = getElement(cmmlInfo, "*//m:semantics/*[1]", xpath);
+            applyRoot = getElement(cmmlInfo, "*//m:semantics/*[1]");
             if (applyRoot == null) {
                 // 3. try to take the apply right beneath the math elements
-                applyRoot = getElement(cmmlInfo, "m:math/*[1]", xpath);
+                applyRoot = getElement(cmmlInfo, "m:math/*[1]");
             }
         }
         return applyRoot;
@@ -144,4 +143,17 @@ public class CMMLHelper {
     public static Node getElement(Node node, String xExpr, XPath xPath) throws XPathExpressionException {
         return (Node) xPath.compile(xExpr).evaluate(node, XPathConstants.NODE);
     }
+
+    /**
+     * Extracts a single node for the specified XPath expression. The prefix 'm' is bound
+     * to the MathML namespace and the compiled expression is reused via the {@link XPathRegistry}.
+     *
+     * @param node  the node
+     * @param xExpr expression
+     * @return Node
+     * @throws XPathExpressionException the xpath expression exception
+     */
+    public static Node getElement(Node node, String xExpr) throws XPathExpressionException {
+        return (Node) XPathRegistry.mathml(xExpr).evaluate(node, XPathConstants.NODE);
+    }
 }
@@ -3,6 +3,7 @@ package com.formulasearchengine.mathmltools.helper;
 import com.formulasearchengine.mathmltools.io.XmlDocumentReader;
 import com.formulasearchengine.mathmltools.io.XmlDocumentWriter;
 import com.formulasearchengine.mathmltools.xml.NonWhitespaceNodeList;
+import com.formulasearchengine.mathmltools.xml.XPathRegistry;
 import com.google.common.collect.HashMultiset;
 import com.google.common.collect.Multiset;
 import net.sf.saxon.Configuration;
@@ -16,8 +17,8 @@ import org.xml.sax.InputSource;
 import org.xml.sax.SAXException;
 
 import javax.xml.namespace.NamespaceContext;
-import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.transform.Templates;
 import javax.xml.transform.Transformer;
 import javax.xml.transform.TransformerException;
 import javax.xml.transform.TransformerFactory;
@@ -31,9 +32,12 @@ import java.io.InputStream;
 import java.io.StringReader;
 import java.util.AbstractMap.SimpleEntry;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -52,13 +56,39 @@ public final class XMLHelper {
     public static final String MATH_SEMANTICS_ANNOTATION = "m:math/m:semantics/m:annotation-xml[@encoding='MathML-Content']";
     private static final Logger log = LogManager.getLogger(XMLHelper.class.getName());
     /**
-     * The factory.
+     * Compiled XSL stylesheets by their resource name. Templates are thread-safe,
+     * only the transformer must be created per transformation.
      */
-    private static XPathFactory factory = XPathFactory.newInstance();
+    private static final Map<String, Templates> XSL_TEMPLATES = new ConcurrentHashMap<>();
+
+    /**
+     * Maximum number of cached compiled XQueries.
+     */
+    private static final int MAX_XQUERIES = 256;
+
     /**
-     * The xpath.
+     * Shared Saxon processor. Processors and compiled queries are thread-safe and
+     * nodes must be built by the same configuration that compiled the query.
      */
-    private static XPath xpath = factory.newXPath();
+    private static final Processor SAXON_PROCESSOR = new Processor(new Configuration());
+
+    /**
+     * Compiled XQueries by their query string, the least recently used query will be dropped first.
+     */
+    private static final Map<String, XQueryExecutable> XQUERIES = Collections.synchronizedMap(
+            new LinkedHashMap<String, XQueryExecutable>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, XQueryExecutable> eldest) {
+                    return size() > MAX_XQUERIES;
+                }
+            }
+    );
+
+    /**
+     * Saxon document builders are not thread-safe, hence every thread gets its own.
+     */
+    private static final ThreadLocal<DocumentBuilder> SAXON_BUILDERS =
+            ThreadLocal.withInitial(SAXON_PROCESSOR::newDocumentBuilder);
 
     private XMLHelper() {
         // utility class
@@ -119,10 +149,8 @@ public final class XMLHelper {
                                            String xPath) throws ParserConfigurationException,
             IOException, XPathExpressionException, SAXException {
         Document doc = XmlDocumentReader.parse(inputXMLString, false); //string2Doc(inputXMLString, false);
-        XPathFactory factory = XPathFactory.newInstance();
-        XPath xpath = factory.newXPath();
         //compile XML tag extractor sent as param
-        XPathExpression expr = xpath.compile(xPath);
+        XPathExpression expr = XPathRegistry.plain(xPath);
 
         Object result = expr.evaluate(doc, XPathConstants.NODESET);
         return (NodeList) result;
@@ -138,7 +166,7 @@ public final class XMLHelper {
      * @throws XPathExpressionException the x path expression exception
      */
     public static Node getElementB(Node node, String xPath) throws XPathExpressionException {
-        XPathExpression expr = xpath.compile(xPath);
+        XPathExpression expr = XPathRegistry.plain(xPath);
         return getElementB(node, expr);
     }
 
@@ -179,7 +207,7 @@ public final class XMLHelper {
      * @throws XPathExpressionException the x path expression exception
      */
     public static NodeList getElementsB(Node node, String xString) throws XPathExpressionException {
-        XPathExpression xPath = compileX(xString);
+        XPathExpression xPath = XPathRegistry.plain(xString);
         return (NodeList) xPath.evaluate(node, XPathConstants.NODESET);
     }
 
@@ -210,8 +238,7 @@ public final class XMLHelper {
     }
 
     public static Document getNewDocument() {
-        DocumentBuilder builder = XmlDocumentReader.getDefaultNoValidatingDocBuilder();
-        return builder.newDocument();
+        return XmlDocumentReader.newDocument();
     }
 
 //    public static DocumentBuilder getDocumentBuilder(boolean namespaceAwareness) throws ParserConfigurationException {
@@ -324,7 +351,7 @@ public final class XMLHelper {
      * @throws XPathExpressionException the x path expression exception
      */
     public static XPathExpression compileX(String xString) throws XPathExpressionException {
-        return xpath.compile(xString);
+        return XPathRegistry.plainXPath().compile(xString);
     }
 
     public static double calculateBagScore(Multiset<String> reference, Multiset<String> actual) {
@@ -427,8 +454,7 @@ public final class XMLHelper {
 
     private static Node getContentMathMLNode(Document xml) {
         try {
-            XPath xPath = namespaceAwareXpath("m", NS_MATHML);
-            NodeList annotations = getElementsB(xml, xPath.compile(MATH_SEMANTICS_ANNOTATION));
+            NodeList annotations = getElementsB(xml, XPathRegistry.mathml(MATH_SEMANTICS_ANNOTATION));
             return new NonWhitespaceNodeList(annotations).getFirstElement();
         } catch (XPathExpressionException e) {
             e.printStackTrace();
@@ -437,26 +463,85 @@ public final class XMLHelper {
     }
 
     public static Document xslTransform(Node srcNode, String xsltResourceNamme) throws TransformerException, ParserConfigurationException {
-        System.setProperty("javax.xml.transform.TransformerFactory", "net.sf.saxon.TransformerFactoryImpl");
-        final InputStream is = XMLHelper.class.getClassLoader().getResourceAsStream(xsltResourceNamme);
-
-        TransformerFactory tFactory = TransformerFactory.newInstance();
-        Transformer transformer = tFactory.newTransformer(new StreamSource(is));
+        Transformer transformer = getXslTemplates(xsltResourceNamme).newTransformer();
         Document doc = getNewDocument();
         transformer.transform(new DOMSource(srcNode), new DOMResult(doc));
 
         return doc;
     }
 
+    /**
+     * Returns the compiled XSL stylesheet of the given resource. The stylesheet
+     * is compiled only once and cached for all subsequent calls.
+     *
+     * @param xsltResourceName the resource name of the stylesheet
+     * @return compiled stylesheet, thread-safe
+     * @throws TransformerException if the stylesheet cannot be found or compiled
+     */
+    public static Templates getXslTemplates(String xsltResourceName) throws TransformerException {
+        Templates templates = XSL_TEMPLATES.get(xsltResourceName);
+        if (templates != null) {
+            return templates;
+        }
+        synchronized (XSL_TEMPLATES) {
+            templates = XSL_TEMPLATES.get(xsltResourceName);
+            if (templates == null) {
+                templates = compileXslTemplates(xsltResourceName);
+                XSL_TEMPLATES.put(xsltResourceName, templates);
+            }
+            return templates;
+        }
+    }
+
+    private static Templates compileXslTemplates(String xsltResourceName) throws TransformerException {
+        System.setProperty("javax.xml.transform.TransformerFactory", "net.sf.saxon.TransformerFactoryImpl");
+        try (InputStream is = XMLHelper.class.getClassLoader().getResourceAsStream(xsltResourceName)) {
+            if (is == null) {
+                throw new TransformerException("Cannot find XSL stylesheet " + xsltResourceName);
+            }
+            log.debug("Compile XSL stylesheet {}", xsltResourceName);
+            TransformerFactory tFactory = TransformerFactory.newInstance();
+            return tFactory.newTemplates(new StreamSource(is));
+        } catch (IOException e) {
+            throw new TransformerException("Cannot read XSL stylesheet " + xsltResourceName, e);
+        }
+    }
+
+    /**
+     * Returns the shared Saxon processor.
+     *
+     * @return Saxon processor
+     */
+    public static Processor getSaxonProcessor() {
+        return SAXON_PROCESSOR;
+    }
+
+    /**
+     * Returns a new XQuery compiler of the shared Saxon processor.
+     * The compiler is not thread-safe, the compiled queries are.
+     *
+     * @return new XQuery compiler
+     */
     public static XQueryCompiler getXQueryCompiler() {
-        Configuration saxonConfig = new Configuration();
-        Processor processor = new Processor(saxonConfig);
-        return processor.newXQueryCompiler();
+        return SAXON_PROCESSOR.newXQueryCompiler();
     }
 
+    /**
+     * Compiles the given XQuery. Compiled queries are cached by their query string,
+     * hence compiling the same query again returns the same executable.
+     *
+     * @param xQuery XQuery string
+     * @return compiled query or null if the query cannot be compiled
+     */
     public static XQueryExecutable compileXQuerySting(String xQuery) {
+        XQueryExecutable executable = XQUERIES.get(xQuery);
+        if (executable != null) {
+            return executable;
+        }
         try {
-            return getXQueryCompiler().compile(xQuery);
+            executable = getXQueryCompiler().compile(xQuery);
+            XQUERIES.put(xQuery, executable);
+            return executable;
         } catch (SaxonApiException e) {
             e.printStackTrace();
             return null;
@@ -472,9 +557,18 @@ public final class XMLHelper {
         return doc;
     }
 
+    /**
+     * Runs the query on the given document. The document is wrapped rather than
+     * serialized and parsed again, hence it must not be changed during the evaluation.
+     *
+     * @param query compiled query
+     * @param doc   context document
+     * @return result of the query
+     * @throws SaxonApiException            if the evaluation fails
+     * @throws ParserConfigurationException never, kept for compatibility
+     */
     public static Document runXQuery(XQueryExecutable query, Document doc) throws SaxonApiException, ParserConfigurationException {
-        Processor proc = new Processor(false);
-        XdmNode temp = proc.newDocumentBuilder().wrap(doc);
+        XdmNode temp = SAXON_BUILDERS.get().wrap(doc);
         XQueryEvaluator xqueryEval = query.load();
 
         xqueryEval.setContextItem(temp);
@@ -630,6 +724,7 @@ public final class XMLHelper {
     }
 
     public static Node getElementById(Document dom, String id) throws XPathExpressionException {
-        return getElementB(dom, "//*[@id='" + id + "']");
+        // ids are unique, do not fill the registry with them
+        return getElementB(dom, compileX("//*[@id='" + id + "']"));
     }
 }
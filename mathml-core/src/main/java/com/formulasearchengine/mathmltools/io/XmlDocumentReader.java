@@ -2,9 +2,13 @@ package com.formulasearchengine.mathmltools.io;
 
 import com.formulasearchengine.mathmltools.exceptions.ParsingErrorHandler;
 import com.formulasearchengine.mathmltools.exceptions.Severity;
+import com.formulasearchengine.mathmltools.helper.XMLHelper;
 import com.formulasearchengine.mathmltools.mml.MathDoc;
 import com.formulasearchengine.mathmltools.xml.PartialLocalEntityResolver;
 import com.google.common.base.Charsets;
+import com.google.common.collect.ImmutableSet;
+import org.apache.xerces.util.XMLGrammarPoolImpl;
+import org.apache.xerces.xni.grammars.XMLGrammarPool;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.w3c.dom.Document;
@@ -21,6 +25,9 @@ import java.io.StringReader;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 /**
  * Helper class to format XML files to Document and Node types
@@ -28,13 +35,149 @@ import java.nio.file.Paths;
 public class XmlDocumentReader {
     private static final Logger LOG = LogManager.getLogger(XmlDocumentReader.class.getName());
 
-//    public static final DocumentBuilder ValidationBuilder = XmlDocumentReader.getDefaultValidatingDocBuilder();
-//
-//    public static final DocumentBuilder NoValidationBuilder = XmlDocumentReader.getDefaultNoValidatingDocBuilder();
+    /**
+     * Error handlers and the entity resolver are stateless and can be shared.
+     */
+    private static final ParsingErrorHandler SEVERE_HANDLER = new ParsingErrorHandler(Severity.SEVERE);
+    private static final ParsingErrorHandler NOTIFY_HANDLER = new ParsingErrorHandler(Severity.NOTIFY);
+    private static final PartialLocalEntityResolver ENTITY_RESOLVER = new PartialLocalEntityResolver();
+
+    /**
+     * DocumentBuilders are not thread-safe, hence every thread gets its own
+     * builder per validation mode. They are reset before each use.
+     */
+    private static final ThreadLocal<DocumentBuilder> VALIDATING_BUILDERS =
+            ThreadLocal.withInitial(XmlDocumentReader::getDefaultValidatingDocBuilder);
+    private static final ThreadLocal<DocumentBuilder> CACHING_VALIDATING_BUILDERS =
+            ThreadLocal.withInitial(XmlDocumentReader::getGrammarCachingValidatingDocBuilder);
+    private static final ThreadLocal<DocumentBuilder> NO_VALIDATING_BUILDERS =
+            ThreadLocal.withInitial(XmlDocumentReader::getDefaultNoValidatingDocBuilder);
+
+    private static final String GRAMMAR_POOL_PROPERTY = "http://apache.org/xml/properties/internal/grammar-pool";
+
+    /**
+     * Xerces is an optional dependency. Without it, the JDK parser is used and grammars are not cached.
+     */
+    private static final boolean GRAMMAR_POOL_AVAILABLE = isClassPresent("org.apache.xerces.util.XMLGrammarPoolImpl");
+
+    private static final Pattern NAMED_ENTITY_PATTERN = Pattern.compile("&([A-Za-z_:][\\w.:-]*);");
+
+    private static final Set<String> PREDEFINED_ENTITIES = ImmutableSet.of("amp", "lt", "gt", "quot", "apos");
+
+    private static volatile boolean builderPooling = true;
+
+    private static volatile boolean grammarCaching = true;
 
     private XmlDocumentReader() {
     }
 
+    /**
+     * Activates or deactivates the reuse of document builders (one per thread and validation mode)
+     * for all parse methods. If deactivated, a new document builder is created for every parse call.
+     * The pooling is active by default.
+     *
+     * @param pooling true to reuse the document builders
+     */
+    public static void setBuilderPooling(boolean pooling) {
+        builderPooling = pooling;
+    }
+
+    public static boolean isBuilderPooling() {
+        return builderPooling;
+    }
+
+    /**
+     * Activates or deactivates the shared grammar pool for validating parses. If active,
+     * the MathML3 DTD (including all entity sets) is parsed only once and the compiled grammar
+     * is reused by all validating parses of all threads. If deactivated, the DTD will be
+     * parsed again for every validating parse. Documents with named entity references, e.g.,
+     * {@code &sum;}, are always parsed without the cached grammar, because the cached grammar
+     * does not provide the entity declarations. The grammar caching is active by default,
+     * but requires Xerces (xercesImpl) on the classpath.
+     *
+     * @param caching true to reuse the compiled grammars
+     */
+    public static void setGrammarCaching(boolean caching) {
+        grammarCaching = caching;
+    }
+
+    /**
+     * @return true if the grammar caching is active and Xerces is available
+     */
+    public static boolean isGrammarCaching() {
+        return grammarCaching && GRAMMAR_POOL_AVAILABLE;
+    }
+
+    private static boolean isClassPresent(String className) {
+        try {
+            Class.forName(className, false, XmlDocumentReader.class.getClassLoader());
+            return true;
+        } catch (ClassNotFoundException | LinkageError e) {
+            LOG.info("{} is not available, validating parses will not cache the grammars "
+                    + "(add xerces:xercesImpl to the classpath).", className);
+            return false;
+        }
+    }
+
+    /**
+     * Returns a document builder for the current thread. If the builder pooling is active,
+     * the builder is reused and must not be passed to other threads.
+     *
+     * @param validation validating or non-validating builder
+     * @param caching    use the shared grammar pool (only for validating builders)
+     * @return document builder ready to parse
+     */
+    private static DocumentBuilder getBuilder(boolean validation, boolean caching) {
+        caching = validation && caching;
+        if (!builderPooling) {
+            if (caching) {
+                return getGrammarCachingValidatingDocBuilder();
+            }
+            return validation ? getDefaultValidatingDocBuilder() : getDefaultNoValidatingDocBuilder();
+        }
+        DocumentBuilder db;
+        if (caching) {
+            db = CACHING_VALIDATING_BUILDERS.get();
+        } else {
+            db = validation ? VALIDATING_BUILDERS.get() : NO_VALIDATING_BUILDERS.get();
+        }
+        // reset() also drops the error handler and entity resolver
+        db.reset();
+        db.setErrorHandler(validation ? SEVERE_HANDLER : NOTIFY_HANDLER);
+        db.setEntityResolver(ENTITY_RESOLVER);
+        return db;
+    }
+
+    /**
+     * A cached grammar does not contain the entity declarations of the DTD, since Xerces
+     * skips the external DTD subset once the grammar is cached. Documents with named entity
+     * references (besides the predefined XML entities) must be parsed without the grammar pool.
+     *
+     * @param xml document
+     * @return true if the grammar pool can be used for the document
+     */
+    private static boolean isGrammarCachable(String xml) {
+        if (!isGrammarCaching()) {
+            return false;
+        }
+        Matcher m = NAMED_ENTITY_PATTERN.matcher(xml);
+        while (m.find()) {
+            if (!PREDEFINED_ENTITIES.contains(m.group(1))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Creates a new empty document.
+     *
+     * @return new empty document
+     */
+    public static Document newDocument() {
+        return getBuilder(false, false).newDocument();
+    }
+
     private static DocumentBuilderFactory getDocumentBuilderFactory() throws ParserConfigurationException {
         return getStandardDocumentBuilderFactory(true);
     }
@@ -105,12 +248,7 @@ public class XmlDocumentReader {
 
         InputSource src = stringToSource(xml);
 
-        if (validation) {
-            return XmlDocumentReader.getDefaultValidatingDocBuilder().parse(src);
-        } else {
-            return XmlDocumentReader.getDefaultNoValidatingDocBuilder().parse(src);
-//            return NoValidationBuilder.parse(src);
-        }
+        return getBuilder(validation, validation && isGrammarCachable(xml)).parse(src);
     }
 
     /**
@@ -151,15 +289,15 @@ public class XmlDocumentReader {
      */
     public static Document parse(File file, boolean validation) throws IOException, SAXException, IllegalArgumentException {
         if (validation) {
+            String str = isGrammarCaching() ? readFile(file) : null;
             try {
-                return XmlDocumentReader.getDefaultValidatingDocBuilder().parse(file);
+                return getBuilder(true, str != null && isGrammarCachable(str)).parse(file);
             } catch (SAXException saxe) {
                 LOG.debug("Parsing exception occur. It's most likely a wrong header. Try to fixing it...");
-                String str = new String(Files.readAllBytes(file.toPath()), Charsets.UTF_8);
-                return parse(str, validation);
+                return parse(str != null ? str : readFile(file), validation);
             }
         } else {
-            return XmlDocumentReader.getDefaultNoValidatingDocBuilder().parse(file);
+            return getBuilder(false, false).parse(file);
         }
     }
 
@@ -193,6 +331,10 @@ public class XmlDocumentReader {
         return doc.getDocumentElement();
     }
 
+    private static String readFile(File file) throws IOException {
+        return new String(Files.readAllBytes(file.toPath()), Charsets.UTF_8);
+    }
+
     /**
      * Convert a string to an InputSource object
      *
@@ -227,6 +369,63 @@ public class XmlDocumentReader {
         }
     }
 
+    /**
+     * Creates a validating document builder that shares the compiled grammars
+     * with all other builders created by this method.
+     *
+     * @return validating document builder with the shared grammar pool
+     */
+    private static DocumentBuilder getGrammarCachingValidatingDocBuilder() {
+        try {
+            DocumentBuilder db = getGrammarCachingFactory(GrammarPoolHolder.POOL).newDocumentBuilder();
+            db.setErrorHandler(SEVERE_HANDLER);
+            db.setEntityResolver(ENTITY_RESOLVER);
+            return db;
+        } catch (ParserConfigurationException e) {
+            throw new RuntimeException("Cannot create grammar caching DocumentBuilder. " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * @param pool the Xerces grammar pool, it is passed as an object so this class
+     *             can be loaded without Xerces
+     */
+    private static DocumentBuilderFactory getGrammarCachingFactory(Object pool) {
+        DocumentBuilderFactory dbf = getStandardDocumentBuilderFactory(true);
+        try {
+            dbf.setAttribute(GRAMMAR_POOL_PROPERTY, pool);
+        } catch (IllegalArgumentException iae) {
+            // the factory is not Xerces, e.g., the JDK internal implementation
+            LOG.warn("The DocumentBuilderFactory {} does not support grammar pools. Grammars will not be cached.",
+                    dbf.getClass().getName());
+        }
+        return dbf;
+    }
+
+    /**
+     * Lazy holder of the shared grammar pool. The pool is preloaded with the MathML3 DTD
+     * by parsing an empty math element with the same header that {@link MathDoc#fixingHeaderAndNS(String)}
+     * adds, so the cached grammar matches exactly the grammar description of later parses.
+     * The Xerces grammar pool is synchronized and can be shared by all threads.
+     * This is the only class that links against Xerces, it is loaded only if Xerces is available.
+     */
+    private static final class GrammarPoolHolder {
+        private static final Object POOL = createGrammarPool();
+
+        private static Object createGrammarPool() {
+            XMLGrammarPool pool = new XMLGrammarPoolImpl();
+            try {
+                DocumentBuilder db = getGrammarCachingFactory(pool).newDocumentBuilder();
+                db.setErrorHandler(SEVERE_HANDLER);
+                db.setEntityResolver(ENTITY_RESOLVER);
+                db.parse(stringToSource(MathDoc.fixingHeaderAndNS("<math xmlns=\"" + XMLHelper.NS_MATHML + "\"/>")));
+            } catch (ParserConfigurationException | SAXException | IOException e) {
+                LOG.warn("Cannot preload the MathML grammar. It will be cached by the first validating parse.", e);
+            }
+            return pool;
+        }
+    }
+
     /**
      * This method creates a DocumentBuilderFactory that we will always need.
      *
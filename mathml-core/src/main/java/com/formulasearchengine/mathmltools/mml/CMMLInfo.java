@@ -5,6 +5,7 @@ import com.formulasearchengine.mathmltools.querygenerator.FirstXQueryGenerator;
 import com.formulasearchengine.mathmltools.querygenerator.QVarXQueryGenerator;
 import com.formulasearchengine.mathmltools.querygenerator.XQueryGenerator;
 import com.formulasearchengine.mathmltools.xml.NonWhitespaceNodeList;
+import com.formulasearchengine.mathmltools.xml.XPathRegistry;
 import com.formulasearchengine.mathmltools.xml.XmlNamespaceTranslator;
 import com.google.common.collect.HashMultiset;
 import com.google.common.collect.Multiset;
@@ -20,7 +21,6 @@ import org.w3c.dom.NodeList;
 
 import javax.xml.parsers.ParserConfigurationException;
 import javax.xml.transform.TransformerException;
-import javax.xml.xpath.XPath;
 import javax.xml.xpath.XPathConstants;
 import javax.xml.xpath.XPathExpression;
 import javax.xml.xpath.XPathExpressionException;
@@ -254,10 +254,17 @@ public class CMMLInfo extends CMMLInfoBase implements Document {
         }
     }
 
+    /**
+     * Evaluates the query directly on the DOM of this formula and returns the
+     * depth of the match with the lowest depth.
+     *
+     * @param query compiled XQuery, e.g., {@link #getXQuery()} of another formula
+     * @return depth of the best match or null if there is no match
+     */
     public final Integer getDepth(XQueryExecutable query) {
         Document doc = null;
         try {
-            doc = XMLHelper.runXQuery(query, toString());
+            doc = XMLHelper.runXQuery(query, cmmlDoc);
         } catch (final SaxonApiException | ParserConfigurationException e) {
             LOG.error("Problem during document preparation for depth processing", e);
             return null;
@@ -285,8 +292,7 @@ public class CMMLInfo extends CMMLInfoBase implements Document {
     public final Multiset<String> getElements() {
         try {
             Multiset<String> list = HashMultiset.create();
-            XPath xpath = XMLHelper.namespaceAwareXpath("m", NS_MATHML);
-            XPathExpression xEquation = xpath.compile("*//m:ci|*//m:co|*//m:cn");
+            XPathExpression xEquation = XPathRegistry.mathml("*//m:ci|*//m:co|*//m:cn");
             NonWhitespaceNodeList identifiers = new NonWhitespaceNodeList((NodeList) xEquation.evaluate(cmmlDoc, XPathConstants.NODESET));
             for (Node identifier : identifiers) {
                 list.add(identifier.getTextContent().trim());
@@ -360,8 +366,7 @@ public class CMMLInfo extends CMMLInfoBase implements Document {
 
     public final boolean isEquation() throws XPathExpressionException {
         Node cmmlMain = XMLHelper.getMainElement(cmmlDoc);
-        XPath xpath = XMLHelper.namespaceAwareXpath("m", NS_MATHML);
-        XPathExpression xEquation = xpath.compile("./m:apply/*");
+        XPathExpression xEquation = XPathRegistry.mathml("./m:apply/*");
 
         NonWhitespaceNodeList elementsB = new NonWhitespaceNodeList(XMLHelper.getElementsB(cmmlMain, xEquation));
         if (elementsB.getLength() > 0) {
@@ -371,10 +376,16 @@ public class CMMLInfo extends CMMLInfoBase implements Document {
         return false;
     }
 
+    /**
+     * Evaluates the query directly on the DOM of this formula.
+     *
+     * @param query compiled XQuery, e.g., {@link #getXQuery()} of another formula
+     * @return true if the query matches, null if the query cannot be evaluated
+     */
     public final Boolean isMatch(XQueryExecutable query) {
         Document doc = null;
         try {
-            doc = XMLHelper.runXQuery(query, toString());
+            doc = XMLHelper.runXQuery(query, cmmlDoc);
             final NodeList elementsB = doc.getElementsByTagName("p");
             return elementsB.getLength() != 0;
         } catch (final SaxonApiException | ParserConfigurationException e) {
@@ -1,6 +1,5 @@
 package com.formulasearchengine.mathmltools.mml;
 
-import static com.formulasearchengine.mathmltools.helper.XMLHelper.NS_MATHML;
 import static com.formulasearchengine.mathmltools.helper.XMLHelper.getElementsB;
 
 import java.io.File;
@@ -11,18 +10,23 @@ import java.util.Collections;
 import java.util.List;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
+import java.util.stream.Collectors;
 import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 import com.formulasearchengine.mathmltools.helper.XMLHelper;
 import com.formulasearchengine.mathmltools.io.XmlDocumentReader;
 import com.formulasearchengine.mathmltools.io.XmlDocumentWriter;
 import com.formulasearchengine.mathmltools.utils.mml.CSymbol;
 import com.formulasearchengine.mathmltools.xml.PartialLocalEntityResolver;
+import com.formulasearchengine.mathmltools.xml.XPathRegistry;
 
 import javax.xml.transform.TransformerException;
+import javax.xml.transform.dom.DOMSource;
 import javax.xml.transform.stream.StreamSource;
+import javax.xml.validation.Schema;
 import javax.xml.validation.SchemaFactory;
-import javax.xml.xpath.XPath;
+import javax.xml.validation.Validator;
 import javax.xml.xpath.XPathExpression;
 import javax.xml.xpath.XPathExpressionException;
 
@@ -36,15 +40,14 @@ import org.w3c.dom.NodeList;
 import org.w3c.dom.bootstrap.DOMImplementationRegistry;
 import org.w3c.dom.ls.DOMImplementationLS;
 import org.w3c.dom.ls.LSInput;
+import org.xml.sax.ErrorHandler;
 import org.xml.sax.InputSource;
 import org.xml.sax.SAXException;
-import org.xmlunit.builder.Input;
+import org.xml.sax.SAXParseException;
 import org.xmlunit.util.IterableNodeList;
-import org.xmlunit.validation.JAXPValidator;
 import org.xmlunit.validation.Languages;
 import org.xmlunit.validation.ValidationProblem;
-import org.xmlunit.validation.ValidationResult;
-import org.xmlunit.validation.Validator;
+import org.xmlunit.validation.ValidationProblem.ProblemType;
 
 public class MathDoc {
     private static final Logger log = LogManager.getLogger("Math");
@@ -75,7 +78,13 @@ public class MathDoc {
 
     private static final String MATHML3_XSD = "https://www.w3.org/Math/XMLSchema/mathml3/mathml3.xsd";
     private static final String APPLICATION_X_TEX = "application/x-tex";
-    private static Validator v;
+
+    /**
+     * Validators are not thread-safe, hence every thread gets its own validator
+     * of the shared compiled schema.
+     */
+    private static final ThreadLocal<Validator> XSD_VALIDATORS =
+            ThreadLocal.withInitial(() -> getXsdSchema().newValidator());
 
     private List<CSymbol> cSymbols = null;
     private List<CIdentifier> cIdentifiers = null;
@@ -187,18 +196,20 @@ public class MathDoc {
         return input;
     }
 
+    /**
+     * Returns the compiled MathML3 schema (including all included schemas).
+     * The schema is compiled only once and is thread-safe.
+     *
+     * @return compiled MathML3 schema
+     */
+    public static Schema getXsdSchema() {
+        return SchemaHolder.SCHEMA;
+    }
+
     private static Validator getXsdValidator() {
-        if (v == null) {
-            SchemaInput schemaInput = new SchemaInput().invoke();
-            SchemaFactory schemaFactory = schemaInput.getSchemaFactory();
-            InputSource inputSource = schemaInput.getInputSource();
-            v = new JAXPValidator(Languages.W3C_XML_SCHEMA_NS_URI, schemaFactory);
-            final StreamSource streamSource = new StreamSource(inputSource.getByteStream());
-            streamSource.setPublicId(inputSource.getPublicId());
-            streamSource.setSystemId(inputSource.getSystemId());
-            v.setSchemaSource(streamSource);
-        }
-        return v;
+        Validator validator = XSD_VALIDATORS.get();
+        validator.reset();
+        return validator;
     }
 
     /**
@@ -226,13 +237,43 @@ public class MathDoc {
     }
 
     Iterable<ValidationProblem> getValidationProblems() {
-        ValidationResult result = getValidationResult();
-        return result.getProblems();
+        return validate();
+    }
+
+    /**
+     * Validates this document against the MathML3 schema.
+     *
+     * @return the validation problems, empty if the document is valid
+     */
+    public List<ValidationProblem> validate() {
+        ProblemCollector collector = new ProblemCollector();
+        Validator validator = getXsdValidator();
+        validator.setErrorHandler(collector);
+        try {
+            validator.validate(new DOMSource(dom));
+        } catch (SAXException e) {
+            // fatal errors are reported to the collector before they are thrown
+            if (!collector.reported(e)) {
+                collector.problems.add(new ValidationProblem(
+                        e.getMessage(), ValidationProblem.UNKNOWN, ValidationProblem.UNKNOWN, ProblemType.ERROR));
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Cannot validate document. " + e.getMessage(), e);
+        }
+        return collector.problems;
     }
 
-    private ValidationResult getValidationResult() {
-        Validator v = getXsdValidator();
-        return v.validateInstance(Input.fromDocument(dom).build());
+    /**
+     * Validates all documents in parallel against the MathML3 schema. Every thread uses
+     * its own validator of the shared compiled schema. The documents must be distinct objects.
+     *
+     * @param docs documents to validate
+     * @return the validation problems per document, in the order of the given documents
+     */
+    public static List<List<ValidationProblem>> validate(Iterable<MathDoc> docs) {
+        return StreamSupport.stream(docs.spliterator(), true)
+                .map(doc -> doc.validate())
+                .collect(Collectors.toList());
     }
 
     @Override
@@ -281,9 +322,8 @@ public class MathDoc {
     }
 
     private IterableNodeList getXNodes(String xPath) {
-        XPath xpath = XMLHelper.namespaceAwareXpath("m", NS_MATHML);
         try {
-            final XPathExpression pattern = xpath.compile(xPath);
+            final XPathExpression pattern = XPathRegistry.mathml(xPath);
             final NodeList elements = getElementsB(dom, pattern);
             return new IterableNodeList(elements);
         } catch (XPathExpressionException e) {
@@ -351,6 +391,55 @@ public class MathDoc {
         }
     }
 
+    private static final class SchemaHolder {
+        private static final Schema SCHEMA = compileSchema();
+
+        private static Schema compileSchema() {
+            SchemaInput schemaInput = new SchemaInput().invoke();
+            InputSource inputSource = schemaInput.getInputSource();
+            final StreamSource streamSource = new StreamSource(inputSource.getByteStream());
+            streamSource.setPublicId(inputSource.getPublicId());
+            streamSource.setSystemId(inputSource.getSystemId());
+            try {
+                return schemaInput.getSchemaFactory().newSchema(streamSource);
+            } catch (SAXException e) {
+                throw new RuntimeException("Cannot compile MathML3 schema. " + e.getMessage(), e);
+            }
+        }
+    }
+
+    /**
+     * Collects all warnings and errors of a single validation.
+     */
+    private static class ProblemCollector implements ErrorHandler {
+        private final List<ValidationProblem> problems = new ArrayList<>();
+        private SAXParseException fatal;
+
+        @Override
+        public void warning(SAXParseException e) {
+            add(e, ProblemType.WARNING);
+        }
+
+        @Override
+        public void error(SAXParseException e) {
+            add(e, ProblemType.ERROR);
+        }
+
+        @Override
+        public void fatalError(SAXParseException e) {
+            fatal = e;
+            add(e, ProblemType.ERROR);
+        }
+
+        boolean reported(SAXException e) {
+            return e == fatal;
+        }
+
+        private void add(SAXParseException e, ProblemType type) {
+            problems.add(new ValidationProblem(e.getMessage(), e.getLineNumber(), e.getColumnNumber(), type));
+        }
+    }
+
     private static class SchemaInput {
         private SchemaFactory schemaFactory;
         private InputSource inputSource;
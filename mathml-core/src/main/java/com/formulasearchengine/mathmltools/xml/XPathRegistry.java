@@ -0,0 +1,98 @@
+package com.formulasearchengine.mathmltools.xml;
+
+import com.formulasearchengine.mathmltools.helper.XMLHelper;
+
+import javax.xml.xpath.XPath;
+import javax.xml.xpath.XPathExpression;
+import javax.xml.xpath.XPathExpressionException;
+import javax.xml.xpath.XPathFactory;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Registry of compiled XPath expressions.
+ * <p>
+ * Neither {@link XPath} nor {@link XPathExpression} are thread-safe. Therefore,
+ * every thread has its own registry with its own XPath instance and compiled
+ * expressions. An expression is compiled only once per thread and reused for
+ * all subsequent calls. The number of expressions per thread is limited, the
+ * least recently used expression will be dropped first.
+ * <p>
+ * The returned expressions must only be evaluated by the calling thread.
+ */
+public final class XPathRegistry {
+
+    /**
+     * Maximum number of compiled expressions per thread and namespace context.
+     */
+    private static final int MAX_EXPRESSIONS = 256;
+
+    /**
+     * Expressions with the prefix 'm' for the MathML namespace.
+     */
+    private static final ThreadLocal<XPathRegistry> MATHML = ThreadLocal.withInitial(
+            () -> new XPathRegistry(XMLHelper.namespaceAwareXpath("m", XMLHelper.NS_MATHML))
+    );
+
+    /**
+     * Expressions without namespace context.
+     */
+    private static final ThreadLocal<XPathRegistry> PLAIN = ThreadLocal.withInitial(
+            () -> new XPathRegistry(XPathFactory.newInstance().newXPath())
+    );
+
+    private final XPath xpath;
+
+    private final Map<String, XPathExpression> expressions;
+
+    private XPathRegistry(XPath xpath) {
+        this.xpath = xpath;
+        this.expressions = new LinkedHashMap<String, XPathExpression>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, XPathExpression> eldest) {
+                return size() > MAX_EXPRESSIONS;
+            }
+        };
+    }
+
+    private XPathExpression get(String expression) throws XPathExpressionException {
+        XPathExpression compiled = expressions.get(expression);
+        if (compiled == null) {
+            compiled = xpath.compile(expression);
+            expressions.put(expression, compiled);
+        }
+        return compiled;
+    }
+
+    /**
+     * Returns the compiled expression where the prefix 'm' is bound to the MathML namespace.
+     *
+     * @param expression XPath expression, e.g., "//m:ci"
+     * @return compiled expression, only valid for the calling thread
+     * @throws XPathExpressionException if the expression cannot be compiled
+     */
+    public static XPathExpression mathml(String expression) throws XPathExpressionException {
+        return MATHML.get().get(expression);
+    }
+
+    /**
+     * Returns the compiled expression without any namespace context.
+     *
+     * @param expression XPath expression, e.g., "//semantics"
+     * @return compiled expression, only valid for the calling thread
+     * @throws XPathExpressionException if the expression cannot be compiled
+     */
+    public static XPathExpression plain(String expression) throws XPathExpressionException {
+        return PLAIN.get().get(expression);
+    }
+
+    /**
+     * Returns the XPath instance of the calling thread without any namespace context.
+     * Use it to compile expressions that should not be cached.
+     *
+     * @return XPath instance, only valid for the calling thread
+     */
+    public static XPath plainXPath() {
+        return PLAIN.get().xpath;
+    }
+}
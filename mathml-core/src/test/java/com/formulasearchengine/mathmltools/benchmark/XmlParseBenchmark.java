@@ -0,0 +1,82 @@
+package com.formulasearchengine.mathmltools.benchmark;
+
+import com.formulasearchengine.mathmltools.io.XmlDocumentReader;
+import org.apache.commons.io.IOUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.w3c.dom.Document;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parse throughput of {@link XmlDocumentReader#parse(String, boolean)} with pooled
+ * (one per thread) and freshly created document builders, and for validating parses
+ * with and without the shared grammar pool. The main method runs the
+ * benchmark with 1, 2, 4, ... threads up to the number of available processors.
+ * <br/>
+ * Run via the main method or {@code java -cp <test-classpath> org.openjdk.jmh.Main XmlParseBenchmark -t <threads>}.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class XmlParseBenchmark {
+
+    private static final String SAMPLE = "com/formulasearchengine/mathmltools/mml/tests/Emc2.mml";
+
+    @Param({"true", "false"})
+    private boolean pooling;
+
+    @Param({"false", "true"})
+    private boolean validation;
+
+    @Param({"true", "false"})
+    private boolean grammarCaching;
+
+    private String mml;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        mml = IOUtils.toString(
+                XmlParseBenchmark.class.getClassLoader().getResourceAsStream(SAMPLE), "UTF-8");
+        XmlDocumentReader.setBuilderPooling(pooling);
+        XmlDocumentReader.setGrammarCaching(grammarCaching);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        XmlDocumentReader.setBuilderPooling(true);
+        XmlDocumentReader.setGrammarCaching(true);
+    }
+
+    @Benchmark
+    public Document parse() throws Exception {
+        return XmlDocumentReader.parse(mml, validation);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        int max = Runtime.getRuntime().availableProcessors();
+        for (int threads = 1; threads <= max; threads *= 2) {
+            new Runner(new OptionsBuilder()
+                    .include(XmlParseBenchmark.class.getSimpleName())
+                    .threads(threads)
+                    .build()).run();
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package com.formulasearchengine.mathmltools.benchmark;
+
+import com.formulasearchengine.mathmltools.helper.XMLHelper;
+import com.formulasearchengine.mathmltools.io.XmlDocumentReader;
+import org.apache.commons.io.IOUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.w3c.dom.Document;
+
+import javax.xml.transform.Transformer;
+import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.dom.DOMResult;
+import javax.xml.transform.dom.DOMSource;
+import javax.xml.transform.stream.StreamSource;
+import java.io.InputStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-call latency of the Robert Miner XSL transformation (strict content MathML),
+ * once with a stylesheet compilation per call and once with the cached templates of
+ * {@link XMLHelper#xslTransform}.
+ * <br/>
+ * Run via the main method or {@code java -cp <test-classpath> org.openjdk.jmh.Main XslTransformBenchmark}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class XslTransformBenchmark {
+
+    private static final String XSL = "com/formulasearchengine/mathmltools/mml/RobertMinerC2s.xsl";
+
+    private static final String SAMPLE = "com/formulasearchengine/mathmltools/mml/tests/Emc2.mml";
+
+    private Document doc;
+
+    @Setup
+    public void setup() throws Exception {
+        String mml = IOUtils.toString(
+                XslTransformBenchmark.class.getClassLoader().getResourceAsStream(SAMPLE), "UTF-8");
+        doc = XmlDocumentReader.parse(mml, false);
+    }
+
+    /**
+     * The former implementation: compile the stylesheet for every transformation.
+     */
+    @Benchmark
+    public Document compilePerCall() throws Exception {
+        System.setProperty("javax.xml.transform.TransformerFactory", "net.sf.saxon.TransformerFactoryImpl");
+        try (InputStream is = XslTransformBenchmark.class.getClassLoader().getResourceAsStream(XSL)) {
+            Transformer transformer = TransformerFactory.newInstance().newTransformer(new StreamSource(is));
+            Document out = XMLHelper.getNewDocument();
+            transformer.transform(new DOMSource(doc), new DOMResult(out));
+            return out;
+        }
+    }
+
+    @Benchmark
+    public Document cachedTemplates() throws Exception {
+        return XMLHelper.xslTransform(doc, XSL);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(XslTransformBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
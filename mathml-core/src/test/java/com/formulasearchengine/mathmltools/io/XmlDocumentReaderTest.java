@@ -52,6 +52,43 @@ class XmlDocumentReaderTest {
         assertNotNull(XmlDocumentReader.parse("<simple />", false));
     }
 
+    @Test
+    public void pooledBuilderAfterFailureTest() throws IOException, SAXException {
+        assertTrue(XmlDocumentReader.isBuilderPooling());
+        assertThrows(SAXException.class, () -> XmlDocumentReader.parse("<open><open2></open2>", false));
+        Document first = XmlDocumentReader.parse("<simple />", false);
+        Document second = XmlDocumentReader.parse("<other />", false);
+        assertNotSame(first, second);
+        assertEquals("simple", first.getDocumentElement().getNodeName());
+        assertEquals("other", second.getDocumentElement().getNodeName());
+        assertNotNull(XmlDocumentReader.parse(MathTest.SIMPLE_WITH_DOCTYPE));
+    }
+
+    @Test
+    public void unpooledBuilderTest() throws IOException, SAXException {
+        XmlDocumentReader.setBuilderPooling(false);
+        try {
+            assertNotNull(XmlDocumentReader.parse(MathTest.SIMPLE_WITH_DOCTYPE));
+            assertNotNull(XmlDocumentReader.parse("<simple />", false));
+        } finally {
+            XmlDocumentReader.setBuilderPooling(true);
+        }
+    }
+
+    @ParameterizedTest
+    @MethodSource("mmlResources")
+    void grammarCachingTest(Path p) throws IOException, SAXException {
+        assertTrue(XmlDocumentReader.isGrammarCaching());
+        Document cached = XmlDocumentReader.parse(p, true);
+        XmlDocumentReader.setGrammarCaching(false);
+        try {
+            Document uncached = XmlDocumentReader.parse(p, true);
+            assertTrue(cached.getDocumentElement().isEqualNode(uncached.getDocumentElement()));
+        } finally {
+            XmlDocumentReader.setGrammarCaching(true);
+        }
+    }
+
     @ParameterizedTest
     @MethodSource("mmlResources")
     void validateMMLPaths(Path p) {
@@ -1,6 +1,7 @@
 package com.formulasearchengine.mathmltools.mml;
 
 import com.formulasearchengine.mathmltools.helper.XMLHelper;
+import com.formulasearchengine.mathmltools.io.XmlDocumentReader;
 import com.google.common.collect.ImmutableMultiset;
 import com.google.common.collect.Multiset;
 import net.sf.saxon.s9api.XQueryExecutable;
@@ -22,6 +23,7 @@ import static org.hamcrest.Matchers.equalToIgnoringWhiteSpace;
 import static org.hamcrest.Matchers.greaterThan;
 import static org.hamcrest.core.IsNull.notNullValue;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.xmlunit.matchers.CompareMatcher.isIdenticalTo;
 
@@ -283,6 +285,41 @@ public class CMMLInfoTest {
         assertThat(res1, isIdenticalTo(doc).ignoreWhitespace());
     }
 
+    @Test
+    public final void testCompiledXQueryIsShared() throws Exception {
+        final String ciI = getFileContents(MML_TEST_DIR + "I.mml");
+        final String sampleMML = getFileContents(MML_TEST_DIR + "invalidIntervalElement.xml");
+        final String res1 = getFileContents(MML_TEST_DIR + "res1.xml");
+        final String queryString = new CMMLInfo(ciI).getXQueryString();
+        final XQueryExecutable xQuery = XMLHelper.compileXQuerySting(queryString);
+        assertSame(xQuery, XMLHelper.compileXQuerySting(queryString));
+        Document doc = XMLHelper.runXQuery(xQuery, XmlDocumentReader.parse(sampleMML, false));
+        assertThat(res1, isIdenticalTo(doc).ignoreWhitespace());
+    }
+
+    @Test
+    public final void testXQueryOnDomEqualsText() throws Exception {
+        final String[] files = {"I.mml", "Emc2.mml", "invalidIntervalElement.xml", "Van_der_Waerden.mml", "sample.mml"};
+        for (String queryFile : files) {
+            final String queryMML = getFileContents(MML_TEST_DIR + queryFile);
+            final XQueryExecutable[] queries = {
+                    new CMMLInfo(queryMML).getXQuery(),
+                    new CMMLInfo(queryMML).toStrictCmml().abstract2CDs().getXQuery()
+            };
+            for (String file : files) {
+                CMMLInfo cmml = new CMMLInfo(getFileContents(MML_TEST_DIR + file)).toStrictCmml();
+                for (XQueryExecutable query : queries) {
+                    if (query == null) {
+                        continue;
+                    }
+                    Document viaText = XMLHelper.runXQuery(query, cmml.toString());
+                    Document viaDom = XMLHelper.runXQuery(query, cmml.getDoc());
+                    assertThat(viaDom, isIdenticalTo(viaText).ignoreWhitespace());
+                }
+            }
+        }
+    }
+
     @Test
     public final void testGetDepth() throws Exception {
         XQueryExecutable iQuery = getQueryI();
@@ -1,11 +1,22 @@
 package com.formulasearchengine.mathmltools.mml;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.formulasearchengine.mathmltools.io.XmlDocumentReader;
 import org.apache.xerces.xs.XSImplementation;
 import org.apache.xerces.xs.XSLoader;
 import org.apache.xerces.xs.XSModel;
 import org.junit.jupiter.api.Test;
 import org.w3c.dom.bootstrap.DOMImplementationRegistry;
+import org.xmlunit.validation.ValidationProblem;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
 
 class MathDocTest {
 
@@ -17,4 +28,41 @@ class MathDocTest {
         XSModel xsd = loader.load(MathDoc.getMathMLSchema());
         assertEquals(2,xsd.getNamespaces().getLength());
     }
+
+    @Test
+    void getXsdSchema() {
+        assertSame(MathDoc.getXsdSchema(), MathDoc.getXsdSchema());
+    }
+
+    @Test
+    void validateInvalid() throws Exception {
+        MathDoc invalid = new MathDoc(XmlDocumentReader.parse(
+                "<math xmlns=\"http://www.w3.org/1998/Math/MathML\"><foo/></math>", false));
+        List<ValidationProblem> problems = invalid.validate();
+        assertFalse(problems.isEmpty());
+        assertEquals(ValidationProblem.ProblemType.ERROR, problems.get(0).getType());
+    }
+
+    @Test
+    void validateBatch() throws Exception {
+        final String valid = MathTest.getFileContents(MathTest.TEST_DIR + "Emc2.mml");
+        final String invalid = "<math xmlns=\"http://www.w3.org/1998/Math/MathML\"><foo/></math>";
+        List<MathDoc> docs = new ArrayList<>();
+        for (int i = 0; i < 40; i++) {
+            docs.add(i % 4 == 0
+                    ? new MathDoc(XmlDocumentReader.parse(invalid, false))
+                    : new MathDoc(valid));
+        }
+        List<List<ValidationProblem>> results = MathDoc.validate(docs);
+        assertEquals(docs.size(), results.size());
+        for (int i = 0; i < docs.size(); i++) {
+            assertEquals(i % 4 == 0, !results.get(i).isEmpty());
+            assertEquals(toStrings(docs.get(i).validate()), toStrings(results.get(i)));
+        }
+        assertTrue(MathDoc.validate(Collections.emptyList()).isEmpty());
+    }
+
+    private static List<String> toStrings(List<ValidationProblem> problems) {
+        return problems.stream().map(ValidationProblem::toString).collect(Collectors.toList());
+    }
 }
@@ -0,0 +1,47 @@
+package com.formulasearchengine.mathmltools.xml;
+
+import com.formulasearchengine.mathmltools.io.XmlDocumentReader;
+import org.junit.jupiter.api.Test;
+import org.w3c.dom.Document;
+import org.w3c.dom.NodeList;
+
+import javax.xml.xpath.XPathConstants;
+import javax.xml.xpath.XPathExpression;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+public class XPathRegistryTest {
+
+    private static final String MML = "<math xmlns=\"http://www.w3.org/1998/Math/MathML\">"
+            + "<apply><plus/><ci>x</ci><ci>y</ci></apply></math>";
+
+    @Test
+    public void reuseCompiledExpressions() throws Exception {
+        assertSame(XPathRegistry.mathml("//m:ci"), XPathRegistry.mathml("//m:ci"));
+        assertSame(XPathRegistry.plain("//ci"), XPathRegistry.plain("//ci"));
+        assertNotSame(XPathRegistry.mathml("//m:ci"), XPathRegistry.plain("//m:ci"));
+    }
+
+    @Test
+    public void expressionsPerThread() throws Exception {
+        XPathExpression local = XPathRegistry.mathml("//m:ci");
+        XPathExpression other = CompletableFuture.supplyAsync(() -> {
+            try {
+                return XPathRegistry.mathml("//m:ci");
+            } catch (Exception e) {
+                throw new RuntimeException(e);
+            }
+        }).get();
+        assertNotSame(local, other);
+    }
+
+    @Test
+    public void evaluateMathMLNamespace() throws Exception {
+        Document doc = XmlDocumentReader.parse(MML, false);
+        NodeList identifiers = (NodeList) XPathRegistry.mathml("//m:ci").evaluate(doc, XPathConstants.NODESET);
+        assertEquals(2, identifiers.getLength());
+    }
+}
@@ -1,8 +1,10 @@
 package com.formulasearchengine.mathmltools.similarity;
 
 import com.formulasearchengine.mathmltools.mml.CMMLInfo;
+import com.formulasearchengine.mathmltools.similarity.distances.ted.TreeEditDistance;
 import com.formulasearchengine.mathmltools.similarity.node.MathNode;
 import com.formulasearchengine.mathmltools.similarity.node.MathNodeGenerator;
+import com.formulasearchengine.mathmltools.similarity.result.EditDistance;
 import com.formulasearchengine.mathmltools.similarity.result.Match;
 import com.formulasearchengine.mathmltools.similarity.result.SimilarityType;
 import com.formulasearchengine.mathmltools.similarity.util.MathNodeException;
@@ -86,6 +88,50 @@ public class MathPlag {
         return new SubTreeComparison(SimilarityType.similar).getSimilarities(refMathNode, compMathNode, true);
     }
 
+    /**
+     * Compare two MathML formulas by their tree edit distance (with unit costs), see
+     * {@link TreeEditDistance}. The formulas are compared as they are for the type
+     * identical and as abstract trees for the type similar.
+     *
+     * @param refMathML  Reference MathML string (must contain pMML and cMML)
+     * @param compMathML Comparison MathML string (must contain pMML and cMML)
+     * @param type       identical or similar comparison
+     * @return distance and normalized similarity of both formulas
+     */
+    public static EditDistance compareEditDistance(String refMathML, String compMathML, SimilarityType type)
+            throws MathNodeException {
+        // switch from a string > CMMLInfo document > (abstract) MathNode tree
+        MathNode refMathNode;
+        MathNode compMathNode;
+        try {
+            refMathNode = MathNodeGenerator.generateMathNode(new CMMLInfo(refMathML));
+        } catch (MathNodeException e) {
+            throw new MathNodeException("could not create math node for reference mathml: " + refMathML, e);
+        }
+        try {
+            compMathNode = MathNodeGenerator.generateMathNode(new CMMLInfo(compMathML));
+        } catch (MathNodeException e) {
+            throw new MathNodeException("could not create math node for comparison mathml: " + compMathML, e);
+        }
+        if (type == SimilarityType.similar) {
+            refMathNode.toAbstract();
+            compMathNode.toAbstract();
+        }
+        return TreeEditDistance.forCurrentThread().compare(
+                MathNodeGenerator.toCompact(refMathNode), MathNodeGenerator.toCompact(compMathNode), type);
+    }
+
+    /**
+     * Prepares a reference formula to be compared against many formulas, see
+     * {@link #compareOriginalFactors(String, String)} and {@link PreparedReference#score(java.util.stream.Stream)}.
+     *
+     * @param refMathML Reference MathML string (must contain pMML and cMML)
+     * @return prepared reference
+     */
+    public static PreparedReference prepareReference(String refMathML) {
+        return new PreparedReference(refMathML);
+    }
+
     /**
      * Compare two MathML formulas. The return value is a map of similarity factors like matching depth,
      * element coverage, indicator for structural or data match and if the comparison formula holds an
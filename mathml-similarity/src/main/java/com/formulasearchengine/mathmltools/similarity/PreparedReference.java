@@ -0,0 +1,116 @@
+package com.formulasearchengine.mathmltools.similarity;
+
+import com.formulasearchengine.mathmltools.mml.CMMLInfo;
+import com.google.common.collect.ImmutableMultiset;
+import com.google.common.collect.Multiset;
+import net.sf.saxon.s9api.XQueryExecutable;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import javax.xml.xpath.XPathExpressionException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * A reference formula prepared to be compared against many candidates, see
+ * {@link MathPlag#compareOriginalFactors(String, String)}. All work on the reference
+ * side (parsing, strict / abstract transformations, compiling the XQueries and
+ * collecting the elements) is done only once, when the object is created.
+ * <br/>
+ * The prepared reference is immutable and can be shared between threads.
+ */
+public class PreparedReference {
+
+    private static Logger logger = LogManager.getLogger(PreparedReference.class);
+
+    private final String refMathML;
+
+    /* query of the original reference, determines the depth */
+    private final XQueryExecutable depthQuery;
+
+    /* query of the strict reference with abstract content dictionaries */
+    private final XQueryExecutable structureQuery;
+
+    /* query of the strict reference with abstract data types */
+    private final XQueryExecutable dataQuery;
+
+    private final Multiset<String> elements;
+
+    /**
+     * Prepares the reference formula.
+     *
+     * @param refMathML Reference MathML string (must contain pMML and cMML)
+     */
+    public PreparedReference(String refMathML) {
+        this.refMathML = refMathML;
+        CMMLInfo refDoc = new CMMLInfo(refMathML);
+        this.depthQuery = refDoc.getXQuery();
+        this.elements = ImmutableMultiset.copyOf(refDoc.getElements());
+        this.structureQuery = refDoc.toStrictCmml().abstract2CDs().getXQuery();
+        this.dataQuery = new CMMLInfo(refMathML).toStrictCmml().abstract2DTs().getXQuery();
+    }
+
+    public String getRefMathML() {
+        return refMathML;
+    }
+
+    /**
+     * Compare the reference against a single formula. The result is the same as the one
+     * of {@link MathPlag#compareOriginalFactors(String, String)}.
+     *
+     * @param compMathML Comparison MathML string (must contain pMML and cMML)
+     * @return map of all found factors (depth, coverage, structureMatch, dataMatch, isEquation)
+     * @throws XPathExpressionException could hint towards a bug
+     */
+    public Map<String, Object> compare(String compMathML) throws XPathExpressionException {
+        try {
+            CMMLInfo compDoc = new CMMLInfo(compMathML);
+            // compute factors
+            final Integer depth = compDoc.getDepth(depthQuery);
+            final Double coverage = compDoc.getCoverage(elements);
+            Boolean formula = compDoc.isEquation(true);
+            // the strict transformation is done only once, the copy is used for the data types
+            CMMLInfo strictDoc = compDoc.toStrictCmml();
+            CMMLInfo strictDataDoc = new CMMLInfo(strictDoc);
+            Boolean structMatch = strictDoc.abstract2CDs().isMatch(structureQuery);
+            Boolean dataMatch = strictDataDoc.abstract2DTs().isMatch(dataQuery);
+
+            HashMap<String, Object> result = new HashMap<>();
+            result.put("depth", depth);
+            result.put("coverage", coverage);
+            result.put("structureMatch", structMatch);
+            result.put("dataMatch", dataMatch);
+            result.put("isEquation", formula);
+            return result;
+        } catch (Exception e) {
+            // log and throw in this case
+            logger.error(String.format("mathml comparison failed (refMathML: %s) (compMathML: %s)", refMathML, compMathML), e);
+            throw e;
+        }
+    }
+
+    /**
+     * Compare the reference against all candidates in parallel.
+     *
+     * @param candidates Comparison MathML strings (must contain pMML and cMML)
+     * @return factors for every candidate in the order of the given stream,
+     * null for candidates that could not be compared
+     */
+    public List<Map<String, Object>> score(Stream<String> candidates) {
+        return candidates.parallel()
+                .map(this::compareOrNull)
+                .collect(Collectors.toList());
+    }
+
+    private Map<String, Object> compareOrNull(String compMathML) {
+        try {
+            return compare(compMathML);
+        } catch (Exception e) {
+            // already logged
+            return null;
+        }
+    }
+}
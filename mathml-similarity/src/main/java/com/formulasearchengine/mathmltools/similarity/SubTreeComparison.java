@@ -1,19 +1,35 @@
 package com.formulasearchengine.mathmltools.similarity;
 
+import com.formulasearchengine.mathmltools.similarity.node.CompactMathNode;
 import com.formulasearchengine.mathmltools.similarity.node.MathNode;
+import com.formulasearchengine.mathmltools.similarity.node.SubTreeHashes;
 import com.formulasearchengine.mathmltools.similarity.result.Match;
 import com.formulasearchengine.mathmltools.similarity.result.SimilarityType;
 import com.google.common.collect.HashMultiset;
 
 import javax.validation.constraints.NotNull;
 import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.stream.Collectors;
 
 /**
  * Simplistic approach to find similar subtrees between two math expression trees.
  * <br/>
- * The algorithm will use {@link MathNode}s.
+ * The algorithm will use {@link MathNode}s. By default every node of the reference
+ * tree is recursively compared against every node of the comparison tree. In the
+ * hash-join mode the candidates are looked up via {@link SubTreeHashes} instead and
+ * only confirmed by a full tree comparison. Both modes return the same matches.
+ * <br/>
+ * A comparison does not change the trees, the matched nodes are only remembered during
+ * a single call. Hence, prepared trees (and subtree hashes) can be compared many times
+ * and concurrently. A comparison object has no state besides its configuration.
+ * <br/>
+ * Trees in the compact form ({@link CompactMathNode}) are compared without any
+ * allocation per step and the precomputed subtree hashes reject most candidates
+ * without a full tree comparison.
  *
  * @author Vincent Stange
  */
@@ -21,13 +37,26 @@ public class SubTreeComparison {
 
     private final SimilarityType type;
 
+    private final boolean hashJoin;
+
     /**
      * Constructor with {@link SimilarityType} declaration.
      *
      * @param type specifies the output declaration of matches, but has otherwise no effect on the comparison.
      */
     public SubTreeComparison(SimilarityType type) {
+        this(type, false);
+    }
+
+    /**
+     * Constructor with {@link SimilarityType} declaration and the search mode.
+     *
+     * @param type     specifies the output declaration of matches, but has otherwise no effect on the comparison.
+     * @param hashJoin true - find candidates via subtree hashes, false - recursive search
+     */
+    public SubTreeComparison(SimilarityType type, boolean hashJoin) {
         this.type = type;
+        this.hashJoin = hashJoin;
     }
 
     /**
@@ -40,26 +69,133 @@ public class SubTreeComparison {
      */
     @NotNull
     public List<Match> getSimilarities(MathNode refTree, MathNode compTree, boolean onlyOperators) {
+        if (hashJoin) {
+            boolean ignoreValues = refTree.isAbstractNode();
+            return getSimilarities(new SubTreeHashes(refTree, ignoreValues),
+                    new SubTreeHashes(compTree, ignoreValues), onlyOperators);
+        }
         List<Match> similarities = new ArrayList<>();
-        findSimilarities(refTree, compTree, similarities, false, onlyOperators);
+        findSimilarities(refTree, compTree, new MarkedNodes(compTree), similarities, false, onlyOperators);
         return similarities;
     }
 
+    /**
+     * Get a list of similarities between the reference and comparison tree in their
+     * compact form. The result is the same as of the recursive search on the original
+     * trees, the search mode has no effect. The trees are not changed, the marked nodes
+     * are only remembered during this call.
+     *
+     * @param refTree       Reference tree
+     * @param compTree      Comparison tree
+     * @param onlyOperators find similarities only between operations, leafs are not checked
+     * @return list of similarities, list can be empty but never null
+     */
+    @NotNull
+    public List<Match> getSimilarities(CompactMathNode refTree, CompactMathNode compTree, boolean onlyOperators) {
+        List<Match> similarities = new ArrayList<>();
+        // both bitsets are indexed by the pre-order index of the nodes of the comparison tree
+        int end = compTree.getIndex() + compTree.getSubtreeSize();
+        findSimilarities(refTree, compTree, new BitSet(end), new BitSet(end), similarities, false, onlyOperators);
+        return similarities;
+    }
+
+    /**
+     * Get a list of similarities between the reference and comparison tree via a hash join
+     * of their subtree hashes. The hashes can be computed once per tree and reused for
+     * multiple comparisons. The result is the same as of the recursive search.
+     *
+     * @param refHashes     subtree hashes of the reference MathNode tree
+     * @param compHashes    subtree hashes of the comparison MathNode tree
+     * @param onlyOperators find similarities only between operations, leafs are not checked
+     * @return list of similarities, list can be empty but never null
+     */
+    @NotNull
+    public List<Match> getSimilarities(SubTreeHashes refHashes, SubTreeHashes compHashes, boolean onlyOperators) {
+        if (refHashes.isIgnoreValues() != compHashes.isIgnoreValues()) {
+            throw new IllegalArgumentException("subtree hashes of reference and comparison tree are not compatible");
+        }
+        List<Match> similarities = new ArrayList<>();
+        BitSet marked = new BitSet(compHashes.size());
+        joinSimilarities(refHashes, 0, compHashes, marked, similarities, onlyOperators);
+        return similarities;
+    }
+
+    /**
+     * Recursive method that goes along every node of the reference tree in the same order
+     * as {@link #findSimilarities}, but looks up the candidates of the comparison tree by
+     * their subtree hash.
+     *
+     * @param refHashes     subtree hashes of the reference tree
+     * @param refIdx        pre-order index of the current reference node
+     * @param compHashes    subtree hashes of the comparison tree
+     * @param marked        marked nodes of the comparison tree by their pre-order index
+     * @param similarities  List of similarities, will be filled during process.
+     * @param onlyOperators Find similarities only between operations, no single identifier (end leafs) are checked
+     */
+    private void joinSimilarities(SubTreeHashes refHashes, int refIdx, SubTreeHashes compHashes, BitSet marked,
+                                  List<Match> similarities, boolean onlyOperators) {
+        MathNode refTree = refHashes.getNode(refIdx);
+        // candidates are in pre-order, the same order the recursive search visits them
+        for (int compIdx : compHashes.getNodesWithHash(refHashes.getHash(refIdx))) {
+            MathNode compTree = compHashes.getNode(compIdx);
+            if (isReachable(compHashes, compIdx, marked, onlyOperators) && isIdenticalTree(refTree, compTree)) {
+                // hit!
+                marked.set(compIdx);
+                similarities.add(new Match(refTree, compTree, type));
+                return;
+            }
+        }
+        // go deeper in the reference tree, children directly follow their parent in pre-order
+        for (int i = refIdx + 1; i < refHashes.size() && refHashes.getParent(i) >= refIdx; i++) {
+            if (refHashes.getParent(i) == refIdx && !(onlyOperators && refHashes.getNode(i).isLeaf())) {
+                joinSimilarities(refHashes, i, compHashes, marked, similarities, onlyOperators);
+            }
+        }
+    }
+
+    /**
+     * Would the recursive search visit this node of the comparison tree? The root is always
+     * visited, every other node only if neither itself nor one of its ancestors (except the root)
+     * is marked. Leafs are skipped if only operators are compared.
+     *
+     * @param compHashes    subtree hashes of the comparison tree
+     * @param compIdx       pre-order index of the node in the comparison tree
+     * @param marked        marked nodes of the comparison tree by their pre-order index
+     * @param onlyOperators find similarities only between operations
+     * @return true if the node can be matched
+     */
+    private boolean isReachable(SubTreeHashes compHashes, int compIdx, BitSet marked, boolean onlyOperators) {
+        if (compIdx == 0) {
+            return true;
+        }
+        if (onlyOperators && compHashes.getNode(compIdx).isLeaf()) {
+            return false;
+        }
+        for (int i = compIdx; i > 0; i = compHashes.getParent(i)) {
+            if (marked.get(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
     /**
      * Recursive method that goes along every node of the reference tree and tries to find
      * identical subtree with the comparison tree.
      *
      * @param refTree       Reference MathNode tree
      * @param comTree       Comparison MathNode tree
+     * @param marked        marked nodes of the comparison tree
      * @param similarities  List of similarities, will be filled during process.
      * @param holdRefTree   Hold the reference tree in position and only iterate over the comparison tree
      * @param onlyOperators Find similarities only between operations, no single identifier (end leafs) are checked
      * @return true - if the current aTree ad bTree are identical subtrees, false otherwise
      */
-    boolean findSimilarities(MathNode refTree, MathNode comTree, List<Match> similarities, boolean holdRefTree, boolean onlyOperators) {
+    boolean findSimilarities(MathNode refTree, MathNode comTree, MarkedNodes marked, List<Match> similarities,
+                             boolean holdRefTree, boolean onlyOperators) {
         if (isIdenticalTree(refTree, comTree)) {
             // hit!
-            comTree.setMarked();
+            marked.mark(comTree);
             similarities.add(new Match(refTree, comTree, type));
             return true;
         }
@@ -67,11 +203,11 @@ public class SubTreeComparison {
         for (MathNode compChild : comTree.getChildren()) {
             // don't look at leafs if it is already marked
             // or we only want to compare branching nodes
-            if (compChild.isMarked() || onlyOperators && compChild.isLeaf()) {
+            if (marked.isMarked(compChild) || onlyOperators && compChild.isLeaf()) {
                 continue;
             }
             // go deeper in the comp. tree but hold the ref tree
-            if (findSimilarities(refTree, compChild, similarities, true, onlyOperators)) {
+            if (findSimilarities(refTree, compChild, marked, similarities, true, onlyOperators)) {
                 return true;
             }
         }
@@ -82,7 +218,53 @@ public class SubTreeComparison {
                 if (onlyOperators && refChild.isLeaf()) {
                     continue;
                 }
-                findSimilarities(refChild, comTree, similarities, false, onlyOperators);
+                findSimilarities(refChild, comTree, marked, similarities, false, onlyOperators);
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Same as {@link #findSimilarities(MathNode, MathNode, MarkedNodes, List, boolean, boolean)}
+     * for the compact trees. The marked nodes are kept in a bitset instead of the nodes themselves.
+     *
+     * @param refTree       Reference tree
+     * @param comTree       Comparison tree
+     * @param marked        marked nodes of the comparison tree by their pre-order index
+     * @param used          scratch space of {@link #isIdenticalTree(CompactMathNode, CompactMathNode, BitSet)}
+     * @param similarities  List of similarities, will be filled during process.
+     * @param holdRefTree   Hold the reference tree in position and only iterate over the comparison tree
+     * @param onlyOperators Find similarities only between operations, no single identifier (end leafs) are checked
+     * @return true - if the current aTree ad bTree are identical subtrees, false otherwise
+     */
+    private boolean findSimilarities(CompactMathNode refTree, CompactMathNode comTree, BitSet marked, BitSet used,
+                                     List<Match> similarities, boolean holdRefTree, boolean onlyOperators) {
+        if (isIdenticalTree(refTree, comTree, used)) {
+            // hit!
+            marked.set(comTree.getIndex());
+            similarities.add(new Match(refTree, comTree, type));
+            return true;
+        }
+        // iterate the comparison tree over the current node from the ref tree
+        for (int i = 0; i < comTree.getChildCount(); i++) {
+            CompactMathNode compChild = comTree.getChild(i);
+            if (marked.get(compChild.getIndex()) || onlyOperators && compChild.isLeaf()) {
+                continue;
+            }
+            // go deeper in the comp. tree but hold the ref tree
+            if (findSimilarities(refTree, compChild, marked, used, similarities, true, onlyOperators)) {
+                return true;
+            }
+        }
+
+        if (!holdRefTree) {
+            // go deeper in the reference tree
+            for (int i = 0; i < refTree.getChildCount(); i++) {
+                CompactMathNode refChild = refTree.getChild(i);
+                if (onlyOperators && refChild.isLeaf()) {
+                    continue;
+                }
+                findSimilarities(refChild, comTree, marked, used, similarities, false, onlyOperators);
             }
         }
         return false;
@@ -97,20 +279,25 @@ public class SubTreeComparison {
      * @return true - if both trees are identical subtrees, false otherwise
      */
     boolean isIdenticalTree(MathNode aTree, MathNode bTree) {
+        // compare the roots before copying the children
+        if (!aTree.equals(bTree)) {
+            return false;
+        }
+        List<MathNode> aChildren = aTree.getChildren();
+        List<MathNode> bChildren = bTree.getChildren();
         // first check if they have the same number of children
-        if (aTree.equals(bTree) && aTree.getChildren().size() == bTree.getChildren().size()) {
+        if (aChildren.size() == bChildren.size()) {
             if (aTree.isOrderSensitive()) {
                 // all children order sensitive
-                for (int i = 0; i < aTree.getChildren().size(); i++) {
-                    if (!isIdenticalTree(aTree.getChildren().get(i), bTree.getChildren().get(i))) {
+                for (int i = 0; i < aChildren.size(); i++) {
+                    if (!isIdenticalTree(aChildren.get(i), bChildren.get(i))) {
                         return false;
                     }
                 }
             } else {
-                // order insensitive
-                List<MathNode> bChildren = new ArrayList<>(bTree.getChildren());
+                // order insensitive, bChildren is a copy already
                 OUTER:
-                for (MathNode aChild : aTree.getChildren()) {
+                for (MathNode aChild : aChildren) {
                     for (MathNode bChild : filterSameChildren(aChild, bChildren)) {
                         if (isIdenticalTree(aChild, bChild)) {
                             // found an identical child
@@ -127,6 +314,56 @@ public class SubTreeComparison {
         return false;
     }
 
+    /**
+     * Same as {@link #isIdenticalTree(MathNode, MathNode)} for the compact trees. Different
+     * subtree hashes reject a candidate without a full comparison.
+     *
+     * @param aTree first tree
+     * @param bTree second tree
+     * @param used  matched children of bTree by their pre-order index, the bits of the children of
+     *              bTree must be clear and are clear again when this method returns
+     * @return true - if both trees are identical subtrees, false otherwise
+     */
+    boolean isIdenticalTree(CompactMathNode aTree, CompactMathNode bTree, BitSet used) {
+        if (aTree.isIgnoreValues() == bTree.isIgnoreValues() && aTree.getSubtreeHash() != bTree.getSubtreeHash()) {
+            return false;
+        }
+        int size = aTree.getChildCount();
+        if (!aTree.equals(bTree) || size != bTree.getChildCount()) {
+            return false;
+        }
+        if (aTree.isOrderSensitive()) {
+            // all children order sensitive
+            for (int i = 0; i < size; i++) {
+                if (!isIdenticalTree(aTree.getChild(i), bTree.getChild(i), used)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        // order insensitive, the already matched children of bTree are marked as used
+        boolean identical = true;
+        OUTER:
+        for (int i = 0; i < size; i++) {
+            CompactMathNode aChild = aTree.getChild(i);
+            for (int j = 0; j < size; j++) {
+                CompactMathNode bChild = bTree.getChild(j);
+                if (!used.get(bChild.getIndex()) && aChild.equals(bChild) && isIdenticalTree(aChild, bChild, used)) {
+                    // found an identical child
+                    used.set(bChild.getIndex());
+                    continue OUTER;
+                }
+            }
+            // aChild is missing in the children of bTree
+            identical = false;
+            break;
+        }
+        for (int j = 0; j < size; j++) {
+            used.clear(bTree.getChild(j).getIndex());
+        }
+        return identical;
+    }
+
     /**
      * Filter for similar nodes from a list. Only the node itself will be compared.
      * We will not look at their respective children.
@@ -142,19 +379,52 @@ public class SubTreeComparison {
         return list.stream().filter(searchNode::equals).collect(Collectors.toList());
     }
 
+    /**
+     * Matched nodes of a comparison tree during a single comparison. The nodes are
+     * numbered in pre-order once and the marks are kept in a bitset, the tree itself
+     * is not changed.
+     */
+    static final class MarkedNodes {
+
+        private final Map<MathNode, Integer> indices = new IdentityHashMap<>();
+
+        private final BitSet marked;
+
+        MarkedNodes(MathNode root) {
+            number(root);
+            this.marked = new BitSet(indices.size());
+        }
+
+        private void number(MathNode node) {
+            indices.put(node, indices.size());
+            for (MathNode child : node.getChildren()) {
+                number(child);
+            }
+        }
+
+        void mark(MathNode node) {
+            marked.set(indices.get(node));
+        }
+
+        boolean isMarked(MathNode node) {
+            return marked.get(indices.get(node));
+        }
+    }
+
     /**
      * Calculate the coverage factor between two trees, whereas only their leafs
      * are considered. Leafs are typically identifiers or constants.
      *
      * @param refLeafs  all leafs from the partial (or full) reference tree
+     * @param <T>       MathNode or CompactMathNode
      * @param compLeafs all leafs from the partial (or full) comparison tree
      * @return coverage factor between 0 to 1, 1 is a full-match
      */
-    public static double getCoverage(List<MathNode> refLeafs, List<MathNode> compLeafs) {
+    public static <T> double getCoverage(List<T> refLeafs, List<T> compLeafs) {
         if (compLeafs.size() == 0) {
             return 1.;
         }
-        HashMultiset<MathNode> tmp = HashMultiset.create();
+        HashMultiset<T> tmp = HashMultiset.create();
         tmp.addAll(compLeafs);
         tmp.removeAll(refLeafs);
         return 1 - (double) tmp.size() / (double) compLeafs.size();
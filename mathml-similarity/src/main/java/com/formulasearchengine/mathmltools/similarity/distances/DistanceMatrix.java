@@ -0,0 +1,312 @@
+package com.formulasearchengine.mathmltools.similarity.distances;
+
+import com.formulasearchengine.mathmltools.mml.CMMLInfo;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Symmetric N x N distance matrix of a formula collection, e.g., for clustering.
+ * <br/>
+ * The histograms of all formulas are computed only once. The upper triangle of the
+ * matrix is divided into square tiles which are computed in parallel on a
+ * {@link ForkJoinPool}. Every value is written to both halves of the matrix.
+ * <br/>
+ * The matrix is stored in a memory-mapped file and not on the heap, hence large
+ * collections are limited by the disk rather than the heap. The file starts with a
+ * header of {@value #HEADER_SIZE} bytes (magic "MLDM", version, N, unused) followed by
+ * the matrix as row-major big-endian 32-bit floats.
+ * <br/>
+ * Reading distances via {@link #get(int, int)} is thread-safe.
+ */
+public final class DistanceMatrix implements Closeable {
+
+    private static final Logger LOG = LogManager.getLogger(DistanceMatrix.class);
+
+    /* file header: "MLDM", the version of the file format, N and 4 unused bytes */
+    private static final int MAGIC = 0x4D4C444D;
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 16;
+
+    /**
+     * Default number of rows and columns of a tile.
+     */
+    public static final int DEFAULT_TILE_SIZE = 64;
+
+    /* a single mapping is limited to 2GB */
+    private static final long MAX_SEGMENT_BYTES = Integer.MAX_VALUE;
+
+    private final FileChannel channel;
+
+    private final int size;
+
+    /* number of rows per mapped segment */
+    private final int rowsPerSegment;
+
+    private final MappedByteBuffer[] segments;
+
+    private DistanceMatrix(FileChannel channel, int size, int rowsPerSegment, FileChannel.MapMode mode)
+            throws IOException {
+        this.channel = channel;
+        this.size = size;
+        this.rowsPerSegment = rowsPerSegment;
+        int numSegments = size == 0 ? 0 : (size - 1) / rowsPerSegment + 1;
+        this.segments = new MappedByteBuffer[numSegments];
+        long rowBytes = (long) size * Float.BYTES;
+        for (int s = 0; s < numSegments; s++) {
+            int rows = Math.min(rowsPerSegment, size - s * rowsPerSegment);
+            segments[s] = channel.map(mode, HEADER_SIZE + s * rowsPerSegment * rowBytes, rows * rowBytes);
+        }
+    }
+
+    /**
+     * Computes the distance matrix of the formulas on the given pool. The histograms
+     * of the formulas are computed once, see {@link Distances#contentHistogram(CMMLInfo)}.
+     *
+     * @param formulas the formulas, the index of a formula is its row and column
+     * @param distance the distance measure
+     * @param file     the matrix file, an existing file will be overwritten
+     * @param pool     the pool for the histograms and the tiles
+     * @return the opened matrix
+     * @throws IOException if the matrix file cannot be written
+     */
+    public static DistanceMatrix computeFromFormulas(List<CMMLInfo> formulas, HistogramDistance distance,
+                                                     Path file, ForkJoinPool pool) throws IOException {
+        SparseHistogram[] histograms = new SparseHistogram[formulas.size()];
+        pool.invoke(new HistogramTask(formulas, histograms, 0, histograms.length));
+        return compute(histograms, distance, file, pool, DEFAULT_TILE_SIZE);
+    }
+
+    /**
+     * Computes the distance matrix of the histograms on the given pool.
+     *
+     * @param histograms the histograms, the index of a histogram is its row and column
+     * @param distance   the distance measure
+     * @param file       the matrix file, an existing file will be overwritten
+     * @param pool       the pool for the tiles
+     * @param tileSize   number of rows and columns of a tile
+     * @return the opened matrix
+     * @throws IOException if the matrix file cannot be written
+     */
+    public static DistanceMatrix compute(SparseHistogram[] histograms, HistogramDistance distance,
+                                         Path file, ForkJoinPool pool, int tileSize) throws IOException {
+        return compute(histograms, distance, file, pool, tileSize, rowsPerSegment(histograms.length));
+    }
+
+    /**
+     * See {@link #compute(SparseHistogram[], HistogramDistance, Path, ForkJoinPool, int)},
+     * the segment size is only exposed for tests.
+     */
+    static DistanceMatrix compute(SparseHistogram[] histograms, HistogramDistance distance, Path file,
+                                  ForkJoinPool pool, int tileSize, int rowsPerSegment) throws IOException {
+        if (tileSize < 1) {
+            throw new IllegalArgumentException("tileSize must be positive: " + tileSize);
+        }
+        int n = histograms.length;
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        try {
+            writeHeader(channel, n);
+            DistanceMatrix matrix = new DistanceMatrix(channel, n, rowsPerSegment, FileChannel.MapMode.READ_WRITE);
+            int tiles = n == 0 ? 0 : (n - 1) / tileSize + 1;
+            long start = System.currentTimeMillis();
+            pool.invoke(new TileTask(matrix, histograms, distance, tileSize, tiles, 0, tiles * (tiles + 1) / 2));
+            for (MappedByteBuffer segment : matrix.segments) {
+                segment.force();
+            }
+            LOG.debug("Computed {}x{} {} distance matrix in {} ms", n, n, distance, System.currentTimeMillis() - start);
+            return matrix;
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Opens an existing matrix file (read-only).
+     *
+     * @param file the matrix file
+     * @return the opened matrix
+     * @throws IOException if the file cannot be read or is not a matrix file
+     */
+    public static DistanceMatrix open(Path file) throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+        try {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            while (header.hasRemaining() && channel.read(header) >= 0) {
+                // read the complete header
+            }
+            header.flip();
+            if (header.remaining() < HEADER_SIZE || header.getInt() != MAGIC) {
+                throw new IOException("Not a distance matrix file: " + file);
+            }
+            int version = header.getInt();
+            if (version != VERSION) {
+                throw new IOException("Unsupported distance matrix version " + version + " in " + file);
+            }
+            int n = header.getInt();
+            if (n < 0 || channel.size() < HEADER_SIZE + (long) n * n * Float.BYTES) {
+                throw new IOException("Incomplete distance matrix file: " + file);
+            }
+            return new DistanceMatrix(channel, n, rowsPerSegment(n), FileChannel.MapMode.READ_ONLY);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * @return number of rows (and columns) of the matrix
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @param i row
+     * @param j column
+     * @return the distance between the formulas i and j
+     */
+    public float get(int i, int j) {
+        checkIndex(i);
+        checkIndex(j);
+        return segments[i / rowsPerSegment].getFloat(offset(i, j));
+    }
+
+    private void set(int i, int j, float value) {
+        segments[i / rowsPerSegment].putFloat(offset(i, j), value);
+    }
+
+    /* byte offset within the segment of row i */
+    private int offset(int i, int j) {
+        return (int) (((long) (i % rowsPerSegment) * size + j) * Float.BYTES);
+    }
+
+    private void checkIndex(int i) {
+        if (i < 0 || i >= size) {
+            throw new IndexOutOfBoundsException("Index " + i + " is out of bounds for size " + size);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    private static int rowsPerSegment(int n) {
+        if (n == 0) {
+            return 1;
+        }
+        return (int) Math.max(1, MAX_SEGMENT_BYTES / ((long) n * Float.BYTES));
+    }
+
+    private static void writeHeader(FileChannel channel, int n) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.putInt(MAGIC).putInt(VERSION).putInt(n).putInt(0).flip();
+        while (header.hasRemaining()) {
+            channel.write(header, header.position());
+        }
+    }
+
+    /**
+     * Computes the histograms of a range of formulas.
+     */
+    private static final class HistogramTask extends RecursiveAction {
+        private final List<CMMLInfo> formulas;
+        private final SparseHistogram[] histograms;
+        private final int from;
+        private final int to;
+
+        HistogramTask(List<CMMLInfo> formulas, SparseHistogram[] histograms, int from, int to) {
+            this.formulas = formulas;
+            this.histograms = histograms;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= 1) {
+                if (from < to) {
+                    histograms[from] = Distances.contentHistogram(formulas.get(from));
+                }
+                return;
+            }
+            int mid = (from + to) >>> 1;
+            invokeAll(new HistogramTask(formulas, histograms, from, mid),
+                    new HistogramTask(formulas, histograms, mid, to));
+        }
+    }
+
+    /**
+     * Computes a range of tiles of the upper triangle. The tiles are numbered row by row,
+     * i.e., tile row r contains the tiles (r, r) until (r, tiles - 1).
+     */
+    private static final class TileTask extends RecursiveAction {
+        private final DistanceMatrix matrix;
+        private final SparseHistogram[] histograms;
+        private final HistogramDistance distance;
+        private final int tileSize;
+        private final int tiles;
+        private final int from;
+        private final int to;
+
+        TileTask(DistanceMatrix matrix, SparseHistogram[] histograms, HistogramDistance distance,
+                 int tileSize, int tiles, int from, int to) {
+            this.matrix = matrix;
+            this.histograms = histograms;
+            this.distance = distance;
+            this.tileSize = tileSize;
+            this.tiles = tiles;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= 1) {
+                if (from < to) {
+                    computeTile(from);
+                }
+                return;
+            }
+            int mid = (from + to) >>> 1;
+            invokeAll(new TileTask(matrix, histograms, distance, tileSize, tiles, from, mid),
+                    new TileTask(matrix, histograms, distance, tileSize, tiles, mid, to));
+        }
+
+        private void computeTile(int tile) {
+            // find the tile row and column of the tile number
+            int row = 0;
+            int rest = tile;
+            while (rest >= tiles - row) {
+                rest -= tiles - row;
+                row++;
+            }
+            int column = row + rest;
+
+            int n = histograms.length;
+            int rowEnd = Math.min(n, (row + 1) * tileSize);
+            int columnEnd = Math.min(n, (column + 1) * tileSize);
+            for (int i = row * tileSize; i < rowEnd; i++) {
+                // only the upper triangle of the diagonal tiles
+                int j = row == column ? i : column * tileSize;
+                for (; j < columnEnd; j++) {
+                    float value = (float) distance.compute(histograms[i], histograms[j]);
+                    matrix.set(i, j, value);
+                    matrix.set(j, i, value);
+                }
+            }
+        }
+    }
+}
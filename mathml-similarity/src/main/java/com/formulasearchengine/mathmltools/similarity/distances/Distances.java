@@ -3,7 +3,8 @@ package com.formulasearchengine.mathmltools.similarity.distances;
 import com.formulasearchengine.mathmltools.helper.XMLHelper;
 import com.formulasearchengine.mathmltools.mml.CMMLInfo;
 import com.formulasearchengine.mathmltools.similarity.distances.earthmover.EarthMoverDistanceWrapper;
-import com.formulasearchengine.mathmltools.similarity.distances.earthmover.JFastEMD;
+import com.formulasearchengine.mathmltools.similarity.distances.earthmover.Emd1D;
+import com.formulasearchengine.mathmltools.similarity.distances.earthmover.EmdEngine;
 import com.formulasearchengine.mathmltools.similarity.distances.earthmover.Signature;
 import com.formulasearchengine.mathmltools.utils.mml.ValidCSymbols;
 import org.apache.logging.log4j.LogManager;
@@ -23,6 +24,9 @@ public class Distances {
 
     private static final DecimalFormat decimalFormat = new DecimalFormat("#.###");
 
+    /* tag names of the content elements of a histogram */
+    private static final String[] CONTENT_ELEMENTS = {"ci", "cn", "csymbol"};
+
     private Distances() {
     }
 
@@ -37,7 +41,44 @@ public class Distances {
         Signature s1 = EarthMoverDistanceWrapper.histogramToSignature(h1);
         Signature s2 = EarthMoverDistanceWrapper.histogramToSignature(h2);
 
-        return JFastEMD.distance(s1, s2, 0.0);
+        return EmdEngine.distance(s1, s2, 0.0);
+    }
+
+    /**
+     * Earth Mover's Distance between both histograms on a line. The keys of both histograms
+     * are sorted and every key is placed at its rank, the bins contain the relative frequencies.
+     * In contrast to {@link #computeEarthMoverAbsoluteDistance(Map, Map)}, which solves a min cost
+     * flow problem, the distance is computed in closed form in O(n log n), see {@link Emd1D}.
+     *
+     * @param h1 first histogram
+     * @param h2 second histogram
+     * @return the distance, 0 if both histograms are empty and {@link Double#NaN} if only one
+     * of them is empty (there is no mass to move to, hence the distance is undefined)
+     */
+    public static double computeEarthMover1DDistance(Map<String, Double> h1, Map<String, Double> h2) {
+        boolean empty1 = isEmpty(h1);
+        boolean empty2 = isEmpty(h2);
+        if (empty1 || empty2) {
+            return empty1 && empty2 ? 0.0 : Double.NaN;
+        }
+        SortedSet<String> keys = new TreeSet<>(h1.keySet());
+        keys.addAll(h2.keySet());
+        Map<String, Integer> axis = new HashMap<>();
+        for (String key : keys) {
+            axis.put(key, axis.size());
+        }
+        return Emd1D.distance(
+                EarthMoverDistanceWrapper.histogramToSignature1D(h1, axis),
+                EarthMoverDistanceWrapper.histogramToSignature1D(h2, axis));
+    }
+
+    private static boolean isEmpty(Map<String, Double> histogram) {
+        for (Double frequency : histogram.values()) {
+            if (frequency > 0) {
+                return false;
+            }
+        }
+        return true;
     }
 
     public static double computeRelativeDistance(Map<String, Double> h1, Map<String, Double> h2) {
@@ -150,6 +191,24 @@ public class Distances {
         return mergedHistogram;
     }
 
+    /**
+     * Histogram of all content identifiers, numbers and symbols (ci, cn and csymbol) of the
+     * formula in strict content MathML. Conversion artifacts are removed, see {@link #cleanupHistogram(String, Map)}.
+     *
+     * @param cmml the formula, it will not be changed
+     * @return histogram of all content elements
+     */
+    public static SparseHistogram contentHistogram(CMMLInfo cmml) {
+        CMMLInfo strict = new CMMLInfo(cmml).toStrictCmml();
+        SparseHistogram[] histograms = new SparseHistogram[CONTENT_ELEMENTS.length];
+        for (int i = 0; i < CONTENT_ELEMENTS.length; i++) {
+            HashMap<String, Double> histogram = strictCmmlInfoToHistogram(strict, CONTENT_ELEMENTS[i]);
+            cleanupHistogram(CONTENT_ELEMENTS[i], histogram);
+            histograms[i] = SparseHistogram.of(histogram);
+        }
+        return histogramsPlus(histograms);
+    }
+
     /**
      * converts strict content math ml to a histogram for the given tagname, e.g., ci
      *
@@ -211,6 +270,150 @@ public class Distances {
         return numerator / (denominator1 * denominator2);
     }
 
+    /**
+     * Same as {@link #computeCosineDistance(Map, Map)}, but a single merge-join over both histograms.
+     * Two empty histograms are the same (1.0), an empty histogram has nothing in common with a
+     * non-empty one (0.0).
+     *
+     * @param h1 first histogram
+     * @param h2 second histogram
+     * @return cosine similarity of both histograms
+     */
+    public static double computeCosineDistance(SparseHistogram h1, SparseHistogram h2) {
+        double norm1 = h1.norm();
+        double norm2 = h2.norm();
+        if (norm1 == 0 || norm2 == 0) {
+            return norm1 == norm2 ? 1.0 : 0.0;
+        }
+
+        double numerator = 0.0;
+        int i = 0;
+        int j = 0;
+        while (i < h1.size() && j < h2.size()) {
+            int id1 = h1.id(i);
+            int id2 = h2.id(j);
+            if (id1 == id2) {
+                numerator += h1.count(i++) * h2.count(j++);
+            } else if (id1 < id2) {
+                i++;
+            } else {
+                j++;
+            }
+        }
+        return numerator / (norm1 * norm2);
+    }
+
+    /**
+     * Same as {@link #computeAbsoluteDistance(Map, Map)}, but a single merge-join over both histograms.
+     *
+     * @param h1 first histogram
+     * @param h2 second histogram
+     * @return accumulated number of differences (absolute)
+     */
+    public static double computeAbsoluteDistance(SparseHistogram h1, SparseHistogram h2) {
+        double distance = 0;
+        int i = 0;
+        int j = 0;
+        while (i < h1.size() || j < h2.size()) {
+            int id1 = i < h1.size() ? h1.id(i) : Integer.MAX_VALUE;
+            int id2 = j < h2.size() ? h2.id(j) : Integer.MAX_VALUE;
+            if (id1 == id2) {
+                distance += Math.abs(h1.count(i++) - h2.count(j++));
+            } else if (id1 < id2) {
+                distance += Math.abs(h1.count(i++));
+            } else {
+                distance += Math.abs(h2.count(j++));
+            }
+        }
+        return distance;
+    }
+
+    /**
+     * Same as {@link #computeRelativeDistance(Map, Map)}.
+     *
+     * @param h1 first histogram
+     * @param h2 second histogram
+     * @return absolute distance divided by the number of all elements
+     */
+    public static double computeRelativeDistance(SparseHistogram h1, SparseHistogram h2) {
+        // the frequencies are accumulated as int, as for maps
+        int totalNumberOfElements = 0;
+        for (int i = 0; i < h1.size(); i++) {
+            totalNumberOfElements += h1.count(i);
+        }
+        for (int i = 0; i < h2.size(); i++) {
+            totalNumberOfElements += h2.count(i);
+        }
+        if (totalNumberOfElements == 0) {
+            return 0.0;
+        }
+        return computeAbsoluteDistance(h1, h2) / totalNumberOfElements;
+    }
+
+    /**
+     * Adds all elements from all histogram, same as {@link #histogramsPlus(Map[])}.
+     *
+     * @return the sum of all histograms
+     */
+    public static SparseHistogram histogramsPlus(SparseHistogram... histograms) {
+        switch (histograms.length) {
+            case 0:
+                throw new IllegalArgumentException("histograms.length=" + histograms.length + "; needs to be >= 2");
+            case 1:
+                return histograms[0];
+            default:
+                return SparseHistogram.plus(histograms);
+        }
+    }
+
+    /**
+     * Cosine similarity of two dense histogram blocks of the same length, see {@link HistogramKernels}.
+     * Empty histograms are handled as by {@link #computeCosineDistance(SparseHistogram, SparseHistogram)}.
+     *
+     * @param h1 first dense histogram
+     * @param h2 second dense histogram
+     * @return cosine similarity of both histograms
+     */
+    public static double computeCosineDistance(double[] h1, double[] h2) {
+        checkSameLength(h1, h2);
+        HistogramKernels kernels = HistogramKernels.get();
+        double denominator1 = kernels.sumOfSquares(h1, h1.length);
+        double denominator2 = kernels.sumOfSquares(h2, h2.length);
+        if (denominator1 == 0 || denominator2 == 0) {
+            return denominator1 == denominator2 ? 1.0 : 0.0;
+        }
+        return kernels.dot(h1, h2, h1.length) / (Math.sqrt(denominator1) * Math.sqrt(denominator2));
+    }
+
+    /**
+     * Accumulated number of differences of two dense histogram blocks of the same length,
+     * see {@link HistogramKernels}.
+     *
+     * @param h1 first dense histogram
+     * @param h2 second dense histogram
+     * @return accumulated number of differences (absolute)
+     */
+    public static double computeAbsoluteDistance(double[] h1, double[] h2) {
+        checkSameLength(h1, h2);
+        return HistogramKernels.get().absoluteDifference(h1, h2, h1.length);
+    }
+
+    private static void checkSameLength(double[] h1, double[] h2) {
+        if (h1.length != h2.length) {
+            throw new IllegalArgumentException("Dense histograms differ in length: " + h1.length + " vs " + h2.length);
+        }
+    }
+
+    /**
+     * Same as {@link #contentElementsToHistogram(NodeList)}, but returns a sparse histogram.
+     *
+     * @param nodes content-elements
+     * @return the sparse histogram
+     */
+    public static SparseHistogram contentElementsToSparseHistogram(NodeList nodes) {
+        return SparseHistogram.ofContentElements(nodes);
+    }
+
     /**
      * this cleanup is necessary due to errors in the xslt conversion script (contentmathmml to strict cmml)
      *
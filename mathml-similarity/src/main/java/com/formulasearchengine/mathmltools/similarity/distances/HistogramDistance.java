@@ -0,0 +1,121 @@
+package com.formulasearchengine.mathmltools.similarity.distances;
+
+import com.formulasearchengine.mathmltools.similarity.distances.earthmover.EmdEngine;
+import com.formulasearchengine.mathmltools.similarity.distances.earthmover.Feature;
+import com.formulasearchengine.mathmltools.similarity.distances.earthmover.Feature2D;
+import com.formulasearchengine.mathmltools.similarity.distances.earthmover.Signature;
+
+import java.util.Arrays;
+
+/**
+ * Distance measures between two {@link SparseHistogram}s, e.g., for a {@link DistanceMatrix}.
+ */
+public enum HistogramDistance {
+
+    /**
+     * Cosine distance, i.e., 1 - cosine similarity (see
+     * {@link Distances#computeCosineDistance(SparseHistogram, SparseHistogram)}). The distance of
+     * a histogram to itself and of two empty histograms is 0 (equal histograms are 0 up to
+     * rounding), an empty and a non-empty histogram have the distance 1.
+     */
+    COSINE {
+        @Override
+        public double compute(SparseHistogram h1, SparseHistogram h2) {
+            if (h1 == h2) {
+                // exactly 0 on the diagonal of a matrix, the similarity may differ from 1 by rounding
+                return 0.0;
+            }
+            return Math.max(0.0, 1.0 - Distances.computeCosineDistance(h1, h2));
+        }
+    },
+
+    /**
+     * See {@link Distances#computeAbsoluteDistance(SparseHistogram, SparseHistogram)}.
+     */
+    ABSOLUTE {
+        @Override
+        public double compute(SparseHistogram h1, SparseHistogram h2) {
+            return Distances.computeAbsoluteDistance(h1, h2);
+        }
+    },
+
+    /**
+     * See {@link Distances#computeRelativeDistance(SparseHistogram, SparseHistogram)}.
+     */
+    RELATIVE {
+        @Override
+        public double compute(SparseHistogram h1, SparseHistogram h2) {
+            return Distances.computeRelativeDistance(h1, h2);
+        }
+    },
+
+    /**
+     * Earth Mover's Distance of the histograms as signatures, similar to
+     * {@link Distances#computeEarthMoverAbsoluteDistance(java.util.Map, java.util.Map)}. Every bin is
+     * the point (rank of its symbol among the symbols of both histograms, count), hence a symbol
+     * has the same position in both signatures. The distance is 0 if both histograms are empty
+     * and {@link Double#NaN} if only one of them is empty, like
+     * {@link Distances#computeEarthMover1DDistance(java.util.Map, java.util.Map)}.
+     */
+    EARTH_MOVER {
+        @Override
+        public double compute(SparseHistogram h1, SparseHistogram h2) {
+            if (h1.size() == 0 || h2.size() == 0) {
+                return h1.size() == h2.size() ? 0.0 : Double.NaN;
+            }
+            int[] axis = symbols(h1, h2);
+            return EmdEngine.distance(toSignature(h1, axis), toSignature(h2, axis), 0.0);
+        }
+    };
+
+    /**
+     * @param h1 first histogram
+     * @param h2 second histogram
+     * @return the distance between both histograms
+     */
+    public abstract double compute(SparseHistogram h1, SparseHistogram h2);
+
+    /**
+     * @return the sorted symbol ids of both histograms
+     */
+    private static int[] symbols(SparseHistogram h1, SparseHistogram h2) {
+        int[] ids = new int[h1.size() + h2.size()];
+        int n = 0;
+        int i = 0;
+        int j = 0;
+        while (i < h1.size() || j < h2.size()) {
+            int id;
+            if (j == h2.size() || (i < h1.size() && h1.id(i) <= h2.id(j))) {
+                id = h1.id(i);
+            } else {
+                id = h2.id(j);
+            }
+            while (i < h1.size() && h1.id(i) == id) {
+                i++;
+            }
+            while (j < h2.size() && h2.id(j) == id) {
+                j++;
+            }
+            ids[n++] = id;
+        }
+        return Arrays.copyOf(ids, n);
+    }
+
+    /**
+     * Like {@code EarthMoverDistanceWrapper.histogramToSignature}, but the x coordinate of a bin
+     * is the rank of its symbol on the given axis.
+     */
+    private static Signature toSignature(SparseHistogram histogram, int[] axis) {
+        Feature[] features = new Feature[histogram.size()];
+        double[] weights = new double[histogram.size()];
+        for (int i = 0; i < features.length; i++) {
+            features[i] = new Feature2D(Arrays.binarySearch(axis, histogram.id(i)), histogram.count(i));
+        }
+        Arrays.fill(weights, 1.0);
+        Signature signature = new Signature();
+        signature.setFeatures(features);
+        signature.setWeights(weights);
+        signature.setNumberOfFeatures(features.length);
+        return signature;
+    }
+}
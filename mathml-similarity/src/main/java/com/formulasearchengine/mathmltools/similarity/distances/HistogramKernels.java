@@ -0,0 +1,70 @@
+package com.formulasearchengine.mathmltools.similarity.distances;
+
+/**
+ * Kernels over dense histogram blocks, i.e., arrays of counts indexed by the
+ * ids of the {@link SymbolDictionary}, see {@link SparseHistogram#toDense(int)}.
+ * <br/>
+ * Two implementations exist: plain scalar loops and data-parallel loops on the
+ * {@code jdk.incubator.vector} API. The vectorized kernels are only available if they
+ * were compiled (JDK 17+, profile vector-api) and the JVM was started with
+ * {@code --add-modules jdk.incubator.vector}. The kernels can be selected with the
+ * system property {@value #PROPERTY}: {@code scalar}, {@code vector} or {@code auto}
+ * (default, vectorized if available). Since the summation order differs, both
+ * implementations may differ in the last bits.
+ */
+public interface HistogramKernels {
+
+    /**
+     * System property to select the kernels.
+     */
+    String PROPERTY = "mathmltools.kernels";
+
+    /**
+     * @param a      first block
+     * @param b      second block
+     * @param length number of entries (from the beginning) of both blocks
+     * @return dot product of both blocks
+     */
+    double dot(double[] a, double[] b, int length);
+
+    /**
+     * @param a      the block
+     * @param length number of entries (from the beginning) of the block
+     * @return sum of all squared entries, i.e., the squared euclidean norm
+     */
+    double sumOfSquares(double[] a, int length);
+
+    /**
+     * @param a      first block
+     * @param b      second block
+     * @param length number of entries (from the beginning) of both blocks
+     * @return sum of the absolute differences, i.e., the L1 distance
+     */
+    double absoluteDifference(double[] a, double[] b, int length);
+
+    /**
+     * @return name of the implementation
+     */
+    String name();
+
+    /**
+     * @return the kernels selected by the system property {@value #PROPERTY}
+     */
+    static HistogramKernels get() {
+        return KernelSelection.SELECTED;
+    }
+
+    /**
+     * @return the scalar kernels
+     */
+    static HistogramKernels scalar() {
+        return KernelSelection.SCALAR;
+    }
+
+    /**
+     * @return the vectorized kernels or null if they are not available
+     */
+    static HistogramKernels vector() {
+        return KernelSelection.VECTOR;
+    }
+}
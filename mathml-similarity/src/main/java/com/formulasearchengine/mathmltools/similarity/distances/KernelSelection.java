@@ -0,0 +1,60 @@
+package com.formulasearchengine.mathmltools.similarity.distances;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Loads the kernels once, see {@link HistogramKernels#get()}.
+ */
+final class KernelSelection {
+
+    private static final Logger LOG = LogManager.getLogger(KernelSelection.class.getName());
+
+    /* compiled from src/main/java-vector, only if the profile vector-api is active */
+    private static final String VECTOR_KERNELS = HistogramKernels.class.getPackage().getName() + ".VectorHistogramKernels";
+
+    static final HistogramKernels SCALAR = new ScalarHistogramKernels();
+
+    static final HistogramKernels VECTOR = loadVectorKernels();
+
+    static final HistogramKernels SELECTED = select(System.getProperty(HistogramKernels.PROPERTY, "auto"));
+
+    private KernelSelection() {
+    }
+
+    private static HistogramKernels loadVectorKernels() {
+        try {
+            HistogramKernels kernels = (HistogramKernels) Class.forName(VECTOR_KERNELS)
+                    .getDeclaredConstructor().newInstance();
+            // fails if the incubator module is not available
+            kernels.dot(new double[1], new double[1], 1);
+            return kernels;
+        } catch (ReflectiveOperationException | LinkageError e) {
+            LOG.debug("Vectorized histogram kernels are not available: {}", e.toString());
+            return null;
+        }
+    }
+
+    /**
+     * An unknown name must not fail the initialization of this class, since that would break
+     * every histogram distance in the JVM.
+     */
+    static HistogramKernels select(String name) {
+        switch (name) {
+            case "scalar":
+                return SCALAR;
+            case "vector":
+                if (VECTOR == null) {
+                    LOG.warn("Vectorized histogram kernels are not available, use the scalar kernels. "
+                            + "Start the JVM with --add-modules jdk.incubator.vector.");
+                    return SCALAR;
+                }
+                return VECTOR;
+            case "auto":
+                return VECTOR == null ? SCALAR : VECTOR;
+            default:
+                LOG.warn("Unknown histogram kernels {}={}, use the scalar kernels.", HistogramKernels.PROPERTY, name);
+                return SCALAR;
+        }
+    }
+}
@@ -0,0 +1,39 @@
+package com.formulasearchengine.mathmltools.similarity.distances;
+
+/**
+ * Plain loops, the fallback of the vectorized kernels.
+ */
+final class ScalarHistogramKernels implements HistogramKernels {
+
+    @Override
+    public double dot(double[] a, double[] b, int length) {
+        double sum = 0.0;
+        for (int i = 0; i < length; i++) {
+            sum += a[i] * b[i];
+        }
+        return sum;
+    }
+
+    @Override
+    public double sumOfSquares(double[] a, int length) {
+        double sum = 0.0;
+        for (int i = 0; i < length; i++) {
+            sum += a[i] * a[i];
+        }
+        return sum;
+    }
+
+    @Override
+    public double absoluteDifference(double[] a, double[] b, int length) {
+        double sum = 0.0;
+        for (int i = 0; i < length; i++) {
+            sum += Math.abs(a[i] - b[i]);
+        }
+        return sum;
+    }
+
+    @Override
+    public String name() {
+        return "scalar";
+    }
+}
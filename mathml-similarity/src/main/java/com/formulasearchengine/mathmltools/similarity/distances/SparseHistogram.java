@@ -0,0 +1,237 @@
+package com.formulasearchengine.mathmltools.similarity.distances;
+
+import org.w3c.dom.NodeList;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Compact and immutable histogram of symbols. The symbols are interned by the
+ * {@link SymbolDictionary}, the histogram only stores the sorted ids and their counts in
+ * two parallel arrays. Hence, two histograms are compared by a single merge-join over
+ * both arrays without hashing or boxing, see {@link Distances#computeCosineDistance(SparseHistogram, SparseHistogram)}.
+ * <br/>
+ * Use it instead of {@code Map<String, Double>} histograms to score a query against
+ * many candidates.
+ */
+public final class SparseHistogram {
+
+    private static final SparseHistogram EMPTY = new SparseHistogram(new int[0], new double[0]);
+
+    private final int[] ids;
+
+    private final double[] counts;
+
+    /* euclidean norm of the counts, for the cosine distance */
+    private final double norm;
+
+    private SparseHistogram(int[] ids, double[] counts) {
+        this.ids = ids;
+        this.counts = counts;
+        double squares = 0.0;
+        for (double count : counts) {
+            squares += count * count;
+        }
+        this.norm = Math.sqrt(squares);
+    }
+
+    /**
+     * @return the empty histogram
+     */
+    public static SparseHistogram empty() {
+        return EMPTY;
+    }
+
+    /**
+     * Converts a histogram map, e.g., from {@link Distances#contentElementsToHistogram(NodeList)}.
+     *
+     * @param histogram names and their frequencies
+     * @return the sparse histogram with the same entries
+     */
+    public static SparseHistogram of(Map<String, Double> histogram) {
+        int size = histogram.size();
+        // id in the upper and position in the lower half, sorting by ids without boxing
+        long[] sorted = new long[size];
+        double[] values = new double[size];
+        int i = 0;
+        for (Map.Entry<String, Double> entry : histogram.entrySet()) {
+            sorted[i] = ((long) SymbolDictionary.intern(entry.getKey()) << 32) | i;
+            values[i] = entry.getValue();
+            i++;
+        }
+        Arrays.sort(sorted);
+        int[] ids = new int[size];
+        double[] counts = new double[size];
+        for (i = 0; i < size; i++) {
+            ids[i] = (int) (sorted[i] >>> 32);
+            counts[i] = values[(int) sorted[i]];
+        }
+        return new SparseHistogram(ids, counts);
+    }
+
+    /**
+     * Returns the names and their accumulated frequency of the given content-elements,
+     * same as {@link Distances#contentElementsToHistogram(NodeList)}.
+     *
+     * @param nodes content-elements (that could be identifiers, numbers, or operators)
+     * @return the sparse histogram
+     */
+    public static SparseHistogram ofContentElements(NodeList nodes) {
+        int[] all = new int[nodes.getLength()];
+        for (int i = 0; i < all.length; i++) {
+            all[i] = SymbolDictionary.intern(nodes.item(i).getTextContent().trim());
+        }
+        Arrays.sort(all);
+        // run length encoding of the sorted ids
+        int size = 0;
+        int[] ids = new int[all.length];
+        double[] counts = new double[all.length];
+        for (int i = 0; i < all.length; i++) {
+            if (size == 0 || ids[size - 1] != all[i]) {
+                ids[size++] = all[i];
+            }
+            counts[size - 1] += 1.0;
+        }
+        return new SparseHistogram(Arrays.copyOf(ids, size), Arrays.copyOf(counts, size));
+    }
+
+    /**
+     * Adds all histograms, i.e., a k-way merge of all entries.
+     *
+     * @param histograms the histograms
+     * @return the sum of all histograms
+     */
+    static SparseHistogram plus(SparseHistogram... histograms) {
+        int[] positions = new int[histograms.length];
+        int capacity = 0;
+        for (SparseHistogram histogram : histograms) {
+            capacity += histogram.size();
+        }
+        int[] ids = new int[capacity];
+        double[] counts = new double[capacity];
+        int size = 0;
+        while (true) {
+            // the smallest id of all remaining entries
+            int min = Integer.MAX_VALUE;
+            boolean found = false;
+            for (int h = 0; h < histograms.length; h++) {
+                if (positions[h] < histograms[h].size() && histograms[h].ids[positions[h]] <= min) {
+                    min = histograms[h].ids[positions[h]];
+                    found = true;
+                }
+            }
+            if (!found) {
+                break;
+            }
+            double value = 0.0;
+            for (int h = 0; h < histograms.length; h++) {
+                if (positions[h] < histograms[h].size() && histograms[h].ids[positions[h]] == min) {
+                    value += histograms[h].counts[positions[h]++];
+                }
+            }
+            ids[size] = min;
+            counts[size++] = value;
+        }
+        return new SparseHistogram(Arrays.copyOf(ids, size), Arrays.copyOf(counts, size));
+    }
+
+    /**
+     * @return number of distinct symbols
+     */
+    public int size() {
+        return ids.length;
+    }
+
+    /**
+     * @return sum of all counts
+     */
+    public double total() {
+        double total = 0.0;
+        for (double count : counts) {
+            total += count;
+        }
+        return total;
+    }
+
+    /**
+     * @return euclidean norm of the counts
+     */
+    public double norm() {
+        return norm;
+    }
+
+    /**
+     * @param symbol the symbol
+     * @return the count of the symbol, 0 if it is not in the histogram
+     */
+    public double get(String symbol) {
+        // an unknown symbol cannot be in any histogram, do not add it to the dictionary
+        int id = SymbolDictionary.lookup(symbol);
+        if (id < 0) {
+            return 0.0;
+        }
+        int i = Arrays.binarySearch(ids, id);
+        return i >= 0 ? counts[i] : 0.0;
+    }
+
+    /**
+     * Returns the dense block of this histogram, i.e., the count of the symbol with id i
+     * is at position i, see {@link HistogramKernels}.
+     *
+     * @param length length of the block, e.g., {@link SymbolDictionary#size()}
+     * @return dense block of the counts
+     * @throws IllegalArgumentException if the length is too small for the symbols of this histogram
+     */
+    public double[] toDense(int length) {
+        if (ids.length > 0 && ids[ids.length - 1] >= length) {
+            throw new IllegalArgumentException("The dense block is too small for symbol id " + ids[ids.length - 1]);
+        }
+        double[] dense = new double[length];
+        for (int i = 0; i < ids.length; i++) {
+            dense[ids[i]] = counts[i];
+        }
+        return dense;
+    }
+
+    int id(int i) {
+        return ids[i];
+    }
+
+    double count(int i) {
+        return counts[i];
+    }
+
+    /**
+     * @return the histogram as map of names and their frequencies
+     */
+    public Map<String, Double> toMap() {
+        Map<String, Double> map = new HashMap<>();
+        for (int i = 0; i < ids.length; i++) {
+            map.put(SymbolDictionary.symbol(ids[i]), counts[i]);
+        }
+        return map;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof SparseHistogram)) {
+            return false;
+        }
+        SparseHistogram that = (SparseHistogram) o;
+        return Arrays.equals(ids, that.ids) && Arrays.equals(counts, that.counts);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * Arrays.hashCode(ids) + Arrays.hashCode(counts);
+    }
+
+    @Override
+    public String toString() {
+        return toMap().toString();
+    }
+}
@@ -0,0 +1,74 @@
+package com.formulasearchengine.mathmltools.similarity.distances;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Global dictionary of symbols (e.g., names of identifiers, numbers or operators).
+ * Every symbol gets a unique, dense and never changing integer id, see {@link SparseHistogram}.
+ * <br/>
+ * The dictionary is thread-safe. It only grows, since the ids of all existing histograms
+ * must stay valid.
+ */
+public final class SymbolDictionary {
+
+    private static final Map<String, Integer> IDS = new ConcurrentHashMap<>();
+
+    private static final List<String> SYMBOLS = new ArrayList<>();
+
+    private SymbolDictionary() {
+    }
+
+    /**
+     * Returns the id of the symbol, a new id is assigned to unknown symbols.
+     *
+     * @param symbol the symbol
+     * @return id of the symbol
+     */
+    public static int intern(String symbol) {
+        Integer id = IDS.get(symbol);
+        if (id != null) {
+            return id;
+        }
+        return IDS.computeIfAbsent(symbol, s -> {
+            synchronized (SYMBOLS) {
+                SYMBOLS.add(s);
+                return SYMBOLS.size() - 1;
+            }
+        });
+    }
+
+    /**
+     * Returns the id of a known symbol, unknown symbols are not added.
+     *
+     * @param symbol the symbol
+     * @return id of the symbol, or -1 if the symbol is unknown
+     */
+    public static int lookup(String symbol) {
+        Integer id = IDS.get(symbol);
+        return id == null ? -1 : id;
+    }
+
+    /**
+     * Returns the symbol of the given id.
+     *
+     * @param id an id returned by {@link #intern(String)}
+     * @return the symbol
+     */
+    public static String symbol(int id) {
+        synchronized (SYMBOLS) {
+            return SYMBOLS.get(id);
+        }
+    }
+
+    /**
+     * @return number of known symbols
+     */
+    public static int size() {
+        synchronized (SYMBOLS) {
+            return SYMBOLS.size();
+        }
+    }
+}
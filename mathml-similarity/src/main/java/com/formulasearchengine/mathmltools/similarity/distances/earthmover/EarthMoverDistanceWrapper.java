@@ -29,4 +29,33 @@ public class EarthMoverDistanceWrapper {
 
         return signature;
     }
+
+    /**
+     * Converts the histogram into a signature of {@link Feature1D}s, see {@link Emd1D}.
+     * Every bin is placed at the position of its key on the given axis, the weights are
+     * the relative frequencies. Hence, the total weight is 1.
+     *
+     * @param histogram histogram with a positive total frequency
+     * @param axis      position of every key of the histogram
+     * @return the signature
+     */
+    public static Signature histogramToSignature1D(Map<String, Double> histogram, Map<String, Integer> axis) {
+        double total = 0;
+        for (Double frequency : histogram.values()) {
+            total += frequency;
+        }
+        Signature signature = new Signature();
+        Feature[] features = new Feature[histogram.size()];
+        double[] weights = new double[histogram.size()];
+        int i = 0;
+        for (Map.Entry<String, Double> bin : histogram.entrySet()) {
+            features[i] = new Feature1D(axis.get(bin.getKey()));
+            weights[i] = bin.getValue() / total;
+            i++;
+        }
+        signature.setFeatures(features);
+        signature.setWeights(weights);
+        signature.setNumberOfFeatures(features.length);
+        return signature;
+    }
 }
@@ -0,0 +1,79 @@
+package com.formulasearchengine.mathmltools.similarity.distances.earthmover;
+
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * Closed-form Earth Mover's Distance for one-dimensional ground distances.
+ * <p>
+ * If both signatures have the same total weight and all features are on a line
+ * ({@link Feature1D}), the EMD is the area between both cumulative distribution functions.
+ * It is computed in O(n log n) by a single sweep over the sorted positions, instead of
+ * solving the min cost flow of {@link JFastEMD} or {@link EmdEngine}. For such signatures,
+ * both compute the same distance as this class, up to their integer rounding.
+ */
+public final class Emd1D {
+
+    /**
+     * Relative tolerance for the comparison of the total weights.
+     */
+    private static final double MASS_EPSILON = 1e-9;
+
+    private Emd1D() {
+    }
+
+    /**
+     * Computes the EMD between both signatures.
+     *
+     * @param signature1 first signature, all features must be {@link Feature1D}
+     * @param signature2 second signature, all features must be {@link Feature1D}
+     * @return the distance
+     * @throws IllegalArgumentException if a feature is not one-dimensional or the total weights differ
+     */
+    public static double distance(Signature signature1, Signature signature2) {
+        int n1 = signature1.getNumberOfFeatures();
+        int n2 = signature2.getNumberOfFeatures();
+        int n = n1 + n2;
+
+        // the weights of the second signature are negative, hence the sum is the difference of both CDFs
+        double[] positions = new double[n];
+        double[] masses = new double[n];
+        double sum1 = fill(signature1, 1, positions, masses, 0);
+        double sum2 = fill(signature2, -1, positions, masses, n1);
+        if (Math.abs(sum1 - sum2) > MASS_EPSILON * Math.max(sum1, sum2)) {
+            throw new IllegalArgumentException("The total weights differ: " + sum1 + " vs " + sum2);
+        }
+
+        Integer[] order = new Integer[n];
+        for (int i = 0; i < n; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, Comparator.comparingDouble(i -> positions[i]));
+
+        double dist = 0;
+        double cdfDiff = 0;
+        for (int k = 0; k < n; k++) {
+            int i = order[k];
+            if (k > 0) {
+                dist += Math.abs(cdfDiff) * (positions[i] - positions[order[k - 1]]);
+            }
+            cdfDiff += masses[i];
+        }
+        return dist;
+    }
+
+    private static double fill(Signature signature, int sign, double[] positions, double[] masses, int offset) {
+        Feature[] features = signature.getFeatures();
+        double[] weights = signature.getWeights();
+        double sum = 0;
+        for (int i = 0; i < signature.getNumberOfFeatures(); i++) {
+            if (!(features[i] instanceof Feature1D)) {
+                throw new IllegalArgumentException("Not a one-dimensional feature: " + features[i]);
+            }
+            positions[offset + i] = ((Feature1D) features[i]).getX();
+            masses[offset + i] = sign * weights[i];
+            sum += weights[i];
+        }
+        return sum;
+    }
+}
@@ -0,0 +1,386 @@
+package com.formulasearchengine.mathmltools.similarity.distances.earthmover;
+
+import com.formulasearchengine.mathmltools.similarity.distances.earthmover.flow.FlatMinCostFlow;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Computes the same Earth Mover's Distance (EMD-HAT) as {@link JFastEMD#distance(Signature, Signature, double)}
+ * with identical results, but on flat primitive arrays.
+ * <p>
+ * The cost matrix of the combined signatures is only non-zero between the features of the
+ * first and the second signature. Hence, only this block is stored as flat {@code double[]}
+ * and {@code long[]} arrays. The flow network is built in the compressed sparse row format
+ * and solved by {@link FlatMinCostFlow}.
+ * <p>
+ * An engine is a workspace: all buffers grow with the largest signatures seen so far and
+ * are reused for subsequent calls. Hence, once the buffers are large enough, a computation
+ * allocates (almost) nothing. An engine is not thread-safe, the static methods use the
+ * engine of the calling thread, see {@link #forCurrentThread()}.
+ */
+public final class EmdEngine {
+
+    /**
+     * This condition should hold:
+     * ( 2^(sizeof(CONVERT_TO_T*8)) >= ( multifactor^2 )
+     */
+    private static final double MULTIFACTOR = 1000000;
+
+    private static final int REMOVE_NODE_FLAG = -1;
+
+    private static final ThreadLocal<EmdEngine> ENGINES = ThreadLocal.withInitial(EmdEngine::new);
+
+    private final FlatMinCostFlow minCostFlow = new FlatMinCostFlow();
+
+    private final EdgeList edges = new EdgeList();
+
+    // weights of the combined signatures
+    private double[] p = new double[0];
+    private double[] q = new double[0];
+
+    // cost block between the first and the second signature
+    private double[] cross = new double[0];
+    private long[] iCross = new long[0];
+
+    // integer weights
+    private long[] iP = new long[0];
+    private long[] iQ = new long[0];
+
+    // flow network
+    private long[] b = new long[0];
+    private long[] bb = new long[0];
+    private int[] nodesNewNames = new int[0];
+    private boolean[] notOnlyThreshold = new boolean[0];
+
+    /**
+     * Creates a new engine with empty buffers. Prefer {@link #forCurrentThread()}
+     * to share the buffers of an engine.
+     */
+    public EmdEngine() {
+    }
+
+    /**
+     * Returns the engine of the calling thread. It must not be passed to other threads.
+     *
+     * @return the engine of the calling thread
+     */
+    public static EmdEngine forCurrentThread() {
+        return ENGINES.get();
+    }
+
+    /**
+     * Computes the EMD-HAT distance between both signatures, see {@link JFastEMD#distance(Signature, Signature, double)}.
+     * Uses the engine of the calling thread.
+     *
+     * @param signature1       first signature
+     * @param signature2       second signature
+     * @param extraMassPenalty penalty for extra mass, -1 for the maximum ground distance
+     * @return the distance
+     */
+    public static double distance(Signature signature1, Signature signature2, double extraMassPenalty) {
+        return ENGINES.get().compute(signature1, signature2, extraMassPenalty);
+    }
+
+    /**
+     * Computes the EMD-HAT distances (without extra mass penalty) between the query and
+     * all candidates. Uses the engine of the calling thread.
+     *
+     * @param query      the query signature
+     * @param candidates candidate signatures
+     * @return the distances in the order of the candidates
+     */
+    public static double[] distances(Signature query, List<Signature> candidates) {
+        return ENGINES.get().computeAll(query, candidates, 0.0);
+    }
+
+    /**
+     * Computes the EMD-HAT distances between the query and all candidates.
+     *
+     * @param query            the query signature
+     * @param candidates       candidate signatures
+     * @param extraMassPenalty penalty for extra mass, -1 for the maximum ground distance
+     * @return the distances in the order of the candidates
+     */
+    public double[] computeAll(Signature query, List<Signature> candidates, double extraMassPenalty) {
+        double[] result = new double[candidates.size()];
+        int i = 0;
+        for (Signature candidate : candidates) {
+            result[i++] = compute(query, candidate, extraMassPenalty);
+        }
+        return result;
+    }
+
+    /**
+     * Computes the EMD-HAT distance between both signatures, see {@link JFastEMD#distance(Signature, Signature, double)}.
+     *
+     * @param signature1       first signature
+     * @param signature2       second signature
+     * @param extraMassPenalty penalty for extra mass, -1 for the maximum ground distance
+     * @return the distance
+     */
+    public double compute(Signature signature1, Signature signature2, double extraMassPenalty) {
+        int n1 = signature1.getNumberOfFeatures();
+        int n2 = signature2.getNumberOfFeatures();
+        ensureCapacity(n1, n2);
+        int n = n1 + n2;
+
+        System.arraycopy(signature1.getWeights(), 0, p, 0, n1);
+        Arrays.fill(p, n1, n, 0.0);
+        Arrays.fill(q, 0, n1, 0.0);
+        System.arraycopy(signature2.getWeights(), 0, q, n1, n2);
+
+        Feature[] features1 = signature1.getFeatures();
+        Feature[] features2 = signature2.getFeatures();
+        for (int i = 0; i < n1; i++) {
+            for (int j = 0; j < n2; j++) {
+                double dist = features1[i].groundDist(features2[j]);
+                assert dist >= 0;
+                cross[i * n2 + j] = dist;
+            }
+        }
+
+        return emdHat(n1, n2, extraMassPenalty);
+    }
+
+    private void ensureCapacity(int n1, int n2) {
+        int n = n1 + n2;
+        if (p.length < n) {
+            int size = Math.max(n, 2 * p.length);
+            p = new double[size];
+            q = new double[size];
+            iP = new long[size];
+            iQ = new long[size];
+            b = new long[2 * size + 2];
+            bb = new long[2 * size + 2];
+            nodesNewNames = new int[2 * size + 2];
+            notOnlyThreshold = new boolean[2 * size];
+        }
+        if (cross.length < n1 * n2) {
+            int size = Math.max(n1 * n2, 2 * cross.length);
+            cross = new double[size];
+            iCross = new long[size];
+        }
+    }
+
+    private double emdHat(int n1, int n2, double extraMassPenalty) {
+        int n = n1 + n2;
+        int crossSize = n1 * n2;
+
+        // the remaining blocks of the cost matrix are 0
+        double sumP = 0.0;
+        double sumQ = 0.0;
+        double maxC = 0.0;
+        for (int i = 0; i < n; i++) {
+            sumP += p[i];
+            sumQ += q[i];
+        }
+        for (int i = 0; i < crossSize; i++) {
+            if (cross[i] > maxC) {
+                maxC = cross[i];
+            }
+        }
+        double minSum = Math.min(sumP, sumQ);
+        double maxSum = Math.max(sumP, sumQ);
+        double pqnormFactor = MULTIFACTOR / maxSum;
+        double cnormFactor = MULTIFACTOR / maxC;
+
+        for (int i = 0; i < n; i++) {
+            iP[i] = (long) (Math.floor(p[i] * pqnormFactor + 0.5));
+            iQ[i] = (long) (Math.floor(q[i] * pqnormFactor + 0.5));
+        }
+        for (int i = 0; i < crossSize; i++) {
+            iCross[i] = (long) (Math.floor(cross[i] * cnormFactor + 0.5));
+        }
+
+        // computing distance without extra mass penalty
+        double dist = emdHatImpl(n1, n2);
+        // unnormalize
+        dist = dist / pqnormFactor;
+        dist = dist / cnormFactor;
+
+        // adding extra mass penalty
+        if (extraMassPenalty == -1) {
+            extraMassPenalty = maxC;
+        }
+        dist += (maxSum - minSum) * extraMassPenalty;
+
+        return dist;
+    }
+
+    private long emdHatImpl(int n1, int n2) {
+        int n = n1 + n2;
+
+        // Ensuring that the supplier - P, have more mass.
+        // Note that we assume here that C is symmetric
+        long[] pc;
+        long[] qc;
+        long absDiffSumPSumQ;
+        long sumP = 0;
+        long sumQ = 0;
+        for (int i = 0; i < n; i++) {
+            sumP += iP[i];
+            sumQ += iQ[i];
+        }
+        if (sumQ > sumP) {
+            pc = iQ;
+            qc = iP;
+            absDiffSumPSumQ = sumQ - sumP;
+        } else {
+            pc = iP;
+            qc = iQ;
+            absDiffSumPSumQ = sumP - sumQ;
+        }
+
+        // creating the b vector that contains all vertexes
+        int numNodes = 2 * n + 2;
+        int thresholdNode = 2 * n;
+        int artificialNode = 2 * n + 1; // need to be last !
+        System.arraycopy(pc, 0, b, 0, n);
+        System.arraycopy(qc, 0, b, n, n);
+        // mass that flows to the threshold node can be absorbed from all sources with cost zero
+        b[thresholdNode] = -absDiffSumPSumQ;
+        b[artificialNode] = 0;
+
+        long maxC = 0;
+        for (int i = 0; i < n1 * n2; i++) {
+            if (iCross[i] > maxC) {
+                maxC = iCross[i];
+            }
+        }
+
+        // checking which are not isolated
+        Arrays.fill(notOnlyThreshold, 0, 2 * n, false);
+        for (int i = 0; i < n; i++) {
+            if (b[i] == 0) {
+                continue;
+            }
+            for (int j = 0; j < n; j++) {
+                if (b[j + n] == 0 || cost(n1, n2, i, j) == maxC) {
+                    continue;
+                }
+                notOnlyThreshold[i] = true;
+                notOnlyThreshold[j + n] = true;
+            }
+        }
+
+        // converting all sinks to negative
+        for (int i = n; i < 2 * n; i++) {
+            b[i] = -b[i];
+        }
+
+        // remove nodes with supply demand of 0
+        // and vertexes that are connected only to the threshold vertex
+        long preFlowCost = 0;
+        int currentNodeName = 0;
+        for (int i = 0; i < n * 2; i++) {
+            nodesNewNames[i] = REMOVE_NODE_FLAG;
+            if (b[i] != 0) {
+                if (notOnlyThreshold[i]) {
+                    nodesNewNames[i] = currentNodeName;
+                    currentNodeName++;
+                } else {
+                    if (i >= n) {
+                        preFlowCost -= b[i] * maxC;
+                    }
+                    b[thresholdNode] += b[i]; // add mass(i<N) or deficit (i>=N)
+                }
+            }
+        }
+        nodesNewNames[thresholdNode] = currentNodeName++;
+        nodesNewNames[artificialNode] = currentNodeName++;
+
+        for (int i = 0; i < numNodes; i++) {
+            if (nodesNewNames[i] != REMOVE_NODE_FLAG) {
+                bb[nodesNewNames[i]] = b[i];
+            }
+        }
+
+        // edges in the same order as in the list based implementation
+        edges.reset(currentNodeName);
+        for (int i = 0; i < numNodes; i++) {
+            if (nodesNewNames[i] == REMOVE_NODE_FLAG) {
+                continue;
+            }
+            edges.startNode();
+            if (i < n) {
+                // regular edges between sinks and sources without threshold edges
+                for (int j = 0; j < n; j++) {
+                    if (b[j + n] == 0) {
+                        continue;
+                    }
+                    long c = cost(n1, n2, i, j);
+                    if (c != maxC) {
+                        edges.add(nodesNewNames, j + n, c);
+                    }
+                }
+                // note that costs are reversed to the paper
+                edges.add(nodesNewNames, thresholdNode, 0);
+            }
+            if (i == thresholdNode) {
+                for (int j = 0; j < n; j++) {
+                    edges.add(nodesNewNames, j + n, maxC);
+                }
+            }
+            // artificial arcs
+            if (i < artificialNode) {
+                edges.add(nodesNewNames, artificialNode, maxC + 1);
+            } else {
+                for (int j = 0; j < artificialNode; j++) {
+                    edges.add(nodesNewNames, j, maxC + 1);
+                }
+            }
+        }
+        edges.startNode();
+
+        long mcfDist = minCostFlow.compute(currentNodeName, bb, edges.start, edges.to, edges.cost);
+
+        return preFlowCost // pre-flowing on cases where it was possible
+                + mcfDist; // solution of the transportation problem
+    }
+
+    /**
+     * Entry of the (symmetric) cost matrix of the combined signatures.
+     */
+    private long cost(int n1, int n2, int i, int j) {
+        if (i < n1) {
+            return j >= n1 ? iCross[i * n2 + j - n1] : 0;
+        }
+        return j < n1 ? iCross[j * n2 + i - n1] : 0;
+    }
+
+    /**
+     * Growing edge arrays in the compressed sparse row format.
+     */
+    private static final class EdgeList {
+        private int[] start = new int[0];
+        private int[] to = new int[16];
+        private long[] cost = new long[16];
+        private int node;
+        private int size;
+
+        void reset(int nodes) {
+            if (start.length < nodes + 1) {
+                start = new int[Math.max(nodes + 1, 2 * start.length)];
+            }
+            node = 0;
+            size = 0;
+        }
+
+        void startNode() {
+            start[node++] = size;
+        }
+
+        void add(int[] newNames, int target, long c) {
+            if (newNames[target] == REMOVE_NODE_FLAG) {
+                return;
+            }
+            if (size == to.length) {
+                to = Arrays.copyOf(to, 2 * size);
+                cost = Arrays.copyOf(cost, 2 * size);
+            }
+            to[size] = newNames[target];
+            cost[size++] = c;
+        }
+    }
+}
@@ -0,0 +1,21 @@
+package com.formulasearchengine.mathmltools.similarity.distances.earthmover;
+
+/**
+ * A feature on a line, the ground distance is the absolute difference of the positions.
+ */
+public class Feature1D implements Feature {
+    private double x;
+
+    public Feature1D(double x) {
+        this.x = x;
+    }
+
+    public double getX() {
+        return x;
+    }
+
+    public double groundDist(Feature f) {
+        Feature1D f1d = (Feature1D) f;
+        return Math.abs(x - f1d.x);
+    }
+}
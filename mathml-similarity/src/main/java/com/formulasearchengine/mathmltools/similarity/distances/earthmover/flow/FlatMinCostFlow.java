@@ -0,0 +1,360 @@
+package com.formulasearchengine.mathmltools.similarity.distances.earthmover.flow;
+
+import java.util.Arrays;
+
+/**
+ * Min cost flow on flat primitive arrays. This is the same successive shortest path
+ * algorithm as {@link MinCostFlow} and computes identical results (including the
+ * order in which edges are visited and ties are broken). The graph is given in the
+ * compressed sparse row (CSR) format and all edge lists are kept as flat arrays
+ * instead of lists of edge objects. The priority queue of the Dijkstra search is a
+ * binary heap on primitive arrays.
+ * <p>
+ * An instance keeps its buffers between calls, so it should be reused for many
+ * computations. It is not thread-safe.
+ */
+public class FlatMinCostFlow {
+
+    private int numNodes;
+
+    // forward edges with reduced costs, the residual capacity is infinity
+    private int[] forwardStart;
+    private int[] forwardTo;
+    private long[] forwardCost;
+
+    // backward edges with reduced costs and residual capacities
+    private int[] backwardStart;
+    private int[] backwardTo;
+    private long[] backwardCost;
+    private long[] backwardResidual;
+
+    // flow of all edges in both directions
+    private int[] flowStart;
+    private int[] flowTo;
+    private long[] flowCost;
+    private long[] flowValue;
+
+    // insert positions while building the backward and flow edges
+    private int[] backwardPos;
+    private int[] flowPos;
+
+    // shortest path
+    private long[] d;
+    private int[] prev;
+    private boolean[] finalNodes;
+
+    // heap
+    private int[] nodesToQ;
+    private int[] heapNode;
+    private long[] heapDist;
+    private int heapSize;
+
+    /**
+     * Computes the cost of the min cost flow.
+     *
+     * @param e         supply (positive) and demand (negative) of each node, will be changed
+     * @param edgeStart edges of node i are edgeStart[i] until edgeStart[i + 1] (exclusive), length is e.length + 1
+     * @param edgeTo    target node of each edge
+     * @param edgeCost  cost of each edge
+     * @return the cost of the flow
+     */
+    public long compute(long[] e, int[] edgeStart, int[] edgeTo, long[] edgeCost) {
+        assert edgeStart.length == e.length + 1;
+        return compute(e.length, e, edgeStart, edgeTo, edgeCost);
+    }
+
+    /**
+     * Computes the cost of the min cost flow. Only the first {@code nodes} entries of
+     * the given arrays are used, hence the arrays can be reused buffers. The internal
+     * buffers of this instance grow with the largest graph and are reused as well.
+     *
+     * @param nodes     number of nodes
+     * @param e         supply (positive) and demand (negative) of each node, will be changed
+     * @param edgeStart edges of node i are edgeStart[i] until edgeStart[i + 1] (exclusive)
+     * @param edgeTo    target node of each edge
+     * @param edgeCost  cost of each edge
+     * @return the cost of the flow
+     */
+    public long compute(int nodes, long[] e, int[] edgeStart, int[] edgeTo, long[] edgeCost) {
+        init(nodes, edgeStart, edgeTo, edgeCost);
+
+        while (true) { // until we break when S or T is empty
+            long maxSupply = 0;
+            int k = 0;
+            for (int i = 0; i < numNodes; i++) {
+                if (e[i] > 0 && maxSupply < e[i]) {
+                    maxSupply = e[i];
+                    k = i;
+                }
+            }
+            if (maxSupply == 0) {
+                break;
+            }
+            long delta = maxSupply;
+
+            int l = computeShortestPath(k, e);
+
+            // find delta (minimum on the path from k to l)
+            int to = l;
+            do {
+                int from = prev[to];
+                assert from != to;
+                int itccb = findBackward(from, to);
+                if (itccb >= 0 && backwardResidual[itccb] < delta) {
+                    delta = backwardResidual[itccb];
+                }
+                to = from;
+            } while (to != k);
+
+            // augment delta flow from k to l (backwards actually...)
+            to = l;
+            do {
+                int from = prev[to];
+                assert from != to;
+
+                int itx = flowStart[from];
+                while (flowTo[itx] != to) {
+                    itx++;
+                }
+                flowValue[itx] += delta;
+
+                // update residual for backward edges
+                int itccb = findBackward(to, from);
+                if (itccb >= 0) {
+                    backwardResidual[itccb] += delta;
+                }
+                itccb = findBackward(from, to);
+                if (itccb >= 0) {
+                    backwardResidual[itccb] -= delta;
+                }
+
+                // update e
+                e[to] += delta;
+                e[from] -= delta;
+
+                to = from;
+            } while (to != k);
+        }
+
+        // compute distance from the flow
+        long dist = 0;
+        for (int i = 0; i < flowStart[numNodes]; i++) {
+            dist += flowCost[i] * flowValue[i];
+        }
+        return dist;
+    }
+
+    private void init(int nodes, int[] edgeStart, int[] edgeTo, long[] edgeCost) {
+        numNodes = nodes;
+        int numEdges = edgeStart[nodes];
+        ensureCapacity(nodes, numEdges);
+
+        forwardStart = edgeStart;
+        forwardTo = edgeTo;
+        System.arraycopy(edgeCost, 0, forwardCost, 0, numEdges);
+
+        // the degrees first, edges are appended in the order of the source node and edge
+        Arrays.fill(backwardStart, 0, nodes + 1, 0);
+        Arrays.fill(flowStart, 0, nodes + 1, 0);
+        for (int from = 0; from < nodes; from++) {
+            for (int it = edgeStart[from]; it < edgeStart[from + 1]; it++) {
+                backwardStart[edgeTo[it] + 1]++;
+                flowStart[from + 1]++;
+                flowStart[edgeTo[it] + 1]++;
+            }
+        }
+        for (int i = 0; i < nodes; i++) {
+            backwardStart[i + 1] += backwardStart[i];
+            flowStart[i + 1] += flowStart[i];
+        }
+
+        // since the flow at the beginning is 0, the residual capacity is also zero
+        Arrays.fill(backwardResidual, 0, numEdges, 0);
+        Arrays.fill(flowValue, 0, 2 * numEdges, 0);
+        Arrays.fill(d, 0, nodes, 0);
+        Arrays.fill(prev, 0, nodes, 0);
+        System.arraycopy(backwardStart, 0, backwardPos, 0, nodes);
+        System.arraycopy(flowStart, 0, flowPos, 0, nodes);
+        for (int from = 0; from < nodes; from++) {
+            for (int it = edgeStart[from]; it < edgeStart[from + 1]; it++) {
+                int to = edgeTo[it];
+                long cost = edgeCost[it];
+                flowTo[flowPos[from]] = to;
+                flowCost[flowPos[from]++] = cost;
+                flowTo[flowPos[to]] = from;
+                flowCost[flowPos[to]++] = -cost;
+                backwardTo[backwardPos[to]] = from;
+                backwardCost[backwardPos[to]++] = -cost;
+            }
+        }
+    }
+
+    /**
+     * Grows the internal buffers if necessary. The buffers never shrink.
+     */
+    private void ensureCapacity(int nodes, int numEdges) {
+        if (d == null || d.length < nodes) {
+            int size = d == null ? nodes : Math.max(nodes, 2 * d.length);
+            backwardStart = new int[size + 1];
+            flowStart = new int[size + 1];
+            backwardPos = new int[size];
+            flowPos = new int[size];
+            d = new long[size];
+            prev = new int[size];
+            finalNodes = new boolean[size];
+            nodesToQ = new int[size];
+            heapNode = new int[size];
+            heapDist = new long[size];
+        }
+        if (forwardCost == null || forwardCost.length < numEdges) {
+            int size = forwardCost == null ? numEdges : Math.max(numEdges, 2 * forwardCost.length);
+            forwardCost = new long[size];
+            backwardTo = new int[size];
+            backwardCost = new long[size];
+            backwardResidual = new long[size];
+            flowTo = new int[2 * size];
+            flowCost = new long[2 * size];
+            flowValue = new long[2 * size];
+        }
+    }
+
+    private int findBackward(int from, int to) {
+        for (int it = backwardStart[from]; it < backwardStart[from + 1]; it++) {
+            if (backwardTo[it] == to) {
+                return it;
+            }
+        }
+        return -1;
+    }
+
+    private int computeShortestPath(int from, long[] e) {
+        // making heap (all inf except 0, so we are saving comparisons...)
+        heapNode[0] = from;
+        heapDist[0] = 0;
+        nodesToQ[from] = 0;
+        int j = 1;
+        for (int i = 0; i < numNodes; i++) {
+            if (i == from) {
+                continue;
+            }
+            heapNode[j] = i;
+            heapDist[j] = Long.MAX_VALUE;
+            nodesToQ[i] = j;
+            j++;
+        }
+        heapSize = numNodes;
+
+        Arrays.fill(finalNodes, 0, numNodes, false);
+        int l = 0;
+        do {
+            int u = heapNode[0];
+
+            d[u] = heapDist[0]; // final distance
+            finalNodes[u] = true;
+            if (e[u] < 0) {
+                l = u;
+                break;
+            }
+
+            heapRemoveFirst();
+
+            // neighbors of u
+            for (int it = forwardStart[u]; it < forwardStart[u + 1]; it++) {
+                assert forwardCost[it] >= 0;
+                relax(u, forwardTo[it], d[u] + forwardCost[it]);
+            }
+            for (int it = backwardStart[u]; it < backwardStart[u + 1]; it++) {
+                if (backwardResidual[it] > 0) {
+                    assert backwardCost[it] >= 0;
+                    relax(u, backwardTo[it], d[u] + backwardCost[it]);
+                }
+            }
+        } while (heapSize > 0);
+
+        // reduced costs for forward edges (c[i,j]-pi[i]+pi[j])
+        for (int innerFrom = 0; innerFrom < numNodes; innerFrom++) {
+            for (int it = forwardStart[innerFrom]; it < forwardStart[innerFrom + 1]; it++) {
+                if (finalNodes[innerFrom]) {
+                    forwardCost[it] += d[innerFrom] - d[l];
+                }
+                if (finalNodes[forwardTo[it]]) {
+                    forwardCost[it] -= d[forwardTo[it]] - d[l];
+                }
+            }
+        }
+
+        // reduced costs and capacity for backward edges (c[j,i]-pi[j]+pi[i])
+        for (int innerFrom = 0; innerFrom < numNodes; innerFrom++) {
+            for (int it = backwardStart[innerFrom]; it < backwardStart[innerFrom + 1]; it++) {
+                if (finalNodes[innerFrom]) {
+                    backwardCost[it] += d[innerFrom] - d[l];
+                }
+                if (finalNodes[backwardTo[it]]) {
+                    backwardCost[it] -= d[backwardTo[it]] - d[l];
+                }
+            }
+        }
+        return l;
+    }
+
+    private void relax(int u, int v, long alt) {
+        if (nodesToQ[v] < heapSize && alt < heapDist[nodesToQ[v]]) {
+            heapDecreaseKey(v, alt);
+            prev[v] = u;
+        }
+    }
+
+    private void heapDecreaseKey(int v, long alt) {
+        int i = nodesToQ[v];
+        heapDist[i] = alt;
+        while (i > 0 && heapDist[parent(i)] > heapDist[i]) {
+            swapHeap(i, parent(i));
+            i = parent(i);
+        }
+    }
+
+    private void heapRemoveFirst() {
+        swapHeap(0, heapSize - 1);
+        heapSize--;
+        heapify(0);
+    }
+
+    private void heapify(int i) {
+        while (true) {
+            int l = left(i);
+            int r = right(i);
+            int smallest = (l < heapSize && heapDist[l] < heapDist[i]) ? l : i;
+            if (r < heapSize && heapDist[r] < heapDist[smallest]) {
+                smallest = r;
+            }
+            if (smallest == i) {
+                return;
+            }
+            swapHeap(i, smallest);
+            i = smallest;
+        }
+    }
+
+    private void swapHeap(int i, int j) {
+        int tmpNode = heapNode[i];
+        long tmpDist = heapDist[i];
+        heapNode[i] = heapNode[j];
+        heapDist[i] = heapDist[j];
+        heapNode[j] = tmpNode;
+        heapDist[j] = tmpDist;
+        nodesToQ[heapNode[j]] = j;
+        nodesToQ[heapNode[i]] = i;
+    }
+
+    private static int left(int i) {
+        return 2 * i + 1;
+    }
+
+    private static int right(int i) {
+        return 2 * i + 2;
+    }
+
+    private static int parent(int i) {
+        return (i - 1) / 2;
+    }
+}
@@ -247,7 +247,7 @@ public class MinCostFlow {
                     it.setCost(it.getCost() + d.get(innerFrom) - d.get(l[0]));
                 }
                 if (finalNodesFlg.get(it.getTo())) {
-                    it.setCost(it.getCost() - d.get(it.getTo()) - d.get(l[0]));
+                    it.setCost(it.getCost() - d.get(it.getTo()) + d.get(l[0]));
                 }
             }
         }
@@ -260,7 +260,7 @@ public class MinCostFlow {
                     it.setCost(it.getCost() + d.get(innerFrom) - d.get(l[0]));
                 }
                 if (finalNodesFlg.get(it.getTo())) {
-                    it.setCost(it.getCost() - d.get(it.getTo()) - d.get(l[0]));
+                    it.setCost(it.getCost() - d.get(it.getTo()) + d.get(l[0]));
                 }
             }
         }
@@ -0,0 +1,64 @@
+package com.formulasearchengine.mathmltools.similarity.distances.ted;
+
+import com.formulasearchengine.mathmltools.similarity.node.CompactMathNode;
+
+/**
+ * Costs of the edit operations of the {@link TreeEditDistance}.
+ * <br/>
+ * By default every operation has a constant cost and renaming a node into an equal node
+ * is free. Nodes are equal in the sense of {@link CompactMathNode#equals(Object)}, i.e.,
+ * the values of abstract nodes are ignored. Override the methods for node dependent costs,
+ * e.g., a cheaper renaming of identifiers. The costs must not be negative.
+ */
+public class EditCosts {
+
+    /**
+     * Every operation costs 1.
+     */
+    public static final EditCosts UNIT = new EditCosts(1, 1, 1);
+
+    private final double renameCost;
+
+    private final double insertCost;
+
+    private final double deleteCost;
+
+    /**
+     * @param renameCost cost to rename a node into a different node
+     * @param insertCost cost to insert a node
+     * @param deleteCost cost to delete a node
+     */
+    public EditCosts(double renameCost, double insertCost, double deleteCost) {
+        if (renameCost < 0 || insertCost < 0 || deleteCost < 0) {
+            throw new IllegalArgumentException("edit costs must not be negative");
+        }
+        this.renameCost = renameCost;
+        this.insertCost = insertCost;
+        this.deleteCost = deleteCost;
+    }
+
+    /**
+     * @param from node of the first tree
+     * @param to   node of the second tree
+     * @return cost to rename the node, 0 for equal nodes
+     */
+    public double rename(CompactMathNode from, CompactMathNode to) {
+        return from.equals(to) ? 0 : renameCost;
+    }
+
+    /**
+     * @param node node of the second tree
+     * @return cost to insert the node
+     */
+    public double insert(CompactMathNode node) {
+        return insertCost;
+    }
+
+    /**
+     * @param node node of the first tree
+     * @return cost to delete the node
+     */
+    public double delete(CompactMathNode node) {
+        return deleteCost;
+    }
+}
@@ -0,0 +1,345 @@
+package com.formulasearchengine.mathmltools.similarity.distances.ted;
+
+import com.formulasearchengine.mathmltools.similarity.node.CompactMathNode;
+import com.formulasearchengine.mathmltools.similarity.node.MathNode;
+import com.formulasearchengine.mathmltools.similarity.node.MathNodeGenerator;
+import com.formulasearchengine.mathmltools.similarity.result.EditDistance;
+import com.formulasearchengine.mathmltools.similarity.result.SimilarityType;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Tree edit distance between two math expression trees, i.e., the minimal cost of
+ * node deletions, insertions and renamings to transform the first tree into the second.
+ * The costs of the operations are defined by {@link EditCosts}.
+ * <br/>
+ * The distance is computed by the algorithm of Zhang and Shasha: the trees are numbered
+ * in post-order and the distances of all relevant subforests are computed iteratively,
+ * bottom-up from the keyroots. It needs O(n * m) memory and at most O(n^2 * m^2) time,
+ * typically much less for the flat trees of formulas.
+ * <br/>
+ * The edit distance of ordered trees is used, since the unordered problem is NP-hard. The
+ * children of order insensitive nodes (e.g., plus or times) are brought into a canonical order
+ * by their labels and subtree hashes first, so permuted operands of such nodes have the distance 0.
+ * For these nodes the result is an upper bound of the unordered edit distance. Abstract trees
+ * ({@link MathNode#toAbstract()}) ignore the values of the nodes.
+ * <br/>
+ * An instance is a workspace: all buffers grow with the largest trees seen so far and
+ * are reused for subsequent calls. An instance is not thread-safe, the static methods
+ * use the instance of the calling thread with {@link EditCosts#UNIT unit costs}, see
+ * {@link #forCurrentThread()}.
+ */
+public final class TreeEditDistance {
+
+    private static final ThreadLocal<TreeEditDistance> ENGINES =
+            ThreadLocal.withInitial(() -> new TreeEditDistance(EditCosts.UNIT));
+
+    private final EditCosts costs;
+
+    private final PostOrder first = new PostOrder();
+
+    private final PostOrder second = new PostOrder();
+
+    // distances between all subtrees, first tree in the rows
+    private double[] treeDist = new double[0];
+
+    // distances between the subforests of the current keyroots
+    private double[] forestDist = new double[0];
+
+    /**
+     * @param costs costs of the edit operations
+     */
+    public TreeEditDistance(EditCosts costs) {
+        this.costs = Objects.requireNonNull(costs, "edit costs are null");
+    }
+
+    /**
+     * Returns the instance (with unit costs) of the calling thread. It must not be passed to other threads.
+     *
+     * @return the instance of the calling thread
+     */
+    public static TreeEditDistance forCurrentThread() {
+        return ENGINES.get();
+    }
+
+    /**
+     * Tree edit distance with unit costs, uses the instance of the calling thread.
+     *
+     * @param tree1 first tree
+     * @param tree2 second tree
+     * @return number of edit operations
+     */
+    public static double distance(MathNode tree1, MathNode tree2) {
+        return ENGINES.get().compute(tree1, tree2);
+    }
+
+    public EditCosts getCosts() {
+        return costs;
+    }
+
+    /**
+     * Tree edit distance between two MathNode trees. Both trees are converted into
+     * their compact form first, use {@link #compute(CompactMathNode, CompactMathNode)}
+     * if a tree is compared many times.
+     *
+     * @param tree1 first tree
+     * @param tree2 second tree
+     * @return the minimal cost to transform the first into the second tree
+     */
+    public double compute(MathNode tree1, MathNode tree2) {
+        return compute(MathNodeGenerator.toCompact(tree1), MathNodeGenerator.toCompact(tree2));
+    }
+
+    /**
+     * Tree edit distances between a query and all candidates.
+     *
+     * @param query      the query tree
+     * @param candidates candidate trees
+     * @return the distances in the order of the candidates
+     */
+    public double[] computeAll(CompactMathNode query, List<CompactMathNode> candidates) {
+        double[] result = new double[candidates.size()];
+        int i = 0;
+        for (CompactMathNode candidate : candidates) {
+            result[i++] = compute(query, candidate);
+        }
+        return result;
+    }
+
+    /**
+     * Tree edit distance between two compact trees.
+     *
+     * @param tree1 first tree
+     * @param tree2 second tree
+     * @return the minimal cost to transform the first into the second tree
+     */
+    public double compute(CompactMathNode tree1, CompactMathNode tree2) {
+        first.load(tree1, costs, true);
+        second.load(tree2, costs, false);
+        int n1 = first.size;
+        int n2 = second.size;
+        ensureCapacity(n1, n2);
+
+        for (int k1 = 0; k1 < first.keyrootCount; k1++) {
+            for (int k2 = 0; k2 < second.keyrootCount; k2++) {
+                forestDistance(first.keyroots[k1], second.keyroots[k2], n2);
+            }
+        }
+        return treeDist[(n1 - 1) * n2 + n2 - 1];
+    }
+
+    /**
+     * Normalized similarity of both trees. The distance is divided by the cost to delete
+     * the first and insert the second tree, which is the upper bound of the distance.
+     *
+     * @param tree1 first tree
+     * @param tree2 second tree
+     * @return value between 0 and 1, 1 for identical trees
+     */
+    public double similarity(CompactMathNode tree1, CompactMathNode tree2) {
+        return normalize(compute(tree1, tree2));
+    }
+
+    /**
+     * Distance and normalized similarity of both trees as a result object.
+     *
+     * @param tree1 first (reference) tree
+     * @param tree2 second (comparison) tree
+     * @param type  type of the comparison, abstract trees should be compared as similar
+     * @return distance and similarity of both trees
+     */
+    public EditDistance compare(CompactMathNode tree1, CompactMathNode tree2, SimilarityType type) {
+        double distance = compute(tree1, tree2);
+        return new EditDistance(distance, normalize(distance), type);
+    }
+
+    private double normalize(double distance) {
+        double max = first.totalCost + second.totalCost;
+        return max == 0 ? 1.0 : 1.0 - distance / max;
+    }
+
+    /**
+     * Normalized similarity of both trees, see {@link #similarity(CompactMathNode, CompactMathNode)}.
+     *
+     * @param tree1 first tree
+     * @param tree2 second tree
+     * @return value between 0 and 1, 1 for identical trees
+     */
+    public double similarity(MathNode tree1, MathNode tree2) {
+        return similarity(MathNodeGenerator.toCompact(tree1), MathNodeGenerator.toCompact(tree2));
+    }
+
+    /**
+     * Distances of all subforests of the keyroots i and j, the distances of the
+     * subtrees are stored in the tree distance matrix.
+     */
+    private void forestDistance(int i, int j, int n2) {
+        int[] lml1 = first.leftmostLeaf;
+        int[] lml2 = second.leftmostLeaf;
+        double[] del = first.cost;
+        double[] ins = second.cost;
+        int li = lml1[i];
+        int lj = lml2[j];
+        int rows = i - li + 2;
+        int cols = j - lj + 2;
+
+        forestDist[0] = 0;
+        for (int x = 1; x < rows; x++) {
+            forestDist[x * cols] = forestDist[(x - 1) * cols] + del[li + x - 1];
+        }
+        for (int y = 1; y < cols; y++) {
+            forestDist[y] = forestDist[y - 1] + ins[lj + y - 1];
+        }
+        for (int x = 1; x < rows; x++) {
+            int i1 = li + x - 1;
+            for (int y = 1; y < cols; y++) {
+                int j1 = lj + y - 1;
+                double delete = forestDist[(x - 1) * cols + y] + del[i1];
+                double insert = forestDist[x * cols + y - 1] + ins[j1];
+                double dist;
+                if (lml1[i1] == li && lml2[j1] == lj) {
+                    // both forests are trees
+                    double rename = forestDist[(x - 1) * cols + y - 1] + costs.rename(first.nodes[i1], second.nodes[j1]);
+                    dist = Math.min(Math.min(delete, insert), rename);
+                    treeDist[i1 * n2 + j1] = dist;
+                } else {
+                    double tree = forestDist[(lml1[i1] - li) * cols + lml2[j1] - lj] + treeDist[i1 * n2 + j1];
+                    dist = Math.min(Math.min(delete, insert), tree);
+                }
+                forestDist[x * cols + y] = dist;
+            }
+        }
+    }
+
+    private void ensureCapacity(int n1, int n2) {
+        if (treeDist.length < n1 * n2) {
+            treeDist = new double[Math.max(n1 * n2, 2 * treeDist.length)];
+        }
+        int forest = (n1 + 1) * (n2 + 1);
+        if (forestDist.length < forest) {
+            forestDist = new double[Math.max(forest, 2 * forestDist.length)];
+        }
+    }
+
+    /**
+     * A tree in post-order with the leftmost leaf descendants, keyroots and the costs
+     * to delete (first tree) or insert (second tree) the nodes. The buffers are reused.
+     */
+    private static final class PostOrder {
+
+        private CompactMathNode[] nodes = new CompactMathNode[0];
+        private int[] leftmostLeaf = new int[0];
+        private int[] keyroots = new int[0];
+        private double[] cost = new double[0];
+        private boolean[] seen = new boolean[0];
+
+        // stack of the iterative traversal
+        private CompactMathNode[] stack = new CompactMathNode[0];
+        private int[] stackChild = new int[0];
+        private int[] stackFirst = new int[0];
+
+        private int size;
+        private int keyrootCount;
+        private double totalCost;
+
+        void load(CompactMathNode root, EditCosts costs, boolean delete) {
+            ensureCapacity(root.getSubtreeSize());
+            size = 0;
+            totalCost = 0;
+
+            // iterative post-order traversal, every stack entry holds the next child
+            // and the post-order index of its first (leftmost) descendant
+            int top = 0;
+            stack[0] = root;
+            stackChild[0] = 0;
+            stackFirst[0] = 0;
+            while (top >= 0) {
+                CompactMathNode node = stack[top];
+                if (stackChild[top] < node.getChildCount()) {
+                    stack[top + 1] = child(node, stackChild[top]++);
+                    stackChild[top + 1] = 0;
+                    stackFirst[top + 1] = size;
+                    top++;
+                } else {
+                    nodes[size] = node;
+                    leftmostLeaf[size] = stackFirst[top];
+                    cost[size] = delete ? costs.delete(node) : costs.insert(node);
+                    totalCost += cost[size];
+                    size++;
+                    top--;
+                }
+            }
+
+            // keyroots: the highest node of every leftmost leaf, in ascending order
+            Arrays.fill(seen, 0, size, false);
+            keyrootCount = 0;
+            for (int i = size - 1; i >= 0; i--) {
+                if (!seen[leftmostLeaf[i]]) {
+                    seen[leftmostLeaf[i]] = true;
+                    keyroots[keyrootCount++] = i;
+                }
+            }
+            for (int a = 0, b = keyrootCount - 1; a < b; a++, b--) {
+                int tmp = keyroots[a];
+                keyroots[a] = keyroots[b];
+                keyroots[b] = tmp;
+            }
+        }
+
+        /**
+         * The i-th child in canonical order. The children of order sensitive nodes keep
+         * their order, all others are ordered by their labels and subtree hashes.
+         */
+        private static CompactMathNode child(CompactMathNode node, int i) {
+            if (node.isOrderSensitive()) {
+                return node.getChild(i);
+            }
+            // selection by rank, the number of children is small
+            int count = node.getChildCount();
+            for (int c = 0; c < count; c++) {
+                int rank = 0;
+                for (int o = 0; o < count; o++) {
+                    int cmp = compareChildren(node.getChild(o), node.getChild(c));
+                    if (cmp < 0 || cmp == 0 && o < c) {
+                        rank++;
+                    }
+                }
+                if (rank == i) {
+                    return node.getChild(c);
+                }
+            }
+            throw new IllegalStateException("no child at position " + i);
+        }
+
+        private static int compareChildren(CompactMathNode a, CompactMathNode b) {
+            int cmp = compareLabels(a.getName(), b.getName());
+            if (cmp == 0 && !a.isIgnoreValues()) {
+                cmp = compareLabels(a.getValue(), b.getValue());
+            }
+            return cmp != 0 ? cmp : Long.compare(a.getSubtreeHash(), b.getSubtreeHash());
+        }
+
+        private static int compareLabels(String a, String b) {
+            if (a == null || b == null) {
+                return a == null ? (b == null ? 0 : -1) : 1;
+            }
+            return a.compareTo(b);
+        }
+
+        private void ensureCapacity(int n) {
+            if (nodes.length < n) {
+                int length = Math.max(n, 2 * nodes.length);
+                nodes = new CompactMathNode[length];
+                leftmostLeaf = new int[length];
+                keyroots = new int[length];
+                cost = new double[length];
+                seen = new boolean[length];
+                stack = new CompactMathNode[length];
+                stackChild = new int[length];
+                stackFirst = new int[length];
+            }
+        }
+    }
+}
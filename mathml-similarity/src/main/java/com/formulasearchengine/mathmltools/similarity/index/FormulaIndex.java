@@ -0,0 +1,555 @@
+package com.formulasearchengine.mathmltools.similarity.index;
+
+import com.formulasearchengine.mathmltools.mml.CMMLInfo;
+import com.formulasearchengine.mathmltools.similarity.node.MathNode;
+import com.formulasearchengine.mathmltools.similarity.node.MathNodeGenerator;
+import com.formulasearchengine.mathmltools.similarity.util.MathNodeException;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.Collectors;
+
+/**
+ * One-to-many similarity search index over {@link MathNode} trees.
+ * <br/>
+ * For every formula the index stores the subtree hashes of all operator nodes
+ * (identical and abstract) and the multiset of leaf hashes. A search looks up
+ * the subtree hashes of the query in an inverted index and ranks all formulas
+ * that share at least one subtree, see {@link IndexHit}. The hits can be
+ * verified afterwards with the {@link com.formulasearchengine.mathmltools.similarity.SubTreeComparison}.
+ * <br/>
+ * The index is heap-resident: the fingerprints and the inverted index (postings of
+ * primitive document numbers) are kept in memory. A persistent index is additionally
+ * backed by an append-only log file of add and remove records, which is read sequentially
+ * and replayed on opening. The file only makes the index durable, searches never read
+ * it. Removed and replaced formulas remain in the file (and as skipped postings in memory)
+ * until the index is compacted. This happens automatically once more formulas were removed
+ * than are alive (and at least {@value #AUTO_COMPACT_MIN_REMOVED}), or by {@link #compact()}.
+ * <br/>
+ * All methods are thread-safe.
+ */
+public class FormulaIndex implements Closeable {
+
+    private static final Logger LOG = LogManager.getLogger(FormulaIndex.class);
+
+    /* file header: "MLIX" and the version of the file format */
+    private static final int MAGIC = 0x4D4C4958;
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 8;
+
+    private static final byte ADD = 1;
+    private static final byte REMOVE = 2;
+
+    /* minimum number of removed formulas before the index is compacted automatically */
+    static final int AUTO_COMPACT_MIN_REMOVED = 10000;
+
+    /* buffer size for the replay of the index file */
+    private static final int READ_BUFFER_SIZE = 1 << 16;
+
+    /* internal document number for every formula id */
+    private final Map<String, Integer> docNumbers = new HashMap<>();
+
+    /* all formulas by their document number, removed formulas are null */
+    private final List<IndexedFormula> formulas = new ArrayList<>();
+
+    /* inverted index: subtree hash > document numbers */
+    private final Map<Long, PostingList> identicalPostings = new HashMap<>();
+    private final Map<Long, PostingList> similarPostings = new HashMap<>();
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    /* backing file, or null for an in-memory index */
+    private final Path file;
+    private FileChannel channel;
+
+    /* only changed by tests */
+    private int autoCompactMinRemoved = AUTO_COMPACT_MIN_REMOVED;
+
+    /**
+     * Creates an empty in-memory index.
+     */
+    public FormulaIndex() {
+        this.file = null;
+    }
+
+    private FormulaIndex(Path file) {
+        this.file = file;
+    }
+
+    /**
+     * Opens (or creates) a persistent index. All formulas of an existing
+     * index file will be loaded.
+     *
+     * @param file index file
+     * @return the opened index
+     * @throws IOException if the file cannot be read or is not an index file
+     */
+    public static FormulaIndex open(Path file) throws IOException {
+        FormulaIndex index = new FormulaIndex(file);
+        index.channel = FileChannel.open(file, StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            if (index.channel.size() == 0) {
+                index.writeHeader(index.channel);
+            } else {
+                index.replay();
+                index.compactIfNeeded();
+            }
+        } catch (IOException e) {
+            index.channel.close();
+            throw e;
+        }
+        return index;
+    }
+
+    /**
+     * Adds a formula to the index. An existing formula with the same id will be replaced.
+     *
+     * @param id   identifier of the formula
+     * @param cmml CMMLInfo document of the formula
+     * @throws MathNodeException if no math node tree can be created
+     * @throws IOException       if the formula cannot be persisted
+     */
+    public void add(String id, CMMLInfo cmml) throws MathNodeException, IOException {
+        add(id, MathNodeGenerator.generateMathNode(cmml));
+    }
+
+    /**
+     * Adds a formula to the index. An existing formula with the same id will be replaced.
+     * The tree is not changed.
+     *
+     * @param id   identifier of the formula
+     * @param tree MathNode tree of the formula
+     * @throws IOException if the formula cannot be persisted
+     */
+    public void add(String id, MathNode tree) throws IOException {
+        IndexedFormula formula = IndexedFormula.of(id, tree);
+        lock.writeLock().lock();
+        try {
+            if (channel != null) {
+                append(encodeAdd(formula));
+            }
+            addInternal(formula);
+            compactIfNeeded();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Removes a formula from the index.
+     *
+     * @param id identifier of the formula
+     * @return true if the formula was part of the index
+     * @throws IOException if the removal cannot be persisted
+     */
+    public boolean remove(String id) throws IOException {
+        lock.writeLock().lock();
+        try {
+            if (!docNumbers.containsKey(id)) {
+                return false;
+            }
+            if (channel != null) {
+                append(encodeRemove(id));
+            }
+            removeInternal(id);
+            compactIfNeeded();
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public boolean contains(String id) {
+        lock.readLock().lock();
+        try {
+            return docNumbers.containsKey(id);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return number of formulas in the index
+     */
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return docNumbers.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Search for the formulas that share the most subtrees with the query.
+     *
+     * @param query CMMLInfo document of the query
+     * @param k     maximum number of hits
+     * @return best hits first, list can be empty but never null
+     * @throws MathNodeException if no math node tree can be created
+     */
+    public List<IndexHit> search(CMMLInfo query, int k) throws MathNodeException {
+        return search(MathNodeGenerator.generateMathNode(query), k);
+    }
+
+    /**
+     * Search for the formulas that share the most subtrees with the query.
+     * The query tree is not changed.
+     *
+     * @param query MathNode tree of the query
+     * @param k     maximum number of hits
+     * @return best hits first, list can be empty but never null
+     */
+    public List<IndexHit> search(MathNode query, int k) {
+        if (k <= 0) {
+            return new ArrayList<>();
+        }
+        IndexedFormula q = IndexedFormula.of(null, query);
+        lock.readLock().lock();
+        try {
+            // sorted document numbers, a document occurs once per shared subtree
+            int[] identical = collect(q.identical, identicalPostings);
+            int[] similar = collect(q.similar, similarPostings);
+
+            // the worst of the best k hits is on top
+            PriorityQueue<IndexHit> best = new PriorityQueue<>(k + 1, Comparator.reverseOrder());
+            int i = 0;
+            int j = 0;
+            while (i < identical.length || j < similar.length) {
+                int doc;
+                if (j == similar.length || (i < identical.length && identical[i] <= similar[j])) {
+                    doc = identical[i];
+                } else {
+                    doc = similar[j];
+                }
+                int identicalCount = 0;
+                while (i < identical.length && identical[i] == doc) {
+                    identicalCount++;
+                    i++;
+                }
+                int similarCount = 0;
+                while (j < similar.length && similar[j] == doc) {
+                    similarCount++;
+                    j++;
+                }
+                IndexedFormula f = formulas.get(doc);
+                // skip removed formulas
+                if (f != null) {
+                    double coverage = q.leafs.length == 0 ? 1.
+                            : (double) IndexedFormula.intersectionSize(q.leafs, f.leafs) / q.leafs.length;
+                    best.add(new IndexHit(f.id, identicalCount, similarCount, coverage));
+                    if (best.size() > k) {
+                        best.poll();
+                    }
+                }
+            }
+            List<IndexHit> hits = new ArrayList<>(best);
+            Collections.sort(hits);
+            return hits;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private static int[] collect(long[] hashes, Map<Long, PostingList> postings) {
+        PostingList[] lists = new PostingList[hashes.length];
+        int total = 0;
+        for (int i = 0; i < hashes.length; i++) {
+            lists[i] = postings.get(hashes[i]);
+            if (lists[i] != null) {
+                total += lists[i].size();
+            }
+        }
+        int[] docs = new int[total];
+        int n = 0;
+        for (PostingList list : lists) {
+            if (list != null) {
+                n = list.copyTo(docs, n);
+            }
+        }
+        Arrays.sort(docs);
+        return docs;
+    }
+
+    private void addInternal(IndexedFormula formula) {
+        removeInternal(formula.id);
+        int doc = formulas.size();
+        formulas.add(formula);
+        docNumbers.put(formula.id, doc);
+        for (long hash : formula.identical) {
+            identicalPostings.computeIfAbsent(hash, h -> new PostingList()).add(doc);
+        }
+        for (long hash : formula.similar) {
+            similarPostings.computeIfAbsent(hash, h -> new PostingList()).add(doc);
+        }
+    }
+
+    /**
+     * Postings of removed formulas stay in place and are skipped during the search,
+     * they are cleaned up by {@link #compact()}.
+     */
+    private boolean removeInternal(String id) {
+        Integer doc = docNumbers.remove(id);
+        if (doc == null) {
+            return false;
+        }
+        formulas.set(doc, null);
+        return true;
+    }
+
+    /**
+     * @return number of removed or replaced formulas that were not compacted yet
+     */
+    int removedFormulas() {
+        lock.readLock().lock();
+        try {
+            return formulas.size() - docNumbers.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Only for tests, see {@link #AUTO_COMPACT_MIN_REMOVED}.
+     */
+    void setAutoCompactMinRemoved(int minRemoved) {
+        this.autoCompactMinRemoved = minRemoved;
+    }
+
+    /* the caller holds the write lock */
+    private void compactIfNeeded() throws IOException {
+        int removed = formulas.size() - docNumbers.size();
+        if (removed >= autoCompactMinRemoved && removed > docNumbers.size()) {
+            LOG.debug("Compact {} removed formulas of the index {}", removed, file);
+            compact();
+        }
+    }
+
+    /**
+     * Rewrites the index (and the index file) without removed formulas.
+     *
+     * @throws IOException if the index file cannot be rewritten
+     */
+    public void compact() throws IOException {
+        lock.writeLock().lock();
+        try {
+            List<IndexedFormula> alive = formulas.stream()
+                    .filter(f -> f != null)
+                    .collect(Collectors.toList());
+            if (channel != null) {
+                Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+                try (FileChannel out = FileChannel.open(tmp, StandardOpenOption.CREATE,
+                        StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+                    writeHeader(out);
+                    for (IndexedFormula f : alive) {
+                        writeFully(out, encodeAdd(f));
+                    }
+                    out.force(true);
+                }
+                channel.close();
+                Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+                channel.position(channel.size());
+            }
+            docNumbers.clear();
+            formulas.clear();
+            identicalPostings.clear();
+            similarPostings.clear();
+            alive.forEach(this::addInternal);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Forces all changes to the storage device.
+     *
+     * @throws IOException if the index file cannot be written
+     */
+    public void flush() throws IOException {
+        lock.writeLock().lock();
+        try {
+            if (channel != null) {
+                channel.force(false);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        lock.writeLock().lock();
+        try {
+            if (channel != null) {
+                channel.force(true);
+                channel.close();
+                channel = null;
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void writeHeader(FileChannel out) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.putInt(MAGIC).putInt(VERSION).flip();
+        writeFully(out, header);
+    }
+
+    /**
+     * Loads all records of the index file into memory. An incomplete record at
+     * the end of the file (e.g., after a crash) will be cut off. The file is read
+     * as a stream, hence its size is not limited by the size of a single mapping.
+     */
+    private void replay() throws IOException {
+        long size = channel.size();
+        channel.position(0);
+        // not closed, that would close the channel
+        RecordInput in = new RecordInput(channel, size);
+        if (size < HEADER_SIZE || in.readInt() != MAGIC) {
+            throw new IOException("Not a formula index file: " + file);
+        }
+        int version = in.readInt();
+        if (version != VERSION) {
+            throw new IOException("Unsupported formula index version " + version + " in " + file);
+        }
+        long valid = in.position;
+        try {
+            while (in.position < size) {
+                byte type = in.readByte();
+                String id = in.readString();
+                if (type == ADD) {
+                    addInternal(new IndexedFormula(id, in.readLongs(), in.readLongs(), in.readLongs()));
+                } else if (type == REMOVE) {
+                    removeInternal(id);
+                } else {
+                    throw new IOException("Unknown record type " + type + " in " + file);
+                }
+                valid = in.position;
+            }
+        } catch (EOFException e) {
+            LOG.warn("Incomplete record at the end of the formula index {}, {} bytes will be ignored.",
+                    file, size - valid);
+            channel.truncate(valid);
+        }
+        channel.position(channel.size());
+        LOG.debug("Loaded {} formulas from {}", docNumbers.size(), file);
+    }
+
+    private void append(ByteBuffer record) throws IOException {
+        writeFully(channel, record);
+    }
+
+    private static void writeFully(FileChannel out, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            out.write(buffer);
+        }
+    }
+
+    private static ByteBuffer encodeAdd(IndexedFormula formula) {
+        byte[] id = formula.id.getBytes(StandardCharsets.UTF_8);
+        int longs = formula.identical.length + formula.similar.length + formula.leafs.length;
+        ByteBuffer buffer = ByteBuffer.allocate(1 + 4 + id.length + 3 * 4 + 8 * longs);
+        buffer.put(ADD).putInt(id.length).put(id);
+        putLongs(buffer, formula.identical);
+        putLongs(buffer, formula.similar);
+        putLongs(buffer, formula.leafs);
+        buffer.flip();
+        return buffer;
+    }
+
+    private static ByteBuffer encodeRemove(String id) {
+        byte[] bytes = id.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer buffer = ByteBuffer.allocate(1 + 4 + bytes.length);
+        buffer.put(REMOVE).putInt(bytes.length).put(bytes).flip();
+        return buffer;
+    }
+
+    private static void putLongs(ByteBuffer buffer, long[] values) {
+        buffer.putInt(values.length);
+        for (long value : values) {
+            buffer.putLong(value);
+        }
+    }
+
+    /**
+     * Buffered sequential reader of the records, which keeps track of its position.
+     */
+    private static final class RecordInput {
+        private final DataInputStream in;
+        private final long size;
+        private long position;
+
+        RecordInput(FileChannel channel, long size) {
+            this.in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel), READ_BUFFER_SIZE));
+            this.size = size;
+        }
+
+        byte readByte() throws IOException {
+            byte value = in.readByte();
+            position++;
+            return value;
+        }
+
+        int readInt() throws IOException {
+            int value = in.readInt();
+            position += Integer.BYTES;
+            return value;
+        }
+
+        /**
+         * Reads the length prefix of a string or array. A length beyond the end of
+         * the file can only be caused by an incomplete record.
+         */
+        private int readLength(int elementSize) throws IOException {
+            int length = readInt();
+            if (length < 0 || (long) length * elementSize > size - position) {
+                throw new EOFException();
+            }
+            return length;
+        }
+
+        private byte[] readBytes(int length) throws IOException {
+            byte[] bytes = new byte[length];
+            in.readFully(bytes);
+            position += length;
+            return bytes;
+        }
+
+        String readString() throws IOException {
+            return new String(readBytes(readLength(1)), StandardCharsets.UTF_8);
+        }
+
+        long[] readLongs() throws IOException {
+            int length = readLength(Long.BYTES);
+            long[] values = new long[length];
+            ByteBuffer.wrap(readBytes(length * Long.BYTES)).asLongBuffer().get(values);
+            return values;
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package com.formulasearchengine.mathmltools.similarity.index;
+
+/**
+ * A single search result of the {@link FormulaIndex}.
+ * <p>
+ * Hits are ranked by the number of identical subtrees first, then by the
+ * number of similar (abstract identical) subtrees and finally by the
+ * leaf coverage from the perspective of the query.
+ */
+public class IndexHit implements Comparable<IndexHit> {
+
+    /* id of the indexed formula */
+    private final String id;
+
+    /* number of distinct operator subtrees of the query that are identical in the formula */
+    private final int identicalSubTrees;
+
+    /* number of distinct operator subtrees of the query that are similar in the formula */
+    private final int similarSubTrees;
+
+    /* coverage factor of the leafs, from the perspective of the query */
+    private final double coverage;
+
+    public IndexHit(String id, int identicalSubTrees, int similarSubTrees, double coverage) {
+        this.id = id;
+        this.identicalSubTrees = identicalSubTrees;
+        this.similarSubTrees = similarSubTrees;
+        this.coverage = coverage;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public int getIdenticalSubTrees() {
+        return identicalSubTrees;
+    }
+
+    public int getSimilarSubTrees() {
+        return similarSubTrees;
+    }
+
+    public double getCoverage() {
+        return coverage;
+    }
+
+    /**
+     * Better hits come first.
+     */
+    @Override
+    public int compareTo(IndexHit o) {
+        if (identicalSubTrees != o.identicalSubTrees) {
+            return Integer.compare(o.identicalSubTrees, identicalSubTrees);
+        }
+        if (similarSubTrees != o.similarSubTrees) {
+            return Integer.compare(o.similarSubTrees, similarSubTrees);
+        }
+        if (coverage != o.coverage) {
+            return Double.compare(o.coverage, coverage);
+        }
+        return id.compareTo(o.id);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        return compareTo((IndexHit) o) == 0;
+    }
+
+    @Override
+    public int hashCode() {
+        return id.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s (identical: %d, similar: %d, coverage: %.3f)",
+                id, identicalSubTrees, similarSubTrees, coverage);
+    }
+}
@@ -0,0 +1,87 @@
+package com.formulasearchengine.mathmltools.similarity.index;
+
+import com.formulasearchengine.mathmltools.similarity.node.MathNode;
+import com.formulasearchengine.mathmltools.similarity.node.SubTreeHashes;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Fingerprint of a single formula inside the {@link FormulaIndex}.
+ * It holds the distinct subtree hashes of all operator nodes, once for the
+ * identical and once for the abstract (similar) tree, and the multiset of
+ * leaf hashes. All arrays are sorted.
+ */
+final class IndexedFormula {
+
+    final String id;
+
+    final long[] identical;
+
+    final long[] similar;
+
+    final long[] leafs;
+
+    IndexedFormula(String id, long[] identical, long[] similar, long[] leafs) {
+        this.id = id;
+        this.identical = identical;
+        this.similar = similar;
+        this.leafs = leafs;
+    }
+
+    /**
+     * Creates the fingerprint of a MathNode tree. The tree is not changed,
+     * the abstract hashes are computed on a copy.
+     *
+     * @param id   identifier of the formula
+     * @param tree MathNode tree (not abstract yet)
+     * @return fingerprint of the tree
+     */
+    static IndexedFormula of(String id, MathNode tree) {
+        long[] identical = operatorHashes(new SubTreeHashes(tree, false));
+        List<MathNode> leafList = tree.getLeafs();
+        long[] leafs = new long[leafList.size()];
+        for (int i = 0; i < leafs.length; i++) {
+            leafs[i] = leafList.get(i).hashCode();
+        }
+        Arrays.sort(leafs);
+        long[] similar = operatorHashes(new SubTreeHashes(tree.copy().toAbstract(), true));
+        return new IndexedFormula(id, identical, similar, leafs);
+    }
+
+    private static long[] operatorHashes(SubTreeHashes hashes) {
+        long[] tmp = new long[hashes.size()];
+        int n = 0;
+        for (int i = 0; i < hashes.size(); i++) {
+            if (!hashes.getNode(i).isLeaf()) {
+                tmp[n++] = hashes.getHash(i);
+            }
+        }
+        return Arrays.stream(tmp, 0, n).sorted().distinct().toArray();
+    }
+
+    /**
+     * Number of common elements of two sorted multisets.
+     *
+     * @param a first sorted array
+     * @param b second sorted array
+     * @return size of the multiset intersection
+     */
+    static int intersectionSize(long[] a, long[] b) {
+        int i = 0;
+        int j = 0;
+        int count = 0;
+        while (i < a.length && j < b.length) {
+            if (a[i] < b[j]) {
+                i++;
+            } else if (a[i] > b[j]) {
+                j++;
+            } else {
+                count++;
+                i++;
+                j++;
+            }
+        }
+        return count;
+    }
+}
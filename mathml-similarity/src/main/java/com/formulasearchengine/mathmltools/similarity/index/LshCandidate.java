@@ -0,0 +1,59 @@
+package com.formulasearchengine.mathmltools.similarity.index;
+
+/**
+ * A single candidate of the {@link LshIndex}. Candidates are ranked by their
+ * estimated Jaccard similarity to the query.
+ */
+public class LshCandidate implements Comparable<LshCandidate> {
+
+    /* id of the indexed formula */
+    private final String id;
+
+    /* estimated Jaccard similarity of the element multisets */
+    private final double estimatedJaccard;
+
+    public LshCandidate(String id, double estimatedJaccard) {
+        this.id = id;
+        this.estimatedJaccard = estimatedJaccard;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public double getEstimatedJaccard() {
+        return estimatedJaccard;
+    }
+
+    /**
+     * Better candidates come first.
+     */
+    @Override
+    public int compareTo(LshCandidate o) {
+        if (estimatedJaccard != o.estimatedJaccard) {
+            return Double.compare(o.estimatedJaccard, estimatedJaccard);
+        }
+        return id.compareTo(o.id);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        return compareTo((LshCandidate) o) == 0;
+    }
+
+    @Override
+    public int hashCode() {
+        return id.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s (jaccard: %.3f)", id, estimatedJaccard);
+    }
+}
@@ -0,0 +1,292 @@
+package com.formulasearchengine.mathmltools.similarity.index;
+
+import com.formulasearchengine.mathmltools.mml.CMMLInfo;
+import com.formulasearchengine.mathmltools.similarity.node.MathNode;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Approximate nearest-neighbour search over {@link MinHash} signatures with
+ * banded locality-sensitive hashing (LSH).
+ * <br/>
+ * Every signature is divided into b bands of r rows. Two formulas become candidates
+ * of each other if all rows of at least one band are equal. For a Jaccard similarity s
+ * this happens with the probability 1 - (1 - s^r)^b, i.e., the threshold of the index
+ * is about (1/b)^(1/r). The candidates are ranked by their estimated Jaccard similarity
+ * and should be re-ranked by the exact measures, e.g.,
+ * {@link com.formulasearchengine.mathmltools.similarity.distances.Distances} or the
+ * {@link com.formulasearchengine.mathmltools.similarity.SubTreeComparison}.
+ * <br/>
+ * The buckets hold primitive document numbers. The document number of a removed
+ * formula is reused by the next added formula, so an index with many updates does
+ * not grow beyond the number of formulas it contains.
+ * <br/>
+ * Only add signatures of the same kind (e.g., content elements or leafs) to one index.
+ * All methods are thread-safe.
+ */
+public class LshIndex {
+
+    private final MinHash minHash;
+
+    private final int bands;
+
+    private final int rows;
+
+    /* internal document number for every formula id */
+    private final Map<String, Integer> docNumbers = new HashMap<>();
+
+    /* ids and signatures by their document number, free document numbers are null */
+    private final List<String> ids = new ArrayList<>();
+    private final List<long[]> signatures = new ArrayList<>();
+
+    /* document numbers of removed formulas, reused by the next additions */
+    private final PostingList freeDocs = new PostingList();
+
+    /* for every band: hash of the band > document numbers */
+    private final List<Map<Long, PostingList>> buckets = new ArrayList<>();
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    /**
+     * @param minHash the signature generator
+     * @param bands   number of bands, must divide the number of hash functions
+     */
+    public LshIndex(MinHash minHash, int bands) {
+        if (bands < 1 || minHash.getNumHashes() % bands != 0) {
+            throw new IllegalArgumentException("The number of bands (" + bands
+                    + ") must divide the number of hash functions (" + minHash.getNumHashes() + ")");
+        }
+        this.minHash = minHash;
+        this.bands = bands;
+        this.rows = minHash.getNumHashes() / bands;
+        for (int b = 0; b < bands; b++) {
+            buckets.add(new HashMap<>());
+        }
+    }
+
+    public MinHash getMinHash() {
+        return minHash;
+    }
+
+    /**
+     * Adds the content elements of a formula, see {@link MinHash#signature(CMMLInfo)}.
+     *
+     * @param id   identifier of the formula
+     * @param cmml CMMLInfo document of the formula
+     */
+    public void add(String id, CMMLInfo cmml) {
+        add(id, minHash.signature(cmml));
+    }
+
+    /**
+     * Adds the leafs of a formula, see {@link MinHash#signature(MathNode)}.
+     *
+     * @param id   identifier of the formula
+     * @param tree MathNode tree of the formula
+     */
+    public void add(String id, MathNode tree) {
+        add(id, minHash.signature(tree));
+    }
+
+    /**
+     * Adds a signature to the index. An existing formula with the same id will be replaced.
+     *
+     * @param id        identifier of the formula
+     * @param signature signature of the {@link #getMinHash()} generator
+     */
+    public void add(String id, long[] signature) {
+        checkLength(signature);
+        lock.writeLock().lock();
+        try {
+            removeInternal(id);
+            int doc;
+            if (freeDocs.isEmpty()) {
+                doc = ids.size();
+                ids.add(id);
+                signatures.add(signature.clone());
+            } else {
+                doc = freeDocs.removeLast();
+                ids.set(doc, id);
+                signatures.set(doc, signature.clone());
+            }
+            docNumbers.put(id, doc);
+            for (int b = 0; b < bands; b++) {
+                buckets.get(b).computeIfAbsent(bandHash(signature, b), h -> new PostingList()).add(doc);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Removes a formula from the index.
+     *
+     * @param id identifier of the formula
+     * @return true if the formula was part of the index
+     */
+    public boolean remove(String id) {
+        lock.writeLock().lock();
+        try {
+            return removeInternal(id);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * The document number is removed from its buckets right away (a scan over the primitive
+     * bucket, which is small for a reasonable number of rows), so it can be reused.
+     */
+    private boolean removeInternal(String id) {
+        Integer doc = docNumbers.remove(id);
+        if (doc == null) {
+            return false;
+        }
+        long[] signature = signatures.get(doc);
+        for (int b = 0; b < bands; b++) {
+            Map<Long, PostingList> band = buckets.get(b);
+            long hash = bandHash(signature, b);
+            PostingList docs = band.get(hash);
+            docs.remove(doc);
+            if (docs.isEmpty()) {
+                band.remove(hash);
+            }
+        }
+        ids.set(doc, null);
+        signatures.set(doc, null);
+        freeDocs.add(doc);
+        return true;
+    }
+
+    public boolean contains(String id) {
+        lock.readLock().lock();
+        try {
+            return docNumbers.containsKey(id);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return number of formulas in the index
+     */
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return docNumbers.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return number of document numbers in use or free, only exposed for tests
+     */
+    int slots() {
+        lock.readLock().lock();
+        try {
+            return ids.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Candidates for the content elements of the query, see {@link #candidates(long[], int)}.
+     *
+     * @param query CMMLInfo document of the query
+     * @param k     maximum number of candidates
+     * @return best candidates first, list can be empty but never null
+     */
+    public List<LshCandidate> candidates(CMMLInfo query, int k) {
+        return candidates(minHash.signature(query), k);
+    }
+
+    /**
+     * Candidates for the leafs of the query, see {@link #candidates(long[], int)}.
+     *
+     * @param query MathNode tree of the query
+     * @param k     maximum number of candidates
+     * @return best candidates first, list can be empty but never null
+     */
+    public List<LshCandidate> candidates(MathNode query, int k) {
+        return candidates(minHash.signature(query), k);
+    }
+
+    /**
+     * All formulas that share at least one band with the query, ranked by
+     * their estimated Jaccard similarity.
+     *
+     * @param signature signature of the query
+     * @param k         maximum number of candidates
+     * @return best candidates first, list can be empty but never null
+     */
+    public List<LshCandidate> candidates(long[] signature, int k) {
+        checkLength(signature);
+        if (k <= 0) {
+            return new ArrayList<>();
+        }
+        lock.readLock().lock();
+        try {
+            PostingList[] hits = new PostingList[bands];
+            int total = 0;
+            for (int b = 0; b < bands; b++) {
+                hits[b] = buckets.get(b).get(bandHash(signature, b));
+                if (hits[b] != null) {
+                    total += hits[b].size();
+                }
+            }
+            // a formula can share several bands with the query, sorting groups the duplicates
+            int[] docs = new int[total];
+            int n = 0;
+            for (PostingList bucket : hits) {
+                if (bucket != null) {
+                    n = bucket.copyTo(docs, n);
+                }
+            }
+            Arrays.sort(docs);
+
+            // the worst of the best k candidates is on top
+            PriorityQueue<LshCandidate> best = new PriorityQueue<>(k + 1, Comparator.reverseOrder());
+            for (int i = 0; i < docs.length; i++) {
+                if (i > 0 && docs[i] == docs[i - 1]) {
+                    continue;
+                }
+                int doc = docs[i];
+                best.add(new LshCandidate(ids.get(doc), MinHash.estimateJaccard(signature, signatures.get(doc))));
+                if (best.size() > k) {
+                    best.poll();
+                }
+            }
+            List<LshCandidate> candidates = new ArrayList<>(best);
+            Collections.sort(candidates);
+            return candidates;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private long bandHash(long[] signature, int band) {
+        long hash = band;
+        for (int i = band * rows; i < (band + 1) * rows; i++) {
+            hash = 31 * hash + signature[i];
+        }
+        return hash;
+    }
+
+    private void checkLength(long[] signature) {
+        if (signature.length != minHash.getNumHashes()) {
+            throw new IllegalArgumentException("Expected a signature of length " + minHash.getNumHashes()
+                    + " but got " + signature.length);
+        }
+    }
+}
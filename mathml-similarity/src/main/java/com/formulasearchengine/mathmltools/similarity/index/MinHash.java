@@ -0,0 +1,154 @@
+package com.formulasearchengine.mathmltools.similarity.index;
+
+import com.formulasearchengine.mathmltools.mml.CMMLInfo;
+import com.formulasearchengine.mathmltools.similarity.node.MathNode;
+import com.google.common.collect.Multiset;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * MinHash signatures of element multisets, e.g., the content identifiers and numbers
+ * of a formula ({@link CMMLInfo#getElements()}) or the leafs of a {@link MathNode} tree.
+ * <br/>
+ * Every occurrence of an element is a distinct set element, i.e., the multiset
+ * {x, x, y} is the set {x#1, x#2, y#1}. Hence, the fraction of equal signature
+ * entries estimates the (weighted) Jaccard similarity |A &cap; B| / |A &cup; B| of the
+ * multisets, see {@link #estimateJaccard(long[], long[])}.
+ * <br/>
+ * Signatures are only comparable if they were created by generators with the same
+ * number of hash functions and seed. A generator is immutable and thread-safe.
+ */
+public final class MinHash {
+
+    private static final HashFunction ELEMENT_HASH = Hashing.murmur3_128();
+
+    /* seeds of the hash functions */
+    private final long[] seeds;
+
+    /**
+     * @param numHashes number of hash functions, i.e., the length of a signature
+     * @param seed      seed of the hash functions
+     */
+    public MinHash(int numHashes, long seed) {
+        if (numHashes < 1) {
+            throw new IllegalArgumentException("numHashes must be positive: " + numHashes);
+        }
+        Random random = new Random(seed);
+        this.seeds = new long[numHashes];
+        for (int i = 0; i < numHashes; i++) {
+            seeds[i] = random.nextLong();
+        }
+    }
+
+    /**
+     * @return length of the signatures
+     */
+    public int getNumHashes() {
+        return seeds.length;
+    }
+
+    /**
+     * Signature of the content identifiers and numbers of the formula.
+     *
+     * @param cmml the formula
+     * @return the signature
+     */
+    public long[] signature(CMMLInfo cmml) {
+        return signature(cmml.getElements());
+    }
+
+    /**
+     * Signature of the multiset of all leafs of the tree, the leafs are identified
+     * by their hash codes.
+     *
+     * @param tree MathNode tree
+     * @return the signature
+     */
+    public long[] signature(MathNode tree) {
+        List<MathNode> leafs = tree.getLeafs();
+        long[] hashes = new long[leafs.size()];
+        for (int i = 0; i < hashes.length; i++) {
+            hashes[i] = leafs.get(i).hashCode();
+        }
+        return signatureOfHashes(hashes);
+    }
+
+    /**
+     * @param elements multiset of elements, can be null (empty)
+     * @return the signature
+     */
+    public long[] signature(Multiset<String> elements) {
+        if (elements == null) {
+            return signatureOfHashes(new long[0]);
+        }
+        long[] hashes = new long[elements.size()];
+        int i = 0;
+        for (Multiset.Entry<String> entry : elements.entrySet()) {
+            long hash = ELEMENT_HASH.hashString(entry.getElement(), StandardCharsets.UTF_8).asLong();
+            for (int k = 0; k < entry.getCount(); k++) {
+                hashes[i++] = hash;
+            }
+        }
+        return signatureOfHashes(hashes);
+    }
+
+    /**
+     * Signature of a multiset of element hashes, equal hashes are equal elements.
+     *
+     * @param elementHashes hashes of all elements (in any order)
+     * @return the signature, all entries are {@link Long#MAX_VALUE} for an empty multiset
+     */
+    public long[] signatureOfHashes(long[] elementHashes) {
+        long[] sorted = elementHashes.clone();
+        Arrays.sort(sorted);
+        long[] signature = new long[seeds.length];
+        Arrays.fill(signature, Long.MAX_VALUE);
+        int occurrence = 0;
+        for (int e = 0; e < sorted.length; e++) {
+            // the k-th occurrence of an element is a distinct element
+            occurrence = e > 0 && sorted[e] == sorted[e - 1] ? occurrence + 1 : 0;
+            long element = mix(sorted[e] + occurrence * 0x9E3779B97F4A7C15L);
+            for (int i = 0; i < seeds.length; i++) {
+                long h = mix(element ^ seeds[i]);
+                if (h < signature[i]) {
+                    signature[i] = h;
+                }
+            }
+        }
+        return signature;
+    }
+
+    /**
+     * Estimated Jaccard similarity of the multisets of both signatures.
+     *
+     * @param s1 first signature
+     * @param s2 second signature (of the same generator)
+     * @return fraction of equal entries, between 0 and 1
+     */
+    public static double estimateJaccard(long[] s1, long[] s2) {
+        if (s1.length != s2.length) {
+            throw new IllegalArgumentException("Signatures differ in length: " + s1.length + " vs " + s2.length);
+        }
+        int equal = 0;
+        for (int i = 0; i < s1.length; i++) {
+            if (s1[i] == s2[i]) {
+                equal++;
+            }
+        }
+        return (double) equal / s1.length;
+    }
+
+    /**
+     * Finalizer of SplitMix64, a bijective 64-bit mixing function.
+     */
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+}
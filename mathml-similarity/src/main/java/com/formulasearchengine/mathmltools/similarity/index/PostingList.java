@@ -0,0 +1,72 @@
+package com.formulasearchengine.mathmltools.similarity.index;
+
+import java.util.Arrays;
+
+/**
+ * Growable list of document numbers of a single posting (or bucket). The numbers are
+ * kept in a primitive array, so a posting costs 4 bytes per document instead of a
+ * boxed Integer and a list slot.
+ * <br/>
+ * Not thread-safe, the indices guard their postings by their own locks.
+ */
+final class PostingList {
+
+    private int[] docs = new int[2];
+
+    private int size = 0;
+
+    void add(int doc) {
+        if (size == docs.length) {
+            docs = Arrays.copyOf(docs, docs.length * 2);
+        }
+        docs[size++] = doc;
+    }
+
+    /**
+     * Removes one occurrence of the document. The last document takes its place,
+     * hence the order of the posting is not preserved.
+     *
+     * @param doc document number
+     * @return true if the document was part of the posting
+     */
+    boolean remove(int doc) {
+        for (int i = 0; i < size; i++) {
+            if (docs[i] == doc) {
+                docs[i] = docs[--size];
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return the last document number, which is removed
+     */
+    int removeLast() {
+        return docs[--size];
+    }
+
+    int get(int i) {
+        return docs[i];
+    }
+
+    int size() {
+        return size;
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Copies the document numbers into the array.
+     *
+     * @param dest   destination array
+     * @param offset first position in the destination array
+     * @return the position after the last copied number
+     */
+    int copyTo(int[] dest, int offset) {
+        System.arraycopy(docs, 0, dest, offset, size);
+        return offset + size;
+    }
+}
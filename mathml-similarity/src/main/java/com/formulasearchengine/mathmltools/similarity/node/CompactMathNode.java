@@ -0,0 +1,233 @@
+package com.formulasearchengine.mathmltools.similarity.node;
+
+import com.google.common.collect.Interner;
+import com.google.common.collect.Interners;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Immutable and compact form of a {@link MathNode} tree, see
+ * {@link MathNodeGenerator#toCompact(MathNode)}.
+ * <br/>
+ * The children are stored in an array and can be accessed without a copy. Names and
+ * values are interned, attributes (except the id) are dropped. The canonical subtree
+ * hash (the same as of {@link SubTreeHashes}) and the size of every subtree are computed
+ * once on creation. Every node knows its pre-order index inside the tree, so a comparison
+ * can keep its state in a bitset instead of marking the nodes.
+ * <br/>
+ * Equality of single nodes is the same as of {@link MathNode}. The subtree hashes ignore
+ * the values if the root was an abstract node, hence a tree is expected to be either
+ * abstract or not as a whole (like the trees of {@link MathNode#toAbstract()}).
+ * <br/>
+ * A compact tree is immutable and can be shared between threads.
+ */
+public final class CompactMathNode {
+
+    private static final Interner<String> STRINGS = Interners.newWeakInterner();
+
+    private static final CompactMathNode[] NO_CHILDREN = new CompactMathNode[0];
+
+    private final String name;
+
+    private final String value;
+
+    private final String id;
+
+    private final CompactMathNode[] children;
+
+    private final boolean orderSensitive;
+
+    private final boolean abstractNode;
+
+    private final boolean ignoreValues;
+
+    private final int depth;
+
+    private final int maxDepth;
+
+    /**
+     * pre-order index inside the tree, the root has index 0
+     */
+    private final int index;
+
+    /**
+     * number of nodes in the subtree including this node
+     */
+    private final int subtreeSize;
+
+    /**
+     * canonical hash of the subtree starting at this node
+     */
+    private final long subtreeHash;
+
+    /**
+     * Creates a node from its (already converted) children.
+     *
+     * @param node         original node
+     * @param index        pre-order index inside the tree
+     * @param children     converted children in order
+     * @param ignoreValues true if the values should not be part of the subtree hash
+     */
+    CompactMathNode(MathNode node, int index, CompactMathNode[] children, boolean ignoreValues) {
+        this.name = intern(node.getName());
+        this.value = intern(node.getValue());
+        this.id = node.getId();
+        this.children = children.length == 0 ? NO_CHILDREN : children;
+        this.orderSensitive = node.isOrderSensitive();
+        this.abstractNode = node.isAbstractNode();
+        this.ignoreValues = ignoreValues;
+        this.depth = node.getDepth();
+        this.maxDepth = node.getMaxDepth();
+        this.index = index;
+
+        int size = 1;
+        long[] childHashes = new long[children.length];
+        for (int i = 0; i < children.length; i++) {
+            size += children[i].subtreeSize;
+            childHashes[i] = children[i].subtreeHash;
+        }
+        this.subtreeSize = size;
+        this.subtreeHash = SubTreeHashes.combine(name, value, orderSensitive, ignoreValues, childHashes);
+    }
+
+    private static String intern(String s) {
+        return s == null ? null : STRINGS.intern(s);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getValue() {
+        return value;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public boolean isLeaf() {
+        return children.length == 0;
+    }
+
+    public boolean isOrderSensitive() {
+        return orderSensitive;
+    }
+
+    public boolean isAbstractNode() {
+        return abstractNode;
+    }
+
+    /**
+     * @return true if the values are not part of the subtree hashes of this tree
+     */
+    public boolean isIgnoreValues() {
+        return ignoreValues;
+    }
+
+    public int getDepth() {
+        return depth;
+    }
+
+    /**
+     * @return maximum depth of the current branch, see {@link MathNode#getMaxDepth()}
+     */
+    public int getMaxDepth() {
+        return maxDepth;
+    }
+
+    public int getChildCount() {
+        return children.length;
+    }
+
+    /**
+     * @param i position of the child
+     * @return the i-th child, no copy is made
+     */
+    public CompactMathNode getChild(int i) {
+        return children[i];
+    }
+
+    /**
+     * @return pre-order index inside the tree, the root has index 0
+     */
+    public int getIndex() {
+        return index;
+    }
+
+    /**
+     * @return number of nodes in the subtree including this node
+     */
+    public int getSubtreeSize() {
+        return subtreeSize;
+    }
+
+    /**
+     * Identical subtrees (in the sense of the sub-tree-comparison) of trees with the
+     * same {@link #isIgnoreValues()} always share the same hash.
+     *
+     * @return canonical hash of the subtree starting at this node
+     */
+    public long getSubtreeHash() {
+        return subtreeHash;
+    }
+
+    /**
+     * Same as {@link MathNode#getLeafs()}.
+     *
+     * @return all leafs of the subtree, the operator of an apply node is skipped
+     */
+    public List<CompactMathNode> getLeafs() {
+        if (isLeaf()) {
+            return Collections.singletonList(this);
+        }
+        List<CompactMathNode> leafs = new ArrayList<>();
+        collectLeafs(leafs);
+        return leafs;
+    }
+
+    private void collectLeafs(List<CompactMathNode> leafs) {
+        if (isLeaf()) {
+            leafs.add(this);
+            return;
+        }
+        // if this is an apply node, the first child is an
+        // operation-node not a constant or number leaf
+        int startIdx = "apply".equals(name) ? 1 : 0;
+        for (int i = startIdx; i < children.length; i++) {
+            children[i].collectLeafs(leafs);
+        }
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+
+        CompactMathNode node = (CompactMathNode) o;
+
+        if (!Objects.equals(name, node.name)) {
+            return false;
+        }
+        // same as MathNode, an abstract node does not compare the values
+        return abstractNode || Objects.equals(value, node.value);
+    }
+
+    @Override
+    public int hashCode() {
+        // the same as MathNode, the values are part of the hash in any case
+        return Objects.hash(name, value);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s:%s", name, value);
+    }
+}
@@ -55,7 +55,7 @@ public class MathNode {
     private int maxDepth = 0;
 
     /**
-     * Marked nodes will not be visited again by the sub-tree-comparison algorithm.
+     * Marked nodes, not used by the sub-tree-comparison anymore.
      */
     private boolean marked = false;
 
@@ -153,10 +153,19 @@ public class MathNode {
         this.depth = depth;
     }
 
+    /**
+     * @return true if the node was marked
+     * @deprecated the sub-tree-comparison keeps the matched nodes on its own and does not mark the trees
+     */
+    @Deprecated
     public boolean isMarked() {
         return marked;
     }
 
+    /**
+     * @deprecated the sub-tree-comparison keeps the matched nodes on its own and does not mark the trees
+     */
+    @Deprecated
     public void setMarked() {
         this.marked = true;
     }
@@ -257,6 +266,26 @@ public class MathNode {
         return MathNodeGenerator.toAbstract(this);
     }
 
+    /**
+     * Creates a deep copy of this MathNode tree, e.g., to create an abstract
+     * tree without changing the original one.
+     *
+     * @return root of the copied tree
+     */
+    public MathNode copy() {
+        MathNode copy = new MathNode(name, value);
+        copy.id = id;
+        copy.attributes = new HashMap<>(attributes);
+        copy.depth = depth;
+        copy.maxDepth = maxDepth;
+        copy.abstractNode = abstractNode;
+        for (MathNode child : children) {
+            copy.children.add(child.copy());
+        }
+        copy.orderSensitive = orderSensitive;
+        return copy;
+    }
+
     @Override
     public String toString() {
         return String.format("%s:%s", name, value);
@@ -9,6 +9,7 @@ import org.apache.logging.log4j.Logger;
 import org.w3c.dom.Node;
 
 import javax.xml.xpath.XPathExpressionException;
+import java.util.List;
 import java.util.Objects;
 
 /**
@@ -113,6 +114,48 @@ public class MathNodeGenerator {
         return mathNode;
     }
 
+    /**
+     * Create the compact form of a math expression tree (MEXT) starting from an CMMLInfo document.
+     *
+     * @param cmmlInfo CMMLInfo document
+     * @return root of the compact MEXT, or null
+     */
+    public static CompactMathNode generateCompactMathNode(CMMLInfo cmmlInfo) throws MathNodeException {
+        MathNode mathNode = generateMathNode(cmmlInfo);
+        return mathNode != null ? toCompact(mathNode) : null;
+    }
+
+    /**
+     * Creates an immutable and compact copy of a MathNode tree. Later changes
+     * to the original tree are not reflected. The subtree hashes ignore the
+     * values if the root is an abstract node.
+     *
+     * @param mathNode root of the MathNode tree
+     * @return root of the compact tree
+     */
+    public static CompactMathNode toCompact(MathNode mathNode) {
+        Objects.requireNonNull(mathNode, "math node tree is null");
+        return toCompact(mathNode, new int[1], mathNode.isAbstractNode());
+    }
+
+    /**
+     * Recursive method to create the compact tree, the nodes are numbered in pre-order.
+     *
+     * @param node         current node of the original tree
+     * @param nextIndex    next free pre-order index (single element)
+     * @param ignoreValues true if the values should not be part of the subtree hashes
+     * @return converted node
+     */
+    private static CompactMathNode toCompact(MathNode node, int[] nextIndex, boolean ignoreValues) {
+        int index = nextIndex[0]++;
+        List<MathNode> children = node.getChildren();
+        CompactMathNode[] compactChildren = new CompactMathNode[children.size()];
+        for (int i = 0; i < compactChildren.length; i++) {
+            compactChildren[i] = toCompact(children.get(i), nextIndex, ignoreValues);
+        }
+        return new CompactMathNode(node, index, compactChildren, ignoreValues);
+    }
+
     /**
      * Converts a MathNode into a an simplistic indented tree
      * representation of itself.
@@ -0,0 +1,214 @@
+package com.formulasearchengine.mathmltools.similarity.node;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Canonical bottom-up hashes for every subtree of a {@link MathNode} tree.
+ * <br/>
+ * The nodes are numbered in pre-order (the root has index 0). Two subtrees
+ * that are identical in the sense of the sub-tree-comparison always share
+ * the same hash, so a hash can be used to find candidates which only need
+ * to be confirmed by a full tree comparison.
+ * <br/>
+ * The children of order insensitive nodes (e.g., plus or times) are combined
+ * in sorted order. If values are ignored (abstract trees), all children are
+ * combined in sorted order, because the abstraction may hide the operator
+ * that defines the order sensitivity of a node.
+ * <br/>
+ * The hashes are computed once on creation, later changes to the tree are
+ * not reflected.
+ */
+public class SubTreeHashes {
+
+    private static final long MULTIPLIER = 0x9E3779B97F4A7C15L;
+
+    private static final int[] NO_NODES = new int[0];
+
+    /**
+     * all nodes of the tree in pre-order
+     */
+    private final MathNode[] nodes;
+
+    /**
+     * pre-order index of the parent node, -1 for the root
+     */
+    private final int[] parents;
+
+    /**
+     * canonical hash of the subtree starting at the node
+     */
+    private final long[] hashes;
+
+    /**
+     * Are values ignored in the hashes (abstract comparison)?
+     */
+    private final boolean ignoreValues;
+
+    /**
+     * pre-order indices of all nodes grouped by their subtree hash
+     */
+    private final Map<Long, int[]> buckets;
+
+    /**
+     * Computes the subtree hashes of the given tree. Values are ignored
+     * if the root node is an abstract node.
+     *
+     * @param root root of the MathNode tree
+     */
+    public SubTreeHashes(MathNode root) {
+        this(root, root.isAbstractNode());
+    }
+
+    /**
+     * Computes the subtree hashes of the given tree.
+     *
+     * @param root         root of the MathNode tree
+     * @param ignoreValues true if the values of the nodes should not be part of the hash
+     */
+    public SubTreeHashes(MathNode root, boolean ignoreValues) {
+        Objects.requireNonNull(root, "math node tree is null");
+        this.ignoreValues = ignoreValues;
+
+        List<MathNode> nodeList = new ArrayList<>();
+        List<Integer> parentList = new ArrayList<>();
+        collect(root, -1, nodeList, parentList);
+
+        int size = nodeList.size();
+        this.nodes = nodeList.toArray(new MathNode[size]);
+        this.parents = new int[size];
+        for (int i = 0; i < size; i++) {
+            parents[i] = parentList.get(i);
+        }
+        this.hashes = new long[size];
+        computeHashes();
+        this.buckets = createBuckets();
+    }
+
+    private static void collect(MathNode node, int parent, List<MathNode> nodeList, List<Integer> parentList) {
+        int idx = nodeList.size();
+        nodeList.add(node);
+        parentList.add(parent);
+        for (MathNode child : node.getChildren()) {
+            collect(child, idx, nodeList, parentList);
+        }
+    }
+
+    /**
+     * In pre-order every child has a higher index than its parent, hence a
+     * reversed iteration visits all children before their parent.
+     */
+    private void computeHashes() {
+        List<List<Long>> childHashes = new ArrayList<>(nodes.length);
+        for (int i = 0; i < nodes.length; i++) {
+            childHashes.add(new ArrayList<>());
+        }
+        for (int i = nodes.length - 1; i >= 0; i--) {
+            MathNode node = nodes[i];
+            // children were added in reversed order
+            List<Long> children = childHashes.get(i);
+            Collections.reverse(children);
+            long[] ch = new long[children.size()];
+            for (int c = 0; c < ch.length; c++) {
+                ch[c] = children.get(c);
+            }
+            long hash = combine(node.getName(), node.getValue(), node.isOrderSensitive(), ignoreValues, ch);
+            hashes[i] = hash;
+            if (parents[i] >= 0) {
+                childHashes.get(parents[i]).add(hash);
+            }
+        }
+    }
+
+    /**
+     * Canonical hash of a single node from the hashes of its children.
+     *
+     * @param name           tag-name of the node
+     * @param value          value of the node
+     * @param orderSensitive are the children of the node order sensitive?
+     * @param ignoreValues   true if the value should not be part of the hash
+     * @param childHashes    hashes of all children in order, will be sorted if necessary
+     * @return canonical hash of the subtree
+     */
+    static long combine(String name, String value, boolean orderSensitive, boolean ignoreValues, long[] childHashes) {
+        if (ignoreValues || !orderSensitive) {
+            Arrays.sort(childHashes);
+        }
+        long hash = mix(Objects.hashCode(name));
+        hash = hash * MULTIPLIER + (ignoreValues ? 0 : Objects.hashCode(value));
+        hash = hash * MULTIPLIER + childHashes.length;
+        for (long c : childHashes) {
+            hash = mix(hash * MULTIPLIER + c);
+        }
+        return hash;
+    }
+
+    private Map<Long, int[]> createBuckets() {
+        Map<Long, List<Integer>> tmp = new HashMap<>();
+        for (int i = 0; i < nodes.length; i++) {
+            tmp.computeIfAbsent(hashes[i], k -> new ArrayList<>()).add(i);
+        }
+        Map<Long, int[]> result = new HashMap<>(tmp.size() * 2);
+        tmp.forEach((hash, list) -> result.put(hash, list.stream().mapToInt(Integer::intValue).toArray()));
+        return result;
+    }
+
+    /**
+     * Finalization step of the 64-bit MurmurHash3 to spread the bits.
+     */
+    private static long mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    public int size() {
+        return nodes.length;
+    }
+
+    public MathNode getRoot() {
+        return nodes[0];
+    }
+
+    public MathNode getNode(int idx) {
+        return nodes[idx];
+    }
+
+    /**
+     * @param idx pre-order index of a node
+     * @return pre-order index of the parent, -1 for the root
+     */
+    public int getParent(int idx) {
+        return parents[idx];
+    }
+
+    /**
+     * @param idx pre-order index of a node
+     * @return canonical hash of the subtree starting at the node
+     */
+    public long getHash(int idx) {
+        return hashes[idx];
+    }
+
+    public boolean isIgnoreValues() {
+        return ignoreValues;
+    }
+
+    /**
+     * Get all nodes with the given subtree hash.
+     *
+     * @param hash subtree hash
+     * @return pre-order indices in ascending order, can be empty but never null
+     */
+    public int[] getNodesWithHash(long hash) {
+        return buckets.getOrDefault(hash, NO_NODES);
+    }
+}
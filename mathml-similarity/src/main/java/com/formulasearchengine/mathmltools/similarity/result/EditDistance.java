@@ -0,0 +1,40 @@
+package com.formulasearchengine.mathmltools.similarity.result;
+
+/**
+ * JSON wrapper for the tree edit distance between two math expression trees,
+ * see {@link com.formulasearchengine.mathmltools.similarity.distances.ted.TreeEditDistance}.
+ */
+public class EditDistance {
+
+    /* minimal cost to transform the reference into the comparison tree */
+    private double distance;
+
+    /* normalized similarity between 0 and 1, 1 for identical trees */
+    private double similarity;
+
+    /* Type of comparison */
+    private String type;
+
+    /**
+     * @param distance   minimal cost to transform the reference into the comparison tree
+     * @param similarity normalized similarity between 0 and 1
+     * @param type       type of similarity (identical or similar comparison)
+     */
+    public EditDistance(double distance, double similarity, SimilarityType type) {
+        this.distance = distance;
+        this.similarity = similarity;
+        this.type = type.name();
+    }
+
+    public double getDistance() {
+        return distance;
+    }
+
+    public double getSimilarity() {
+        return similarity;
+    }
+
+    public String getType() {
+        return type;
+    }
+}
@@ -1,6 +1,7 @@
 package com.formulasearchengine.mathmltools.similarity.result;
 
 import com.formulasearchengine.mathmltools.similarity.SubTreeComparison;
+import com.formulasearchengine.mathmltools.similarity.node.CompactMathNode;
 import com.formulasearchengine.mathmltools.similarity.node.MathNode;
 
 import java.util.ArrayList;
@@ -47,6 +48,22 @@ public class Match {
         addMatch(new SubMatch(refTree, compTree, type));
     }
 
+    /**
+     * Create a match between two compact trees, the same as
+     * {@link #Match(MathNode, MathNode, SimilarityType)}.
+     *
+     * @param refTree  partial reference tree (or full tree)
+     * @param compTree partial comparison tree (or full tree)
+     * @param type     type of similarity (identical or similar comparison)
+     */
+    public Match(CompactMathNode refTree, CompactMathNode compTree, SimilarityType type) {
+        this.id = refTree.getId();
+        this.depth = refTree.getDepth();
+        this.coverage = SubTreeComparison.getCoverage(refTree.getLeafs(), compTree.getLeafs());
+        // initialize with the first match
+        addMatch(new SubMatch(refTree, compTree, type));
+    }
+
     public SubMatch addMatch(SubMatch subMatch) {
         this.matches.add(subMatch);
         return subMatch;
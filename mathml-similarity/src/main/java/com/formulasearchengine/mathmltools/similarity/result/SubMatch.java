@@ -1,6 +1,7 @@
 package com.formulasearchengine.mathmltools.similarity.result;
 
 import com.formulasearchengine.mathmltools.similarity.SubTreeComparison;
+import com.formulasearchengine.mathmltools.similarity.node.CompactMathNode;
 import com.formulasearchengine.mathmltools.similarity.node.MathNode;
 
 /**
@@ -46,6 +47,22 @@ public class SubMatch {
         this.assessment = computeAssessment(refTree, compTree);
     }
 
+    /**
+     * Create a sub-match between two compact trees, the same as
+     * {@link #SubMatch(MathNode, MathNode, SimilarityType)}.
+     *
+     * @param refTree  partial reference tree (or full tree)
+     * @param compTree partial comparison tree (or full tree)
+     * @param type     type of similarity (identical or similar comparison)
+     */
+    public SubMatch(CompactMathNode refTree, CompactMathNode compTree, SimilarityType type) {
+        this.id = compTree.getId();
+        this.depth = compTree.getDepth();
+        this.type = type.name();
+        this.coverage = SubTreeComparison.getCoverage(compTree.getLeafs(), refTree.getLeafs());
+        this.assessment = computeAssessment(refTree.getDepth(), compTree.getDepth(), compTree.getMaxDepth());
+    }
+
     /**
      * This method is still in testing.
      * <br/>
@@ -57,8 +74,12 @@ public class SubMatch {
      * @return value between 0 to 1, 1 is a full-match
      */
     double computeAssessment(MathNode refTree, MathNode compTree) {
-        int absDiff = Math.abs(refTree.getDepth() - compTree.getDepth());
-        int maxDepth = compTree.getMaxDepth() + 1;
+        return computeAssessment(refTree.getDepth(), compTree.getDepth(), compTree.getMaxDepth());
+    }
+
+    private double computeAssessment(int refDepth, int compDepth, int compMaxDepth) {
+        int absDiff = Math.abs(refDepth - compDepth);
+        int maxDepth = compMaxDepth + 1;
         double depthWeight = 1 - (double) absDiff / (double) maxDepth;
         return depthWeight * coverage;
     }
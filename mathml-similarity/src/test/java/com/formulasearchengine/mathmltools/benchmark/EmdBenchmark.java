@@ -0,0 +1,91 @@
+package com.formulasearchengine.mathmltools.benchmark;
+
+import com.formulasearchengine.mathmltools.similarity.distances.earthmover.EarthMoverDistanceWrapper;
+import com.formulasearchengine.mathmltools.similarity.distances.earthmover.EmdEngine;
+import com.formulasearchengine.mathmltools.similarity.distances.earthmover.JFastEMD;
+import com.formulasearchengine.mathmltools.similarity.distances.earthmover.Signature;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-call latency of the Earth Mover's Distance between two histogram signatures,
+ * once with the list based {@link JFastEMD} and with the flat {@link EmdEngine}, with and
+ * without reused buffers. Use {@code -prof gc} to compare the allocation rates.
+ * <br/>
+ * Run via the main method or {@code java -cp <test-classpath> org.openjdk.jmh.Main EmdBenchmark}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class EmdBenchmark {
+
+    /**
+     * Number of bins of each histogram.
+     */
+    @Param({"10", "50", "100", "250", "500"})
+    private int bins;
+
+    private Signature signature1;
+
+    private Signature signature2;
+
+    @Setup
+    public void setup() {
+        Random random = new Random(bins);
+        signature1 = EarthMoverDistanceWrapper.histogramToSignature(histogram(random, bins));
+        signature2 = EarthMoverDistanceWrapper.histogramToSignature(histogram(random, bins));
+    }
+
+    private static Map<String, Double> histogram(Random random, int bins) {
+        Map<String, Double> histogram = new LinkedHashMap<>();
+        for (int i = 0; i < bins; i++) {
+            // element frequencies of formulae are small
+            histogram.put("e" + i, (double) (1 + random.nextInt(5)));
+        }
+        return histogram;
+    }
+
+    @Benchmark
+    public double jFastEmd() {
+        return JFastEMD.distance(signature1, signature2, 0.0);
+    }
+
+    /**
+     * A new engine per call, i.e., without reused buffers.
+     */
+    @Benchmark
+    public double emdEngineFresh() {
+        return new EmdEngine().compute(signature1, signature2, 0.0);
+    }
+
+    @Benchmark
+    public double emdEngine() {
+        return EmdEngine.distance(signature1, signature2, 0.0);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(EmdBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
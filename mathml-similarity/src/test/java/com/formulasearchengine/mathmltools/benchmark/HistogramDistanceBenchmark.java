@@ -0,0 +1,97 @@
+package com.formulasearchengine.mathmltools.benchmark;
+
+import com.formulasearchengine.mathmltools.similarity.distances.Distances;
+import com.formulasearchengine.mathmltools.similarity.distances.SparseHistogram;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Scores one query histogram against a set of candidate histograms with the cosine distance,
+ * once with {@code Map<String, Double>} histograms and once with {@link SparseHistogram}s.
+ * <br/>
+ * Run via the main method or {@code java -cp <test-classpath> org.openjdk.jmh.Main HistogramDistanceBenchmark}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class HistogramDistanceBenchmark {
+
+    private static final int CANDIDATES = 10000;
+
+    private Map<String, Double> query;
+
+    private List<Map<String, Double>> candidates;
+
+    private SparseHistogram sparseQuery;
+
+    private List<SparseHistogram> sparseCandidates;
+
+    @Setup
+    public void setup() {
+        Random random = new Random(1);
+        query = histogram(random);
+        sparseQuery = SparseHistogram.of(query);
+        candidates = new ArrayList<>();
+        sparseCandidates = new ArrayList<>();
+        for (int i = 0; i < CANDIDATES; i++) {
+            Map<String, Double> candidate = histogram(random);
+            candidates.add(candidate);
+            sparseCandidates.add(SparseHistogram.of(candidate));
+        }
+    }
+
+    private static Map<String, Double> histogram(Random random) {
+        // identifiers of a formula, drawn from a small alphabet
+        Map<String, Double> histogram = new HashMap<>();
+        int size = 2 + random.nextInt(15);
+        for (int i = 0; i < size; i++) {
+            histogram.merge("x" + random.nextInt(100), 1.0, Double::sum);
+        }
+        return histogram;
+    }
+
+    @Benchmark
+    public double maps() {
+        double sum = 0;
+        for (Map<String, Double> candidate : candidates) {
+            sum += Distances.computeCosineDistance(query, candidate);
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public double sparse() {
+        double sum = 0;
+        for (SparseHistogram candidate : sparseCandidates) {
+            sum += Distances.computeCosineDistance(sparseQuery, candidate);
+        }
+        return sum;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(HistogramDistanceBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
@@ -0,0 +1,82 @@
+package com.formulasearchengine.mathmltools.benchmark;
+
+import com.formulasearchengine.mathmltools.similarity.distances.HistogramKernels;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Dot products and L1 distances of dense histogram blocks with the scalar and the
+ * vectorized {@link HistogramKernels}. The forked JVM adds the incubator module, the
+ * vectorized kernels must have been compiled (JDK 17+).
+ * <br/>
+ * Run via the main method or {@code java -cp <test-classpath> org.openjdk.jmh.Main HistogramKernelsBenchmark}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"--add-modules", "jdk.incubator.vector"})
+@State(Scope.Benchmark)
+public class HistogramKernelsBenchmark {
+
+    /**
+     * Length of the dense blocks, i.e., the number of symbols.
+     */
+    @Param({"64", "1024", "16384"})
+    private int length;
+
+    @Param({"scalar", "vector"})
+    private String kernels;
+
+    private HistogramKernels impl;
+
+    private double[] a;
+
+    private double[] b;
+
+    @Setup
+    public void setup() {
+        impl = "vector".equals(kernels) ? HistogramKernels.vector() : HistogramKernels.scalar();
+        if (impl == null) {
+            throw new IllegalStateException("Vectorized kernels are not available");
+        }
+        Random random = new Random(length);
+        a = new double[length];
+        b = new double[length];
+        for (int i = 0; i < length; i++) {
+            a[i] = random.nextInt(5);
+            b[i] = random.nextInt(5);
+        }
+    }
+
+    @Benchmark
+    public double dot() {
+        return impl.dot(a, b, length);
+    }
+
+    @Benchmark
+    public double absoluteDifference() {
+        return impl.absoluteDifference(a, b, length);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(HistogramKernelsBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
@@ -0,0 +1,99 @@
+package com.formulasearchengine.mathmltools.benchmark;
+
+import com.formulasearchengine.mathmltools.mml.CMMLInfo;
+import com.formulasearchengine.mathmltools.similarity.SubTreeComparison;
+import com.formulasearchengine.mathmltools.similarity.node.CompactMathNode;
+import com.formulasearchengine.mathmltools.similarity.node.MathNode;
+import com.formulasearchengine.mathmltools.similarity.node.MathNodeGenerator;
+import com.formulasearchengine.mathmltools.similarity.result.Match;
+import com.formulasearchengine.mathmltools.similarity.result.SimilarityType;
+import org.apache.commons.io.IOUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Searches the similar subtrees of two formulas, once on the MathNode trees and once on
+ * their compact form. A comparison marks the nodes of a MathNode tree, hence these trees
+ * are created again before every invocation.
+ * <br/>
+ * Run via the main method or {@code java -cp <test-classpath> org.openjdk.jmh.Main SubTreeComparisonBenchmark}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SubTreeComparisonBenchmark {
+
+    private final SubTreeComparison comparison = new SubTreeComparison(SimilarityType.identical);
+
+    private CMMLInfo refDoc;
+
+    private CMMLInfo compDoc;
+
+    private CompactMathNode compactRefTree;
+
+    private CompactMathNode compactCompTree;
+
+    @Setup
+    public void setup() throws Exception {
+        refDoc = readCmml("mathml_complex_1.xml");
+        compDoc = readCmml("mathml_complex_2.xml");
+        compactRefTree = MathNodeGenerator.generateCompactMathNode(refDoc);
+        compactCompTree = MathNodeGenerator.generateCompactMathNode(compDoc);
+    }
+
+    /**
+     * Fresh MathNode trees for every invocation, only used by {@link #mathNode(MathNodeTrees)}.
+     */
+    @State(Scope.Thread)
+    public static class MathNodeTrees {
+
+        private MathNode refTree;
+
+        private MathNode compTree;
+
+        @Setup(Level.Invocation)
+        public void resetTrees(SubTreeComparisonBenchmark benchmark) throws Exception {
+            refTree = MathNodeGenerator.generateMathNode(benchmark.refDoc);
+            compTree = MathNodeGenerator.generateMathNode(benchmark.compDoc);
+        }
+    }
+
+    private static CMMLInfo readCmml(String filename) throws Exception {
+        String resource = "/com/formulasearchengine/mathmltools/similarity/" + filename;
+        return new CMMLInfo(IOUtils.toString(SubTreeComparisonBenchmark.class.getResourceAsStream(resource), "UTF-8"));
+    }
+
+    @Benchmark
+    public List<Match> mathNode(MathNodeTrees trees) {
+        return comparison.getSimilarities(trees.refTree, trees.compTree, false);
+    }
+
+    @Benchmark
+    public List<Match> compact() {
+        return comparison.getSimilarities(compactRefTree, compactCompTree, false);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(SubTreeComparisonBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
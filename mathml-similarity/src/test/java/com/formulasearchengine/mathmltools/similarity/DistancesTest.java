@@ -1,7 +1,14 @@
 package com.formulasearchengine.mathmltools.similarity;
 
+import com.formulasearchengine.mathmltools.similarity.distances.Distances;
 import org.junit.jupiter.api.Test;
 
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
 /**
  * Created by Moritz on 08.04.2017.
  */
@@ -11,6 +18,22 @@ public class DistancesTest {
 
     }
 
+    @Test
+    public void computeEarthMover1DDistance() throws Exception {
+        Map<String, Double> h1 = new HashMap<>();
+        h1.put("a", 2.0);
+        h1.put("c", 2.0);
+        Map<String, Double> h2 = new HashMap<>();
+        h2.put("b", 1.0);
+        h2.put("c", 1.0);
+        // axis a=0, b=1, c=2: half of the mass moves from a to b
+        assertEquals(0.5, Distances.computeEarthMover1DDistance(h1, h2), 1e-12);
+        assertEquals(0.0, Distances.computeEarthMover1DDistance(h1, h1), 0.0);
+        assertEquals(0.0, Distances.computeEarthMover1DDistance(new HashMap<>(), new HashMap<>()), 0.0);
+        assertTrue(Double.isNaN(Distances.computeEarthMover1DDistance(h1, new HashMap<>())));
+        assertTrue(Double.isNaN(Distances.computeEarthMover1DDistance(new HashMap<>(), h2)));
+    }
+
     @Test
     public void computeRelativeDistance() throws Exception {
 
@@ -1,12 +1,15 @@
 package com.formulasearchengine.mathmltools.similarity;
 
+import com.formulasearchengine.mathmltools.similarity.result.EditDistance;
 import com.formulasearchengine.mathmltools.similarity.result.Match;
+import com.formulasearchengine.mathmltools.similarity.result.SimilarityType;
 import com.formulasearchengine.mathmltools.similarity.util.MathNodeException;
 import org.apache.commons.io.IOUtils;
 import org.junit.jupiter.api.Test;
 
 import javax.xml.xpath.XPathExpressionException;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 
@@ -100,4 +103,40 @@ public class MathPlagTest {
         assertThat(simMatch.get(0).getDepth(), is(1));
         assertThat(simMatch.get(0).getMatches().get(0).getDepth(), is(1));
     }
-}
\ No newline at end of file
+
+    @Test
+    public void editDistance() throws IOException, MathNodeException {
+        String refMathML = IOUtils.toString(this.getClass().getResourceAsStream("mathml_complex_1.xml"), "UTF-8");
+        String compMathML = IOUtils.toString(this.getClass().getResourceAsStream("mathml_complex_2.xml"), "UTF-8");
+
+        EditDistance self = MathPlag.compareEditDistance(refMathML, refMathML, SimilarityType.identical);
+        assertThat(self.getDistance(), is(0.0));
+        assertThat(self.getSimilarity(), is(1.0));
+
+        EditDistance identical = MathPlag.compareEditDistance(refMathML, compMathML, SimilarityType.identical);
+        EditDistance similar = MathPlag.compareEditDistance(refMathML, compMathML, SimilarityType.similar);
+        assertThat(identical.getDistance() > 0, is(true));
+        assertThat(identical.getType(), is("identical"));
+        assertThat(similar.getType(), is("similar"));
+        // abstract trees ignore the values, they are at least as close as the original trees
+        assertThat(similar.getDistance() <= identical.getDistance(), is(true));
+    }
+
+    @Test
+    public void preparedReference_sameFactors() throws IOException, XPathExpressionException {
+        String[] files = {"mathml_complex_1.xml", "mathml_complex_2.xml",
+                "mathml_annotation_1.xml", "mathml_annotation_2.xml", "mathml_annotation_3.xml"};
+        List<String> candidates = new ArrayList<>();
+        for (String file : files) {
+            candidates.add(IOUtils.toString(this.getClass().getResourceAsStream(file), "UTF-8"));
+        }
+        for (String refMathML : candidates) {
+            PreparedReference reference = MathPlag.prepareReference(refMathML);
+            List<Map<String, Object>> scores = reference.score(candidates.stream());
+            assertThat(scores.size(), is(candidates.size()));
+            for (int i = 0; i < candidates.size(); i++) {
+                assertThat(scores.get(i), is(MathPlag.compareOriginalFactors(refMathML, candidates.get(i))));
+            }
+        }
+    }
+}
@@ -1,9 +1,12 @@
 package com.formulasearchengine.mathmltools.similarity;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.formulasearchengine.mathmltools.mml.CMMLInfo;
+import com.formulasearchengine.mathmltools.similarity.node.CompactMathNode;
 import com.formulasearchengine.mathmltools.similarity.node.MathNode;
 import com.formulasearchengine.mathmltools.similarity.node.MathNodeGenerator;
+import com.formulasearchengine.mathmltools.similarity.node.SubTreeHashes;
 import com.formulasearchengine.mathmltools.similarity.result.Match;
 import com.formulasearchengine.mathmltools.similarity.result.SimilarityType;
 import com.formulasearchengine.mathmltools.similarity.util.MathNodeException;
@@ -13,6 +16,7 @@ import org.junit.jupiter.api.Test;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.stream.IntStream;
 
 import static org.hamcrest.CoreMatchers.is;
 import static org.hamcrest.MatcherAssert.assertThat;
@@ -40,12 +44,106 @@ public class SubTreeComparisonTest {
         testSimilarities("full_sim1");
     }
 
+    @Test
+    public void getSimilarities_hashJoin() throws Exception {
+        testSimilarities("full_sim1", true);
+    }
+
+    @Test
+    public void getSimilarities_hashJoinEqualsRecursive() throws Exception {
+        String[][] pairs = {
+                {"mathml_complex_1.xml", "mathml_complex_2.xml"},
+                {"mathml_annotation_1.xml", "mathml_annotation_2.xml"},
+                {"mathml_query_pure_1.xml", "mathml_annotation_3.xml"},
+                {"mathml_complex_2.xml", "mathml_annotation_1.xml"}
+        };
+        ObjectMapper mapper = new ObjectMapper();
+        for (String[] pair : pairs) {
+            for (boolean abstractTree : new boolean[]{false, true}) {
+                for (boolean onlyOperators : new boolean[]{false, true}) {
+                    List<Match> recursive = new SubTreeComparison(SimilarityType.identical).getSimilarities(
+                            readMathML(pair[0], abstractTree), readMathML(pair[1], abstractTree), onlyOperators);
+                    List<Match> hashed = new SubTreeComparison(SimilarityType.identical, true).getSimilarities(
+                            readMathML(pair[0], abstractTree), readMathML(pair[1], abstractTree), onlyOperators);
+                    assertThat(mapper.writeValueAsString(hashed), is(mapper.writeValueAsString(recursive)));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void getSimilarities_compactEqualsRecursive() throws Exception {
+        String[][] pairs = {
+                {"mathml_complex_1.xml", "mathml_complex_2.xml"},
+                {"mathml_annotation_1.xml", "mathml_annotation_2.xml"},
+                {"mathml_query_pure_1.xml", "mathml_annotation_3.xml"},
+                {"mathml_complex_2.xml", "mathml_complex_2.xml"}
+        };
+        ObjectMapper mapper = new ObjectMapper();
+        SubTreeComparison comparison = new SubTreeComparison(SimilarityType.identical);
+        for (String[] pair : pairs) {
+            for (boolean abstractTree : new boolean[]{false, true}) {
+                for (boolean onlyOperators : new boolean[]{false, true}) {
+                    List<Match> recursive = comparison.getSimilarities(
+                            readMathML(pair[0], abstractTree), readMathML(pair[1], abstractTree), onlyOperators);
+                    CompactMathNode refTree = MathNodeGenerator.toCompact(readMathML(pair[0], abstractTree));
+                    CompactMathNode compTree = MathNodeGenerator.toCompact(readMathML(pair[1], abstractTree));
+                    List<Match> compact = comparison.getSimilarities(refTree, compTree, onlyOperators);
+                    assertThat(mapper.writeValueAsString(compact), is(mapper.writeValueAsString(recursive)));
+                    // the compact trees are not changed by a comparison
+                    assertThat(mapper.writeValueAsString(comparison.getSimilarities(refTree, compTree, onlyOperators)),
+                            is(mapper.writeValueAsString(recursive)));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void getSimilarities_reusableTrees() throws Exception {
+        ObjectMapper mapper = new ObjectMapper();
+        MathNode compTree = readMathML("mathml_complex_2.xml", false);
+        SubTreeHashes compHashes = new SubTreeHashes(compTree);
+        List<MathNode> refTrees = new ArrayList<>();
+        List<String> expected = new ArrayList<>();
+        for (String file : new String[]{"mathml_complex_1.xml", "mathml_complex_2.xml", "mathml_annotation_1.xml"}) {
+            refTrees.add(readMathML(file, false));
+            // reference result on fresh trees
+            expected.add(mapper.writeValueAsString(new SubTreeComparison(SimilarityType.identical)
+                    .getSimilarities(readMathML(file, false), readMathML("mathml_complex_2.xml", false), false)));
+        }
+        SubTreeComparison recursive = new SubTreeComparison(SimilarityType.identical);
+        SubTreeComparison hashed = new SubTreeComparison(SimilarityType.identical, true);
+        // the same trees are compared many times and concurrently
+        IntStream.range(0, 60).parallel().forEach(i -> {
+            int r = i % refTrees.size();
+            try {
+                String actual = mapper.writeValueAsString(i % 2 == 0
+                        ? recursive.getSimilarities(refTrees.get(r), compTree, false)
+                        : hashed.getSimilarities(new SubTreeHashes(refTrees.get(r)), compHashes, false));
+                assertThat(actual, is(expected.get(r)));
+            } catch (JsonProcessingException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+    }
+
+    private MathNode readMathML(String filename, boolean abstractTree) throws IOException, MathNodeException {
+        MathNode node = MathNodeGenerator.generateMathNode(
+                new CMMLInfo(IOUtils.toString(this.getClass().getResourceAsStream(filename), "UTF-8")));
+        return abstractTree ? node.toAbstract() : node;
+    }
+
     private void testSimilarities(String basicFilename) throws Exception {
+        testSimilarities(basicFilename, false);
+    }
+
+    private void testSimilarities(String basicFilename, boolean hashJoin) throws Exception {
         MathNode refTree = readMathNodeFromFile(basicFilename + "_test_p1.txt");
         MathNode compTree = readMathNodeFromFile(basicFilename + "_test_p2.txt");
 
         // run the comparison
-        List<Match> found = new SubTreeComparison(SimilarityType.identical).getSimilarities(refTree, compTree, true);
+        List<Match> found = new SubTreeComparison(SimilarityType.identical, hashJoin)
+                .getSimilarities(refTree, compTree, true);
         // - and write the similarities as a string
         String actual = new ObjectMapper().writerWithDefaultPrettyPrinter().writeValueAsString(found);
 
@@ -103,6 +201,36 @@ public class SubTreeComparisonTest {
         assertTrue(new SubTreeComparison(SimilarityType.identical).isIdenticalTree(apply1, apply2));
     }
 
+    @Test
+    public void subTreeHashes_order_insensitive() {
+        MathNode apply1 = new MathNode("apply", "");
+        apply1.addChild(new MathNode("plus", null));
+        apply1.addChild(new MathNode("x", null));
+        apply1.addChild(new MathNode("y", null));
+
+        MathNode apply2 = new MathNode("apply", "");
+        apply2.addChild(new MathNode("plus", null));
+        apply2.addChild(new MathNode("y", null));
+        apply2.addChild(new MathNode("x", null));
+
+        MathNode apply3 = new MathNode("apply", "");
+        apply3.addChild(new MathNode("minus", null));
+        apply3.addChild(new MathNode("x", null));
+        apply3.addChild(new MathNode("y", null));
+
+        MathNode apply4 = new MathNode("apply", "");
+        apply4.addChild(new MathNode("minus", null));
+        apply4.addChild(new MathNode("y", null));
+        apply4.addChild(new MathNode("x", null));
+
+        // x+y = y+x but x-y != y-x
+        assertThat(new SubTreeHashes(apply1).getHash(0), is(new SubTreeHashes(apply2).getHash(0)));
+        assertFalse(new SubTreeHashes(apply3).getHash(0) == new SubTreeHashes(apply4).getHash(0));
+        // x+y matches y+x in the hash join as well
+        List<Match> matches = new SubTreeComparison(SimilarityType.identical, true).getSimilarities(apply1, apply2, true);
+        assertThat(matches.size(), is(1));
+    }
+
     @Test
     public void isIdenticalTree_negative() {
         MathNode apply1 = new MathNode("apply", "");
@@ -0,0 +1,148 @@
+package com.formulasearchengine.mathmltools.similarity.distances;
+
+import com.formulasearchengine.mathmltools.mml.CMMLInfo;
+import org.apache.commons.io.IOUtils;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Test class for the parallel distance matrix.
+ */
+public class DistanceMatrixTest {
+
+    private static final String[] FILES = {
+            "mathml_complex_1.xml", "mathml_complex_2.xml",
+            "mathml_annotation_1.xml", "mathml_annotation_2.xml", "mathml_annotation_3.xml"
+    };
+
+    @Test
+    public void sameAsSinglePairs(@TempDir Path dir) throws Exception {
+        SparseHistogram[] histograms = randomHistograms(new Random(3), 37);
+        Path file = dir.resolve("matrix.bin");
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            // tiles and segments do not divide the size
+            try (DistanceMatrix matrix = DistanceMatrix.compute(histograms, HistogramDistance.RELATIVE, file, pool, 5, 4)) {
+                assertMatrix(matrix, histograms, HistogramDistance.RELATIVE);
+            }
+        } finally {
+            pool.shutdown();
+        }
+        assertThat(Files.size(file), is(16L + 37 * 37 * 4));
+        try (DistanceMatrix matrix = DistanceMatrix.open(file)) {
+            assertMatrix(matrix, histograms, HistogramDistance.RELATIVE);
+        }
+    }
+
+    @Test
+    public void allDistances(@TempDir Path dir) throws Exception {
+        SparseHistogram[] histograms = randomHistograms(new Random(5), 12);
+        for (HistogramDistance distance : HistogramDistance.values()) {
+            Path file = dir.resolve(distance + ".bin");
+            try (DistanceMatrix matrix = DistanceMatrix.compute(histograms, distance, file, ForkJoinPool.commonPool(),
+                    DistanceMatrix.DEFAULT_TILE_SIZE)) {
+                assertMatrix(matrix, histograms, distance);
+            }
+        }
+    }
+
+    @Test
+    public void formulas(@TempDir Path dir) throws Exception {
+        List<CMMLInfo> formulas = new ArrayList<>();
+        for (String f : FILES) {
+            formulas.add(readCmml(f));
+        }
+        Path file = dir.resolve("formulas.bin");
+        try (DistanceMatrix matrix = DistanceMatrix.computeFromFormulas(formulas, HistogramDistance.COSINE, file,
+                ForkJoinPool.commonPool())) {
+            assertThat(matrix.size(), is(FILES.length));
+            for (int i = 0; i < FILES.length; i++) {
+                SparseHistogram histogram = Distances.contentHistogram(formulas.get(i));
+                // identical formulas have the smallest distance
+                assertEquals(0.0, matrix.get(i, i), 1e-6);
+                assertEquals((float) (1.0 - Distances.computeCosineDistance(histogram,
+                        Distances.contentHistogram(formulas.get(0)))), matrix.get(i, 0), 1e-6f);
+            }
+        }
+    }
+
+    @Test
+    public void cosineDistance() {
+        SparseHistogram empty = SparseHistogram.empty();
+        SparseHistogram h1 = SparseHistogram.of(Map.of("cosine_a", 2.0, "cosine_b", 1.0));
+        SparseHistogram h2 = SparseHistogram.of(Map.of("cosine_c", 4.0));
+        assertEquals(0.0, HistogramDistance.COSINE.compute(h1, h1), 0.0);
+        assertEquals(0.0, HistogramDistance.COSINE.compute(h1, SparseHistogram.of(h1.toMap())), 1e-12);
+        assertEquals(1.0, HistogramDistance.COSINE.compute(h1, h2), 0.0);
+        assertEquals(0.0, HistogramDistance.COSINE.compute(empty, empty), 0.0);
+        assertEquals(1.0, HistogramDistance.COSINE.compute(empty, h1), 0.0);
+        assertEquals(1.0, HistogramDistance.COSINE.compute(h1, empty), 0.0);
+    }
+
+    @Test
+    public void earthMoverDistance() {
+        SparseHistogram empty = SparseHistogram.empty();
+        SparseHistogram h1 = SparseHistogram.of(Map.of("emd_a", 1.0, "emd_c", 1.0));
+        SparseHistogram h2 = SparseHistogram.of(Map.of("emd_b", 1.0, "emd_c", 1.0));
+        assertEquals(0.0, HistogramDistance.EARTH_MOVER.compute(empty, empty), 0.0);
+        assertTrue(Double.isNaN(HistogramDistance.EARTH_MOVER.compute(empty, h1)));
+        assertTrue(Double.isNaN(HistogramDistance.EARTH_MOVER.compute(h1, empty)));
+        assertEquals(0.0, HistogramDistance.EARTH_MOVER.compute(h1, SparseHistogram.of(h1.toMap())), 1e-12);
+        // emd_c is at the same position in both signatures, emd_a is moved to emd_b
+        double distance = HistogramDistance.EARTH_MOVER.compute(h1, h2);
+        assertTrue(distance > 0, "different symbols at the same position: " + distance);
+        assertEquals(distance, HistogramDistance.EARTH_MOVER.compute(h2, h1), 1e-12);
+    }
+
+    @Test
+    public void notAMatrixFile(@TempDir Path dir) throws Exception {
+        Path file = dir.resolve("other.bin");
+        Files.write(file, "no distance matrix".getBytes(StandardCharsets.UTF_8));
+        assertThrows(IOException.class, () -> DistanceMatrix.open(file));
+    }
+
+    private static void assertMatrix(DistanceMatrix matrix, SparseHistogram[] histograms, HistogramDistance distance) {
+        assertThat(matrix.size(), is(histograms.length));
+        for (int i = 0; i < histograms.length; i++) {
+            for (int j = 0; j < histograms.length; j++) {
+                float expected = (float) distance.compute(histograms[Math.min(i, j)], histograms[Math.max(i, j)]);
+                assertEquals(expected, matrix.get(i, j), 0.0f, distance + " " + i + "," + j);
+            }
+        }
+    }
+
+    private static SparseHistogram[] randomHistograms(Random random, int n) {
+        SparseHistogram[] histograms = new SparseHistogram[n];
+        for (int i = 0; i < n; i++) {
+            Map<String, Double> histogram = new HashMap<>();
+            int size = 1 + random.nextInt(10);
+            for (int k = 0; k < size; k++) {
+                histogram.put("m" + random.nextInt(20), 1.0 + random.nextInt(4));
+            }
+            histograms[i] = SparseHistogram.of(histogram);
+        }
+        return histograms;
+    }
+
+    private static CMMLInfo readCmml(String filename) throws IOException {
+        String resource = "/com/formulasearchengine/mathmltools/similarity/" + filename;
+        return new CMMLInfo(IOUtils.toString(DistanceMatrixTest.class.getResourceAsStream(resource), "UTF-8"));
+    }
+}
@@ -0,0 +1,79 @@
+package com.formulasearchengine.mathmltools.similarity.distances;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * All kernels must compute the same results as the scalar kernels (up to the summation order).
+ */
+public class HistogramKernelsTest {
+
+    private static final double EPSILON = 1e-9;
+
+    @Test
+    public void selected() {
+        assertNotNull(HistogramKernels.get());
+        assertEquals("scalar", HistogramKernels.scalar().name());
+        assertEquals("scalar", KernelSelection.select("scalr").name());
+        assertEquals("scalar", KernelSelection.select("scalar").name());
+    }
+
+    @Test
+    public void vectorEqualsScalar() {
+        HistogramKernels vector = HistogramKernels.vector();
+        assumeTrue(vector != null, "vectorized kernels are not available");
+        HistogramKernels scalar = HistogramKernels.scalar();
+        Random random = new Random(17);
+        // lengths below, equal to and above multiples of the vector size
+        for (int length = 0; length < 70; length++) {
+            double[] a = randomBlock(random, length);
+            double[] b = randomBlock(random, length);
+            assertEquals(scalar.dot(a, b, length), vector.dot(a, b, length), EPSILON);
+            assertEquals(scalar.sumOfSquares(a, length), vector.sumOfSquares(a, length), EPSILON);
+            assertEquals(scalar.absoluteDifference(a, b, length), vector.absoluteDifference(a, b, length), EPSILON);
+        }
+    }
+
+    @Test
+    public void denseEqualsSparse() {
+        Map<String, Double> h1 = new HashMap<>();
+        h1.put("kernel_a", 2.0);
+        h1.put("kernel_b", 1.0);
+        Map<String, Double> h2 = new HashMap<>();
+        h2.put("kernel_b", 3.0);
+        h2.put("kernel_c", 1.0);
+        SparseHistogram s1 = SparseHistogram.of(h1);
+        SparseHistogram s2 = SparseHistogram.of(h2);
+        int length = SymbolDictionary.size();
+        double[] d1 = s1.toDense(length);
+        double[] d2 = s2.toDense(length);
+        assertEquals(Distances.computeCosineDistance(s1, s2), Distances.computeCosineDistance(d1, d2), EPSILON);
+        assertEquals(Distances.computeAbsoluteDistance(s1, s2), Distances.computeAbsoluteDistance(d1, d2), EPSILON);
+    }
+
+    @Test
+    public void emptyDenseHistograms() {
+        double[] empty = new double[4];
+        double[] h = {0, 5, 0, 0};
+        assertEquals(1.0, Distances.computeCosineDistance(empty, empty), 0.0);
+        assertEquals(0.0, Distances.computeCosineDistance(empty, h), 0.0);
+        assertEquals(0.0, Distances.computeCosineDistance(h, empty), 0.0);
+        assertEquals(1.0, Distances.computeCosineDistance(new double[0], new double[0]), 0.0);
+    }
+
+    private static double[] randomBlock(Random random, int length) {
+        double[] block = new double[length];
+        for (int i = 0; i < length; i++) {
+            // sparse counts, as for histograms
+            block[i] = random.nextInt(3) == 0 ? random.nextInt(5) : 0.0;
+        }
+        return block;
+    }
+}
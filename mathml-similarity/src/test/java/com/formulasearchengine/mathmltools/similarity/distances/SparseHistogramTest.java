@@ -0,0 +1,86 @@
+package com.formulasearchengine.mathmltools.similarity.distances;
+
+import com.formulasearchengine.mathmltools.helper.XMLHelper;
+import org.junit.jupiter.api.Test;
+import org.w3c.dom.NodeList;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * The sparse histograms must give the same results as the map based histograms in {@link Distances}.
+ */
+public class SparseHistogramTest {
+
+    private static final double EPSILON = 1e-9;
+
+    @Test
+    public void sameDistancesAsMaps() {
+        Random random = new Random(13);
+        for (int run = 0; run < 500; run++) {
+            Map<String, Double> h1 = randomHistogram(random);
+            Map<String, Double> h2 = randomHistogram(random);
+            SparseHistogram s1 = SparseHistogram.of(h1);
+            SparseHistogram s2 = SparseHistogram.of(h2);
+            if (s1.norm() > 0 && s2.norm() > 0) {
+                // the map version has no defined value for empty histograms
+                assertEquals(Distances.computeCosineDistance(h1, h2), Distances.computeCosineDistance(s1, s2), EPSILON);
+            }
+            assertEquals(Distances.computeAbsoluteDistance(h1, h2), Distances.computeAbsoluteDistance(s1, s2), EPSILON);
+            assertEquals(Distances.computeRelativeDistance(h1, h2), Distances.computeRelativeDistance(s1, s2), EPSILON);
+            assertThat(Distances.histogramsPlus(s1, s2, s1).toMap(), is(Distances.histogramsPlus(h1, h2, h1)));
+        }
+    }
+
+    @Test
+    public void emptyHistograms() {
+        SparseHistogram empty = SparseHistogram.empty();
+        SparseHistogram h = SparseHistogram.of(Map.of("x", 5.0));
+        assertEquals(1.0, Distances.computeCosineDistance(empty, empty), 0.0);
+        assertEquals(0.0, Distances.computeCosineDistance(empty, h), 0.0);
+        assertEquals(0.0, Distances.computeCosineDistance(h, empty), 0.0);
+        assertEquals(0.0, Distances.computeRelativeDistance(empty, empty), 0.0);
+        assertThrows(IllegalArgumentException.class, () -> Distances.histogramsPlus(new SparseHistogram[0]));
+    }
+
+    @Test
+    public void roundTrip() {
+        Map<String, Double> map = new HashMap<>();
+        map.put("x", 2.0);
+        map.put("y", 1.0);
+        SparseHistogram histogram = SparseHistogram.of(map);
+        assertThat(histogram.toMap(), is(map));
+        assertEquals(2.0, histogram.get("x"), 0.0);
+        assertEquals(0.0, histogram.get("z"), 0.0);
+        int size = SymbolDictionary.size();
+        assertEquals(0.0, histogram.get("sparse_unknown_symbol"), 0.0);
+        assertEquals(size, SymbolDictionary.size());
+        assertEquals(-1, SymbolDictionary.lookup("sparse_unknown_symbol"));
+        assertEquals(3.0, histogram.total(), 0.0);
+        assertThat(SymbolDictionary.symbol(SymbolDictionary.intern("x")), is("x"));
+    }
+
+    @Test
+    public void contentElements() {
+        NodeList nodes = XMLHelper.string2Doc("<math><ci>x</ci><ci> y</ci><cn>1</cn><ci>x </ci></math>", false)
+                .getElementsByTagName("ci");
+        SparseHistogram histogram = Distances.contentElementsToSparseHistogram(nodes);
+        assertThat(histogram.toMap(), is(Distances.contentElementsToHistogram(nodes)));
+        assertThat(histogram, is(SparseHistogram.of(Distances.contentElementsToHistogram(nodes))));
+    }
+
+    private static Map<String, Double> randomHistogram(Random random) {
+        Map<String, Double> histogram = new HashMap<>();
+        int size = random.nextInt(15);
+        for (int i = 0; i < size; i++) {
+            histogram.put("s" + random.nextInt(30), (double) random.nextInt(6));
+        }
+        return histogram;
+    }
+}
@@ -0,0 +1,82 @@
+package com.formulasearchengine.mathmltools.similarity.distances.earthmover;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * The closed form must be equal to the min cost flow solution of {@link JFastEMD}
+ * up to its integer rounding.
+ */
+public class Emd1DTest {
+
+    @Test
+    public void randomSignatures() {
+        Random random = new Random(5);
+        for (int run = 0; run < 200; run++) {
+            int n1 = 1 + random.nextInt(30);
+            int n2 = 1 + random.nextInt(30);
+            Signature s1 = randomSignature(random, n1);
+            Signature s2 = randomSignature(random, n2);
+            // JFastEMD rounds weights and costs to a millionth of their maximum
+            double maxC = 0;
+            for (Feature f1 : s1.getFeatures()) {
+                for (Feature f2 : s2.getFeatures()) {
+                    maxC = Math.max(maxC, f1.groundDist(f2));
+                }
+            }
+            double tolerance = 1e-5 * (n1 + n2) * maxC;
+            assertEquals(JFastEMD.distance(s1, s2, 0.0), Emd1D.distance(s1, s2), tolerance, "run " + run);
+        }
+    }
+
+    @Test
+    public void shiftedSignature() {
+        Signature s1 = signature(new double[]{0, 1, 2}, new double[]{1, 2, 1});
+        Signature s2 = signature(new double[]{3, 4, 5}, new double[]{1, 2, 1});
+        assertEquals(12.0, Emd1D.distance(s1, s2), 1e-12);
+        assertEquals(0.0, Emd1D.distance(s1, s1), 0.0);
+    }
+
+    @Test
+    public void differentMasses() {
+        Signature s1 = signature(new double[]{0}, new double[]{1});
+        Signature s2 = signature(new double[]{0}, new double[]{2});
+        assertThrows(IllegalArgumentException.class, () -> Emd1D.distance(s1, s2));
+    }
+
+    private static Signature randomSignature(Random random, int size) {
+        double[] positions = new double[size];
+        double[] weights = new double[size];
+        double sum = 0;
+        for (int i = 0; i < size; i++) {
+            // integer positions produce equal positions in both signatures
+            positions[i] = random.nextBoolean() ? random.nextInt(10) : random.nextDouble() * 10;
+            weights[i] = random.nextInt(4) == 0 ? 0 : 1 + random.nextInt(5);
+            sum += weights[i];
+        }
+        if (sum == 0) {
+            weights[0] = sum = 1;
+        }
+        // normalized to the same total weight
+        for (int i = 0; i < size; i++) {
+            weights[i] /= sum;
+        }
+        return signature(positions, weights);
+    }
+
+    private static Signature signature(double[] positions, double[] weights) {
+        Feature[] features = new Feature[positions.length];
+        for (int i = 0; i < positions.length; i++) {
+            features[i] = new Feature1D(positions[i]);
+        }
+        Signature signature = new Signature();
+        signature.setFeatures(features);
+        signature.setWeights(weights);
+        signature.setNumberOfFeatures(features.length);
+        return signature;
+    }
+}
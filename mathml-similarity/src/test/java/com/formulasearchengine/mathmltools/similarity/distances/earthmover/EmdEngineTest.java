@@ -0,0 +1,101 @@
+package com.formulasearchengine.mathmltools.similarity.distances.earthmover;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * The flat implementation must compute exactly the same distances as {@link JFastEMD}.
+ */
+public class EmdEngineTest {
+
+    private static final double[] PENALTIES = {0.0, -1, 0.5};
+
+    @Test
+    public void randomSignatures() {
+        Random random = new Random(42);
+        for (int run = 0; run < 200; run++) {
+            Signature s1 = randomSignature(random, 1 + random.nextInt(30));
+            Signature s2 = randomSignature(random, 1 + random.nextInt(30));
+            for (double penalty : PENALTIES) {
+                assertEquals(JFastEMD.distance(s1, s2, penalty), EmdEngine.distance(s1, s2, penalty), 0.0,
+                        "run " + run + " penalty " + penalty);
+            }
+        }
+    }
+
+    @Test
+    public void randomHistograms() {
+        Random random = new Random(7);
+        for (int run = 0; run < 200; run++) {
+            Signature s1 = EarthMoverDistanceWrapper.histogramToSignature(randomHistogram(random, 1 + random.nextInt(40)));
+            Signature s2 = EarthMoverDistanceWrapper.histogramToSignature(randomHistogram(random, 1 + random.nextInt(40)));
+            assertEquals(JFastEMD.distance(s1, s2, 0.0), EmdEngine.distance(s1, s2, 0.0), 0.0, "run " + run);
+        }
+    }
+
+    @Test
+    public void reusedEngine() {
+        Random random = new Random(3);
+        EmdEngine engine = new EmdEngine();
+        for (int run = 0; run < 100; run++) {
+            // alternating large and small signatures, the buffers are larger than needed
+            int size = run % 2 == 0 ? 40 : 1 + random.nextInt(10);
+            Signature s1 = randomSignature(random, size);
+            Signature s2 = randomSignature(random, 1 + random.nextInt(40));
+            assertEquals(new EmdEngine().compute(s1, s2, -1), engine.compute(s1, s2, -1), 0.0, "run " + run);
+        }
+    }
+
+    @Test
+    public void batchDistances() {
+        Random random = new Random(11);
+        Signature query = randomSignature(random, 15);
+        List<Signature> candidates = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            candidates.add(randomSignature(random, 1 + random.nextInt(30)));
+        }
+        double[] distances = EmdEngine.distances(query, candidates);
+        assertEquals(candidates.size(), distances.length);
+        for (int i = 0; i < distances.length; i++) {
+            assertEquals(JFastEMD.distance(query, candidates.get(i), 0.0), distances[i], 0.0);
+        }
+    }
+
+    @Test
+    public void identicalSignatures() {
+        Signature s = randomSignature(new Random(1), 20);
+        assertEquals(0.0, EmdEngine.distance(s, s, 0.0), 0.0);
+    }
+
+    private static Signature randomSignature(Random random, int size) {
+        Feature[] features = new Feature[size];
+        double[] weights = new double[size];
+        for (int i = 0; i < size; i++) {
+            // integer coordinates produce many equal costs
+            features[i] = random.nextBoolean()
+                    ? new Feature2D(random.nextInt(5), random.nextInt(5))
+                    : new Feature2D(random.nextDouble() * 10, random.nextDouble() * 10);
+            weights[i] = random.nextInt(4) == 0 ? random.nextInt(3) : random.nextDouble() * 5;
+        }
+        Signature signature = new Signature();
+        signature.setFeatures(features);
+        signature.setWeights(weights);
+        signature.setNumberOfFeatures(size);
+        return signature;
+    }
+
+    private static Map<String, Double> randomHistogram(Random random, int size) {
+        Map<String, Double> histogram = new LinkedHashMap<>();
+        for (int i = 0; i < size; i++) {
+            histogram.put("x" + i, (double) (1 + random.nextInt(4)));
+        }
+        return histogram;
+    }
+}
@@ -2,6 +2,8 @@ package com.formulasearchengine.mathmltools.similarity.distances.earthmover;
 
 import org.junit.jupiter.api.Test;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
 /**
  * Created by Moritz on 08.04.2017.
  */
@@ -10,4 +12,28 @@ public class JFastEMDTest {
     public void distance() throws Exception {
 
     }
-}
\ No newline at end of file
+
+    @Test
+    public void distance_optimalFlow() throws Exception {
+        // optimal: 1 from 0 to 0.5, 1 from 1 to 0.5 and 2 from 1 to 1.5. With negative
+        // reduced costs the min cost flow returned a non-optimal flow of cost 3.
+        Signature s1 = signature(new double[]{0, 1}, new double[]{1, 3});
+        Signature s2 = signature(new double[]{0.5, 1.5}, new double[]{2, 2});
+        assertEquals(2.0, JFastEMD.distance(s1, s2, 0), 1e-5);
+        assertEquals(2.0, JFastEMD.distance(s2, s1, 0), 1e-5);
+        assertEquals(2.0, EmdEngine.distance(s1, s2, 0), 1e-5);
+        assertEquals(2.0, EmdEngine.distance(s2, s1, 0), 1e-5);
+    }
+
+    private static Signature signature(double[] x, double[] weights) {
+        Feature[] features = new Feature[x.length];
+        for (int i = 0; i < x.length; i++) {
+            features[i] = new Feature2D(x[i], 0);
+        }
+        Signature signature = new Signature();
+        signature.setNumberOfFeatures(x.length);
+        signature.setFeatures(features);
+        signature.setWeights(weights);
+        return signature;
+    }
+}
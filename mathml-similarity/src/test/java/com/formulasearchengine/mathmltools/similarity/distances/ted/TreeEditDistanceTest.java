@@ -0,0 +1,176 @@
+package com.formulasearchengine.mathmltools.similarity.distances.ted;
+
+import com.formulasearchengine.mathmltools.similarity.node.CompactMathNode;
+import com.formulasearchengine.mathmltools.similarity.node.MathNode;
+import com.formulasearchengine.mathmltools.similarity.node.MathNodeGenerator;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.stream.Collectors;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Test class for the tree edit distance.
+ */
+public class TreeEditDistanceTest {
+
+    @Test
+    public void zhangShashaExample() {
+        // f(d(a, c(b)), e) and f(c(d(a, b)), e) from the original paper
+        MathNode tree1 = node("f", node("d", node("a"), node("c", node("b"))), node("e"));
+        MathNode tree2 = node("f", node("c", node("d", node("a"), node("b"))), node("e"));
+        assertThat(TreeEditDistance.distance(tree1, tree2), is(2.0));
+        assertThat(TreeEditDistance.distance(tree2, tree1), is(2.0));
+        assertThat(TreeEditDistance.distance(tree1, tree1), is(0.0));
+    }
+
+    @Test
+    public void orderInsensitive() {
+        assertThat(TreeEditDistance.distance(apply("plus", "x", "y"), apply("plus", "y", "x")), is(0.0));
+        assertThat(TreeEditDistance.distance(apply("minus", "x", "y"), apply("minus", "y", "x")), is(2.0));
+        assertThat(TreeEditDistance.distance(apply("plus", "x", "y"), apply("plus", "x", "z")), is(1.0));
+    }
+
+    @Test
+    public void abstractTrees() {
+        MathNode tree1 = apply("plus", "x", "y");
+        MathNode tree2 = apply("plus", "a", "b");
+        assertThat(TreeEditDistance.distance(tree1, tree2), is(2.0));
+        assertThat(TreeEditDistance.distance(tree1.toAbstract(), tree2.toAbstract()), is(0.0));
+    }
+
+    @Test
+    public void customCosts() {
+        TreeEditDistance ted = new TreeEditDistance(new EditCosts(0.5, 2, 3));
+        MathNode small = apply("minus", "x", "y");
+        MathNode large = named("apply", new MathNode("minus", ""), new MathNode("ci", "x"), new MathNode("ci", "y"),
+                new MathNode("ci", "z"));
+        assertThat(ted.compute(apply("minus", "x", "y"), apply("minus", "x", "z")), is(0.5));
+        assertThat(ted.compute(small, large), is(2.0));
+        assertThat(ted.compute(large, small), is(3.0));
+        // delete everything (4 * 3) and insert everything (4 * 2) is the upper bound
+        assertEquals(1 - 0.5 / 20, ted.similarity(apply("minus", "x", "y"), apply("minus", "x", "z")), 1e-12);
+        assertThrows(IllegalArgumentException.class, () -> new EditCosts(-1, 1, 1));
+    }
+
+    @Test
+    public void randomTrees_equalsNaiveDistance() {
+        Random random = new Random(13);
+        TreeEditDistance ted = new TreeEditDistance(new EditCosts(1, 0.7, 1.3));
+        for (int run = 0; run < 300; run++) {
+            CompactMathNode tree1 = MathNodeGenerator.toCompact(randomTree(random, 1 + random.nextInt(9)));
+            CompactMathNode tree2 = MathNodeGenerator.toCompact(randomTree(random, 1 + random.nextInt(9)));
+            double expected = naive(Arrays.asList(tree1), Arrays.asList(tree2), ted.getCosts(), new HashMap<>());
+            // the engine is reused with smaller and larger trees
+            assertEquals(expected, ted.compute(tree1, tree2), 1e-9, "run " + run);
+        }
+    }
+
+    @Test
+    public void computeAll() {
+        CompactMathNode query = MathNodeGenerator.toCompact(apply("minus", "x", "y"));
+        List<CompactMathNode> candidates = new ArrayList<>();
+        candidates.add(MathNodeGenerator.toCompact(apply("minus", "x", "y")));
+        candidates.add(MathNodeGenerator.toCompact(apply("minus", "x", "z")));
+        candidates.add(MathNodeGenerator.toCompact(new MathNode("ci", "x")));
+        double[] distances = TreeEditDistance.forCurrentThread().computeAll(query, candidates);
+        assertThat(distances.length, is(3));
+        assertThat(distances[0], is(0.0));
+        assertThat(distances[1], is(1.0));
+        assertThat(distances[2], is(3.0));
+    }
+
+    /**
+     * Recursive forest distance on the rightmost roots, memoized by the pre-order indices.
+     */
+    private static double naive(List<CompactMathNode> f1, List<CompactMathNode> f2, EditCosts costs,
+                                Map<String, Double> memo) {
+        if (f1.isEmpty() && f2.isEmpty()) {
+            return 0;
+        }
+        String key = key(f1) + "|" + key(f2);
+        Double cached = memo.get(key);
+        if (cached != null) {
+            return cached;
+        }
+        double result = Double.POSITIVE_INFINITY;
+        if (!f1.isEmpty()) {
+            CompactMathNode v = f1.get(f1.size() - 1);
+            result = Math.min(result, naive(withoutRoot(f1), f2, costs, memo) + costs.delete(v));
+        }
+        if (!f2.isEmpty()) {
+            CompactMathNode w = f2.get(f2.size() - 1);
+            result = Math.min(result, naive(f1, withoutRoot(f2), costs, memo) + costs.insert(w));
+        }
+        if (!f1.isEmpty() && !f2.isEmpty()) {
+            CompactMathNode v = f1.get(f1.size() - 1);
+            CompactMathNode w = f2.get(f2.size() - 1);
+            result = Math.min(result, naive(f1.subList(0, f1.size() - 1), f2.subList(0, f2.size() - 1), costs, memo)
+                    + naive(children(v), children(w), costs, memo) + costs.rename(v, w));
+        }
+        memo.put(key, result);
+        return result;
+    }
+
+    private static String key(List<CompactMathNode> forest) {
+        return forest.stream().map(n -> String.valueOf(n.getIndex())).collect(Collectors.joining(","));
+    }
+
+    private static List<CompactMathNode> withoutRoot(List<CompactMathNode> forest) {
+        List<CompactMathNode> result = new ArrayList<>(forest.subList(0, forest.size() - 1));
+        result.addAll(children(forest.get(forest.size() - 1)));
+        return result;
+    }
+
+    private static List<CompactMathNode> children(CompactMathNode node) {
+        List<CompactMathNode> children = new ArrayList<>();
+        for (int i = 0; i < node.getChildCount(); i++) {
+            children.add(node.getChild(i));
+        }
+        return children;
+    }
+
+    /**
+     * Random order sensitive tree, the labels are drawn from a small alphabet.
+     */
+    private static MathNode randomTree(Random random, int size) {
+        List<MathNode> nodes = new ArrayList<>();
+        MathNode root = new MathNode("ci", "v" + random.nextInt(3));
+        nodes.add(root);
+        for (int i = 1; i < size; i++) {
+            MathNode child = new MathNode(random.nextBoolean() ? "ci" : "cn", "v" + random.nextInt(3));
+            nodes.get(random.nextInt(nodes.size())).addChild(child);
+            nodes.add(child);
+        }
+        return root;
+    }
+
+    private static MathNode apply(String operator, String first, String second) {
+        return named("apply", new MathNode(operator, ""), new MathNode("ci", first), new MathNode("ci", second));
+    }
+
+    private static MathNode node(String value, MathNode... children) {
+        MathNode node = new MathNode("ci", value);
+        for (MathNode child : children) {
+            node.addChild(child);
+        }
+        return node;
+    }
+
+    private static MathNode named(String name, MathNode... children) {
+        MathNode node = new MathNode(name, "");
+        for (MathNode child : children) {
+            node.addChild(child);
+        }
+        return node;
+    }
+}
@@ -0,0 +1,192 @@
+package com.formulasearchengine.mathmltools.similarity.index;
+
+import com.formulasearchengine.mathmltools.mml.CMMLInfo;
+import com.formulasearchengine.mathmltools.similarity.node.MathNode;
+import com.formulasearchengine.mathmltools.similarity.node.MathNodeGenerator;
+import org.apache.commons.io.IOUtils;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Test class for the formula search index.
+ */
+public class FormulaIndexTest {
+
+    private static final String[] FILES = {
+            "mathml_complex_1.xml", "mathml_complex_2.xml",
+            "mathml_annotation_1.xml", "mathml_annotation_2.xml", "mathml_annotation_3.xml"
+    };
+
+    @Test
+    public void search_findsItselfFirst() throws Exception {
+        FormulaIndex index = new FormulaIndex();
+        for (String file : FILES) {
+            index.add(file, readCmml(file));
+        }
+        assertThat(index.size(), is(FILES.length));
+
+        List<IndexHit> hits = index.search(readCmml("mathml_complex_1.xml"), 3);
+        assertThat(hits.get(0).getId(), is("mathml_complex_1.xml"));
+        assertThat(hits.get(0).getCoverage(), is(1.0));
+        assertTrue(hits.size() <= 3);
+    }
+
+    @Test
+    public void search_orderInsensitive() throws Exception {
+        FormulaIndex index = new FormulaIndex();
+        index.add("x+y", apply("plus", "x", "y"));
+        index.add("x-y", apply("minus", "x", "y"));
+
+        List<IndexHit> hits = index.search(apply("plus", "y", "x"), 10);
+        assertThat(hits.get(0).getId(), is("x+y"));
+        assertThat(hits.get(0).getIdenticalSubTrees(), is(1));
+        // x-y shares only the abstract structure, if at all
+        for (IndexHit hit : hits) {
+            if (hit.getId().equals("x-y")) {
+                assertThat(hit.getIdenticalSubTrees(), is(0));
+            }
+        }
+    }
+
+    @Test
+    public void removeAndReplace() throws Exception {
+        FormulaIndex index = new FormulaIndex();
+        index.add("a", apply("plus", "x", "y"));
+        index.add("b", apply("plus", "x", "y"));
+        assertTrue(index.remove("a"));
+        assertFalse(index.remove("a"));
+        assertFalse(index.contains("a"));
+
+        List<IndexHit> hits = index.search(apply("plus", "x", "y"), 10);
+        assertThat(hits.size(), is(1));
+        assertThat(hits.get(0).getId(), is("b"));
+
+        // replace b with a different formula
+        index.add("b", apply("minus", "z", "z"));
+        assertThat(index.size(), is(1));
+        assertThat(index.search(apply("plus", "x", "y"), 10).stream()
+                .anyMatch(h -> h.getIdenticalSubTrees() > 0), is(false));
+    }
+
+    @Test
+    public void search_topK() throws Exception {
+        FormulaIndex index = new FormulaIndex();
+        for (int i = 0; i < 10; i++) {
+            index.add("plus" + i, apply("plus", "x", "v" + i));
+            index.add("times" + i, apply("times", "x", "v" + i));
+        }
+        index.add("x+y", apply("plus", "x", "y"));
+        MathNode query = apply("plus", "x", "y");
+        List<IndexHit> all = index.search(query, 100);
+        assertThat(all.size(), is(11));
+        assertThat(all.get(0).getId(), is("x+y"));
+        assertThat(index.search(query, 2), is(all.subList(0, 2)));
+        assertTrue(index.search(query, 0).isEmpty());
+    }
+
+    @Test
+    public void addAndSearch_keepTheTree() throws Exception {
+        FormulaIndex index = new FormulaIndex();
+        MathNode tree = apply("plus", "x", "y");
+        String before = MathNodeGenerator.printMathNode(tree, "");
+        index.add("x+y", tree);
+        index.search(tree, 10);
+        assertFalse(tree.isAbstractNode());
+        assertThat(MathNodeGenerator.printMathNode(tree, ""), is(before));
+    }
+
+    @Test
+    public void persistence(@TempDir Path dir) throws Exception {
+        Path file = dir.resolve("formulas.idx");
+        try (FormulaIndex index = FormulaIndex.open(file)) {
+            for (String f : FILES) {
+                index.add(f, readCmml(f));
+            }
+            index.remove("mathml_annotation_2.xml");
+        }
+        List<IndexHit> expected;
+        try (FormulaIndex index = FormulaIndex.open(file)) {
+            assertThat(index.size(), is(FILES.length - 1));
+            assertFalse(index.contains("mathml_annotation_2.xml"));
+            expected = index.search(readCmml("mathml_complex_1.xml"), 10);
+            long before = Files.size(file);
+            index.compact();
+            assertTrue(Files.size(file) < before);
+            assertThat(index.search(readCmml("mathml_complex_1.xml"), 10).toString(), is(expected.toString()));
+            // the index is still writable after the compaction
+            index.add("x+y", apply("plus", "x", "y"));
+        }
+        try (FormulaIndex index = FormulaIndex.open(file)) {
+            assertThat(index.size(), is(FILES.length));
+            assertTrue(index.contains("x+y"));
+        }
+    }
+
+    @Test
+    public void persistence_incompleteRecord(@TempDir Path dir) throws Exception {
+        Path file = dir.resolve("formulas.idx");
+        try (FormulaIndex index = FormulaIndex.open(file)) {
+            index.add("a", apply("plus", "x", "y"));
+            index.add("b", apply("minus", "x", "y"));
+        }
+        // simulate a crash during the last write
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.truncate(channel.size() - 5);
+        }
+        try (FormulaIndex index = FormulaIndex.open(file)) {
+            assertThat(index.size(), is(1));
+            assertTrue(index.contains("a"));
+        }
+    }
+
+    @Test
+    public void persistence_autoCompaction(@TempDir Path dir) throws Exception {
+        Path file = dir.resolve("formulas.idx");
+        try (FormulaIndex index = FormulaIndex.open(file)) {
+            index.setAutoCompactMinRemoved(4);
+            for (int i = 0; i < 6; i++) {
+                index.add("f" + i, apply("plus", "x", "y" + i));
+            }
+            // replacing a formula leaves a removed one behind
+            index.add("f0", apply("minus", "x", "y"));
+            index.remove("f1");
+            index.remove("f2");
+            assertThat(index.removedFormulas(), is(3));
+            long before = Files.size(file);
+            index.remove("f3");
+            assertThat(index.removedFormulas(), is(0));
+            assertTrue(Files.size(file) < before);
+            assertThat(index.size(), is(3));
+        }
+        try (FormulaIndex index = FormulaIndex.open(file)) {
+            assertThat(index.size(), is(3));
+            assertThat(index.removedFormulas(), is(0));
+            assertThat(index.search(apply("minus", "x", "y"), 1).get(0).getId(), is("f0"));
+        }
+    }
+
+    private MathNode apply(String operator, String first, String second) {
+        MathNode apply = new MathNode("apply", "");
+        apply.addChild(new MathNode(operator, ""));
+        apply.addChild(new MathNode("ci", first));
+        apply.addChild(new MathNode("ci", second));
+        return apply;
+    }
+
+    private CMMLInfo readCmml(String filename) throws IOException {
+        String resource = "/com/formulasearchengine/mathmltools/similarity/" + filename;
+        return new CMMLInfo(IOUtils.toString(FormulaIndexTest.class.getResourceAsStream(resource), "UTF-8"));
+    }
+}
@@ -0,0 +1,161 @@
+package com.formulasearchengine.mathmltools.similarity.index;
+
+import com.formulasearchengine.mathmltools.mml.CMMLInfo;
+import com.formulasearchengine.mathmltools.similarity.node.MathNode;
+import com.google.common.collect.HashMultiset;
+import com.google.common.collect.Multiset;
+import com.google.common.collect.Multisets;
+import org.apache.commons.io.IOUtils;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Random;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Test class for the MinHash signatures and the LSH index.
+ */
+public class LshIndexTest {
+
+    private static final String[] FILES = {
+            "mathml_complex_1.xml", "mathml_complex_2.xml",
+            "mathml_annotation_1.xml", "mathml_annotation_2.xml", "mathml_annotation_3.xml"
+    };
+
+    @Test
+    public void minHash_estimatesJaccard() {
+        MinHash minHash = new MinHash(512, 1);
+        Random random = new Random(5);
+        for (int run = 0; run < 20; run++) {
+            Multiset<String> a = randomMultiset(random);
+            Multiset<String> b = randomMultiset(random);
+            double intersection = Multisets.intersection(a, b).size();
+            double jaccard = intersection / (a.size() + b.size() - intersection);
+            double estimate = MinHash.estimateJaccard(minHash.signature(a), minHash.signature(b));
+            assertEquals(jaccard, estimate, 0.1, "run " + run);
+        }
+    }
+
+    @Test
+    public void minHash_countsOccurrences() {
+        MinHash minHash = new MinHash(128, 1);
+        Multiset<String> x = HashMultiset.create();
+        x.add("x");
+        Multiset<String> xx = HashMultiset.create(x);
+        xx.add("x");
+        assertThat(MinHash.estimateJaccard(minHash.signature(x), minHash.signature(x)), is(1.0));
+        assertTrue(MinHash.estimateJaccard(minHash.signature(x), minHash.signature(xx)) < 1.0);
+    }
+
+    @Test
+    public void candidates_findsItselfFirst() throws Exception {
+        LshIndex index = new LshIndex(new MinHash(64, 7), 16);
+        for (String file : FILES) {
+            index.add(file, readCmml(file));
+        }
+        assertThat(index.size(), is(FILES.length));
+
+        List<LshCandidate> candidates = index.candidates(readCmml("mathml_complex_1.xml"), 3);
+        assertThat(candidates.get(0).getId(), is("mathml_complex_1.xml"));
+        assertThat(candidates.get(0).getEstimatedJaccard(), is(1.0));
+        assertTrue(candidates.size() <= 3);
+    }
+
+    @Test
+    public void candidates_similarTrees() {
+        LshIndex index = new LshIndex(new MinHash(64, 7), 32);
+        index.add("x+y", apply("plus", "x", "y"));
+        index.add("a-b", apply("minus", "a", "b"));
+
+        List<LshCandidate> candidates = index.candidates(apply("plus", "y", "x"), 10);
+        assertThat(candidates.get(0).getId(), is("x+y"));
+        assertThat(candidates.get(0).getEstimatedJaccard(), is(1.0));
+        assertTrue(candidates.stream().noneMatch(c -> c.getId().equals("a-b")));
+    }
+
+    @Test
+    public void removeAndReplace() {
+        LshIndex index = new LshIndex(new MinHash(32, 3), 8);
+        index.add("a", apply("plus", "x", "y"));
+        index.add("b", apply("plus", "x", "y"));
+        assertTrue(index.remove("a"));
+        assertFalse(index.remove("a"));
+        assertFalse(index.contains("a"));
+
+        List<LshCandidate> candidates = index.candidates(apply("plus", "x", "y"), 10);
+        assertThat(candidates.size(), is(1));
+        assertThat(candidates.get(0).getId(), is("b"));
+
+        // replace b with a different formula
+        index.add("b", apply("minus", "z", "w"));
+        assertThat(index.size(), is(1));
+        assertTrue(index.candidates(apply("plus", "x", "y"), 10).isEmpty());
+    }
+
+    @Test
+    public void removeAndAdd_reusesSlots() {
+        LshIndex index = new LshIndex(new MinHash(32, 3), 8);
+        for (int run = 0; run < 100; run++) {
+            index.add("a" + run, apply("plus", "x", "y" + run));
+            index.add("b", apply("times", "x", "y" + run));
+            assertTrue(index.remove("a" + run));
+        }
+        assertThat(index.size(), is(1));
+        assertThat(index.slots(), is(2));
+        List<LshCandidate> candidates = index.candidates(apply("times", "x", "y99"), 10);
+        assertThat(candidates.size(), is(1));
+        assertThat(candidates.get(0).getId(), is("b"));
+    }
+
+    @Test
+    public void candidates_topK() {
+        LshIndex index = new LshIndex(new MinHash(64, 3), 32);
+        for (int i = 0; i < 20; i++) {
+            index.add("f" + i, apply("plus", "x", "y" + (i % 4)));
+        }
+        List<LshCandidate> all = index.candidates(apply("plus", "x", "y0"), 20);
+        List<LshCandidate> best = index.candidates(apply("plus", "x", "y0"), 3);
+        assertThat(best.size(), is(3));
+        for (int i = 0; i < best.size(); i++) {
+            assertThat(best.get(i).getEstimatedJaccard(), is(all.get(i).getEstimatedJaccard()));
+        }
+        assertThat(all.get(0).getEstimatedJaccard(), is(1.0));
+        assertTrue(index.candidates(apply("plus", "x", "y0"), 0).isEmpty());
+    }
+
+    @Test
+    public void invalidBands() {
+        assertThrows(IllegalArgumentException.class, () -> new LshIndex(new MinHash(10, 1), 3));
+        LshIndex index = new LshIndex(new MinHash(10, 1), 5);
+        assertThrows(IllegalArgumentException.class, () -> index.add("a", new long[5]));
+    }
+
+    private Multiset<String> randomMultiset(Random random) {
+        Multiset<String> multiset = HashMultiset.create();
+        int size = 20 + random.nextInt(40);
+        for (int i = 0; i < size; i++) {
+            multiset.add("e" + random.nextInt(30));
+        }
+        return multiset;
+    }
+
+    private MathNode apply(String operator, String first, String second) {
+        MathNode apply = new MathNode("apply", "");
+        apply.addChild(new MathNode(operator, ""));
+        apply.addChild(new MathNode("ci", first));
+        apply.addChild(new MathNode("ci", second));
+        return apply;
+    }
+
+    private CMMLInfo readCmml(String filename) throws IOException {
+        String resource = "/com/formulasearchengine/mathmltools/similarity/" + filename;
+        return new CMMLInfo(IOUtils.toString(LshIndexTest.class.getResourceAsStream(resource), "UTF-8"));
+    }
+}
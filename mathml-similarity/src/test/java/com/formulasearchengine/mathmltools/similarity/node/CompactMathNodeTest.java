@@ -0,0 +1,89 @@
+package com.formulasearchengine.mathmltools.similarity.node;
+
+import org.junit.jupiter.api.Test;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+/**
+ * Tests of the compact tree form.
+ */
+public class CompactMathNodeTest {
+
+    @Test
+    public void toCompact_structure() {
+        MathNode tree = apply("plus", apply("times", "x", "y"), leaf("z"));
+        CompactMathNode compact = MathNodeGenerator.toCompact(tree);
+
+        assertThat(compact.getSubtreeSize(), is(7));
+        assertThat(compact.getChildCount(), is(3));
+        assertThat(compact.getChild(0).getName(), is("plus"));
+        assertThat(compact.getChild(2).getValue(), is("z"));
+        // pre-order indices
+        assertThat(compact.getIndex(), is(0));
+        assertThat(compact.getChild(1).getIndex(), is(2));
+        assertThat(compact.getChild(1).getChild(2).getIndex(), is(5));
+        assertThat(compact.getChild(2).getIndex(), is(6));
+        assertThat(compact.getChild(1).getSubtreeSize(), is(4));
+        assertThat(compact.getLeafs().size(), is(3));
+        assertThat(compact.isOrderSensitive(), is(tree.isOrderSensitive()));
+    }
+
+    @Test
+    public void toCompact_sameHashesAsSubTreeHashes() {
+        MathNode tree = apply("plus", apply("minus", "x", "y"), leaf("z"));
+        for (MathNode root : new MathNode[]{tree, tree.toAbstract()}) {
+            SubTreeHashes hashes = new SubTreeHashes(root);
+            CompactMathNode compact = MathNodeGenerator.toCompact(root);
+            assertThat(compact.getSubtreeHash(), is(hashes.getHash(0)));
+            assertThat(compact.getChild(1).getSubtreeHash(), is(hashes.getHash(2)));
+            assertThat(compact.isIgnoreValues(), is(root.isAbstractNode()));
+        }
+    }
+
+    @Test
+    public void toCompact_orderInsensitiveHashes() {
+        CompactMathNode xy = MathNodeGenerator.toCompact(apply("plus", leaf("x"), leaf("y")));
+        CompactMathNode yx = MathNodeGenerator.toCompact(apply("plus", leaf("y"), leaf("x")));
+        CompactMathNode minus = MathNodeGenerator.toCompact(apply("minus", leaf("x"), leaf("y")));
+        assertThat(xy.getSubtreeHash(), is(yx.getSubtreeHash()));
+        assertFalse(xy.getSubtreeHash() == minus.getSubtreeHash());
+    }
+
+    @Test
+    public void toCompact_internedStrings() {
+        CompactMathNode first = MathNodeGenerator.toCompact(leaf(new String("x")));
+        CompactMathNode second = MathNodeGenerator.toCompact(leaf(new String("x")));
+        assertThat(first.getValue(), sameInstance(second.getValue()));
+        assertThat(first, is(second));
+        assertThat(first.hashCode(), is(second.hashCode()));
+    }
+
+    @Test
+    public void toCompact_immutable() {
+        MathNode tree = apply("plus", leaf("x"), leaf("y"));
+        CompactMathNode compact = MathNodeGenerator.toCompact(tree);
+        tree.addChild(leaf("z"));
+        tree.setName("changed");
+        assertThat(compact.getChildCount(), is(3));
+        assertThat(compact.getName(), is("apply"));
+    }
+
+    private static MathNode apply(String operator, String first, String second) {
+        return apply(operator, leaf(first), leaf(second));
+    }
+
+    private static MathNode apply(String operator, MathNode first, MathNode second) {
+        MathNode apply = new MathNode("apply", "");
+        apply.addChild(new MathNode(operator, ""));
+        apply.addChild(first);
+        apply.addChild(second);
+        return apply;
+    }
+
+    private static MathNode leaf(String identifier) {
+        return new MathNode("ci", identifier);
+    }
+}
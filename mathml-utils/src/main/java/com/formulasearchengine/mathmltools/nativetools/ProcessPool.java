@@ -0,0 +1,482 @@
+package com.formulasearchengine.mathmltools.nativetools;
+
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A pool of long-lived worker processes. In contrast to the {@link CommandExecutor}, a
+ * worker is started only once and handles many requests. Hence, the startup costs of
+ * the native program (e.g., loading Perl and the LaTeXML bindings) are paid once per
+ * worker instead of once per request.
+ * <p>
+ * A worker reads requests from its standard input and writes the responses to its standard
+ * output. Every message is framed by a header line with the number of bytes (UTF-8) of the
+ * following payload:
+ * <pre>
+ * request:  &lt;length&gt;\n&lt;payload&gt;
+ * response: &lt;exit code&gt; &lt;length&gt;\n&lt;payload&gt;
+ * </pre>
+ * The error stream of a worker is logged. A request is dispatched to an idle worker and
+ * waits if all workers are busy. Asynchronous requests wait in a queue and do not occupy
+ * a thread meanwhile. A worker is replaced after a timeout, a broken stream or
+ * a configurable number of requests.
+ * <p>
+ * A pool is thread-safe. Workers are started lazily and stopped by {@link #close()}, requests
+ * that still wait for a worker fail then.
+ */
+public class ProcessPool implements Closeable {
+    private static final Logger LOG = LogManager.getLogger(ProcessPool.class.getName());
+
+    /**
+     * A default timeout for a single request (10 seconds)
+     */
+    public static final long DEFAULT_TIMEOUT = 10000L;
+
+    /**
+     * waiting requests check this often whether the pool was closed
+     */
+    private static final long CLOSED_CHECK_MS = 100L;
+
+    private final String serviceName;
+
+    private final List<String> command;
+
+    private final int size;
+
+    /**
+     * one permit per worker, a request holds a permit until it released its worker
+     */
+    private final Semaphore slots;
+
+    private final Queue<Worker> idle = new ConcurrentLinkedQueue<>();
+
+    /**
+     * asynchronous requests that wait for a free slot
+     */
+    private final Queue<PendingRequest> pending = new ConcurrentLinkedQueue<>();
+
+    /**
+     * number of workers that were started and are not stopped yet
+     */
+    private final AtomicInteger started = new AtomicInteger();
+
+    /**
+     * reads the responses and error streams of the workers and runs the dispatched asynchronous requests
+     */
+    private final ExecutorService streams;
+
+    private Path workingDirectory;
+
+    private long timeoutMs = DEFAULT_TIMEOUT;
+
+    private int maxRequestsPerWorker = 0;
+
+    private Level logLevel = Level.DEBUG;
+
+    private volatile boolean closed = false;
+
+    /**
+     * Constructs a pool of worker processes.
+     *
+     * @param serviceName gives the pool a name (or ID)
+     * @param command     the command with arguments to start a worker
+     * @param size        maximum number of workers
+     */
+    public ProcessPool(String serviceName, List<String> command, int size) {
+        if (size < 1) {
+            throw new IllegalArgumentException("The pool needs at least one worker: " + size);
+        }
+        this.serviceName = serviceName;
+        this.command = new ArrayList<>(command);
+        this.size = size;
+        this.slots = new Semaphore(size, true);
+        this.streams = Executors.newCachedThreadPool(r -> {
+            Thread t = new Thread(r, serviceName + "-io");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /**
+     * Specify a working directory for the workers. Needs to be done before the first request.
+     *
+     * @param directoryPath must be a directory path
+     * @return this pool
+     */
+    public ProcessPool setWorkingDirectory(Path directoryPath) {
+        this.workingDirectory = directoryPath;
+        return this;
+    }
+
+    /**
+     * @param timeoutMs maximum time for a single request in milliseconds, the worker is killed afterwards
+     * @return this pool
+     */
+    public ProcessPool setTimeout(long timeoutMs) {
+        this.timeoutMs = timeoutMs;
+        return this;
+    }
+
+    /**
+     * @param maxRequests number of requests after which a worker is replaced, 0 for no limit
+     * @return this pool
+     */
+    public ProcessPool setMaxRequestsPerWorker(int maxRequests) {
+        this.maxRequestsPerWorker = maxRequests;
+        return this;
+    }
+
+    /**
+     * @param logLevel log level of the error streams of the workers, null to ignore them
+     * @return this pool
+     */
+    public ProcessPool setLogLevel(Level logLevel) {
+        this.logLevel = logLevel;
+        return this;
+    }
+
+    public String getServiceName() {
+        return serviceName;
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    /**
+     * @return number of running workers
+     */
+    public int getRunningWorkers() {
+        return started.get();
+    }
+
+    /**
+     * Sends the request to an idle worker and waits for the response. Failures of the worker
+     * (e.g., timeouts) are reported by the status code of the response, like by the
+     * {@link CommandExecutor}.
+     *
+     * @param request the payload of the request
+     * @return Response object.
+     */
+    public NativeResponse exec(String request) {
+        try {
+            acquireSlot();
+        } catch (IOException ioe) {
+            LOG.error("Cannot start worker for " + serviceName, ioe);
+            return new NativeResponse(1, "1-Error in " + serviceName + ": " + ioe.getMessage(), ioe);
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            return new NativeResponse(1, "1-Error in " + serviceName + ": interrupted", ie);
+        }
+        return execWithSlot(request);
+    }
+
+    /**
+     * Sends the request asynchronously, see {@link #exec(String)}. The request is queued until
+     * a slot is free, without blocking a thread.
+     *
+     * @param request the payload of the request
+     * @return the future response
+     */
+    public CompletableFuture<NativeResponse> execAsync(String request) {
+        PendingRequest next = new PendingRequest(request);
+        pending.add(next);
+        dispatch();
+        return next.result;
+    }
+
+    /**
+     * Runs the queued requests as long as there are free slots.
+     */
+    private void dispatch() {
+        while (!pending.isEmpty()) {
+            if (closed) {
+                PendingRequest next;
+                while ((next = pending.poll()) != null) {
+                    next.result.complete(new NativeResponse(1, "1-Error in " + serviceName + ": pool is closed",
+                            new IOException("pool is closed")));
+                }
+                return;
+            }
+            if (!slots.tryAcquire()) {
+                return;
+            }
+            PendingRequest next = pending.poll();
+            if (next == null) {
+                slots.release();
+                continue;
+            }
+            try {
+                streams.execute(() -> next.result.complete(execWithSlot(next.request)));
+            } catch (RejectedExecutionException ree) {
+                // the pool was closed meanwhile
+                slots.release();
+                next.result.complete(new NativeResponse(1, "1-Error in " + serviceName + ": pool is closed", ree));
+            }
+        }
+    }
+
+    /**
+     * Sends the request to a worker, the caller holds a slot already.
+     */
+    private NativeResponse execWithSlot(String request) {
+        Worker worker;
+        try {
+            worker = takeWorker();
+        } catch (IOException ioe) {
+            LOG.error("Cannot start worker for " + serviceName, ioe);
+            return new NativeResponse(1, "1-Error in " + serviceName + ": " + ioe.getMessage(), ioe);
+        }
+
+        Future<NativeResponse> future;
+        try {
+            future = streams.submit(() -> worker.exchange(request));
+        } catch (RejectedExecutionException ree) {
+            // the pool was closed meanwhile
+            release(worker, true);
+            return new NativeResponse(1, "1-Error in " + serviceName + ": pool is closed", ree);
+        }
+        try {
+            NativeResponse response = future.get(timeoutMs, TimeUnit.MILLISECONDS);
+            release(worker, false);
+            return response;
+        } catch (TimeoutException te) {
+            LOG.warn(serviceName + " - Worker exceeded timeout of " + timeoutMs + "ms -> restart worker.");
+            release(worker, true);
+            return new NativeResponse(1, "1-Error in " + serviceName + ": timeout", te);
+        } catch (ExecutionException ee) {
+            Throwable cause = ee.getCause();
+            LOG.error("Worker of " + serviceName + " failed -> restart worker.", cause);
+            release(worker, true);
+            return new NativeResponse(1, "1-Error in " + serviceName + ": " + cause.getMessage(), cause);
+        } catch (InterruptedException ie) {
+            release(worker, true);
+            Thread.currentThread().interrupt();
+            return new NativeResponse(1, "1-Error in " + serviceName + ": interrupted", ie);
+        }
+    }
+
+    /**
+     * Waits for a free slot.
+     */
+    private void acquireSlot() throws IOException, InterruptedException {
+        while (!slots.tryAcquire(CLOSED_CHECK_MS, TimeUnit.MILLISECONDS)) {
+            if (closed) {
+                throw new IOException("pool is closed");
+            }
+        }
+    }
+
+    /**
+     * Takes an idle worker or starts a new one for a slot that is already held. The slot is
+     * given back by {@link #release(Worker, boolean)} or if no worker can be started.
+     */
+    private Worker takeWorker() throws IOException {
+        try {
+            if (closed) {
+                throw new IOException("pool is closed");
+            }
+            Worker worker = idle.poll();
+            if (worker == null) {
+                // a free slot without an idle worker, i.e., the pool is not full yet
+                worker = new Worker();
+                started.incrementAndGet();
+            }
+            return worker;
+        } catch (IOException | RuntimeException e) {
+            releaseSlot();
+            throw e;
+        }
+    }
+
+    private void release(Worker worker, boolean failed) {
+        try {
+            boolean recycle = maxRequestsPerWorker > 0 && worker.requests >= maxRequestsPerWorker;
+            if (failed || recycle || closed || !worker.process.isAlive()) {
+                worker.destroy();
+                started.decrementAndGet();
+                if (!closed) {
+                    // start the replacement right away, so the next request does not pay the startup
+                    try {
+                        Worker replacement = new Worker();
+                        started.incrementAndGet();
+                        idle.add(replacement);
+                    } catch (IOException e) {
+                        // the next request tries again
+                        LOG.error("Cannot restart worker of " + serviceName, e);
+                    }
+                }
+            } else {
+                idle.add(worker);
+            }
+            if (closed) {
+                // the pool was closed while the worker was added
+                stopIdleWorkers();
+            }
+        } finally {
+            releaseSlot();
+        }
+    }
+
+    /**
+     * Gives the slot back and hands it to the next queued request.
+     */
+    private void releaseSlot() {
+        slots.release();
+        dispatch();
+    }
+
+    /**
+     * Stops all idle workers. Busy workers are stopped after their current request and
+     * requests that wait for a worker fail.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        stopIdleWorkers();
+        // fails the queued requests
+        dispatch();
+        streams.shutdown();
+    }
+
+    private void stopIdleWorkers() {
+        Worker worker;
+        while ((worker = idle.poll()) != null) {
+            worker.destroy();
+            started.decrementAndGet();
+        }
+    }
+
+    /**
+     * An asynchronous request waiting for a free slot.
+     */
+    private static final class PendingRequest {
+        private final String request;
+
+        private final CompletableFuture<NativeResponse> result = new CompletableFuture<>();
+
+        PendingRequest(String request) {
+            this.request = request;
+        }
+    }
+
+    /**
+     * A single worker process.
+     */
+    private final class Worker {
+
+        private final Process process;
+
+        private final OutputStream in;
+
+        private final DataInputStream out;
+
+        private int requests = 0;
+
+        Worker() throws IOException {
+            ProcessBuilder pb = new ProcessBuilder(command);
+            if (workingDirectory != null) {
+                pb.directory(workingDirectory.toFile());
+            }
+            process = pb.start();
+            in = process.getOutputStream();
+            out = new DataInputStream(process.getInputStream());
+            InputStream err = process.getErrorStream();
+            try {
+                streams.execute(() -> logErrorStream(err));
+            } catch (RejectedExecutionException e) {
+                process.destroyForcibly();
+                throw new IOException("pool is closed", e);
+            }
+            LOG.debug("Started worker of " + serviceName);
+        }
+
+        NativeResponse exchange(String request) throws IOException {
+            requests++;
+            byte[] payload = request.getBytes(StandardCharsets.UTF_8);
+            in.write((payload.length + "\n").getBytes(StandardCharsets.US_ASCII));
+            in.write(payload);
+            in.flush();
+
+            String header = readLine();
+            String[] parts = header.trim().split(" ");
+            if (parts.length != 2) {
+                throw new IOException("Invalid response header: " + header);
+            }
+            int exitCode;
+            byte[] result;
+            try {
+                exitCode = Integer.parseInt(parts[0]);
+                result = new byte[Integer.parseInt(parts[1])];
+            } catch (NumberFormatException e) {
+                throw new IOException("Invalid response header: " + header, e);
+            }
+            out.readFully(result);
+            String response = new String(result, StandardCharsets.UTF_8);
+            if (exitCode != 0) {
+                return new NativeResponse(exitCode, exitCode + "-Error in " + serviceName + ": " + response, null);
+            }
+            return new NativeResponse(response);
+        }
+
+        private String readLine() throws IOException {
+            StringBuilder sb = new StringBuilder();
+            int c;
+            while ((c = out.read()) != '\n') {
+                if (c < 0) {
+                    throw new IOException("Worker of " + serviceName + " closed its output stream.");
+                }
+                sb.append((char) c);
+            }
+            return sb.toString();
+        }
+
+        private void logErrorStream(InputStream err) {
+            try (BufferedReader br = new BufferedReader(new InputStreamReader(err, StandardCharsets.UTF_8))) {
+                String line;
+                while ((line = br.readLine()) != null) {
+                    if (!line.isEmpty() && logLevel != null) {
+                        LOG.log(logLevel, serviceName + " - " + line);
+                    }
+                }
+            } catch (IOException ioe) {
+                LOG.trace("Error stream of worker closed.", ioe);
+            }
+        }
+
+        void destroy() {
+            try {
+                in.close();
+            } catch (IOException ignore) {
+                // the worker is killed anyway
+            }
+            process.destroyForcibly();
+            LOG.debug("Stopped worker of " + serviceName);
+        }
+    }
+}
@@ -0,0 +1,208 @@
+package com.formulasearchengine.mathmltools.nativetools;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.net.URISyntaxException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Those tests use a fake worker (bash script) that speaks the protocol of the pool.
+ */
+public class ProcessPoolTest {
+
+    private static List<String> workerCommand;
+
+    @BeforeAll
+    public static void setup() throws URISyntaxException {
+        Path script = Paths.get(ProcessPoolTest.class.getResource("fake-worker.sh").toURI());
+        workerCommand = Arrays.asList("bash", script.toString());
+    }
+
+    @Test
+    public void echoTest() {
+        try (ProcessPool pool = new ProcessPool("JUnit-Test", workerCommand, 1)) {
+            NativeResponse response = pool.exec("a^2 + b^2");
+            assertEquals(0, response.getStatusCode());
+            assertEquals("echo:a^2 + b^2", response.getResult());
+            assertNull(response.getThrowedException());
+        }
+    }
+
+    @Test
+    public void unicodeAndLinesTest() {
+        try (ProcessPool pool = new ProcessPool("JUnit-Test", workerCommand, 1)) {
+            String request = "\\alpha = α" + System.lineSeparator() + "\\sum_{i} ä";
+            assertEquals("echo:" + request, pool.exec(request).getResult());
+            assertEquals("echo:", pool.exec("").getResult());
+        }
+    }
+
+    @Test
+    public void reuseWorkerTest() {
+        try (ProcessPool pool = new ProcessPool("JUnit-Test", workerCommand, 1)) {
+            String pid = pool.exec("pid").getResult();
+            for (int i = 0; i < 5; i++) {
+                assertEquals(pid, pool.exec("pid").getResult(), "Expected the same worker for all requests.");
+            }
+            assertEquals(1, pool.getRunningWorkers());
+        }
+    }
+
+    @Test
+    public void recycleWorkerTest() {
+        try (ProcessPool pool = new ProcessPool("JUnit-Test", workerCommand, 1)) {
+            pool.setMaxRequestsPerWorker(2);
+            String first = pool.exec("pid").getResult();
+            assertEquals(first, pool.exec("pid").getResult());
+            String second = pool.exec("pid").getResult();
+            assertNotEquals(first, second, "Expected a new worker after two requests.");
+            assertEquals(1, pool.getRunningWorkers());
+        }
+    }
+
+    @Test
+    public void conversionErrorTest() {
+        try (ProcessPool pool = new ProcessPool("JUnit-Test", workerCommand, 1)) {
+            String pid = pool.exec("pid").getResult();
+            NativeResponse response = pool.exec("fail");
+            assertEquals(3, response.getStatusCode());
+            assertNull(response.getResult());
+            assertTrue(response.getMessage().contains("conversion failed"));
+            // an error of the conversion does not restart the worker
+            assertEquals(pid, pool.exec("pid").getResult());
+        }
+    }
+
+    @Test
+    public void timeoutTest() {
+        try (ProcessPool pool = new ProcessPool("JUnit-Test", workerCommand, 1)) {
+            pool.setTimeout(500);
+            String pid = pool.exec("pid").getResult();
+            NativeResponse response = pool.exec("sleep");
+            assertEquals(1, response.getStatusCode());
+            assertNotNull(response.getThrowedException());
+            assertTrue(response.getMessage().contains("timeout"));
+
+            NativeResponse next = pool.exec("pid");
+            assertEquals(0, next.getStatusCode());
+            assertNotEquals(pid, next.getResult(), "Expected a new worker after the timeout.");
+        }
+    }
+
+    @Test
+    public void crashedWorkerTest() {
+        try (ProcessPool pool = new ProcessPool("JUnit-Test", workerCommand, 1)) {
+            NativeResponse response = pool.exec("crash");
+            assertEquals(1, response.getStatusCode());
+            assertNotNull(response.getThrowedException());
+            assertEquals("echo:x", pool.exec("x").getResult());
+        }
+    }
+
+    @Test
+    public void brokenCommandTest() {
+        List<String> command = Arrays.asList("echoXYZ", "test");
+        try (ProcessPool pool = new ProcessPool("JUnit-Test", command, 1)) {
+            NativeResponse response = pool.exec("x");
+            assertEquals(1, response.getStatusCode());
+            assertNull(response.getResult());
+            assertNotNull(response.getThrowedException());
+            assertEquals(0, pool.getRunningWorkers());
+        }
+    }
+
+    @Test
+    public void concurrentRequestsTest() {
+        try (ProcessPool pool = new ProcessPool("JUnit-Test", workerCommand, 3)) {
+            List<CompletableFuture<NativeResponse>> futures = IntStream.range(0, 30)
+                    .mapToObj(i -> pool.execAsync("request " + i))
+                    .collect(Collectors.toList());
+            for (int i = 0; i < futures.size(); i++) {
+                assertEquals("echo:request " + i, futures.get(i).join().getResult());
+            }
+            assertTrue(pool.getRunningWorkers() <= 3, "More workers than the size of the pool.");
+        }
+    }
+
+    @Test
+    public void queuedRequestsDoNotBlockThreadsTest() {
+        try (ProcessPool pool = new ProcessPool("JUnit-Queue", workerCommand, 2)) {
+            List<CompletableFuture<NativeResponse>> futures = IntStream.range(0, 500)
+                    .mapToObj(i -> pool.execAsync("request " + i))
+                    .collect(Collectors.toList());
+            long threads = Thread.getAllStackTraces().keySet().stream()
+                    .filter(t -> t.getName().startsWith("JUnit-Queue"))
+                    .count();
+            // per worker: the error stream, the response and the request in progress
+            assertTrue(threads <= 6, "Too many threads for two workers: " + threads);
+            for (int i = 0; i < futures.size(); i++) {
+                assertEquals("echo:request " + i, futures.get(i).join().getResult());
+            }
+        }
+    }
+
+    @Test
+    public void closedPoolTest() {
+        ProcessPool pool = new ProcessPool("JUnit-Test", workerCommand, 1);
+        pool.exec("x");
+        pool.close();
+        assertEquals(0, pool.getRunningWorkers());
+        assertEquals(1, pool.exec("x").getStatusCode());
+    }
+
+    @Test
+    public void closeFailsWaitingRequestsTest() throws Exception {
+        ProcessPool pool = new ProcessPool("JUnit-Test", workerCommand, 1);
+        pool.setTimeout(5000);
+        pool.exec("x");
+        CompletableFuture<NativeResponse> busy = pool.execAsync("sleep");
+        Thread.sleep(100);
+        CompletableFuture<NativeResponse> waiting = pool.execAsync("x");
+        Thread.sleep(200);
+        assertFalse(waiting.isDone());
+        pool.close();
+        NativeResponse response = waiting.get(2, TimeUnit.SECONDS);
+        assertEquals(1, response.getStatusCode());
+        assertTrue(response.getMessage().contains("pool is closed"));
+        assertEquals(1, busy.get(10, TimeUnit.SECONDS).getStatusCode());
+        assertEquals(0, pool.getRunningWorkers());
+    }
+
+    @Test
+    public void failedReplacementTest(@TempDir Path dir) throws Exception {
+        Path workingDirectory = Files.createDirectory(dir.resolve("worker"));
+        try (ProcessPool pool = new ProcessPool("JUnit-Test", workerCommand, 1)) {
+            pool.setWorkingDirectory(workingDirectory).setTimeout(500);
+            pool.exec("x");
+            CompletableFuture<NativeResponse> busy = pool.execAsync("sleep");
+            Thread.sleep(100);
+            CompletableFuture<NativeResponse> waiting = pool.execAsync("x");
+            // no replacement can be started for the timed out worker
+            Files.delete(workingDirectory);
+            assertEquals(1, busy.get(5, TimeUnit.SECONDS).getStatusCode());
+            assertEquals(1, waiting.get(5, TimeUnit.SECONDS).getStatusCode());
+            assertEquals(0, pool.getRunningWorkers());
+
+            // the next request starts a worker again
+            Files.createDirectory(workingDirectory);
+            assertEquals("echo:y", pool.exec("y").getResult());
+        }
+    }
+
+    @Test
+    public void invalidSizeTest() {
+        assertThrows(IllegalArgumentException.class, () -> new ProcessPool("JUnit-Test", workerCommand, 0));
+    }
+}
@@ -0,0 +1,25 @@
+#!/usr/bin/env bash
+# Fake worker for the ProcessPoolTest. Speaks the length-prefixed protocol of the ProcessPool:
+#   request:  <length>\n<payload>
+#   response: <exit code> <length>\n<payload>
+# Special requests: 'pid' answers the process id, 'fail' answers with exit code 3,
+# 'sleep' never answers in time and 'crash' stops the worker.
+export LC_ALL=C
+
+respond() {
+    printf '%d %d\n%s' "$1" "${#2}" "$2"
+}
+
+while read -r len; do
+    payload=""
+    if [ "$len" -gt 0 ]; then
+        read -r -d '' -N "$len" payload
+    fi
+    case "$payload" in
+        pid)   respond 0 "$$" ;;
+        fail)  echo "conversion failed" >&2; respond 3 "conversion failed" ;;
+        sleep) exec sleep 30 ;;
+        crash) exit 1 ;;
+        *)     respond 0 "echo:$payload" ;;
+    esac
+done